@@ -0,0 +1,309 @@
+package org.rhq.cassandra.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Days;
+
+import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * <p>
+ * Migrates raw data from the raw_metrics table, which stores all of the raw data of a measurement schedule in a
+ * single partition, to the raw_data table, which adds the day of the data to the partition key. Each value is written
+ * with its remaining TTL so that it expires when it would have in the old table.
+ * </p>
+ * <p>
+ * The schedule ids to migrate are loaded from the relational database. When the data of a schedule has been
+ * migrated, its id is recorded in a log stored in the server data directory so that a failed upgrade does not have to
+ * start over. The failure to migrate the data of a schedule does not stop the migration of the others, but an exception
+ * is thrown once all schedules have been processed.
+ * </p>
+ * <p>
+ * After all data has been successfully migrated, the raw_metrics table is dropped.
+ * </p>
+ */
+public class MigrateRawMetrics implements Step {
+
+    private static final Log log = LogFactory.getLog(MigrateRawMetrics.class);
+
+    public static final int DEFAULT_WARM_UP = 20;
+
+    private static final double RATE_INCREASE_PER_NODE = 0.3;
+
+    private static final long DAY = Days.ONE.toStandardDuration().getMillis();
+
+    private static final int SCHEDULES_PER_BATCH = 500;
+
+    private static final int INSERTS_PER_BATCH = 100;
+
+    private Session session;
+
+    private String dataDir;
+
+    private DBConnectionFactory dbConnectionFactory;
+
+    private RateLimiter readPermits;
+
+    private RateLimiter writePermits;
+
+    private AtomicInteger remainingSchedules = new AtomicInteger();
+
+    private AtomicInteger migratedSchedules = new AtomicInteger();
+
+    private ListeningExecutorService threadPool = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(6,
+        new SchemaUpdateThreadFactory()));
+
+    @Override
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    @Override
+    public void bind(Properties properties) {
+        dbConnectionFactory = (DBConnectionFactory) properties.get(SchemaManager.RELATIONAL_DB_CONNECTION_FACTORY_PROP);
+        dataDir = properties.getProperty("data.dir", System.getProperty("jboss.server.data.dir"));
+    }
+
+    @Override
+    public void execute() {
+        log.info("Starting raw data migration");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            // dbConnectionFactory can be null in test environments which is fine because we start tests with a brand
+            // new schema and cluster. In this case, we do not need to do anything since it is not an upgrade scenario.
+            if (dbConnectionFactory == null) {
+                log.info("The relational database connection factory is not set. No data migration necessary");
+                return;
+            }
+
+            Set<Integer> scheduleIds = loadScheduleIds();
+            log.info("There are " + scheduleIds.size() + " measurement schedules that may have raw data");
+
+            int numNodes = getNumberOfUpNodes();
+            writePermits = RateLimiter.create(getLimit("rhq.storage.request.write-limit", 10000, numNodes),
+                DEFAULT_WARM_UP, TimeUnit.SECONDS);
+            readPermits = RateLimiter.create(getLimit("rhq.storage.request.read-limit", 25, numNodes),
+                DEFAULT_WARM_UP, TimeUnit.SECONDS);
+            log.info("The request limits are " + writePermits.getRate() + " writes/sec and " + readPermits.getRate() +
+                " reads/sec");
+
+            MigrationLog migrationLog = new MigrationLog(new File(dataDir, "raw_migration.log"));
+            try {
+                scheduleIds.removeAll(migrationLog.read());
+                remainingSchedules.set(scheduleIds.size());
+                migrate(new ArrayList<Integer>(scheduleIds), migrationLog);
+            } finally {
+                migrationLog.close();
+            }
+
+            if (remainingSchedules.get() > 0) {
+                throw new RuntimeException("There are " + remainingSchedules + " unfinished raw data migrations. " +
+                    "The upgrade will have to be run again.");
+            }
+
+            dropTable();
+        } catch (IOException e) {
+            throw new RuntimeException("There was an unexpected I/O error. There are " + remainingSchedules +
+                " unfinished raw data migrations. The upgrade will have to be run again.", e);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to load the measurement schedule ids. The upgrade will have to be " +
+                "run again.", e);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("The migration was interrupted. There are still " + remainingSchedules +
+                " unfinished raw data migrations. The upgrade will have to be run again.");
+        } finally {
+            stopwatch.stop();
+            log.info("Finished migrating raw data of " + migratedSchedules + " schedules in " +
+                stopwatch.elapsed(TimeUnit.SECONDS) + " sec");
+            threadPool.shutdown();
+        }
+    }
+
+    private Set<Integer> loadScheduleIds() throws SQLException {
+        Connection connection = null;
+        Statement statement = null;
+        java.sql.ResultSet resultSet = null;
+        try {
+            connection = dbConnectionFactory.newConnection();
+            statement = connection.createStatement();
+            // data type 0 is MEASUREMENT, the only type of data stored in raw_metrics
+            resultSet = statement.executeQuery("SELECT s.id FROM rhq_measurement_sched s, rhq_measurement_def d " +
+                "WHERE s.definition = d.id AND d.data_type = 0");
+            Set<Integer> scheduleIds = new HashSet<Integer>();
+            while (resultSet.next()) {
+                scheduleIds.add(resultSet.getInt(1));
+            }
+            return scheduleIds;
+        } finally {
+            JDBCUtil.safeClose(connection, statement, resultSet);
+        }
+    }
+
+    private double getLimit(String property, int defaultLimit, int numNodes) {
+        int baseLimit = Integer.parseInt(System.getProperty(property, Integer.toString(defaultLimit)));
+        double increase = baseLimit * RATE_INCREASE_PER_NODE;
+        return baseLimit + (increase * (numNodes - 1));
+    }
+
+    private int getNumberOfUpNodes() {
+        int count = 0;
+        for (Host host : session.getCluster().getMetadata().getAllHosts()) {
+            if (host.isUp()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private void migrate(List<Integer> scheduleIds, MigrationLog migrationLog) throws InterruptedException {
+        PreparedStatement query = session.prepare(
+            "SELECT time, value, TTL(value) FROM rhq.raw_metrics WHERE schedule_id = ?");
+
+        for (int i = 0; i < scheduleIds.size(); i += SCHEDULES_PER_BATCH) {
+            List<Integer> batch = scheduleIds.subList(i, Math.min(i + SCHEDULES_PER_BATCH, scheduleIds.size()));
+            Set<Integer> failed = migrateBatch(batch, query, migrationLog);
+            if (!failed.isEmpty()) {
+                log.info("Failed to migrate the raw data of " + failed.size() + " schedules. They will be retried " +
+                    "the next time the upgrade is run.");
+            }
+            log.info("Remaining schedules to migrate: " + remainingSchedules);
+        }
+    }
+
+    private Set<Integer> migrateBatch(List<Integer> scheduleIds, PreparedStatement query,
+        final MigrationLog migrationLog) throws InterruptedException {
+
+        final Set<Integer> failed = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final CountDownLatch migrations = new CountDownLatch(scheduleIds.size());
+
+        for (final Integer scheduleId : scheduleIds) {
+            readPermits.acquire();
+            ResultSetFuture queryFuture = session.executeAsync(query.bind(scheduleId));
+            ListenableFuture<List<ResultSet>> insertsFuture = Futures.transform(queryFuture,
+                new AsyncFunction<ResultSet, List<ResultSet>>() {
+                    @Override
+                    public ListenableFuture<List<ResultSet>> apply(ResultSet resultSet) {
+                        return writeData(scheduleId, resultSet.all());
+                    }
+                }, threadPool);
+
+            Futures.addCallback(insertsFuture, new FutureCallback<List<ResultSet>>() {
+                @Override
+                public void onSuccess(List<ResultSet> results) {
+                    try {
+                        migrationLog.write(scheduleId);
+                        remainingSchedules.decrementAndGet();
+                        migratedSchedules.incrementAndGet();
+                    } catch (IOException e) {
+                        log.info("Failed to log the raw data migration of schedule id " + scheduleId + ": " +
+                            ThrowableUtil.getRootMessage(e));
+                        failed.add(scheduleId);
+                    } finally {
+                        migrations.countDown();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    try {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Failed to migrate raw data for schedule id " + scheduleId, t);
+                        } else {
+                            log.info("Failed to migrate raw data for schedule id " + scheduleId + ": " +
+                                ThrowableUtil.getRootMessage(t));
+                        }
+                        failed.add(scheduleId);
+                    } finally {
+                        migrations.countDown();
+                    }
+                }
+            });
+        }
+        migrations.await();
+        return failed;
+    }
+
+    /**
+     * Writes the rows, which are ordered by time, in batches that each target a single day partition.
+     */
+    private ListenableFuture<List<ResultSet>> writeData(int scheduleId, List<Row> rows) {
+        List<ResultSetFuture> insertFutures = new ArrayList<ResultSetFuture>();
+        List<String> statements = new ArrayList<String>(INSERTS_PER_BATCH);
+        long batchDay = -1;
+
+        for (Row row : rows) {
+            if (row.isNull(2)) {
+                continue;
+            }
+            int ttl = row.getInt(2);
+            long time = row.getDate(0).getTime();
+            long day = time - (time % DAY);
+            if (!statements.isEmpty() && (day != batchDay || statements.size() == INSERTS_PER_BATCH)) {
+                insertFutures.add(writeBatch(statements));
+                statements.clear();
+            }
+            batchDay = day;
+            statements.add("INSERT INTO rhq.raw_data (schedule_id, day, time, value) VALUES (" + scheduleId + ", " +
+                day + ", " + time + ", " + row.getDouble(1) + ") USING TTL " + ttl);
+        }
+        if (!statements.isEmpty()) {
+            insertFutures.add(writeBatch(statements));
+        }
+        return Futures.allAsList(insertFutures);
+    }
+
+    private ResultSetFuture writeBatch(List<String> statements) {
+        // all of the statements write to the same partition, so there is no need for the batch log
+        StringBuilder batch = new StringBuilder("BEGIN UNLOGGED BATCH\n");
+        for (String statement : statements) {
+            batch.append(statement).append(";\n");
+        }
+        batch.append("APPLY BATCH");
+        writePermits.acquire();
+        return session.executeAsync(batch.toString());
+    }
+
+    private void dropTable() {
+        ResultSet resultSet = session.execute("SELECT columnfamily_name " +
+            "FROM system.schema_columnfamilies WHERE keyspace_name = 'rhq'");
+        for (Row row : resultSet) {
+            if (row.getString(0).equals("raw_metrics")) {
+                log.info("Dropping table raw_metrics");
+                session.execute("DROP table rhq.raw_metrics");
+            }
+        }
+    }
+}
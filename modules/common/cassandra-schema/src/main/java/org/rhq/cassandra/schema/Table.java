@@ -6,7 +6,7 @@ package org.rhq.cassandra.schema;
 public enum Table {
 
     METRICS_INDEX("rhq.metrics_idx"),
-    RAW_METRICS("rhq.raw_metrics"),
+    RAW_DATA("rhq.raw_data"),
     AGGREGATE_METRICS("rhq.aggregate_metrics"),
     SCHEMA_VERSION("rhq.schema_version");
 
@@ -80,7 +80,7 @@ public class MigrateAggregateMetricsTest extends SchemaUpgradeTest {
         SchemaManager schemaManager = new SchemaManager("rhqadmin", "1eeb2f255e832171df8592078de921bc",
             new String[] {"127.0.0.1"}, 9042);
         schemaManager.setUpdateFolderFactory(new TestUpdateFolderFactory(VersionManager.Task.Update.getFolder())
-            .removeFiles("0005.xml", "0006.xml", "0007.xml"));
+            .removeFiles("0005.xml", "0006.xml", "0007.xml", "0008.xml"));
         schemaManager.drop();
         schemaManager.shutdown();
         schemaManager.install(properties);
@@ -103,6 +103,9 @@ public class MigrateAggregateMetricsTest extends SchemaUpgradeTest {
 
         schemaManager = new SchemaManager("rhqadmin", "1eeb2f255e832171df8592078de921bc",
             new String[] {"127.0.0.1"}, 9042);
+        // the raw data migration loads its schedule ids from the relational database, see MigrateRawMetricsTest
+        schemaManager.setUpdateFolderFactory(new TestUpdateFolderFactory(VersionManager.Task.Update.getFolder())
+            .removeFiles("0008.xml"));
         schemaManager.install(properties);
         schemaManager.shutdown();
 
@@ -0,0 +1,196 @@
+package org.rhq.cassandra.schema;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+
+import org.joda.time.Days;
+import org.joda.time.Duration;
+import org.joda.time.Minutes;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Migrates raw data spanning several days from raw_metrics and checks that every value ends up in the raw_data
+ * partition of its day.
+ */
+public class MigrateRawMetricsTest extends SchemaUpgradeTest {
+
+    private static final long DAY = Days.ONE.toStandardDuration().getMillis();
+
+    private static final int TTL = (int) (Days.SEVEN.toStandardDuration().getMillis() / 1000);
+
+    private Session session;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        for (File file : new File("target").listFiles()) {
+            if (file.getName().endsWith("_migration.log")) {
+                file.delete();
+            }
+        }
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        if (session != null) {
+            session.getCluster().shutdown();
+        }
+    }
+
+    @Test
+    public void runMigration() throws Exception {
+        final List<Integer> scheduleIds = new ArrayList<Integer>();
+        for (int i = 1; i <= 5; ++i) {
+            scheduleIds.add(i);
+        }
+
+        Properties properties = new Properties();
+        properties.put(SchemaManager.RELATIONAL_DB_CONNECTION_FACTORY_PROP, new DBConnectionFactory() {
+            @Override
+            public Connection newConnection() throws SQLException {
+                return newScheduleIdsConnection(scheduleIds);
+            }
+        });
+        properties.put(SchemaManager.DATA_DIR, "target");
+
+        SchemaManager schemaManager = new SchemaManager("rhqadmin", "1eeb2f255e832171df8592078de921bc",
+            new String[] {"127.0.0.1"}, 9042);
+        schemaManager.setUpdateFolderFactory(new TestUpdateFolderFactory(VersionManager.Task.Update.getFolder())
+            .removeFiles("0008.xml"));
+        schemaManager.drop();
+        schemaManager.shutdown();
+        schemaManager.install(properties);
+        schemaManager.shutdown();
+
+        Cluster cluster = new Cluster.Builder()
+            .addContactPoint("127.0.0.1")
+            .withCredentials("rhqadmin", "rhqadmin")
+            .build();
+        session = cluster.connect("rhq");
+
+        // three days and a half of data every 30 minutes, so that the first and the last day partitions are partial
+        long endTime = System.currentTimeMillis();
+        long startTime = endTime - (3 * DAY) - (DAY / 2);
+        Duration interval = Minutes.minutes(30).toStandardDuration();
+        Map<Long, Integer> expectedCountsPerDay = insertRawData(scheduleIds, startTime, endTime, interval.getMillis());
+        assertTrue(expectedCountsPerDay.size() >= 4, "The raw data should span at least four days");
+
+        schemaManager = new SchemaManager("rhqadmin", "1eeb2f255e832171df8592078de921bc",
+            new String[] {"127.0.0.1"}, 9042);
+        schemaManager.install(properties);
+        schemaManager.shutdown();
+
+        PreparedStatement query = session.prepare("SELECT time, value, TTL(value) FROM raw_data " +
+            "WHERE schedule_id = ? AND day = ?");
+        for (Integer scheduleId : scheduleIds) {
+            for (Map.Entry<Long, Integer> entry : expectedCountsPerDay.entrySet()) {
+                long day = entry.getKey();
+                List<Row> rows = session.execute(query.bind(scheduleId, new Date(day))).all();
+                assertEquals(rows.size(), (int) entry.getValue(), "Wrong number of raw data values migrated for " +
+                    "schedule id " + scheduleId + " in the partition of day " + new Date(day));
+                for (Row row : rows) {
+                    long time = row.getDate(0).getTime();
+                    assertEquals(time - (time % DAY), day, "The value at " + row.getDate(0) + " is in the " +
+                        "partition of another day");
+                    assertEquals(row.getDouble(1), value(scheduleId, time), "Wrong value migrated for schedule id " +
+                        scheduleId + " at " + row.getDate(0));
+                    assertTrue(row.getInt(2) > 0 && row.getInt(2) <= TTL, "The TTL of the value at " +
+                        row.getDate(0) + " should have been carried over");
+                }
+            }
+        }
+
+        assertTableDropped("raw_metrics");
+    }
+
+    /**
+     * @return the number of values inserted for every schedule, by day
+     */
+    private Map<Long, Integer> insertRawData(List<Integer> scheduleIds, long startTime, long endTime, long interval) {
+        PreparedStatement insert = session.prepare("INSERT INTO raw_metrics (schedule_id, time, value) " +
+            "VALUES (?, ?, ?) USING TTL " + TTL);
+        Map<Long, Integer> countsPerDay = new HashMap<Long, Integer>();
+        for (long time = startTime; time < endTime; time += interval) {
+            for (Integer scheduleId : scheduleIds) {
+                session.execute(insert.bind(scheduleId, new Date(time), value(scheduleId, time)));
+            }
+            long day = time - (time % DAY);
+            Integer count = countsPerDay.get(day);
+            countsPerDay.put(day, (count == null) ? 1 : count + 1);
+        }
+        return countsPerDay;
+    }
+
+    private static double value(int scheduleId, long time) {
+        return scheduleId + (time % DAY) / (double) DAY;
+    }
+
+    private void assertTableDropped(String table) {
+        ResultSet resultSet = session.execute("SELECT columnfamily_name FROM system.schema_columnfamilies " +
+            "WHERE keyspace_name = 'rhq'");
+        for (Row row : resultSet) {
+            assertFalse(row.getString(0).equals(table), table + " should have been dropped");
+        }
+    }
+
+    /**
+     * The migration only runs a query for the ids of the measurement schedules, so a connection answering any query
+     * with the given ids is all it needs.
+     */
+    private static Connection newScheduleIdsConnection(final List<Integer> scheduleIds) {
+        final Object resultSet = newProxy(java.sql.ResultSet.class, new InvocationHandler() {
+            private final Iterator<Integer> iterator = scheduleIds.iterator();
+            private Integer current;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("next")) {
+                    current = iterator.hasNext() ? iterator.next() : null;
+                    return current != null;
+                } else if (method.getName().equals("getInt")) {
+                    return current;
+                }
+                return null;
+            }
+        });
+        final Object statement = newProxy(Statement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("executeQuery") ? resultSet : null;
+            }
+        });
+        return (Connection) newProxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("createStatement") ? statement : null;
+            }
+        });
+    }
+
+    private static Object newProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(MigrateRawMetricsTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
@@ -35,11 +35,18 @@ public class ConnectAgentResults implements Serializable {
     private final long serverTime;
     private final boolean isDown;
     private final AgentVersion latestAgentVersion;
+    private final boolean compactMeasurementReports;
 
     public ConnectAgentResults(long serverTime, boolean isDown, AgentVersion latestAgentVersion) {
+        this(serverTime, isDown, latestAgentVersion, false);
+    }
+
+    public ConnectAgentResults(long serverTime, boolean isDown, AgentVersion latestAgentVersion,
+        boolean compactMeasurementReports) {
         this.serverTime = serverTime;
         this.isDown = isDown;
         this.latestAgentVersion = latestAgentVersion;
+        this.compactMeasurementReports = compactMeasurementReports;
     }
 
     /**
@@ -81,9 +88,21 @@ public class ConnectAgentResults implements Serializable {
         return latestAgentVersion;
     }
 
+    /**
+     * If true, the server can read measurement reports sent in the compact encoding, so the agent may send them that
+     * way. Servers that predate the compact encoding do not send this flag; the agent then sees it as false and keeps
+     * sending plainly serialized reports.
+     *
+     * @return true if the server reads compactly encoded measurement reports
+     */
+    public boolean isCompactMeasurementReportsSupported() {
+        return compactMeasurementReports;
+    }
+
     @Override
     public String toString() {
         return "ConnectAgentResults: [server-time=" + this.serverTime + ", is-down=" + this.isDown
-            + ", latestAgentVersion=" + this.latestAgentVersion + "]";
+            + ", latestAgentVersion=" + this.latestAgentVersion + ", compactMeasurementReports="
+            + this.compactMeasurementReports + "]";
     }
 }
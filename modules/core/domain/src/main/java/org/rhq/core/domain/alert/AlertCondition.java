@@ -74,14 +74,13 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "    FROM AlertCondition AS ac " //
         + "    JOIN ac.alertDefinition ad " //
         + "    JOIN ad.resource res " //
-        + "    JOIN ac.measurementDefinition md, MeasurementSchedule ms JOIN ms.baseline mb " //
+        + "    JOIN ac.measurementDefinition md, MeasurementSchedule ms LEFT JOIN ms.baseline mb " //
         + "   WHERE " + AlertCondition.RECOVERY_CONDITIONAL_EXPRESSION //
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
-        + "     AND mb IS NOT NULL " //
         + "     AND ac.category = 'BASELINE' " //
         + "ORDER BY ac.id"), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_COUNT_BASELINE, query = "" //
@@ -89,14 +88,13 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "    FROM AlertCondition AS ac " //
         + "    JOIN ac.alertDefinition ad " //
         + "    JOIN ad.resource res " //
-        + "    JOIN ac.measurementDefinition md, MeasurementSchedule ms JOIN ms.baseline mb " //
+        + "    JOIN ac.measurementDefinition md, MeasurementSchedule ms LEFT JOIN ms.baseline mb " //
         + "   WHERE " + AlertCondition.RECOVERY_CONDITIONAL_EXPRESSION //
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
-        + "     AND mb IS NOT NULL " //
         + "     AND ac.category = 'BASELINE' "), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_CHANGE, query = "" //
         + "  SELECT new org.rhq.core.domain.alert.composite.AlertConditionChangesCategoryComposite " //
@@ -292,6 +290,14 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "    JOIN ac.alertDefinition ad " //
         + "    JOIN ad.resource res " //
         + "   WHERE ac.id = :alertConditionId "),
+    @NamedQuery(name = AlertCondition.QUERY_FIND_DEFINITION_COMPOSITES_BY_IDS, query = "" //
+        + "  SELECT new org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite " //
+        + "       ( ac.id, ad.id, res.inventoryStatus ) " //
+        + "    FROM AlertCondition AS ac " //
+        + "    JOIN ac.alertDefinition ad " //
+        + "    JOIN ad.resource res " //
+        + "   WHERE ac.id IN ( :alertConditionIds ) " //
+        + "     AND ad.enabled = true "),
  @NamedQuery(name = AlertCondition.QUERY_DELETE_ORPHANED, query = "" //
         + "  DELETE FROM AlertCondition ac " //
         + "   WHERE ac.alertDefinition IS NULL " //
@@ -326,6 +332,7 @@ public class AlertCondition implements Serializable {
     public static final String QUERY_BY_CATEGORY_COUNT_PARAMETERIZED = "AlertCondition.byCategoryCountParameterized";
 
     public static final String QUERY_FIND_RESOURCE_STATUS_BY_CONDITION_ID = "AlertCondition.findResourceStatus";
+    public static final String QUERY_FIND_DEFINITION_COMPOSITES_BY_IDS = "AlertCondition.findDefinitionCompositesByIds";
 
     public static final String QUERY_DELETE_ORPHANED = "AlertCondition.deleteOrphaned";
 
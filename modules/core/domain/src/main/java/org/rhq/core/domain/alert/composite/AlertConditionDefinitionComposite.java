@@ -0,0 +1,64 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.alert.composite;
+
+import java.io.Serializable;
+
+import org.rhq.core.domain.resource.InventoryStatus;
+
+/**
+ * The alert definition an alert condition belongs to, along with the inventory status of the definition's resource.
+ */
+public class AlertConditionDefinitionComposite implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int conditionId;
+    private final int alertDefinitionId;
+    private final InventoryStatus resourceStatus;
+
+    public AlertConditionDefinitionComposite(int conditionId, int alertDefinitionId, InventoryStatus resourceStatus) {
+        super();
+        this.conditionId = conditionId;
+        this.alertDefinitionId = alertDefinitionId;
+        this.resourceStatus = resourceStatus;
+    }
+
+    public int getConditionId() {
+        return conditionId;
+    }
+
+    public int getAlertDefinitionId() {
+        return alertDefinitionId;
+    }
+
+    public InventoryStatus getResourceStatus() {
+        return resourceStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "AlertConditionDefinitionComposite[conditionId=" + conditionId + ", alertDefinitionId="
+            + alertDefinitionId + ", resourceStatus=" + resourceStatus + "]";
+    }
+}
@@ -182,6 +182,37 @@ import org.rhq.core.domain.resource.group.ResourceGroup;
         + "                      JOIN crg.roles r " //
         + "                      JOIN r.subjects s " //
         + "                     WHERE crg.recursive = true AND s = :subject))"),
+    @NamedQuery(name = Subject.QUERY_GET_VISIBLE_RESOURCE_IDS, query = "" //
+        + "SELECT DISTINCT res.id " //
+        + "  FROM Resource res " //
+        + "  JOIN res.implicitGroups g " //
+        + "  JOIN g.roles r " //
+        + "  JOIN r.subjects s " //
+        + " WHERE s.id = :subjectId "),
+
+    @NamedQuery(name = Subject.QUERY_GET_SUBJECT_IDS_BY_GROUP_IDS, query = "" //
+        + "SELECT DISTINCT s.id " //
+        + "  FROM ResourceGroup g " //
+        + "  JOIN g.roles r " //
+        + "  JOIN r.subjects s " //
+        + " WHERE g.id IN ( :groupIds ) "),
+
+    @NamedQuery(name = Subject.QUERY_GET_VISIBLE_GROUP_IDS, query = "" //
+        + "SELECT g.id " //
+        + "  FROM ResourceGroup g " //
+        + " WHERE g.subject.id = :subjectId " // private group case (autogroup backing group)
+        + "    OR g.id IN (SELECT rg.id " // role-associated group case
+        + "                  FROM ResourceGroup rg " //
+        + "                  JOIN rg.roles r " //
+        + "                  JOIN r.subjects s " //
+        + "                 WHERE s.id = :subjectId) " //
+        + "    OR g.id IN (SELECT rg.id " // autocluster backing group case
+        + "                  FROM ResourceGroup rg " //
+        + "                  JOIN rg.clusterResourceGroup crg " //
+        + "                  JOIN crg.roles r " //
+        + "                  JOIN r.subjects s " //
+        + "                 WHERE crg.recursive = true AND s.id = :subjectId)"),
+
     // @Deprecated
     @NamedQuery(name = Subject.QUERY_CAN_VIEW_AUTO_GROUP, query = "" //
         + "SELECT COUNT(res.id) " //
@@ -284,6 +315,9 @@ public class Subject implements Serializable {
     public static final String QUERY_CAN_VIEW_AUTO_GROUP = "Subject.canViewAutoGroup";
     public static final String QUERY_CAN_VIEW_BUNDLE = "Subject.canViewBundle";
     public static final String QUERY_CAN_VIEW_BUNDLE_GROUP = "Subject.canViewBundleGroup";
+    public static final String QUERY_GET_VISIBLE_RESOURCE_IDS = "Subject.getVisibleResourceIds";
+    public static final String QUERY_GET_VISIBLE_GROUP_IDS = "Subject.getVisibleGroupIds";
+    public static final String QUERY_GET_SUBJECT_IDS_BY_GROUP_IDS = "Subject.getSubjectIdsByGroupIds";
 
     public static final String QUERY_GET_BUNDLES_BY_PERMISSION = "Subject.getBundlesByPermission";
     public static final String QUERY_GET_RESOURCES_BY_PERMISSION = "Subject.getResourcesByPermission";
@@ -52,6 +52,10 @@ import org.jetbrains.annotations.Nullable;
     @NamedQuery(name = Event.DELETE_BY_RESOURCES, query = "DELETE FROM Event ev  "
         + " WHERE ev.source IN ( SELECT evs FROM EventSource evs WHERE evs.resource.id IN ( :resourceIds ) )"),
     @NamedQuery(name = Event.DELETE_BY_EVENT_IDS, query = "DELETE FROM Event e WHERE e.id IN ( :eventIds )"),
+    @NamedQuery(name = Event.FIND_SOURCE_RESOURCE_TIME_SEVERITY_BY_EVENT_IDS, query = "" //
+        + "SELECT e.source.resourceId, e.timestamp, e.severity " //
+        + "  FROM Event e " //
+        + " WHERE e.id IN ( :eventIds )"),
     @NamedQuery(name = Event.DELETE_ALL_BY_RESOURCE, query = "" //
         + "DELETE FROM Event e " //
         + " WHERE e.source.id IN ( SELECT es.id " //
@@ -102,6 +106,7 @@ public class Event implements Serializable {
 
     public static final String DELETE_BY_RESOURCES = "Event.deleteByResources";
     public static final String DELETE_BY_EVENT_IDS = "Event.deleteByEventIds";
+    public static final String FIND_SOURCE_RESOURCE_TIME_SEVERITY_BY_EVENT_IDS = "Event.findSourceResourceTimeSeverityByEventIds";
     public static final String DELETE_ALL_BY_RESOURCE = "Event.deleteAllByResource";
     public static final String DELETE_ALL_BY_RESOURCE_GROUP = "Event.deleteAllByResourceGroup";
     public static final String FIND_EVENTS_FOR_RESOURCE_ID_AND_TIME = "Event.FIND_EVENTS_FOR_RESOURCE_ID_AND_TIME";
@@ -230,6 +230,26 @@ public class MeasurementOOB {
         + "                             FROM rhq_measurement_oob \n "
         + "                            WHERE rhq_measurement_oob.schedule_id = rhq_measurement_oob_tmp.schedule_id ) )";
 
+    /*
+     * The statements below are executed as JDBC batches with the OOBs computed in memory from the 1h aggregates. An
+     * OOB replaces the existing one of its schedule, regardless of its factor. Oracle does not report the update
+     * counts of batched statements, so it gets a single MERGE; the other databases update first and insert the OOBs
+     * whose update count was 0.
+     */
+    public static final String UPSERT_ORACLE = "" //
+        + "MERGE INTO rhq_measurement_oob oob_ \n" //
+        + "     USING ( SELECT ? AS schedule_id, ? AS time_stamp, ? AS oob_factor FROM dual ) new_ \n" //
+        + "        ON ( new_.schedule_id = oob_.schedule_id ) \n" //
+        + "      WHEN MATCHED THEN UPDATE SET oob_factor = new_.oob_factor, time_stamp = new_.time_stamp \n" //
+        + "      WHEN NOT MATCHED THEN INSERT ( oob_.schedule_id, oob_.time_stamp, oob_.oob_factor ) \n" //
+        + "                            VALUES ( new_.schedule_id, new_.time_stamp, new_.oob_factor )";
+
+    public static final String UPDATE_FACTOR = "" //
+        + "UPDATE rhq_measurement_oob SET time_stamp = ?, oob_factor = ? WHERE schedule_id = ?";
+
+    public static final String INSERT_FACTOR = "" //
+        + "INSERT INTO rhq_measurement_oob (schedule_id, time_stamp, oob_factor) VALUES (?, ?, ?)";
+
     /**
      * @deprecated as of RHQ 4.13, no longer used
      */
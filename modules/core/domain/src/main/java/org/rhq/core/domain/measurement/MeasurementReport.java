@@ -22,6 +22,9 @@
   */
 package org.rhq.core.domain.measurement;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -35,6 +38,10 @@ import org.rhq.core.domain.measurement.calltime.CallTimeData;
  * resource, it will store that measurement data in an instance of this type.
  * <p/>
  * <p>This report has an optimized serialization strategy.</p>
+ * <p>When {@link #setCompactEncoding(boolean) compact encoding} is turned on, the numeric and trait data are
+ * serialized in a columnar, delta-encoded form rather than as serialized objects, which is considerably smaller and
+ * faster for large reports. Deserialization handles both forms, so it is up to the sender to only turn it on when the
+ * receiver supports it.</p>
  *
  * @author Greg Hinkle
  * @author Ian Springer
@@ -52,6 +59,8 @@ public class MeasurementReport implements Serializable {
 
     private long collectionTime;
 
+    private transient boolean compactEncoding;
+
     /**
      * Adds the given piece of numeric data to this report. Items are added to this report's list of numeric data in order.
      * That is, the order in which you add multiple pieces of numeric data is the same order in which you get them
@@ -133,7 +142,55 @@ public class MeasurementReport implements Serializable {
         this.collectionTime = collectionTime;
     }
 
-    public void incrementCollectionTime(long collectionTime) {
+    public synchronized void incrementCollectionTime(long collectionTime) {
         this.collectionTime += collectionTime;
     }
+
+    public boolean isCompactEncoding() {
+        return compactEncoding;
+    }
+
+    /**
+     * Determines how the numeric and trait data are serialized. This is not itself serialized; a deserialized report
+     * always has compact encoding turned off.
+     *
+     * @param compactEncoding <code>true</code> to serialize the numeric and trait data with the compact encoding
+     */
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        if (!compactEncoding) {
+            out.defaultWriteObject();
+            return;
+        }
+
+        // null data sets tell the reader that the data follows in the compact encoding
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("measurementNumericData", null);
+        fields.put("measurementTraitData", null);
+        fields.put("callTimeData", callTimeData);
+        fields.put("collectionTime", collectionTime);
+        out.writeFields();
+        MeasurementReportEncoding.write(out, measurementNumericData, measurementTraitData);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        measurementNumericData = (Set<MeasurementDataNumeric>) fields.get("measurementNumericData", null);
+        measurementTraitData = (Set<MeasurementDataTrait>) fields.get("measurementTraitData", null);
+        callTimeData = (Set<CallTimeData>) fields.get("callTimeData", null);
+        collectionTime = fields.get("collectionTime", 0L);
+
+        if (measurementNumericData == null) {
+            measurementNumericData = new LinkedHashSet<MeasurementDataNumeric>();
+            measurementTraitData = new LinkedHashSet<MeasurementDataTrait>();
+            MeasurementReportEncoding.read(in, measurementNumericData, measurementTraitData);
+        }
+        if (callTimeData == null) {
+            callTimeData = new LinkedHashSet<CallTimeData>();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,297 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.measurement;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compact encoding of the numeric and trait data of a {@link MeasurementReport}. The data is laid out column by
+ * column for each datum, in the order the data was added to the report:
+ * <ul>
+ * <li>schedule ids and timestamps as the zig-zag varint delta from the previous datum</li>
+ * <li>numeric values as the XOR of their bits with the previous value, leaving out the leading and trailing zero
+ * bytes</li>
+ * <li>data names and trait values as references into a dictionary that is built up as the data is written, so that
+ * each distinct string is only written once</li>
+ * </ul>
+ * The encoded data is written as a single length-prefixed block.
+ */
+final class MeasurementReportEncoding {
+
+    private static final byte VERSION = 1;
+
+    /** String reference for a null string */
+    private static final int NULL_STRING = 0;
+
+    /** String reference for a string that is not in the dictionary yet and follows the reference */
+    private static final int NEW_STRING = 1;
+
+    /** Value header for a value equal to the previous one */
+    private static final int SAME_VALUE = 0;
+
+    /** Value header for a null value, it cannot clash with a header of an XORed value */
+    private static final int NULL_VALUE = 0xFF;
+
+    private MeasurementReportEncoding() {
+    }
+
+    static void write(DataOutput out, Collection<MeasurementDataNumeric> numericData,
+        Collection<MeasurementDataTrait> traitData) throws IOException {
+
+        ByteWriter writer = new ByteWriter(16 + (numericData.size() * 6) + (traitData.size() * 8));
+        writer.writeByte(VERSION);
+        writer.writeVarLong(numericData.size());
+        writer.writeVarLong(traitData.size());
+
+        Map<String, Integer> names = new HashMap<String, Integer>();
+        int scheduleId = 0;
+        long timestamp = 0L;
+        long valueBits = 0L;
+        for (MeasurementDataNumeric datum : numericData) {
+            writer.writeString(datum.getName(), names);
+            writer.writeVarLong(zigZag((long) datum.getScheduleId() - scheduleId));
+            writer.writeVarLong(zigZag(datum.getTimestamp() - timestamp));
+            scheduleId = datum.getScheduleId();
+            timestamp = datum.getTimestamp();
+
+            Double value = datum.getValue();
+            if (value == null) {
+                writer.writeByte(NULL_VALUE);
+            } else {
+                long bits = Double.doubleToRawLongBits(value);
+                writer.writeXor(bits ^ valueBits);
+                valueBits = bits;
+            }
+        }
+
+        Map<String, Integer> traitValues = new HashMap<String, Integer>();
+        for (MeasurementDataTrait datum : traitData) {
+            writer.writeString(datum.getName(), names);
+            writer.writeVarLong(zigZag((long) datum.getScheduleId() - scheduleId));
+            writer.writeVarLong(zigZag(datum.getTimestamp() - timestamp));
+            scheduleId = datum.getScheduleId();
+            timestamp = datum.getTimestamp();
+            writer.writeString(datum.getValue(), traitValues);
+        }
+
+        out.writeInt(writer.size);
+        out.write(writer.buffer, 0, writer.size);
+    }
+
+    static void read(DataInput in, Collection<MeasurementDataNumeric> numericData,
+        Collection<MeasurementDataTrait> traitData) throws IOException {
+
+        byte[] buffer = new byte[in.readInt()];
+        in.readFully(buffer);
+        ByteReader reader = new ByteReader(buffer);
+
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported measurement report encoding version [" + version + "]");
+        }
+        int numericCount = (int) reader.readVarLong();
+        int traitCount = (int) reader.readVarLong();
+
+        List<String> names = new ArrayList<String>();
+        int scheduleId = 0;
+        long timestamp = 0L;
+        long valueBits = 0L;
+        for (int i = 0; i < numericCount; i++) {
+            String name = reader.readString(names);
+            scheduleId += (int) unZigZag(reader.readVarLong());
+            timestamp += unZigZag(reader.readVarLong());
+
+            Double value;
+            int header = reader.readByte() & 0xFF;
+            if (header == NULL_VALUE) {
+                value = null;
+            } else {
+                valueBits ^= reader.readXor(header);
+                value = Double.longBitsToDouble(valueBits);
+            }
+
+            MeasurementDataNumeric datum = new MeasurementDataNumeric(timestamp, scheduleId, value);
+            datum.setName(name);
+            numericData.add(datum);
+        }
+
+        List<String> traitValues = new ArrayList<String>();
+        for (int i = 0; i < traitCount; i++) {
+            String name = reader.readString(names);
+            scheduleId += (int) unZigZag(reader.readVarLong());
+            timestamp += unZigZag(reader.readVarLong());
+            String value = reader.readString(traitValues);
+
+            MeasurementDataTrait datum = new MeasurementDataTrait(new MeasurementDataPK(timestamp, scheduleId), value);
+            datum.setName(name);
+            traitData.add(datum);
+        }
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static class ByteWriter {
+        private byte[] buffer;
+        private int size;
+
+        ByteWriter(int initialCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+
+        void writeByte(int b) {
+            if (size == buffer.length) {
+                byte[] bigger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, bigger, 0, size);
+                buffer = bigger;
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        void writeVarLong(long n) {
+            while ((n & ~0x7FL) != 0) {
+                writeByte((int) ((n & 0x7F) | 0x80));
+                n >>>= 7;
+            }
+            writeByte((int) n);
+        }
+
+        /**
+         * Writes a header byte holding the number of leading zero bytes in the high nibble and the number of
+         * significant bytes in the low nibble, followed by the significant bytes.
+         */
+        void writeXor(long xor) {
+            if (xor == 0) {
+                writeByte(SAME_VALUE);
+                return;
+            }
+            int leading = Long.numberOfLeadingZeros(xor) / 8;
+            int trailing = Long.numberOfTrailingZeros(xor) / 8;
+            int significant = 8 - leading - trailing;
+            writeByte((leading << 4) | significant);
+            for (int i = significant - 1; i >= 0; i--) {
+                writeByte((int) (xor >>> ((trailing + i) * 8)));
+            }
+        }
+
+        void writeString(String s, Map<String, Integer> dictionary) throws UnsupportedEncodingException {
+            if (s == null) {
+                writeVarLong(NULL_STRING);
+                return;
+            }
+            Integer ref = dictionary.get(s);
+            if (ref != null) {
+                writeVarLong(ref);
+                return;
+            }
+            dictionary.put(s, dictionary.size() + 2);
+            writeVarLong(NEW_STRING);
+            byte[] bytes = s.getBytes("UTF-8");
+            writeVarLong(bytes.length);
+            for (byte b : bytes) {
+                writeByte(b);
+            }
+        }
+    }
+
+    private static class ByteReader {
+        private final byte[] buffer;
+        private int position;
+
+        ByteReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() throws IOException {
+            if (position >= buffer.length) {
+                throw new StreamCorruptedException("Truncated measurement report data");
+            }
+            return buffer[position++];
+        }
+
+        long readVarLong() throws IOException {
+            long n = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                n |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return n;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint in measurement report data");
+        }
+
+        long readXor(int header) throws IOException {
+            if (header == SAME_VALUE) {
+                return 0L;
+            }
+            int leading = header >>> 4;
+            int significant = header & 0x0F;
+            int trailing = 8 - leading - significant;
+            if (significant == 0 || trailing < 0) {
+                throw new StreamCorruptedException("Malformed value header [" + header + "] in measurement report data");
+            }
+            long xor = 0L;
+            for (int i = 0; i < significant; i++) {
+                xor = (xor << 8) | (readByte() & 0xFF);
+            }
+            return xor << (trailing * 8);
+        }
+
+        String readString(List<String> dictionary) throws IOException {
+            int ref = (int) readVarLong();
+            if (ref == NULL_STRING) {
+                return null;
+            }
+            if (ref != NEW_STRING) {
+                if (ref - 2 >= dictionary.size()) {
+                    throw new StreamCorruptedException("Unknown string reference [" + ref
+                        + "] in measurement report data");
+                }
+                return dictionary.get(ref - 2);
+            }
+            int length = (int) readVarLong();
+            if (length < 0 || length > buffer.length - position) {
+                throw new StreamCorruptedException("Truncated measurement report data");
+            }
+            String s = new String(buffer, position, length, "UTF-8");
+            position += length;
+            dictionary.add(s);
+            return s;
+        }
+    }
+}
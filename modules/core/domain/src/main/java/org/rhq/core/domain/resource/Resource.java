@@ -375,6 +375,23 @@ import org.rhq.core.domain.util.Summary;
         + "   AND r.resourceKey = :key " //
         + "   AND r.resourceType.plugin = :plugin " //
         + "   AND r.resourceType.name = :typeName"),
+    @NamedQuery(name = Resource.QUERY_FIND_BY_IDS_FOR_MERGE, query = "" //
+        + "SELECT r " //
+        + "  FROM Resource AS r " //
+        + "  JOIN FETCH r.resourceType " //
+        + " WHERE r.id IN ( :ids )"),
+    @NamedQuery(name = Resource.QUERY_FIND_BY_PARENTS_AND_KEYS, query = "" //
+        + "SELECT r, r.parentResource.id " //
+        + "  FROM Resource AS r " //
+        + "  JOIN FETCH r.resourceType " //
+        + " WHERE r.parentResource.id IN ( :parentIds ) " //
+        + "   AND r.resourceKey IN ( :keys )"),
+    @NamedQuery(name = Resource.QUERY_FIND_ROOTS_BY_KEYS, query = "" //
+        + "SELECT r " //
+        + "  FROM Resource AS r " //
+        + "  JOIN FETCH r.resourceType " //
+        + " WHERE r.parentResource IS NULL " //
+        + "   AND r.resourceKey IN ( :keys )"),
     @NamedQuery(name = Resource.QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN, query = "" //
         + "SELECT res.id " //
         + "  FROM ResourceGroup rg, IN (rg.explicitResources) res " //
@@ -836,6 +853,10 @@ public class Resource implements Comparable<Resource>, Serializable {
     public static final String QUERY_FIND_BY_TYPE_AND_IDS_ADMIN = "Resource.findByTypeAndIds_admin";
 
     public static final String QUERY_FIND_BY_PARENT_AND_KEY = "Resource.findByParentAndKey";
+    // set-based lookups used by the inventory report merge
+    public static final String QUERY_FIND_BY_IDS_FOR_MERGE = "Resource.findByIdsForMerge";
+    public static final String QUERY_FIND_BY_PARENTS_AND_KEYS = "Resource.findByParentsAndKeys";
+    public static final String QUERY_FIND_ROOTS_BY_KEYS = "Resource.findRootsByKeys";
 
     public static final String QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN = "Resource.findExplicitIdsByResourceGroup_admin";
     public static final String QUERY_FIND_IMPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN = "Resource.findImplicitIdsByResourceGroup_admin";
@@ -0,0 +1,165 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.domain.measurement.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataPK;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+
+/**
+ * Tests the compact encoding of measurement reports.
+ */
+@Test
+public class MeasurementReportEncodingTest {
+
+    public void testRoundTrip() throws Exception {
+        MeasurementReport report = createReport();
+        report.setCompactEncoding(true);
+
+        MeasurementReport copy = roundTrip(report);
+
+        assert !copy.isCompactEncoding() : "compact encoding flag is not to be serialized";
+        assertSameData(copy, report);
+    }
+
+    public void testDefaultEncodingStillWorks() throws Exception {
+        MeasurementReport report = createReport();
+
+        MeasurementReport copy = roundTrip(report);
+
+        assertSameData(copy, report);
+    }
+
+    public void testEmptyReport() throws Exception {
+        MeasurementReport report = new MeasurementReport();
+        report.setCompactEncoding(true);
+
+        MeasurementReport copy = roundTrip(report);
+
+        assert copy.getDataCount() == 0;
+        assert copy.getNumericData() != null;
+        assert copy.getTraitData() != null;
+        assert copy.getCallTimeData() != null;
+    }
+
+    public void testSpecialValues() throws Exception {
+        double[] values = { 0.0, -0.0, 1.0, -1.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE, Double.MAX_VALUE, 1.0, 1.0, 42.42 };
+        MeasurementReport report = new MeasurementReport();
+        for (int i = 0; i < values.length; i++) {
+            report.addData(new MeasurementDataNumeric(1000L * i, Integer.MAX_VALUE - i, values[i]));
+        }
+        report.addData(new MeasurementDataNumeric(-5L, Integer.MIN_VALUE, null));
+        report.addData(new MeasurementDataNumeric(Long.MAX_VALUE, 0, 7.0));
+        report.addData(new MeasurementDataTrait(new MeasurementDataPK(Long.MIN_VALUE, -1), null));
+        report.setCompactEncoding(true);
+
+        MeasurementReport copy = roundTrip(report);
+
+        assertSameData(copy, report);
+    }
+
+    public void testCompactEncodingIsSmaller() throws Exception {
+        MeasurementReport report = createReport();
+        int defaultSize = serialize(report).length;
+        report.setCompactEncoding(true);
+        int compactSize = serialize(report).length;
+
+        assert compactSize * 3 < defaultSize : "compact=" + compactSize + ", default=" + defaultSize;
+    }
+
+    private MeasurementReport createReport() {
+        MeasurementReport report = new MeasurementReport();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 2000; i++) {
+            MeasurementDataNumeric numeric = new MeasurementDataNumeric(now + (i % 7), 10000 + i, 100000.0 + (i % 50));
+            numeric.setName("metric" + (i % 20));
+            report.addData(numeric);
+        }
+        for (int i = 0; i < 200; i++) {
+            MeasurementDataTrait trait = new MeasurementDataTrait(new MeasurementDataPK(now, 20000 + i),
+                (i % 10 == 0) ? "red" : "green");
+            trait.setName("trait" + (i % 5));
+            report.addData(trait);
+        }
+        report.addData(new CallTimeData(new MeasurementScheduleRequest(1, "calltime", 60000L, true,
+            DataType.CALLTIME)));
+        report.setCollectionTime(1234L);
+        return report;
+    }
+
+    private void assertSameData(MeasurementReport actual, MeasurementReport expected) {
+        assert actual.getCollectionTime() == expected.getCollectionTime();
+        assert actual.getCallTimeData().size() == expected.getCallTimeData().size();
+
+        List<MeasurementDataNumeric> actualNumeric = new ArrayList<MeasurementDataNumeric>(actual.getNumericData());
+        List<MeasurementDataNumeric> expectedNumeric = new ArrayList<MeasurementDataNumeric>(expected.getNumericData());
+        assert actualNumeric.equals(expectedNumeric) : "numeric data or its order differs";
+        Iterator<MeasurementDataNumeric> iterator = actualNumeric.iterator();
+        for (MeasurementDataNumeric datum : expectedNumeric) {
+            Double actualValue = iterator.next().getValue();
+            assert (datum.getValue() == null) ? (actualValue == null) : datum.getValue().equals(actualValue) : datum;
+        }
+
+        List<MeasurementDataTrait> actualTraits = new ArrayList<MeasurementDataTrait>(actual.getTraitData());
+        List<MeasurementDataTrait> expectedTraits = new ArrayList<MeasurementDataTrait>(expected.getTraitData());
+        assert actualTraits.equals(expectedTraits) : "trait data or its order differs";
+        Iterator<MeasurementDataTrait> traitIterator = actualTraits.iterator();
+        for (MeasurementDataTrait datum : expectedTraits) {
+            String actualValue = traitIterator.next().getValue();
+            assert (datum.getValue() == null) ? (actualValue == null) : datum.getValue().equals(actualValue) : datum;
+        }
+    }
+
+    private static MeasurementReport roundTrip(MeasurementReport report) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(report)));
+        try {
+            return (MeasurementReport) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] serialize(MeasurementReport report) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(report);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -52,6 +52,7 @@ public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
 
     private static final String REGEX;
     private static final Pattern PATTERN;
+    private static final boolean IS_DEFAULT_REGEX;
 
     //note that the DateFormat instances are INTENTIONALLY instance fields.
     //DateFormats are not thread safe and because we can have multiple log processors
@@ -71,6 +72,7 @@ public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
         // a backdoor prop to set the REGEX pattern.
         String regex = System.getProperty("rhq.agent.event.log4j.regex");
         REGEX = (null != regex) ? regex : "(.*?) [\\[\\(]??\\s*(TRACE|DEBUG|INFO|WARN|ERROR|FATAL)\\s*[\\]\\)]?? (.*)";
+        IS_DEFAULT_REGEX = (null == regex);
         PATTERN = Pattern.compile(REGEX);
 
         PRIORITY_TO_SEVERITY_MAP.put(Priority.TRACE, EventSeverity.DEBUG);
@@ -89,6 +91,23 @@ public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
         return PATTERN;
     }
 
+    /**
+     * The default pattern only matches lines that contain a priority, which is much cheaper to look for than to run
+     * the lazy date group of the regex on every line of a stack trace.
+     */
+    @Override
+    protected boolean isPrimaryLineCandidate(String line) {
+        if (!IS_DEFAULT_REGEX) {
+            return true;
+        }
+        for (Priority priority : Priority.VALUES) {
+            if (line.indexOf(priority.name()) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected LogEntry processPrimaryLine(Matcher matcher) throws ParseException {
         String dateString = matcher.group(1);
         Date timestamp = parseDateString(dateString);
@@ -129,6 +148,8 @@ public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
     }
 
     private enum Priority {
-        TRACE, DEBUG, INFO, WARN, ERROR, FATAL
+        TRACE, DEBUG, INFO, WARN, ERROR, FATAL;
+
+        private static final Priority[] VALUES = values();
     }
 }
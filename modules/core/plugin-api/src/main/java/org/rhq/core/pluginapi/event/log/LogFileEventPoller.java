@@ -21,9 +21,8 @@ package org.rhq.core.pluginapi.event.log;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.StringReader;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -39,7 +38,8 @@ import org.rhq.core.pluginapi.event.EventContext;
 import org.rhq.core.pluginapi.event.EventPoller;
 
 /**
- * An Event poller that polls a log file for new entries. 
+ * An Event poller that polls a log file for new entries. The new lines are read by a {@link LogFileTailer}, which
+ * only reads the bytes appended since the previous poll.
  *
  * @author Ian Springer
  */
@@ -49,6 +49,7 @@ public class LogFileEventPoller implements EventPoller {
     private String eventType;
     private File logFile;
     private FileInfo logFileInfo;
+    private LogFileTailer tailer;
     private LogEntryProcessor entryProcessor;
     private EventContext eventContext;
     private boolean initialized;
@@ -94,7 +95,8 @@ public class LogFileEventPoller implements EventPoller {
             return null;
         }
         try {
-            if (!this.logFileInfo.changed()) {
+            // a previous poll may have stopped before the end of the file, see LogFileTailer
+            if (!this.logFileInfo.changed() && !this.tailer.isBehind(this.logFileInfo.getSize())) {
                 return null;
             }
         } catch (SigarException e) {
@@ -114,6 +116,7 @@ public class LogFileEventPoller implements EventPoller {
         if (sigar != null) {
             try {
                 this.logFileInfo = new LogFileInfo(sigar.getFileInfo(logFile.getPath()));
+                this.tailer = new LogFileTailer(this.logFile, this.logFileInfo.getInode(), this.logFileInfo.getSize());
             } catch (SigarException e) {
                 throw new RuntimeException("Failed to obtain file info for log file [" + this.logFile + "].", e);
             }
@@ -125,61 +128,15 @@ public class LogFileEventPoller implements EventPoller {
     }
 
     private Set<Event> processNewLines(FileInfo fileInfo) {
-        Set<Event> events = null;
-        Reader reader = null;
         try {
-            reader = new FileReader(this.logFile);
-
-            long offset = getOffset(fileInfo);
-
-            if (offset > 0) {
-                reader.skip(offset);
+            String newLines = this.tailer.readNewLines(fileInfo.getInode(), fileInfo.getSize());
+            if (newLines == null) {
+                return null;
             }
-            BufferedReader bufferedReader = new BufferedReader(reader);
-            events = this.entryProcessor.processLines(bufferedReader);
+            return this.entryProcessor.processLines(new BufferedReader(new StringReader(newLines)));
         } catch (IOException e) {
             LOG.error("Failed to read log file being tailed: " + this.logFile, e);
-        } finally {
-            if (reader != null) {
-                //noinspection EmptyCatchBlock
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                }
-            }
-        }
-        return events;
-    }
-
-    private long getOffset(FileInfo fileInfo) {
-        FileInfo previousFileInfo = fileInfo.getPreviousInfo();
-
-        if (previousFileInfo == null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": first stat");
-            }
-            return fileInfo.getSize();
-        }
-
-        if (fileInfo.getInode() != previousFileInfo.getInode()) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": file inode changed");
-            }
-            return -1;
-        }
-
-        if (fileInfo.getSize() < previousFileInfo.getSize()) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": file truncated");
-            }
-            return -1;
-        }
-
-        if (LOG.isDebugEnabled()) {
-            long diff = fileInfo.getSize() - previousFileInfo.getSize();
-            LOG.debug(this.logFile + ": " + diff + " new bytes");
+            return null;
         }
-
-        return previousFileInfo.getSize();
     }
 }
@@ -0,0 +1,149 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pluginapi.event.log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the lines appended to a log file since the previous read. Only the new bytes are read, with positional reads
+ * on the file channel, and decoded. The tailer starts over from the beginning of the file when it has been rotated
+ * (its inode changed) or truncated.
+ * <p/>
+ * A read returns complete lines only, so that an entry being written is not split across two reads, and at most
+ * {@link #getMaxBytesPerRead()} bytes, so that a poll of a log file that grew a lot does not produce an unbounded
+ * number of events. The rest is returned by the following reads.
+ */
+class LogFileTailer {
+    private static final Log LOG = LogFactory.getLog(LogFileTailer.class);
+
+    static final String MAX_BYTES_PER_READ_PROP = "rhq.agent.event.log.max-bytes-per-poll";
+    static final int MAX_BYTES_PER_READ_DEFAULT = 4 * 1024 * 1024;
+
+    private final File logFile;
+    private final int maxBytesPerRead;
+    private final Charset charset = Charset.defaultCharset();
+
+    private long inode;
+    private long position;
+
+    /**
+     * @param logFile the file to tail
+     * @param inode the current inode of the file
+     * @param position the offset to start tailing at, usually the current size of the file
+     */
+    LogFileTailer(File logFile, long inode, long position) {
+        this(logFile, inode, position, Integer.getInteger(MAX_BYTES_PER_READ_PROP, MAX_BYTES_PER_READ_DEFAULT));
+    }
+
+    LogFileTailer(File logFile, long inode, long position, int maxBytesPerRead) {
+        this.logFile = logFile;
+        this.inode = inode;
+        this.position = position;
+        this.maxBytesPerRead = maxBytesPerRead;
+    }
+
+    int getMaxBytesPerRead() {
+        return maxBytesPerRead;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * @param size the current size of the file
+     * @return true if there are bytes left to read, i.e. the previous read was cut short by the read limit
+     */
+    boolean isBehind(long size) {
+        return size > position;
+    }
+
+    /**
+     * Reads the complete lines appended to the file since the previous read.
+     *
+     * @param currentInode the current inode of the file
+     * @param size the current size of the file
+     * @return the new lines, or <code>null</code> if there are none
+     * @throws IOException if reading the file fails
+     */
+    @Nullable
+    String readNewLines(long currentInode, long size) throws IOException {
+        if (currentInode != inode) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(logFile + ": file inode changed");
+            }
+            inode = currentInode;
+            position = 0;
+        } else if (size < position) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(logFile + ": file truncated");
+            }
+            position = 0;
+        }
+
+        if (size <= position) {
+            return null;
+        }
+
+        int length = (int) Math.min(size - position, maxBytesPerRead);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(logFile + ": " + (size - position) + " new bytes, reading " + length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        FileInputStream inputStream = new FileInputStream(logFile);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+        buffer.flip();
+
+        // leave the last line for the next read until it is complete, unless it fills the whole buffer
+        int end = buffer.limit();
+        while (end > 0 && buffer.get(end - 1) != '\n') {
+            --end;
+        }
+        if (end == 0) {
+            if (buffer.limit() < maxBytesPerRead) {
+                return null;
+            }
+            end = buffer.limit();
+        }
+        buffer.limit(end);
+        position += end;
+
+        return charset.decode(buffer).toString();
+    }
+}
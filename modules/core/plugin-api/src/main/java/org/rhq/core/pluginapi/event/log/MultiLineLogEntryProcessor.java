@@ -88,8 +88,8 @@ public abstract class MultiLineLogEntryProcessor implements LogEntryProcessor {
     }
 
     protected LogEntry processLine(String line, Set<Event> events, LogEntry currentEntry) {
-        Matcher matcher = getPattern().matcher(line);
-        if (matcher.matches()) {
+        Matcher matcher = isPrimaryLineCandidate(line) ? getPattern().matcher(line) : null;
+        if (matcher != null && matcher.matches()) {
             // A matching line means this is the beginning of a new entry, which tells us the current entry
             // (if there is one) has no more additional lines; we can therefore add an Event for that entry.
             addEventForCurrentEntry(events, currentEntry);
@@ -113,6 +113,18 @@ public abstract class MultiLineLogEntryProcessor implements LogEntryProcessor {
 
     protected abstract Pattern getPattern();
 
+    /**
+     * A cheap check that rules out the lines that cannot match the {@link #getPattern() pattern}, e.g. the lines of a
+     * stack trace, so that they are not run through the full regex. The default implementation lets every line
+     * through.
+     *
+     * @param line a line of the log file
+     * @return false if the line cannot be the primary line of an entry
+     */
+    protected boolean isPrimaryLineCandidate(String line) {
+        return true;
+    }
+
     private void addEventForCurrentEntry(Set<Event> events, LogEntry currentEntry) {
         if (currentEntry != null) {
             if (currentEntry.getSeverity().isAtLeastAsSevereAs(this.minimumSeverity)
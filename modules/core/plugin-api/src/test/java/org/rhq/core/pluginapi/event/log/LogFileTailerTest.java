@@ -0,0 +1,106 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pluginapi.event.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class LogFileTailerTest {
+    private static final long INODE = 42;
+
+    private File logFile;
+
+    @BeforeMethod
+    public void createLogFile() throws IOException {
+        logFile = File.createTempFile("LogFileTailerTest", ".log");
+    }
+
+    @AfterMethod
+    public void deleteLogFile() {
+        logFile.delete();
+    }
+
+    public void testReadsAppendedLinesOnly() throws Exception {
+        append("old line\n", false);
+        LogFileTailer tailer = new LogFileTailer(logFile, INODE, logFile.length());
+
+        assert tailer.readNewLines(INODE, logFile.length()) == null;
+
+        append("line 1\nline 2\n", true);
+        assert "line 1\nline 2\n".equals(tailer.readNewLines(INODE, logFile.length()));
+        assert tailer.readNewLines(INODE, logFile.length()) == null;
+    }
+
+    public void testKeepsIncompleteLineForNextRead() throws Exception {
+        LogFileTailer tailer = new LogFileTailer(logFile, INODE, 0);
+
+        append("line 1\nline", true);
+        assert "line 1\n".equals(tailer.readNewLines(INODE, logFile.length()));
+        assert tailer.isBehind(logFile.length());
+        assert tailer.readNewLines(INODE, logFile.length()) == null;
+
+        append(" 2\n", true);
+        assert "line 2\n".equals(tailer.readNewLines(INODE, logFile.length()));
+        assert !tailer.isBehind(logFile.length());
+    }
+
+    public void testStartsOverWhenRotated() throws Exception {
+        append("line 1\nline 2\n", false);
+        LogFileTailer tailer = new LogFileTailer(logFile, INODE, logFile.length());
+
+        append("new line 1\n", false);
+        assert "new line 1\n".equals(tailer.readNewLines(INODE + 1, logFile.length()));
+    }
+
+    public void testStartsOverWhenTruncated() throws Exception {
+        append("line 1\nline 2\n", false);
+        LogFileTailer tailer = new LogFileTailer(logFile, INODE, logFile.length());
+
+        append("new\n", false);
+        assert "new\n".equals(tailer.readNewLines(INODE, logFile.length()));
+    }
+
+    public void testBoundsBytesPerRead() throws Exception {
+        LogFileTailer tailer = new LogFileTailer(logFile, INODE, 0, 16);
+
+        append("line 1\nline 2\nline 3\n", true);
+        assert "line 1\nline 2\n".equals(tailer.readNewLines(INODE, logFile.length()));
+        assert tailer.isBehind(logFile.length());
+        assert "line 3\n".equals(tailer.readNewLines(INODE, logFile.length()));
+
+        // a line longer than the limit is returned in pieces rather than blocking the tailer
+        append("a line longer than sixteen bytes\n", true);
+        assert "a line longer th".equals(tailer.readNewLines(INODE, logFile.length()));
+    }
+
+    private void append(String lines, boolean append) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(logFile, append);
+        try {
+            outputStream.write(lines.getBytes());
+        } finally {
+            outputStream.close();
+        }
+    }
+}
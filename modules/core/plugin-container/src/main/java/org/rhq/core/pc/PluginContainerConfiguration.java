@@ -89,6 +89,8 @@ public class PluginContainerConfiguration {
     public static final long AVAILABILITY_SCAN_PERIOD_DEFAULT = 30L;
     public static final String AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP = "availability-scan-threadpool-size";
     public static final int AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT = 100;
+    private static final String AVAILABILITY_SCAN_PARALLELISM_PROP = PROP_PREFIX + "availability-scan-parallelism";
+    public static final int AVAILABILITY_SCAN_PARALLELISM_DEFAULT = 4;
 
     // Measurement ----------
 
@@ -98,6 +100,12 @@ public class PluginContainerConfiguration {
     private static final String MEASUREMENT_COLLECTION_THREADCOUNT_PROP = PROP_PREFIX
         + "measurement-collection-threadpoolsize";
     public static final int MEASUREMENT_COLLECTION_THREADCOUNT_DEFAULT = 5;
+    private static final String MEASUREMENT_COLLECTION_DEADLINE_PROP = PROP_PREFIX
+        + "measurement-collection-deadline";
+    public static final long MEASUREMENT_COLLECTION_DEADLINE_DEFAULT = 30L; // in seconds
+    private static final String MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_PROP = PROP_PREFIX
+        + "measurement-collection-plugin-concurrency";
+    public static final int MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_DEFAULT = 0; // derived from the threadpool size
 
     // Drift ----------
 
@@ -105,6 +113,8 @@ public class PluginContainerConfiguration {
     public static final long DRIFT_DETECTION_INITIAL_DELAY_DEFAULT = 30L; // in seconds
     private static final String DRIFT_DETECTION_PERIOD_PROP = PROP_PREFIX + "drift-detection-period";
     public static final long DRIFT_DETECTION_PERIOD_DEFAULT = 60L; // in seconds
+    private static final String DRIFT_DETECTION_THREADCOUNT_PROP = PROP_PREFIX + "drift-detection-threadpoolsize";
+    public static final int DRIFT_DETECTION_THREADCOUNT_DEFAULT = 4;
 
     // Content ----------
 
@@ -502,6 +512,26 @@ public class PluginContainerConfiguration {
         configuration.put(AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * Returns the number of threads that scan the subtrees of the platform in parallel during an availability scan.
+     * A value of 1 or less scans the whole inventory on the availability scan thread.
+     *
+     * @return number of resource subtrees whose availability can be scanned concurrently
+     */
+    public int getAvailabilityScanParallelism() {
+        Integer parallelism = (Integer) configuration.get(AVAILABILITY_SCAN_PARALLELISM_PROP);
+        return (parallelism == null) ? AVAILABILITY_SCAN_PARALLELISM_DEFAULT : parallelism.intValue();
+    }
+
+    /**
+     * Sets the number of threads that scan the subtrees of the platform in parallel during an availability scan.
+     *
+     * @param parallelism number of resource subtrees whose availability can be scanned concurrently
+     */
+    public void setAvailabilityScanParallelism(int parallelism) {
+        configuration.put(AVAILABILITY_SCAN_PARALLELISM_PROP, Integer.valueOf(parallelism));
+    }
+
     /**
      * Returns the length of time, in seconds, before measurements begin getting collected.
      *
@@ -668,6 +698,47 @@ public class PluginContainerConfiguration {
         configuration.put(MEASUREMENT_COLLECTION_THREADCOUNT_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * Returns the length of time, in seconds, a single resource's measurement collection may take before it is
+     * abandoned. The resource is not collected again until the abandoned call returns.
+     *
+     * @return collection deadline in seconds
+     */
+    public long getMeasurementCollectionDeadline() {
+        Long deadline = (Long) configuration.get(MEASUREMENT_COLLECTION_DEADLINE_PROP);
+        return (deadline == null) ? MEASUREMENT_COLLECTION_DEADLINE_DEFAULT : deadline.longValue();
+    }
+
+    /**
+     * Sets the length of time, in seconds, a single resource's measurement collection may take.
+     *
+     * @param deadline
+     */
+    public void setMeasurementCollectionDeadline(long deadline) {
+        configuration.put(MEASUREMENT_COLLECTION_DEADLINE_PROP, Long.valueOf(deadline));
+    }
+
+    /**
+     * Returns the maximum number of collections for resources of a single plugin that may run at the same time, so
+     * that one plugin with hung resources cannot starve the others. A value of 0 or less means a bit more than half of
+     * the {@link #getMeasurementCollectionThreadPoolSize() collection threads}.
+     *
+     * @return the number of concurrent collections per plugin
+     */
+    public int getMeasurementCollectionPluginConcurrency() {
+        Integer concurrency = (Integer) configuration.get(MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_PROP);
+        return (concurrency == null) ? MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_DEFAULT : concurrency.intValue();
+    }
+
+    /**
+     * Sets the maximum number of collections for resources of a single plugin that may run at the same time.
+     *
+     * @param concurrency
+     */
+    public void setMeasurementCollectionPluginConcurrency(int concurrency) {
+        configuration.put(MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_PROP, Integer.valueOf(concurrency));
+    }
+
     /**
      * Returns the length of time, in seconds, before drift detection first begins.
      *
@@ -709,6 +780,27 @@ public class PluginContainerConfiguration {
         configuration.put(DRIFT_DETECTION_PERIOD_PROP, period);
     }
 
+    /**
+     * Returns the number of threads that walk the directories and compute the file hashes of a drift detection scan.
+     * With a single thread, the scan runs entirely on the drift detection thread. If this value was never set via
+     * {@link #setDriftDetectionThreadPoolSize(int)}, the default will be {@link #DRIFT_DETECTION_THREADCOUNT_DEFAULT}.
+     *
+     * @return the number of drift detection scan threads
+     */
+    public int getDriftDetectionThreadPoolSize() {
+        Integer size = (Integer) configuration.get(DRIFT_DETECTION_THREADCOUNT_PROP);
+        return (size == null) ? DRIFT_DETECTION_THREADCOUNT_DEFAULT : size.intValue();
+    }
+
+    /**
+     * Sets the number of threads that walk the directories and compute the file hashes of a drift detection scan.
+     *
+     * @param size the number of drift detection scan threads
+     */
+    public void setDriftDetectionThreadPoolSize(int size) {
+        configuration.put(DRIFT_DETECTION_THREADCOUNT_PROP, Integer.valueOf(size));
+    }
+
     /**
      * Returns the length of time, in seconds, before auto-discovery of content first begins.
      *
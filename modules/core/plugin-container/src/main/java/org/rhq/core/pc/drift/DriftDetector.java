@@ -31,12 +31,26 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,17 +62,29 @@ import org.rhq.common.drift.Headers;
 import org.rhq.core.domain.drift.DriftChangeSetCategory;
 import org.rhq.core.domain.drift.DriftDefinition;
 import org.rhq.core.domain.drift.Filter;
+import org.rhq.core.pc.util.LoggingThreadFactory;
 import org.rhq.core.util.MessageDigestGenerator;
 import org.rhq.core.util.file.FileVisitor;
 
 /**
  * Mechanism to detect and report Drift for active Drift Definitions.
+ * <p/>
+ * When created with more than one scan thread, the directories of a drift definition are listed and the files are
+ * hashed on a pool of that many threads. The hashes are consumed in the order of the snapshot being compared, and the
+ * files of a new coverage change set are sorted by path, so the change sets do not depend on the number of threads.
  *
  * @author John Sanda
  */
 public class DriftDetector implements Runnable {
     private static final Log log = LogFactory.getLog(DriftDetector.class);
 
+    private static final Comparator<File> PATH_ORDER = new Comparator<File>() {
+        @Override
+        public int compare(File f1, File f2) {
+            return f1.getPath().compareTo(f2.getPath());
+        }
+    };
+
     static final String FILE_CHANGESET_FULL = "changeset.txt";
     static final String FILE_CHANGESET_DELTA = "drift-changeset.txt";
     static final String FILE_SNAPSHOT_PINNED = "snapshot.pinned";
@@ -67,14 +93,58 @@ public class DriftDetector implements Runnable {
 
     private final ChangeSetManager changeSetMgr;
 
-    private final MessageDigestGenerator digestGenerator = new MessageDigestGenerator(MessageDigestGenerator.SHA_256);
+    // a MessageDigest is not thread safe, so every scan thread gets its own
+    private static final ThreadLocal<MessageDigestGenerator> digestGenerator =
+        new ThreadLocal<MessageDigestGenerator>() {
+            @Override
+            protected MessageDigestGenerator initialValue() {
+                return new MessageDigestGenerator(MessageDigestGenerator.SHA_256);
+            }
+        };
 
     private final DriftClient driftClient;
 
+    private final ExecutorService scanThreadPool;
+
     public DriftDetector(ScheduleQueue scheduleQueue, ChangeSetManager changeSetMgr, DriftClient driftClient) {
+        this(scheduleQueue, changeSetMgr, driftClient, 1);
+    }
+
+    /**
+     * @param scanThreads the number of threads that list directories and hash files. With a single thread, the scan
+     * runs entirely on the thread running the detector.
+     */
+    public DriftDetector(ScheduleQueue scheduleQueue, ChangeSetManager changeSetMgr, DriftClient driftClient,
+        int scanThreads) {
         this.scheduleQueue = scheduleQueue;
         this.changeSetMgr = changeSetMgr;
         this.driftClient = driftClient;
+        if (scanThreads > 1) {
+            scanThreadPool = Executors.newFixedThreadPool(scanThreads, new LoggingThreadFactory("DriftDetection.scan",
+                true));
+        } else {
+            scanThreadPool = null;
+        }
+    }
+
+    public void shutdown() {
+        if (scanThreadPool != null) {
+            // cancel the tasks that will not run anymore, so that a detection waiting for them does not hang
+            for (Runnable task : scanThreadPool.shutdownNow()) {
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                } else if (task instanceof ScanTask) {
+                    ((ScanTask) task).cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * A task of the scan thread pool that is not a {@link Future}, and must be told when it will not run.
+     */
+    private interface ScanTask extends Runnable {
+        void cancel();
     }
 
     @Override
@@ -195,12 +265,14 @@ public class DriftDetector implements Runnable {
             List<Filter> excludes = driftDef.getExcludes();
 
             for (File dir : getScanDirectories(basedir, includes)) {
-                forEachFile(dir, new FilterFileVisitor(basedir, includes, excludes, new FileVisitor() {
+                walk(dir, new FilterFileVisitor(basedir, includes, excludes, new FileVisitor() {
                     @Override
                     public void visit(File file) {
                         if (file.isFile()) {
                             if (file.canRead()) {
-                                newFiles.add(file);
+                                synchronized (newFiles) {
+                                    newFiles.add(file);
+                                }
                             } else if (log.isDebugEnabled()) {
                                 log.debug("Skipping " + file.getPath() + " as new file since it is not readable.");
                             }
@@ -268,13 +340,18 @@ public class DriftDetector implements Runnable {
             }
 
             // add new files to the snapshotEntries and deltaEntries
-            for (File file : newFiles) {
+            List<File> addedFiles = new ArrayList<File>(newFiles);
+            List<Future<FileEntry>> addedFileEntries = new ArrayList<Future<FileEntry>>(addedFiles.size());
+            for (File file : addedFiles) {
+                if (log.isInfoEnabled()) {
+                    log.info("Detected added file for " + schedule + " --> " + file.getAbsolutePath());
+                }
+                addedFileEntries.add(getAddedFileEntryAsync(basedir, file));
+            }
+            for (int i = 0; i < addedFiles.size(); ++i) {
+                File file = addedFiles.get(i);
                 try {
-                    if (log.isInfoEnabled()) {
-                        log.info("Detected added file for " + schedule + " --> " + file.getAbsolutePath());
-                    }
-
-                    FileEntry addedFileEntry = getAddedFileEntry(basedir, file);
+                    FileEntry addedFileEntry = getResult(addedFileEntries.get(i));
                     if (null != addedFileEntry) {
                         addedEntries.add(addedFileEntry);
                     }
@@ -380,6 +457,15 @@ public class DriftDetector implements Runnable {
         return result;
     }
 
+    private Future<FileEntry> getAddedFileEntryAsync(final File basedir, final File file) {
+        return submit(new Callable<FileEntry>() {
+            @Override
+            public FileEntry call() throws Exception {
+                return getAddedFileEntry(basedir, file);
+            }
+        });
+    }
+
     static private void safeClear(Collection<?>... collections) {
         if (null == collections) {
             return;
@@ -424,11 +510,34 @@ public class DriftDetector implements Runnable {
 
         boolean result = false;
 
+        // Check the sizes and modification times first and compute the SHAs that are needed concurrently. The
+        // entries are then processed in the order of the snapshot.
+        List<SnapshotEntryCheck> checks = new ArrayList<SnapshotEntryCheck>();
         for (FileEntry entry : snapshotReader) {
             File file = new File(basedir, entry.getFile());
             newFiles.remove(file);
 
-            if (!(file.exists() && file.canRead())) {
+            boolean readable = file.exists() && file.canRead();
+            Future<String> currentSHA = null;
+            if (readable) {
+                // perform a SHA comparison if we are unable to compare size and lastModified or if the
+                // size or lastModified test fails.  We may not have size or lastModified values for the
+                // entry when the current snapshot was provided by the server, either due to a synch or
+                // pinning scenario.  The server does not store that information and will provide -1 for defaults.
+                if (entry.getLastModified() == -1 || entry.getSize() == -1
+                    || entry.getLastModified() != file.lastModified() || entry.getSize() != file.length()) {
+
+                    currentSHA = sha256Async(file);
+                }
+            }
+            checks.add(new SnapshotEntryCheck(entry, file, readable, currentSHA));
+        }
+
+        for (SnapshotEntryCheck check : checks) {
+            FileEntry entry = check.entry;
+            File file = check.file;
+
+            if (!check.readable) {
                 // The file has been deleted or is no longer readable, since the last scan
                 if (log.isDebugEnabled()) {
                     log.debug("Detected " + (file.exists() ? "unreadable" : "deleted") + " file for " + schedule
@@ -443,14 +552,8 @@ public class DriftDetector implements Runnable {
                 String currentSHA = null;
                 boolean isChanged = false;
 
-                // perform a SHA comparison if we are unable to compare size and lastModified or if the
-                // size or lastModified test fails.  We may not have size or lastModified values for the
-                // entry when the current snapshot was provided by the server, either due to a synch or
-                // pinning scenario.  The server does not store that information and will provide -1 for defaults.
-                if (entry.getLastModified() == -1 || entry.getSize() == -1
-                    || entry.getLastModified() != file.lastModified() || entry.getSize() != file.length()) {
-
-                    currentSHA = sha256(file);
+                if (check.currentSHA != null) {
+                    currentSHA = getResult(check.currentSHA);
                     isChanged = !entry.getNewSHA().equals(currentSHA);
                 }
 
@@ -673,34 +776,160 @@ public class DriftDetector implements Runnable {
         List<Filter> excludes = driftDef.getExcludes();
 
         for (File dir : getScanDirectories(basedir, includes)) {
-            forEachFile(dir, new FilterFileVisitor(basedir, includes, excludes, new FileVisitor() {
+            final List<File> files = new ArrayList<File>();
+            walk(dir, new FilterFileVisitor(basedir, includes, excludes, new FileVisitor() {
                 @Override
                 public void visit(File file) {
-                    try {
-                        if (!file.canRead()) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("Skipping " + file.getPath() + " since we do not have read access.");
-                            }
-                            return;
-                        }
-
+                    if (!file.canRead()) {
                         if (log.isDebugEnabled()) {
-                            log.debug("Adding " + file.getPath() + " to coverage change set for " + schedule);
+                            log.debug("Skipping " + file.getPath() + " since we do not have read access.");
                         }
+                        return;
+                    }
+                    synchronized (files) {
+                        files.add(file);
+                    }
+                }
+            }));
 
-                        FileEntry addedFileEntry = getAddedFileEntry(basedir, file);
-                        if (null != addedFileEntry) {
-                            writer.write(addedFileEntry);
-                        }
+            // the order in which a concurrent walk finds the files varies, sort them to keep the change set stable
+            Collections.sort(files, PATH_ORDER);
+            List<Future<FileEntry>> addedFileEntries = new ArrayList<Future<FileEntry>>(files.size());
+            for (File file : files) {
+                addedFileEntries.add(getAddedFileEntryAsync(basedir, file));
+            }
 
-                    } catch (Throwable t) {
-                        // report the error but keep going, perhaps it is specific to a single file, try to
-                        // finish the detection.
-                        log.error("An unexpected error occurred while generating a coverage change set for file "
-                            + file.getPath() + " in schedule " + schedule + ". Skipping file.", t);
+            for (int i = 0; i < files.size(); ++i) {
+                File file = files.get(i);
+                try {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Adding " + file.getPath() + " to coverage change set for " + schedule);
                     }
+
+                    FileEntry addedFileEntry = getResult(addedFileEntries.get(i));
+                    if (null != addedFileEntry) {
+                        writer.write(addedFileEntry);
+                    }
+
+                } catch (Throwable t) {
+                    // report the error but keep going, perhaps it is specific to a single file, try to
+                    // finish the detection.
+                    log.error("An unexpected error occurred while generating a coverage change set for file "
+                        + file.getPath() + " in schedule " + schedule + ". Skipping file.", t);
                 }
-            }));
+            }
+        }
+    }
+
+    /**
+     * Visits the files under the directory like {@link org.rhq.core.util.file.FileUtil#forEachFile}. With a scan
+     * thread pool, the directories are listed concurrently and the visitor is called from the pool threads, in no
+     * particular order.
+     */
+    private void walk(File directory, final FileVisitor visitor) {
+        if (scanThreadPool == null) {
+            forEachFile(directory, visitor);
+            return;
+        }
+
+        final AtomicInteger pendingDirectories = new AtomicInteger();
+        final CountDownLatch walkDone = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        class ListDirectory implements ScanTask {
+            private final File dir;
+
+            ListDirectory(File dir) {
+                this.dir = dir;
+            }
+
+            void submit() {
+                pendingDirectories.incrementAndGet();
+                try {
+                    scanThreadPool.execute(this);
+                } catch (RejectedExecutionException e) {
+                    failure.compareAndSet(null, e);
+                    done();
+                }
+            }
+
+            @Override
+            public void run() {
+                try {
+                    File[] files = dir.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            if (failure.get() != null) {
+                                break;
+                            }
+                            if (file.isDirectory()) {
+                                new ListDirectory(file).submit();
+                            } else {
+                                visitor.visit(file);
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    done();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                failure.compareAndSet(null, new CancellationException("The scan thread pool was shut down"));
+                done();
+            }
+
+            private void done() {
+                if (pendingDirectories.decrementAndGet() == 0) {
+                    walkDone.countDown();
+                }
+            }
+        }
+
+        new ListDirectory(directory).submit();
+        try {
+            walkDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning " + directory, e);
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Failed to scan " + directory, failure.get());
+        }
+    }
+
+    /**
+     * Runs the task on the scan thread pool or, without one, right away on the calling thread.
+     */
+    private <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        if (scanThreadPool == null) {
+            future.run();
+        } else {
+            scanThreadPool.execute(future);
+        }
+        return future;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a drift detection scan task", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
         }
     }
 
@@ -718,7 +947,19 @@ public class DriftDetector implements Runnable {
     }
 
     private String sha256(File file) throws IOException {
-        return digestGenerator.calcDigestString(file);
+        MessageDigestGenerator generator = digestGenerator.get();
+        // a previous read may have failed half way
+        generator.getMessageDigest().reset();
+        return generator.calcDigestString(file);
+    }
+
+    private Future<String> sha256Async(final File file) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return sha256(file);
+            }
+        });
     }
 
     private String basedir(int resourceId, DriftDefinition driftDef) {
@@ -783,4 +1024,18 @@ public class DriftDetector implements Runnable {
         }
     }
 
+    private static class SnapshotEntryCheck {
+        final FileEntry entry;
+        final File file;
+        final boolean readable;
+        // null if the SHA does not have to be computed
+        final Future<String> currentSHA;
+
+        SnapshotEntryCheck(FileEntry entry, File file, boolean readable, Future<String> currentSHA) {
+            this.entry = entry;
+            this.file = file;
+            this.readable = readable;
+            this.currentSHA = currentSHA;
+        }
+    }
 }
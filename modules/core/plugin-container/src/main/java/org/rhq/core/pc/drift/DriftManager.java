@@ -73,6 +73,8 @@ public class DriftManager extends AgentService implements DriftAgentService, Dri
 
     private final ScheduledThreadPoolExecutor driftThreadPool;
 
+    private final DriftDetector driftDetector;
+
     private final ScheduleQueue schedulesQueue = new ScheduleQueueImpl();
 
     /**
@@ -97,13 +99,15 @@ public class DriftManager extends AgentService implements DriftAgentService, Dri
                 log.warn("Could not create change sets directory " + changeSetsDir);
                 initialized = false;
                 driftThreadPool = null;
+                driftDetector = null;
                 changeSetMgr = null;
                 return;
             }
         }
         changeSetMgr = new ChangeSetManagerImpl(changeSetsDir);
 
-        DriftDetector driftDetector = new DriftDetector(schedulesQueue, changeSetMgr, this);
+        driftDetector = new DriftDetector(schedulesQueue, changeSetMgr, this,
+            pluginContainerConfiguration.getDriftDetectionThreadPoolSize());
 
         long startTime = System.currentTimeMillis();
         initSchedules(inventoryManager.getPlatform(), inventoryManager);
@@ -289,6 +293,10 @@ public class DriftManager extends AgentService implements DriftAgentService, Dri
             // TODO (ips, 04/30/12): Is it safe to pass true here to interrupt executing threads?
             PluginContainer.shutdownExecutorService(driftThreadPool, false);
         }
+        if (driftDetector != null) {
+            // after the drift thread pool, so that a running detection can finish its scan
+            driftDetector.shutdown();
+        }
 
         schedulesQueue.clear();
         changeSetMgr = null;
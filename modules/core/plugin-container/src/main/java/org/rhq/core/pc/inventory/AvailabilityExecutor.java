@@ -26,11 +26,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -53,6 +59,12 @@ import org.rhq.core.util.stream.StreamUtil;
 /**
  * Runs a periodic scan for resource availability.
  *
+ * <p>The scan root is checked first, then the subtrees of its children (i.e. the top level servers and services of
+ * the platform) are checked in parallel on the {@link InventoryManager#getAvailabilitySubtreeExecutor() subtree pool}
+ * if there is one. Every subtree is walked from the parent to the children by a single thread, so a child still gets
+ * the availability of its parent when it defers to it. Each subtree fills its own report and {@link SubtreeScan}, which
+ * are merged into the scan report once all the subtrees are done.</p>
+ *
  * @author Jay Shaughnessy
  * @author John Mazzitelli
  * @author Ian Springer
@@ -144,6 +156,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
     protected void startScan(Resource scanRoot, AvailabilityReport availabilityReport, boolean changesOnly) {
         long start = System.currentTimeMillis();
         Scan scan = new Scan(start, !changesOnly);
+        scan.scanRootId = scanRoot.getId();
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Scan Starting: " + new Date(start));
@@ -396,10 +409,90 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
             availabilityReport.addAvailability(availability);
         }
 
-        for (Resource child : this.inventoryManager.getContainerChildren(resource, resourceContainer)) {
-            checkInventory(child, availabilityReport, current, isForced, scan, traceEnabled);
+        Set<Resource> children = this.inventoryManager.getContainerChildren(resource, resourceContainer);
+        ExecutorService subtreeExecutor = this.inventoryManager.getAvailabilitySubtreeExecutor();
+        if (subtreeExecutor != null && children.size() > 1 && scan.isPartitionedAt(resource)) {
+            checkSubtrees(subtreeExecutor, children, availabilityReport, current, isForced, scan, traceEnabled);
+        } else {
+            for (Resource child : children) {
+                checkInventory(child, availabilityReport, current, isForced, scan, traceEnabled);
+            }
+        }
+    }
+
+    /**
+     * Checks the subtrees rooted at the given children of the scan root in parallel and merges their results into
+     * the scan report and the scan. The merge happens on the calling thread, in the order of the children.
+     *
+     * @throws InterruptedException if this checking thread was interrupted
+     */
+    private void checkSubtrees(ExecutorService subtreeExecutor, Set<Resource> children,
+        AvailabilityReport availabilityReport, AvailabilityType parentAvailType, boolean isForced, Scan scan,
+        boolean traceEnabled) throws InterruptedException {
+
+        List<Future<SubtreeScan>> subtreeScans = new ArrayList<Future<SubtreeScan>>(children.size());
+        try {
+            for (Resource child : children) {
+                SubtreeCheck subtreeCheck = new SubtreeCheck(child, new AvailabilityReport(
+                    availabilityReport.isChangesOnlyReport(), availabilityReport.getAgentName()), parentAvailType,
+                    isForced, new SubtreeScan(scan, child), traceEnabled);
+                subtreeScans.add(subtreeExecutor.submit(subtreeCheck));
+            }
+
+            for (Future<SubtreeScan> future : subtreeScans) {
+                SubtreeScan subtreeScan = future.get();
+                for (AvailabilityReport.Datum datum : subtreeScan.report.getResourceAvailability()) {
+                    availabilityReport.addAvailability(datum);
+                }
+                subtreeScan.report = null;
+                scan.addSubtreeScan(subtreeScan);
+            }
+        } catch (RejectedExecutionException e) {
+            // the plugin container is shutting down
+            throw new InterruptedException("Availability subtree pool is shut down");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            // no-op for the completed subtrees, stops the others if we bailed out
+            for (Future<SubtreeScan> future : subtreeScans) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private class SubtreeCheck implements Callable<SubtreeScan> {
+        private final Resource subtreeRoot;
+        private final AvailabilityReport availabilityReport;
+        private final AvailabilityType parentAvailType;
+        private final boolean isForced;
+        private final SubtreeScan scan;
+        private final boolean traceEnabled;
+
+        SubtreeCheck(Resource subtreeRoot, AvailabilityReport availabilityReport, AvailabilityType parentAvailType,
+            boolean isForced, SubtreeScan scan, boolean traceEnabled) {
+            this.subtreeRoot = subtreeRoot;
+            this.availabilityReport = availabilityReport;
+            this.parentAvailType = parentAvailType;
+            this.isForced = isForced;
+            this.scan = scan;
+            this.traceEnabled = traceEnabled;
         }
 
+        public SubtreeScan call() throws InterruptedException {
+            long start = System.currentTimeMillis();
+            checkInventory(subtreeRoot, availabilityReport, parentAvailType, isForced, scan, traceEnabled);
+            scan.setSubtreeRuntime(System.currentTimeMillis() - start);
+            scan.report = availabilityReport;
+            return scan;
+        }
     }
 
     /**
@@ -493,11 +586,30 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         int numAvailabilityChanges = 0;
         int numDeferToParent = 0;
 
+        // the id of the resource whose children are checked in parallel, 0 for none
+        int scanRootId = 0;
+        private final List<SubtreeScan> subtreeScans = new ArrayList<SubtreeScan>();
+
         public Scan(long startTime, boolean isFull) {
             this.startTime = startTime;
             this.isFull = isFull;
         }
 
+        boolean isPartitionedAt(Resource resource) {
+            return scanRootId != 0 && resource.getId() == scanRootId;
+        }
+
+        void addSubtreeScan(SubtreeScan subtreeScan) {
+            numResources += subtreeScan.numResources;
+            numGetAvailabilityCalls += subtreeScan.numGetAvailabilityCalls;
+            numScheduledRandomly += subtreeScan.numScheduledRandomly;
+            numPushedByInterval += subtreeScan.numPushedByInterval;
+            numAvailabilityChanges += subtreeScan.numAvailabilityChanges;
+            numDeferToParent += subtreeScan.numDeferToParent;
+            isForced |= subtreeScan.isForced();
+            subtreeScans.add(subtreeScan);
+        }
+
         public long getStartTime() {
             return startTime;
         }
@@ -551,13 +663,78 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
             return numDeferToParent;
         }
 
+        /**
+         * @return the scans of the subtrees that were checked in parallel, in the order of the children of the scan
+         *         root. Empty if the scan was not parallel.
+         */
+        public List<SubtreeScan> getSubtreeScans() {
+            return Collections.unmodifiableList(subtreeScans);
+        }
+
         @Override
         public String toString() {
             return "Scan [startTime=" + startTime + ", endTime=" + endTime + ", runtime=" + runtime + ", isFull="
                 + isFull + ", isForced=" + isForced + ", numResources=" + numResources + ", numGetAvailabilityCalls="
                 + numGetAvailabilityCalls + ", numScheduledRandomly=" + numScheduledRandomly + ", numPushedByInterval="
                 + numPushedByInterval + ", numAvailabilityChanges=" + numAvailabilityChanges + ", numDeferToParent="
-                + numDeferToParent + "]";
+                + numDeferToParent + (subtreeScans.isEmpty() ? "" : ", subtreeScans=" + subtreeScans) + "]";
+        }
+    }
+
+    /**
+     * The part of a {@link Scan} that checked the subtree of one child of the scan root.
+     */
+    public static class SubtreeScan extends Scan {
+        private final int resourceId;
+        private final String resourceName;
+        private final String resourceTypeName;
+        private final String plugin;
+        private long subtreeRuntime;
+
+        // the report of the subtree, until it is merged into the scan report
+        AvailabilityReport report;
+
+        SubtreeScan(Scan scan, Resource subtreeRoot) {
+            super(scan.getStartTime(), scan.isFull());
+            this.resourceId = subtreeRoot.getId();
+            this.resourceName = subtreeRoot.getName();
+            this.resourceTypeName = subtreeRoot.getResourceType() == null ? null : subtreeRoot.getResourceType()
+                .getName();
+            this.plugin = subtreeRoot.getResourceType() == null ? null : subtreeRoot.getResourceType().getPlugin();
+        }
+
+        public int getResourceId() {
+            return resourceId;
+        }
+
+        public String getResourceName() {
+            return resourceName;
+        }
+
+        public String getResourceTypeName() {
+            return resourceTypeName;
+        }
+
+        public String getPlugin() {
+            return plugin;
+        }
+
+        /**
+         * @return the time, in ms, it took to check the subtree, not counting the time it waited for a thread
+         */
+        public long getSubtreeRuntime() {
+            return subtreeRuntime;
+        }
+
+        void setSubtreeRuntime(long subtreeRuntime) {
+            this.subtreeRuntime = subtreeRuntime;
+        }
+
+        @Override
+        public String toString() {
+            return "SubtreeScan [resourceId=" + resourceId + ", resourceName=" + resourceName + ", resourceTypeName="
+                + resourceTypeName + ", plugin=" + plugin + ", subtreeRuntime=" + subtreeRuntime + ", numResources="
+                + getNumResources() + ", numGetAvailabilityCalls=" + getNumGetAvailabilityCalls() + "]";
         }
     }
 }
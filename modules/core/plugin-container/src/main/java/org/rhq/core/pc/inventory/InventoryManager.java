@@ -41,10 +41,14 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -160,6 +164,7 @@ public class InventoryManager extends AgentService implements ContainerService,
     private static final String INVENTORY_THREAD_POOL_NAME = "InventoryManager.discovery";
     private static final String AVAIL_THREAD_POOL_NAME = "InventoryManager.availability";
     private static final int AVAIL_THREAD_POOL_CORE_POOL_SIZE = 1;
+    private static final String AVAIL_SUBTREE_THREAD_POOL_NAME = "InventoryManager.availability.subtree";
 
     private static final int COMPONENT_START_TIMEOUT = 60 * 1000; // 60 seconds
     private static final int COMPONENT_STOP_TIMEOUT = 5 * 1000; // 5 seconds
@@ -181,6 +186,7 @@ public class InventoryManager extends AgentService implements ContainerService,
 
     private ScheduledThreadPoolExecutor inventoryThreadPoolExecutor;
     private ScheduledThreadPoolExecutor availabilityThreadPoolExecutor;
+    private ThreadPoolExecutor availabilitySubtreeThreadPoolExecutor;
 
     // The executors are Callable
     private final AutoDiscoveryExecutor serverScanExecutor;
@@ -224,6 +230,15 @@ public class InventoryManager extends AgentService implements ContainerService,
     private final TIntObjectMap<ResourceContainer> resourceContainerByResourceId = new TIntObjectHashMap<ResourceContainer>(
         500);
 
+    /**
+     * CanonicalResourceKey to ResourceContainer map. The platform is not in there as it has no parent. The canonical
+     * key of a resource includes the keys of its ancestors, so the whole subtree is re-indexed when a resource key
+     * changes. Lookups check that the resource still has the key they ask for, see
+     * {@link #getResourceContainer(CanonicalResourceKey)}.
+     */
+    private final ConcurrentMap<CanonicalResourceKey, ResourceContainer> resourceContainersByCanonicalKey = new ConcurrentHashMap<CanonicalResourceKey, ResourceContainer>(
+        500);
+
     /**
      * Collection of event listeners to inform of changes to the inventory.
      */
@@ -301,6 +316,16 @@ public class InventoryManager extends AgentService implements ContainerService,
             availabilityThreadPoolExecutor = new ScheduledThreadPoolExecutor(AVAIL_THREAD_POOL_CORE_POOL_SIZE,
                 new LoggingThreadFactory(AVAIL_THREAD_POOL_NAME, true));
 
+            // The avail check splits the inventory into the subtrees of the platform children and checks them in
+            // parallel on this pool. The threads go away between the checks.
+            int availScanParallelism = configuration.getAvailabilityScanParallelism();
+            if (availScanParallelism > 1) {
+                availabilitySubtreeThreadPoolExecutor = new ThreadPoolExecutor(availScanParallelism,
+                    availScanParallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new LoggingThreadFactory(AVAIL_SUBTREE_THREAD_POOL_NAME, true));
+                availabilitySubtreeThreadPoolExecutor.allowCoreThreadTimeOut(true);
+            }
+
             // Never run more than one discovery scan at a time (service and service scans share the same pool).
             inventoryThreadPoolExecutor = new ScheduledThreadPoolExecutor(1, new LoggingThreadFactory(
                 INVENTORY_THREAD_POOL_NAME, true));
@@ -337,6 +362,9 @@ public class InventoryManager extends AgentService implements ContainerService,
     public void shutdown() {
         PluginContainer.shutdownExecutorService(this.inventoryThreadPoolExecutor, true);
         PluginContainer.shutdownExecutorService(this.availabilityThreadPoolExecutor, true);
+        if (this.availabilitySubtreeThreadPoolExecutor != null) {
+            PluginContainer.shutdownExecutorService(this.availabilitySubtreeThreadPoolExecutor, true);
+        }
         if (this.configuration.isInsideAgent()) {
             this.persistToDisk();
         }
@@ -344,6 +372,7 @@ public class InventoryManager extends AgentService implements ContainerService,
         this.inventoryEventListeners.clear();
         this.resourceContainersByUUID.clear();
         this.resourceContainerByResourceId.clear();
+        this.resourceContainersByCanonicalKey.clear();
     }
 
     /**
@@ -630,28 +659,62 @@ public class InventoryManager extends AgentService implements ContainerService,
 
     @Nullable
     public ResourceContainer getResourceContainer(CanonicalResourceKey canonicalId) {
-        ResourceContainer resourceContainer = null;
-        for (Map.Entry<String, ResourceContainer> entry : resourceContainersByUUID.entrySet()) {
-            ResourceContainer container = entry.getValue();
-            Resource resource = container.getResource();
-            if (resource != null) {
-                Resource parent = resource.getParentResource();
-                if (parent != null) {
-                    try {
-                        CanonicalResourceKey currentCanonicalId = new CanonicalResourceKey(resource, parent);
-                        if (currentCanonicalId.equals(canonicalId)) {
-                            resourceContainer = container;
-                            break;
-                        }
-                    } catch (PluginContainerException ignore) {
-                        // TODO not sure what to do here, when would this ever happen? for now, ignore
-                    }
-                }
-            }
+        ResourceContainer resourceContainer = this.resourceContainersByCanonicalKey.get(canonicalId);
+        if (resourceContainer == null) {
+            return null;
+        }
+        // the key may be stale if the resource or one of its ancestors was given a new resource key
+        if (!canonicalId.equals(getCanonicalKey(resourceContainer.getResource()))) {
+            this.resourceContainersByCanonicalKey.remove(canonicalId, resourceContainer);
+            return null;
         }
         return resourceContainer;
     }
 
+    /**
+     * @return the canonical key of the resource, or <code>null</code> if it is the platform or does not have the key,
+     *         type or ancestors needed to build one
+     */
+    @Nullable
+    private CanonicalResourceKey getCanonicalKey(Resource resource) {
+        return getCanonicalKey(resource, resource.getParentResource());
+    }
+
+    @Nullable
+    private CanonicalResourceKey getCanonicalKey(Resource resource, Resource parent) {
+        if (parent == null) {
+            return null;
+        }
+        try {
+            return new CanonicalResourceKey(resource, parent);
+        } catch (PluginContainerException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Cannot build the canonical key of " + resource + ": " + e.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private void indexCanonicalKey(ResourceContainer resourceContainer) {
+        CanonicalResourceKey canonicalKey = getCanonicalKey(resourceContainer.getResource());
+        if (canonicalKey != null) {
+            this.resourceContainersByCanonicalKey.put(canonicalKey, resourceContainer);
+        }
+    }
+
+    /**
+     * Re-indexes the resource and its descendants, whose canonical keys all change when the resource key changes.
+     */
+    private void reindexCanonicalKeys(Resource resource) {
+        ResourceContainer resourceContainer = getResourceContainer(resource);
+        if (resourceContainer != null) {
+            indexCanonicalKey(resourceContainer);
+        }
+        for (Resource child : resource.getChildResources()) {
+            reindexCanonicalKeys(child);
+        }
+    }
+
     @Nullable
     public ResourceContainer getResourceContainer(Resource resource) {
         String uuid = resource.getUuid();
@@ -1152,6 +1215,15 @@ public class InventoryManager extends AgentService implements ContainerService,
         return resource;
     }
 
+    /**
+     * @return the pool the availability executors check the resource subtrees on, or <code>null</code> if the
+     *         availability scans are not parallel
+     */
+    @Nullable
+    ExecutorService getAvailabilitySubtreeExecutor() {
+        return availabilitySubtreeThreadPoolExecutor;
+    }
+
     /**
      * Returns the known availability for the resource. If the availability is not known, <code>null</code> is returned.
      *
@@ -1596,6 +1668,13 @@ public class InventoryManager extends AgentService implements ContainerService,
                 scanIsNeeded |= removeResourceAndIndicateIfScanIsNeeded(child, false);
             }
 
+            // the canonical key needs the parent, so drop it from the index before detaching the resource
+            CanonicalResourceKey canonicalKey = getCanonicalKey(resource);
+            ResourceContainer resourceContainer = getResourceContainer(resource);
+            if (canonicalKey != null && resourceContainer != null) {
+                this.resourceContainersByCanonicalKey.remove(canonicalKey, resourceContainer);
+            }
+
             Resource parent = resource.getParentResource();
             if (parent != null) {
                 parent.removeChildResource(resource);
@@ -1743,6 +1822,7 @@ public class InventoryManager extends AgentService implements ContainerService,
 
                         if (resourceKey != null) {
                             existingResource.setResourceKey(resourceKey);
+                            reindexCanonicalKeys(existingResource);
                             logMessage.append("resourceKey, ");
                         }
 
@@ -2024,6 +2104,7 @@ public class InventoryManager extends AgentService implements ContainerService,
             }
             this.resourceContainersByUUID.put(resource.getUuid().intern(), resourceContainer);
             this.resourceContainerByResourceId.put(resource.getId(), resourceContainer);
+            indexCanonicalKey(resourceContainer);
         } else {
             // container already exists, but make sure the classloader exists too
             if (resourceContainer.getResourceClassLoader() == null) {
@@ -2393,6 +2474,13 @@ public class InventoryManager extends AgentService implements ContainerService,
                     return this.platform;
                 }
             } else {
+                ResourceContainer parentContainer = getResourceContainer(parent);
+                CanonicalResourceKey canonicalKey = getCanonicalKey(resource, parent);
+                if (parentContainer != null && parentContainer.getResource() == parent && canonicalKey != null) {
+                    // the parent is in inventory, so all of its children are indexed
+                    return findIndexedChildResource(resource, parent, canonicalKey);
+                }
+
                 // don't use container children here, the caller is providing the desired resources
                 for (Resource child : parent.getChildResources()) {
                     if (child != null && matches(resource, child)) {
@@ -2404,6 +2492,29 @@ public class InventoryManager extends AgentService implements ContainerService,
         return null;
     }
 
+    /**
+     * Looks up the child of an inventoried parent that {@link #matches(Resource, Resource) matches} the resource in the
+     * id, UUID and canonical key indexes, rather than comparing the resource with every child of the parent.
+     */
+    @Nullable
+    private Resource findIndexedChildResource(Resource resource, Resource parent, CanonicalResourceKey canonicalKey) {
+        ResourceContainer container = null;
+        if (resource.getId() != 0) {
+            container = this.resourceContainerByResourceId.get(resource.getId());
+        }
+        if (!isChildContainer(container, parent) && resource.getUuid() != null) {
+            container = this.resourceContainersByUUID.get(resource.getUuid());
+        }
+        if (!isChildContainer(container, parent)) {
+            container = getResourceContainer(canonicalKey);
+        }
+        return isChildContainer(container, parent) ? container.getResource() : null;
+    }
+
+    private boolean isChildContainer(ResourceContainer container, Resource parent) {
+        return container != null && parent.equals(container.getResource().getParentResource());
+    }
+
     private boolean matches(Resource newResource, Resource existingResource) {
         try {
             return ((existingResource.getId() != 0) && (existingResource.getId() == newResource.getId()))
@@ -2479,6 +2590,7 @@ public class InventoryManager extends AgentService implements ContainerService,
                 practiceSafeSets(this.platform);
                 this.resourceContainersByUUID.clear();
                 this.resourceContainerByResourceId.clear();
+                this.resourceContainersByCanonicalKey.clear();
                 for (String uuid : inventoryFile.getResourceContainers().keySet()) {
                     ResourceContainer resourceContainer = inventoryFile.getResourceContainers().get(uuid);
                     this.resourceContainersByUUID.put(uuid, resourceContainer);
@@ -2487,6 +2599,10 @@ public class InventoryManager extends AgentService implements ContainerService,
                     this.resourceContainerByResourceId.put(resource.getId(), resourceContainer);
                     compactResource(resource);
                 }
+                // only index once the whole hierarchy is loaded, the canonical keys need the ancestors
+                for (ResourceContainer resourceContainer : this.resourceContainersByUUID.values()) {
+                    indexCanonicalKey(resourceContainer);
+                }
 
                 log.info("Inventory with size [" + this.resourceContainersByUUID.size()
                     + "] loaded from data file in [" + (System.currentTimeMillis() - start) + "ms]");
@@ -2495,6 +2611,7 @@ public class InventoryManager extends AgentService implements ContainerService,
             this.platform = null;
             this.resourceContainersByUUID.clear();
             this.resourceContainerByResourceId.clear();
+            this.resourceContainersByCanonicalKey.clear();
             if (file != null) {
                 file.renameTo(new File(file.getAbsolutePath() + ".invalid")); // move it out of the way if we can, retain it for later analysis
             }
@@ -3495,6 +3612,7 @@ public class InventoryManager extends AgentService implements ContainerService,
 
         Resource mergedResource;
         ResourceContainer resourceContainer;
+        CanonicalResourceKey previousCanonicalKey = null;
         this.inventoryLock.writeLock().lock();
         try {
             if (existingResource != null) { // modified Resource
@@ -3517,6 +3635,7 @@ public class InventoryManager extends AgentService implements ContainerService,
                     parentResource.removeChildResource(existingResource);
                 }
                 // Now merge the Resource from the Server into the existing Resource...
+                previousCanonicalKey = getCanonicalKey(existingResource);
                 pluginConfigUpdated = mergeResource(resourceFromServer, existingResource);
                 mergedResource = existingResource;
             } else { // unknown Resource
@@ -3532,6 +3651,16 @@ public class InventoryManager extends AgentService implements ContainerService,
             }
 
             resourceContainer = initResourceContainer(mergedResource);
+            if (existingResource != null) {
+                CanonicalResourceKey canonicalKey = getCanonicalKey(mergedResource);
+                if (canonicalKey == null || !canonicalKey.equals(previousCanonicalKey)) {
+                    // the key or type of the resource changed, and so did the canonical keys of its whole subtree
+                    if (previousCanonicalKey != null) {
+                        this.resourceContainersByCanonicalKey.remove(previousCanonicalKey, resourceContainer);
+                    }
+                    reindexCanonicalKeys(mergedResource);
+                }
+            }
         } finally {
             this.inventoryLock.writeLock().unlock();
         }
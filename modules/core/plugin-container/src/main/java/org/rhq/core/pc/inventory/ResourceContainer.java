@@ -36,11 +36,14 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -120,6 +123,9 @@ public class ResourceContainer implements Serializable {
     private transient ReentrantReadWriteLock facetAccessLock = new ReentrantReadWriteLock();
     private transient TIntObjectMap<Object> proxyCache = new TIntObjectHashMap<Object>(5);
     private transient ClassLoader resourceClassLoader;
+    // the number of timed out facet calls, per facet interface, that have not returned yet
+    private transient ConcurrentMap<Class<?>, AtomicInteger> hungInvocations =
+        new ConcurrentHashMap<Class<?>, AtomicInteger>();
     // the currently known availability
     private transient AvailabilityType currentAvailType = AvailabilityType.UNKNOWN;
     private transient long currentAvailStart;
@@ -549,6 +555,30 @@ public class ResourceContainer implements Serializable {
 
     }
 
+    /**
+     * Returns whether a call to the given facet of the resource component timed out and has not returned yet, i.e.
+     * whether the component is still stuck in it.
+     *
+     * @param facetInterface the facet interface exposed by the component proxy that timed out
+     *
+     * @return true if a timed out call of the facet is still running
+     */
+    public boolean isFacetInvocationHung(Class<?> facetInterface) {
+        AtomicInteger count = this.hungInvocations.get(facetInterface);
+        return (count != null) && (count.get() > 0);
+    }
+
+    private AtomicInteger getHungInvocationCount(Class<?> facetInterface) {
+        AtomicInteger count = this.hungInvocations.get(facetInterface);
+        if (count == null) {
+            AtomicInteger existing = this.hungInvocations.putIfAbsent(facetInterface, count = new AtomicInteger());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        return count;
+    }
+
     private String getFacetLockStatus() {
         StringBuilder str = new StringBuilder("Facet lock status for [");
         str.append(getResource());
@@ -565,6 +595,7 @@ public class ResourceContainer implements Serializable {
     // Recreate the facet lock on deserialization.
     private Object readResolve() throws java.io.ObjectStreamException {
         this.facetAccessLock = new ReentrantReadWriteLock();
+        this.hungInvocations = new ConcurrentHashMap<Class<?>, AtomicInteger>();
         return this;
     }
 
@@ -644,7 +675,8 @@ public class ResourceContainer implements Serializable {
 
         private Object invokeInNewThreadWithLock(Method method, Object[] args) throws Throwable {
             ExecutorService threadPool = this.daemonThread ? DAEMON_THREAD_POOL : NON_DAEMON_THREAD_POOL;
-            ComponentInvocation componentInvocation = new ComponentInvocation(this.container, method, args, this.lock);
+            ComponentInvocation componentInvocation = new ComponentInvocation(this.container, method, args, this.lock,
+                this.facetInterface);
             Future<?> future = threadPool.submit(componentInvocation);
             try {
                 return future.get(this.timeoutInSeconds, TimeUnit.SECONDS);
@@ -667,6 +699,7 @@ public class ResourceContainer implements Serializable {
                 LOG.debug(msg);
                 Throwable cause = new Throwable();
                 cause.setStackTrace(componentInvocation.getStackTrace());
+                componentInvocation.markAbandoned();
                 future.cancel(true);
                 componentInvocation.markContextInterrupted();
                 if (LOG.isDebugEnabled()) {
@@ -704,19 +737,28 @@ public class ResourceContainer implements Serializable {
     private static class ComponentInvocation implements Callable {
         private static final Log LOG = LogFactory.getLog(ComponentInvocation.class);
 
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
         private final ResourceContainer resourceContainer;
         private final Method method;
         private final Object[] args;
         private final Lock lock;
+        private final Class<?> facetInterface;
         private final ComponentInvocationContextImpl componentInvocationContext;
         private final LocalContext localContext;
+        private final AtomicInteger state = new AtomicInteger(NEW);
         private volatile Thread thread;
 
-        ComponentInvocation(ResourceContainer resourceContainer, Method method, Object[] args, Lock lock) {
+        ComponentInvocation(ResourceContainer resourceContainer, Method method, Object[] args, Lock lock,
+            Class<?> facetInterface) {
             this.resourceContainer = resourceContainer;
             this.method = method;
             this.args = args;
             this.lock = lock;
+            this.facetInterface = facetInterface;
             this.componentInvocationContext = (ComponentInvocationContextImpl) resourceContainer.getResourceContext()
                 .getComponentInvocationContext();
             localContext = new LocalContext();
@@ -733,6 +775,37 @@ public class ResourceContainer implements Serializable {
         }
 
         public Object call() throws Exception {
+            if (!this.state.compareAndSet(NEW, RUNNING)) {
+                // the caller gave up before a thread picked up the invocation
+                return null;
+            }
+            try {
+                return invoke();
+            } finally {
+                if (!this.state.compareAndSet(RUNNING, DONE)) {
+                    // the caller gave up on us, the component is not stuck anymore
+                    this.resourceContainer.getHungInvocationCount(this.facetInterface).decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Called when the caller stops waiting for the invocation. If it is already running, the facet is reported as
+         * {@link ResourceContainer#isFacetInvocationHung(Class) hung} until the call into the component returns.
+         */
+        public void markAbandoned() {
+            if (this.state.compareAndSet(NEW, DONE)) {
+                return;
+            }
+            AtomicInteger hungCount = this.resourceContainer.getHungInvocationCount(this.facetInterface);
+            hungCount.incrementAndGet();
+            if (!this.state.compareAndSet(RUNNING, ABANDONED)) {
+                // it returned in the meantime
+                hungCount.decrementAndGet();
+            }
+        }
+
+        private Object invoke() throws Exception {
             this.thread = Thread.currentThread();
             if (this.lock != null) {
                 try {
@@ -0,0 +1,186 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2015 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.pc.measurement;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Dispatches measurement collections onto a shared worker pool through per-plugin lanes. Each lane runs at most
+ * <code>laneConcurrency</code> collections at the same time so that a plugin whose resources are slow to answer cannot
+ * occupy every worker. Independently of lanes, a resource is never collected concurrently with itself: a collection
+ * submitted for a resource that still has one pending or running is refused and it is up to the caller to skip it.
+ */
+class MeasurementCollectionLanes {
+
+    private final Executor workers;
+
+    private final int laneConcurrency;
+
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+
+    private final Set<Integer> busyResources = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    MeasurementCollectionLanes(Executor workers, int laneConcurrency) {
+        if (laneConcurrency < 1) {
+            throw new IllegalArgumentException("laneConcurrency must be at least 1 but was " + laneConcurrency);
+        }
+        this.workers = workers;
+        this.laneConcurrency = laneConcurrency;
+    }
+
+    /**
+     * Queues a collection in the given lane.
+     *
+     * @param laneName   the lane, typically the name of the plugin defining the resource's type
+     * @param resourceId the resource being collected
+     * @param dueTime    the time at which the collection was due; used to compute the lag of the lane
+     * @param collection the collection itself
+     *
+     * @return <code>false</code> if the resource already has a collection pending or running, in which case
+     * nothing was queued
+     */
+    boolean submit(String laneName, int resourceId, long dueTime, Runnable collection) {
+        if (!busyResources.add(resourceId)) {
+            return false;
+        }
+        Lane lane = getLane(laneName);
+        synchronized (lane) {
+            lane.pending.offer(new PendingCollection(resourceId, dueTime, collection));
+        }
+        dispatch(lane);
+        return true;
+    }
+
+    private synchronized Lane getLane(String laneName) {
+        Lane lane = lanes.get(laneName);
+        if (lane == null) {
+            lane = new Lane(laneName);
+            lanes.put(laneName, lane);
+        }
+        return lane;
+    }
+
+    private void dispatch(final Lane lane) {
+        while (true) {
+            final PendingCollection next;
+            synchronized (lane) {
+                if (lane.running >= laneConcurrency || lane.pending.isEmpty()) {
+                    return;
+                }
+                next = lane.pending.poll();
+                lane.running++;
+                lane.lastStartLag = Math.max(0, System.currentTimeMillis() - next.dueTime);
+            }
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            next.collection.run();
+                        } finally {
+                            finished(lane, next);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the worker pool is shutting down
+                finished(lane, next);
+                return;
+            }
+        }
+    }
+
+    private void finished(Lane lane, PendingCollection collection) {
+        busyResources.remove(collection.resourceId);
+        synchronized (lane) {
+            lane.running--;
+        }
+        dispatch(lane);
+    }
+
+    boolean isBusy(int resourceId) {
+        return busyResources.contains(resourceId);
+    }
+
+    /**
+     * @return the number of collections queued but not yet running, across all lanes
+     */
+    synchronized int getPendingCount() {
+        int count = 0;
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                count += lane.pending.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The lag of a lane is how far behind its due time the oldest pending collection is or, if nothing is pending,
+     * how late the most recently started collection was.
+     *
+     * @return lane name --> lag in milliseconds
+     */
+    synchronized Map<String, Long> getLagPerLane() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> lags = new HashMap<String, Long>(lanes.size());
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                PendingCollection oldest = lane.pending.peek();
+                lags.put(lane.name, (oldest == null) ? lane.lastStartLag : Math.max(0, now - oldest.dueTime));
+            }
+        }
+        return lags;
+    }
+
+    private static class Lane {
+        private final String name;
+        private final Queue<PendingCollection> pending = new ArrayDeque<PendingCollection>();
+        private int running;
+        private long lastStartLag;
+
+        private Lane(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class PendingCollection {
+        private final int resourceId;
+        private final long dueTime;
+        private final Runnable collection;
+
+        private PendingCollection(int resourceId, long dueTime, Runnable collection) {
+            this.resourceId = resourceId;
+            this.dueTime = dueTime;
+            this.collection = collection;
+        }
+    }
+}
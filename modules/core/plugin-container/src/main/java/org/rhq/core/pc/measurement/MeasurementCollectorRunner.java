@@ -34,6 +34,7 @@ import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.pc.inventory.InventoryManager;
 import org.rhq.core.pc.inventory.ResourceContainer;
+import org.rhq.core.pc.inventory.TimeoutException;
 import org.rhq.core.pc.util.ComponentUtil;
 import org.rhq.core.pc.util.FacetLockType;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
@@ -58,6 +59,20 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
     }
 
     public MeasurementReport call() {
+        Set<ScheduledMeasurementInfo> requests = this.measurementManager.getNextScheduledSet();
+        return collect(requests);
+    }
+
+    /**
+     * Collects the given set of requests, which must all be for the same resource and due at the same time, into the
+     * active report and then reschedules them. This is what the collection workers execute; unlike {@link #call()} it
+     * can safely be run by several threads at once, as long as no two of them collect the same resource.
+     *
+     * @param requests the requests to collect, as returned by {@link MeasurementManager#getNextScheduledSet()}
+     *
+     * @return the active report the data was collected into
+     */
+    public MeasurementReport collect(Set<ScheduledMeasurementInfo> requests) {
         MeasurementReport report = null;
         try {
             this.measurementManager.getLock().readLock().lock();
@@ -67,8 +82,6 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
 
             InventoryManager im = this.measurementManager.getInventoryManager();
 
-            Set<ScheduledMeasurementInfo> requests = this.measurementManager.getNextScheduledSet();
-
             if (requests != null) {
                 ScheduledMeasurementInfo next = requests.iterator().next();
 
@@ -99,10 +112,13 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                         log.debug("Measurements not collected for inactive resource component: "
                             + container.getResource());
                     }
+                } else if (container.isFacetInvocationHung(MeasurementFacet.class)) {
+                    // a previous collection exceeded the deadline and is still stuck in the component
+                    this.measurementManager.collectionSkippedWhileStuck(container.getResource(), requests);
                 } else {
-                    MeasurementFacet measurementComponent = ComponentUtil
-                        .getComponent(resourceId, MeasurementFacet.class, FacetLockType.READ,
-                            MeasurementManager.FACET_METHOD_TIMEOUT, true, true, true);
+                    MeasurementFacet measurementComponent = ComponentUtil.getComponent(resourceId,
+                        MeasurementFacet.class, FacetLockType.READ, this.measurementManager.getCollectionDeadline(),
+                        true, true, true);
 
                     if (log.isDebugEnabled()) {
                         scheduleHistory.addRequests(requests);
@@ -140,6 +156,11 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
             }
         } catch (Throwable t) {
             this.measurementManager.incrementFailedCollections(requests.size());
+            if (t instanceof TimeoutException) {
+                // the component proxy gave up on the facet call and reports it as hung until it returns, which
+                // makes later collections skip the resource
+                this.measurementManager.collectionDeadlineExceeded(resource);
+            }
             if (log.isDebugEnabled()) {
                 log.warn("Failure to collect measurement data for " + resource + ", requests=" + requests
                     + ", report.size()=" + report.getDataCount(), t);
@@ -178,7 +199,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
             }
         }
 
-        public void addRequests(Set<ScheduledMeasurementInfo> requests) {
+        public synchronized void addRequests(Set<ScheduledMeasurementInfo> requests) {
             String now = new Date().toString() + " ";
 
             for (ScheduledMeasurementInfo request : requests) {
@@ -186,7 +207,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
             }
         }
 
-        public String toString() {
+        public synchronized String toString() {
             StringBuilder sb = new StringBuilder();
             while (!isEmpty()) {
                 sb.append("\n  ");
@@ -93,6 +93,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     private final MeasurementSenderRunner measurementSenderRunner;
     private final MeasurementCollectorRunner measurementCollectorRunner;
+    private final MeasurementCollectionLanes collectionLanes;
+    private final long collectionDeadline;
 
     private final PluginContainerConfiguration configuration;
 
@@ -117,6 +119,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     private final AtomicLong lateCollections = new AtomicLong(0);
     private final AtomicLong failedCollection = new AtomicLong(0);
+    private final AtomicLong skippedCollections = new AtomicLong(0);
+    private final AtomicLong deadlineExceededCollections = new AtomicLong(0);
 
     public MeasurementManager(PluginContainerConfiguration configuration, AgentServiceStreamRemoter streamRemoter,
         InventoryManager inventoryManager) {
@@ -126,19 +130,30 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         this.configuration = configuration;
         this.inventoryManager = inventoryManager;
 
+        this.collectionDeadline = configuration.getMeasurementCollectionDeadline() * 1000L;
+
         if (configuration.isInsideAgent()) {
             int threadPoolSize = configuration.getMeasurementCollectionThreadPoolSize();
-            collectorThreadPool = new ScheduledThreadPoolExecutor(threadPoolSize, new LoggingThreadFactory(
+            // one extra thread for the MeasurementCollectionRequester, which occupies its thread for good
+            collectorThreadPool = new ScheduledThreadPoolExecutor(threadPoolSize + 1, new LoggingThreadFactory(
                 COLLECTOR_THREAD_POOL_NAME, true));
             senderThreadPool = new ScheduledThreadPoolExecutor(2, new LoggingThreadFactory(SENDER_THREAD_POOL_NAME,
                 true));
             measurementSenderRunner = new MeasurementSenderRunner(this);
             measurementCollectorRunner = new MeasurementCollectorRunner(this);
+            int pluginConcurrency = configuration.getMeasurementCollectionPluginConcurrency();
+            if (pluginConcurrency <= 0) {
+                // a bit more than half of the threads, so that one plugin with hung resources cannot starve the others
+                pluginConcurrency = (threadPoolSize / 2) + 1;
+            }
+            collectionLanes = new MeasurementCollectionLanes(collectorThreadPool,
+                Math.max(1, Math.min(pluginConcurrency, threadPoolSize)));
         } else {
             senderThreadPool = null;
             collectorThreadPool = null;
             measurementSenderRunner = null;
             measurementCollectorRunner = null;
+            collectionLanes = null;
         }
     }
 
@@ -176,22 +191,29 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         LOG.info("Measurement Manager initialized.");
     }
 
+    /**
+     * Hands every set of requests that is due to the collection lanes, one lane per plugin, which run them on the
+     * collector thread pool. A resource whose previous collection is still queued or running is skipped this time
+     * around rather than being collected concurrently with itself.
+     */
     class MeasurementCollectionRequester implements Runnable {
+        // workers reschedule requests while we sleep, so never sleep longer than this or we would miss them
+        private static final long MAX_SLEEP = 1000L;
+
         @Override
         public void run() {
             try {
                 while (!collectorThreadPool.isShutdown()) {
                     long next = getNextExpectedCollectionTime();
                     if (next == Long.MIN_VALUE) {
-                        Thread.sleep(10000);
+                        Thread.sleep(MAX_SLEEP);
                     } else {
                         long delay = next - System.currentTimeMillis();
                         if (delay <= 0) {
-                            //                  collectorThreadPool.execute(measurementCollectorRunner);
-                            measurementCollectorRunner.call();
+                            dispatchDueCollections();
                         } else {
                             if (!collectorThreadPool.isShutdown()) {
-                                Thread.sleep(delay);
+                                Thread.sleep(Math.min(delay, MAX_SLEEP));
                             }
                         }
                     }
@@ -207,6 +229,69 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         }
     }
 
+    private void dispatchDueCollections() {
+        Set<ScheduledMeasurementInfo> requests;
+        while ((requests = getNextScheduledSet()) != null) {
+            final Set<ScheduledMeasurementInfo> dueRequests = requests;
+            ScheduledMeasurementInfo first = dueRequests.iterator().next();
+            int resourceId = first.getResourceId();
+
+            Runnable collection = new Runnable() {
+                @Override
+                public void run() {
+                    measurementCollectorRunner.collect(dueRequests);
+                }
+            };
+            if (!collectionLanes.submit(getLaneName(resourceId), resourceId, first.getNextCollection(), collection)) {
+                skippedCollections.addAndGet(dueRequests.size());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Skipping collection of " + dueRequests + " - the previous collection of resource ["
+                        + resourceId + "] has not finished yet");
+                }
+                reschedule(dueRequests);
+            }
+        }
+    }
+
+    private String getLaneName(int resourceId) {
+        ResourceContainer container = this.inventoryManager.getResourceContainer(resourceId);
+        if (container == null) {
+            return "";
+        }
+        return container.getResource().getResourceType().getPlugin();
+    }
+
+    /**
+     * Called by collection workers when a resource did not return its values within the collection deadline. The
+     * component proxy has marked the abandoned call as hung, so the resource is skipped until the call returns.
+     *
+     * @param resource the resource that was abandoned
+     */
+    void collectionDeadlineExceeded(Resource resource) {
+        this.deadlineExceededCollections.incrementAndGet();
+        LOG.warn("Measurement collection for " + resource + " exceeded the deadline of [" + collectionDeadline
+            + "]ms and was abandoned, the resource will not be collected until the call returns");
+    }
+
+    /**
+     * Called by collection workers instead of collecting a resource whose previous, abandoned collection is still
+     * running.
+     *
+     * @param resource the resource that is skipped
+     * @param requests the requests that are not collected
+     */
+    void collectionSkippedWhileStuck(Resource resource, Set<? extends MeasurementScheduleRequest> requests) {
+        this.skippedCollections.addAndGet(requests.size());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Skipping collection of " + requests + " - an abandoned collection of " + resource
+                + " has not returned yet");
+        }
+    }
+
+    long getCollectionDeadline() {
+        return collectionDeadline;
+    }
+
     private void reschedule(Resource resource) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("In Reschedule for: " + resource);
@@ -508,7 +593,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     }
 
     @Override
-    public long getNextExpectedCollectionTime() {
+    public synchronized long getNextExpectedCollectionTime() {
         ScheduledMeasurementInfo nextScheduledMeasurement = this.scheduledRequests.peek();
         if (nextScheduledMeasurement == null) {
             return Long.MIN_VALUE;
@@ -786,6 +871,38 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         return failedCollection.get();
     }
 
+    @Override
+    public long getSkippedCollections() {
+        return skippedCollections.get();
+    }
+
+    @Override
+    public long getDeadlineExceededCollections() {
+        return deadlineExceededCollections.get();
+    }
+
+    @Override
+    public int getPendingCollections() {
+        return (collectionLanes == null) ? 0 : collectionLanes.getPendingCount();
+    }
+
+    @Override
+    public Map<String, Long> getCollectionLagPerPlugin() {
+        if (collectionLanes == null) {
+            return Collections.emptyMap();
+        }
+        return collectionLanes.getLagPerLane();
+    }
+
+    @Override
+    public long getMaxCollectionLag() {
+        long max = 0;
+        for (Long lag : getCollectionLagPerPlugin().values()) {
+            max = Math.max(max, lag);
+        }
+        return max;
+    }
+
     private static class CachedValue {
         CachedValue(long timestamp, double value) {
             this.timestamp = timestamp;
@@ -22,6 +22,8 @@
   */
 package org.rhq.core.pc.measurement;
 
+import java.util.Map;
+
 /**
  * @author Greg Hinkle
  */
@@ -39,4 +41,30 @@ public interface MeasurementManagerMBean {
     long getLateCollections();
 
     long getFailedCollections();
+
+    /**
+     * @return the number of individual measurement collections skipped because the previous collection of the same
+     * resource had not finished yet
+     */
+    long getSkippedCollections();
+
+    /**
+     * @return the number of resource collections abandoned because they exceeded the collection deadline
+     */
+    long getDeadlineExceededCollections();
+
+    /**
+     * @return the number of resource collections queued for a collection thread
+     */
+    int getPendingCollections();
+
+    /**
+     * @return plugin name --> how far behind schedule, in milliseconds, collection for that plugin's resources is
+     */
+    Map<String, Long> getCollectionLagPerPlugin();
+
+    /**
+     * @return the largest of the per-plugin collection lags, in milliseconds
+     */
+    long getMaxCollectionLag();
 }
\ No newline at end of file
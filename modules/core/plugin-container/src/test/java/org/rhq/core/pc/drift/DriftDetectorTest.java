@@ -73,7 +73,14 @@ public class DriftDetectorTest extends DriftTest {
 
         scheduleQueue = new ScheduleQueueImpl();
 
-        detector = new DriftDetector(scheduleQueue, changeSetMgr, driftClient);
+        detector = newDetector();
+    }
+
+    /**
+     * Creates the detector under test. Subclasses override this to test other configurations of the detector.
+     */
+    DriftDetector newDetector() {
+        return new DriftDetector(scheduleQueue, changeSetMgr, driftClient);
     }
 
     @Test
@@ -249,7 +256,7 @@ public class DriftDetectorTest extends DriftTest {
         touch(server1Conf);
 
         scheduleQueue.addSchedule(schedule);
-        detector = new DriftDetector(scheduleQueue, changeSetMgr, driftClient);
+        detector = newDetector();
         detector.run();
 
         // make sure that the next scan time is not updated
@@ -905,7 +912,7 @@ public class DriftDetectorTest extends DriftTest {
         };
 
         schedule.resetSchedule();
-        detector = new DriftDetector(scheduleQueue, changeSetMgr, driftClient);
+        detector = newDetector();
         detector.run();
 
         // verify that the current snapshot file has not changed
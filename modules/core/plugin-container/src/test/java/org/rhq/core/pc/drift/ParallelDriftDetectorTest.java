@@ -0,0 +1,88 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.drift;
+
+import static org.rhq.core.domain.drift.DriftChangeSetCategory.COVERAGE;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.common.drift.ChangeSetReader;
+import org.rhq.common.drift.ChangeSetReaderImpl;
+import org.rhq.common.drift.FileEntry;
+import org.rhq.core.domain.drift.DriftDefinition;
+
+/**
+ * Runs the drift detector tests with directories listed and files hashed on a pool of scan threads.
+ */
+public class ParallelDriftDetectorTest extends DriftDetectorTest {
+
+    private static final int SCAN_THREADS = 4;
+
+    @Override
+    DriftDetector newDetector() {
+        // tests that replace the detector would otherwise leave the scan threads of the previous one running
+        shutdownDetector();
+        return new DriftDetector(scheduleQueue, changeSetMgr, driftClient, SCAN_THREADS);
+    }
+
+    @AfterMethod
+    public void shutdownDetector() {
+        if (detector != null) {
+            detector.shutdown();
+            detector = null;
+        }
+    }
+
+    @Test
+    public void sortCoverageChangeSetByPath() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            File dir = mkdir(resourceDir, "dir-" + i);
+            for (int j = 0; j < 10; ++j) {
+                createRandomFile(dir, "file-" + j + ".conf");
+            }
+        }
+
+        DriftDefinition def = driftDefinition("sorted-coverage-test", resourceDir.getAbsolutePath());
+        scheduleQueue.addSchedule(new DriftDetectionSchedule(resourceId(), def));
+        detector.run();
+
+        List<String> paths = new ArrayList<String>();
+        ChangeSetReader reader = new ChangeSetReaderImpl(changeSet(def.getName(), COVERAGE));
+        try {
+            for (FileEntry entry : reader) {
+                paths.add(entry.getFile());
+            }
+        } finally {
+            reader.close();
+        }
+
+        List<String> sortedPaths = new ArrayList<String>(paths);
+        Collections.sort(sortedPaths);
+        assertEquals(paths.size(), 100, "Every file should be in the coverage change set");
+        assertEquals(paths, sortedPaths, "The entries of the coverage change set should be ordered by path");
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import static org.rhq.core.domain.measurement.AvailabilityType.DOWN;
+import static org.rhq.core.domain.measurement.AvailabilityType.UP;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.InventoryStatus;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.pc.inventory.AvailabilityExecutor.Scan;
+import org.rhq.core.pc.inventory.AvailabilityExecutor.SubtreeScan;
+import org.rhq.core.pc.inventory.ResourceContainer.ResourceComponentState;
+import org.rhq.core.pc.inventory.ResourceContainer.SynchronizationState;
+import org.rhq.core.pluginapi.availability.AvailabilityFacet;
+
+@Test
+public class AvailabilityExecutorTest {
+
+    private static final int NUM_SERVERS = 5;
+
+    private static final int NUM_SERVICES = 10;
+
+    private ExecutorService subtreeExecutor;
+
+    private InventoryManager inventoryManager;
+
+    private Resource platform;
+
+    @BeforeMethod
+    public void setUpInventory() {
+        subtreeExecutor = Executors.newFixedThreadPool(3);
+        inventoryManager = Mockito.mock(InventoryManager.class);
+
+        ResourceType platformType = new ResourceType("platform", "test", ResourceCategory.PLATFORM, null);
+        ResourceType serverType = new ResourceType("server", "test", ResourceCategory.SERVER, platformType);
+        ResourceType serviceType = new ResourceType("service", "test", ResourceCategory.SERVICE, serverType);
+
+        int id = 0;
+        platform = createResource(++id, platformType, UP);
+        for (int i = 0; i < NUM_SERVERS; ++i) {
+            // the first server is down, its services must defer to it
+            Resource server = createResource(++id, serverType, i == 0 ? DOWN : UP);
+            platform.addChildResource(server);
+            for (int j = 0; j < NUM_SERVICES; ++j) {
+                server.addChildResource(createResource(++id, serviceType, UP));
+            }
+        }
+
+        Mockito.when(inventoryManager.getPlatform()).thenReturn(platform);
+        Mockito.when(inventoryManager.getAgent()).thenReturn(new Agent("agent", "localhost", 16163, "", "token"));
+        Mockito.when(inventoryManager.getAvailabilitySubtreeExecutor()).thenReturn(subtreeExecutor);
+        Mockito.when(
+            inventoryManager.getContainerChildren(Mockito.any(Resource.class), Mockito.any(ResourceContainer.class)))
+            .thenAnswer(new Answer<Object>() {
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    return ((Resource) invocation.getArguments()[0]).getChildResources();
+                }
+            });
+        Mockito.when(
+            inventoryManager.updateAvailability(Mockito.any(Resource.class), Mockito.any(AvailabilityType.class)))
+            .thenAnswer(new Answer<Availability>() {
+                public Availability answer(InvocationOnMock invocation) throws Throwable {
+                    Object[] args = invocation.getArguments();
+                    return new Availability((Resource) args[0], (AvailabilityType) args[1]);
+                }
+            });
+    }
+
+    @AfterMethod
+    public void shutDownSubtreeExecutor() {
+        subtreeExecutor.shutdownNow();
+    }
+
+    public void testSubtreesAreScannedInParallel() throws Exception {
+        AvailabilityExecutor executor = new AvailabilityExecutor(inventoryManager);
+        executor.sendFullReportNextTime();
+
+        AvailabilityReport report = executor.call();
+
+        int numResources = 1 + NUM_SERVERS * (1 + NUM_SERVICES);
+        assert report.getResourceAvailability().size() == numResources : report;
+
+        for (Resource server : platform.getChildResources()) {
+            AvailabilityType serverAvail = server.getId() == 2 ? DOWN : UP;
+            assert report.forResource(server.getId()) == serverAvail : report;
+            for (Resource service : server.getChildResources()) {
+                assert report.forResource(service.getId()) == serverAvail : report;
+            }
+        }
+
+        Scan scan = executor.getMostRecentScanHistory();
+        assert scan.getNumResources() == numResources : scan;
+        assert scan.getNumDeferToParent() == NUM_SERVICES : scan;
+
+        List<SubtreeScan> subtreeScans = scan.getSubtreeScans();
+        assert subtreeScans.size() == NUM_SERVERS : scan;
+        for (SubtreeScan subtreeScan : subtreeScans) {
+            assert subtreeScan.getNumResources() == 1 + NUM_SERVICES : subtreeScan;
+            assert "server".equals(subtreeScan.getResourceTypeName()) : subtreeScan;
+        }
+    }
+
+    public void testScanIsSequentialWithoutSubtreeExecutor() throws Exception {
+        Mockito.when(inventoryManager.getAvailabilitySubtreeExecutor()).thenReturn(null);
+        AvailabilityExecutor executor = new AvailabilityExecutor(inventoryManager);
+        executor.sendFullReportNextTime();
+
+        AvailabilityReport report = executor.call();
+
+        assert report.getResourceAvailability().size() == 1 + NUM_SERVERS * (1 + NUM_SERVICES) : report;
+        assert executor.getMostRecentScanHistory().getSubtreeScans().isEmpty();
+    }
+
+    private Resource createResource(int id, ResourceType type, AvailabilityType availabilityType) {
+        Resource resource = new Resource(type.getName() + id, type.getName() + id, type);
+        resource.setId(id);
+        resource.setUuid("uuid-" + id);
+        resource.setInventoryStatus(InventoryStatus.COMMITTED);
+
+        AvailabilityFacet availabilityProxy = Mockito.mock(AvailabilityFacet.class);
+        Mockito.when(availabilityProxy.getAvailability()).thenReturn(availabilityType);
+
+        ResourceContainer container = Mockito.mock(ResourceContainer.class);
+        Mockito.when(container.getResource()).thenReturn(resource);
+        Mockito.when(container.getSynchronizationState()).thenReturn(SynchronizationState.SYNCHRONIZED);
+        Mockito.when(container.getResourceComponentState()).thenReturn(ResourceComponentState.STARTED);
+        Mockito.when(container.getAvailabilityProxy()).thenReturn(availabilityProxy);
+        Mockito.when(inventoryManager.getResourceContainer(id)).thenReturn(container);
+
+        return resource;
+    }
+}
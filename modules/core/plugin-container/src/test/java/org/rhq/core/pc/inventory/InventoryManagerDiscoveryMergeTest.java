@@ -0,0 +1,124 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.mockito.Mockito;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.plugin.CanonicalResourceKey;
+import org.rhq.core.pc.plugin.PluginManager;
+
+/**
+ * Merges a service scan of 20k services into the inventory, which used to compare every discovered service with every
+ * inventoried child of the server, and prints the timings.
+ */
+@Test
+public class InventoryManagerDiscoveryMergeTest {
+
+    private static final int NUM_SERVICES = 20000;
+
+    private final ResourceType platformType = new ResourceType("platform", "test", ResourceCategory.PLATFORM, null);
+    private final ResourceType serverType = new ResourceType("server", "test", ResourceCategory.SERVER, platformType);
+    private final ResourceType serviceType = new ResourceType("service", "test", ResourceCategory.SERVICE,
+        serverType);
+
+    private InventoryManager inventoryManager;
+
+    private Resource server;
+
+    @BeforeMethod
+    public void setUpInventory() throws Exception {
+        PluginContainerConfiguration configuration = new PluginContainerConfiguration();
+        // keeps the merged resources from being activated
+        configuration.setInsideAgent(true);
+        inventoryManager = new InventoryManager(configuration, null, Mockito.mock(PluginManager.class));
+
+        Resource platform = newResource("platform", platformType);
+        platform.setId(1);
+        platform = inventoryManager.mergeResourceFromDiscovery(platform, null);
+        server = newResource("server", serverType);
+        server.setId(2);
+        server = inventoryManager.mergeResourceFromDiscovery(server, platform);
+    }
+
+    public void testMergeServiceScan() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Resource> merged = mergeServiceScan();
+        long firstScan = System.currentTimeMillis() - start;
+
+        assert server.getChildResources().size() == NUM_SERVICES : server.getChildResources().size();
+
+        // the services are discovered again with new UUIDs and must be matched by their keys
+        start = System.currentTimeMillis();
+        List<Resource> mergedAgain = mergeServiceScan();
+        long secondScan = System.currentTimeMillis() - start;
+
+        assert server.getChildResources().size() == NUM_SERVICES : server.getChildResources().size();
+        for (int i = 0; i < NUM_SERVICES; ++i) {
+            assert mergedAgain.get(i) == merged.get(i) : mergedAgain.get(i);
+        }
+
+        start = System.currentTimeMillis();
+        for (Resource service : merged) {
+            ResourceContainer container = inventoryManager.getResourceContainer(new CanonicalResourceKey(service,
+                server));
+            assert container != null && container.getResource() == service : service;
+        }
+        long lookups = System.currentTimeMillis() - start;
+
+        System.out.println("Merged [" + NUM_SERVICES + "] new services in [" + firstScan + "]ms, rediscovered them in ["
+            + secondScan + "]ms and looked them up by canonical key in [" + lookups + "]ms");
+    }
+
+    public void testUninventoriedResourceIsNotFound() throws Exception {
+        Resource service = newResource("service", serviceType);
+        service.setId(3);
+        service = inventoryManager.mergeResourceFromDiscovery(service, server);
+        CanonicalResourceKey canonicalKey = new CanonicalResourceKey(service, server);
+        assert inventoryManager.getResourceContainer(canonicalKey) != null;
+
+        inventoryManager.removeResourceAndIndicateIfScanIsNeeded(service, false);
+
+        assert inventoryManager.getResourceContainer(canonicalKey) == null;
+        assert inventoryManager.mergeResourceFromDiscovery(newResource("service", serviceType), server) != service;
+    }
+
+    private List<Resource> mergeServiceScan() throws Exception {
+        List<Resource> merged = new ArrayList<Resource>(NUM_SERVICES);
+        for (int i = 0; i < NUM_SERVICES; ++i) {
+            merged.add(inventoryManager.mergeResourceFromDiscovery(newResource("service" + i, serviceType), server));
+        }
+        return merged;
+    }
+
+    private Resource newResource(String key, ResourceType type) {
+        Resource resource = new Resource(key, key, type);
+        resource.setUuid(UUID.randomUUID().toString());
+        return resource;
+    }
+}
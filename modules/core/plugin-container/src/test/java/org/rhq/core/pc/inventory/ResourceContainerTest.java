@@ -25,6 +25,8 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.File;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +37,8 @@ import org.testng.annotations.Test;
 import org.rhq.core.clientapi.agent.metadata.PluginMetadataManager;
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.pc.PluginContainer;
 import org.rhq.core.pc.PluginContainerConfiguration;
@@ -43,6 +47,7 @@ import org.rhq.core.pc.util.FacetLockType;
 import org.rhq.core.pluginapi.availability.AvailabilityFacet;
 import org.rhq.core.pluginapi.inventory.ResourceComponent;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.operation.OperationFacet;
 import org.rhq.core.pluginapi.operation.OperationResult;
 
@@ -159,6 +164,39 @@ public class ResourceContainerTest {
         }
     }
 
+    public void testTimedOutFacetInvocationIsHungUntilItReturns() throws Exception {
+        ResourceContainer resourceContainer = getResourceContainer();
+        StuckMeasurementComponent component = new StuckMeasurementComponent();
+        resourceContainer.setResourceComponent(component);
+        MeasurementFacet proxy = resourceContainer.createResourceComponentProxy(MeasurementFacet.class,
+            FacetLockType.READ, SECONDS.toMillis(1L), true, false, true);
+        assertFalse(resourceContainer.isFacetInvocationHung(MeasurementFacet.class));
+
+        // the call exceeds the timeout: the facet is hung while the component is stuck in it
+        try {
+            proxy.getValues(new MeasurementReport(), null);
+            fail("Expected getValues to throw a TimeoutException");
+        } catch (TimeoutException e) {
+            assertTrue(component.entered.await(10, SECONDS));
+        }
+        assertTrue(resourceContainer.isFacetInvocationHung(MeasurementFacet.class));
+        assertFalse(resourceContainer.isFacetInvocationHung(OperationFacet.class),
+            "Only the facet that timed out should be reported as hung");
+
+        // the abandoned call returns: the facet is not hung anymore
+        component.release.countDown();
+        assertTrue(component.returned.await(10, SECONDS));
+        for (int i = 0; i < 50 && resourceContainer.isFacetInvocationHung(MeasurementFacet.class); i++) {
+            Thread.sleep(100L);
+        }
+        assertFalse(resourceContainer.isFacetInvocationHung(MeasurementFacet.class),
+            "The facet should not be hung once the abandoned call has returned");
+
+        // and calls that return in time do not make it hung again
+        proxy.getValues(new MeasurementReport(), null);
+        assertFalse(resourceContainer.isFacetInvocationHung(MeasurementFacet.class));
+    }
+
     private ResourceContainer getResourceContainer() throws Exception {
         Resource resource = new Resource("TestPlatformKey", "MyTestPlatform", PluginMetadataManager.TEST_PLATFORM_TYPE);
         ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
@@ -242,6 +280,41 @@ public class ResourceContainerTest {
         }
     }
 
+    /**
+     * A measurement component that does not return from its first collection, even when interrupted, until released.
+     */
+    private class StuckMeasurementComponent implements ResourceComponent, MeasurementFacet {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch returned = new CountDownLatch(1);
+
+        @Override
+        public void start(ResourceContext resourceContext) throws Exception {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public AvailabilityType getAvailability() {
+            return AvailabilityType.UP;
+        }
+
+        @Override
+        public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
+            entered.countDown();
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // stuck components ignore interrupts
+                }
+            }
+            returned.countDown();
+        }
+    }
+
     class MockRuntimeException extends RuntimeException {
     }
 }
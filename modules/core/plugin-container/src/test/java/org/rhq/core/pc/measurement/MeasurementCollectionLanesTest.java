@@ -0,0 +1,144 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class MeasurementCollectionLanesTest {
+
+    private ExecutorService workers;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        workers = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        workers.shutdownNow();
+    }
+
+    public void testResourceIsNotCollectedConcurrentlyWithItself() throws Exception {
+        MeasurementCollectionLanes lanes = new MeasurementCollectionLanes(workers, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        assertTrue(lanes.submit("jmx", 1, System.currentTimeMillis(), new Blocker(release, done, null)));
+        assertFalse(lanes.submit("jmx", 1, System.currentTimeMillis(), new Blocker(release, done, null)),
+            "A second collection of a busy resource must be refused");
+        assertTrue(lanes.submit("jmx", 2, System.currentTimeMillis(), new Blocker(release, new CountDownLatch(1),
+            null)), "Other resources of the same plugin must still be accepted");
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        waitUntilIdle(lanes, 1);
+        assertTrue(lanes.submit("jmx", 1, System.currentTimeMillis(), new Blocker(release, new CountDownLatch(1),
+            null)), "The resource must be accepted again once its collection finished");
+    }
+
+    public void testLaneConcurrencyIsCapped() throws Exception {
+        MeasurementCollectionLanes lanes = new MeasurementCollectionLanes(workers, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 5; ++i) {
+            lanes.submit("slow-plugin", i, System.currentTimeMillis(), new Blocker(release, done, running, maxRunning));
+        }
+        // a different lane is not held up by the saturated one
+        CountDownLatch otherLaneDone = new CountDownLatch(1);
+        lanes.submit("fast-plugin", 100, System.currentTimeMillis(), new Blocker(null, otherLaneDone, null));
+        assertTrue(otherLaneDone.await(10, TimeUnit.SECONDS));
+
+        assertEquals(lanes.getPendingCount(), 3);
+        assertTrue(lanes.getLagPerLane().containsKey("slow-plugin"));
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        waitUntilIdle(lanes, 0, 1, 2, 3, 4);
+        assertEquals(maxRunning.get(), 2, "No more than two collections of the lane should have run at once");
+        assertEquals(lanes.getPendingCount(), 0);
+    }
+
+    private void waitUntilIdle(MeasurementCollectionLanes lanes, int... resourceIds) throws InterruptedException {
+        for (int resourceId : resourceIds) {
+            for (int i = 0; i < 100 && lanes.isBusy(resourceId); ++i) {
+                Thread.sleep(50);
+            }
+            assertFalse(lanes.isBusy(resourceId), "Resource " + resourceId + " is still busy");
+        }
+    }
+
+    private static class Blocker implements Runnable {
+        private final CountDownLatch release;
+        private final CountDownLatch done;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+
+        Blocker(CountDownLatch release, CountDownLatch done, AtomicInteger running) {
+            this(release, done, running, new AtomicInteger());
+        }
+
+        Blocker(CountDownLatch release, CountDownLatch done, AtomicInteger running, AtomicInteger maxRunning) {
+            this.release = release;
+            this.done = done;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (running != null) {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        if (now > maxRunning.get()) {
+                            maxRunning.set(now);
+                        }
+                    }
+                }
+                if (release != null) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (running != null) {
+                    running.decrementAndGet();
+                }
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.pc.inventory.InventoryManager;
+import org.rhq.core.pc.inventory.ResourceContainer;
+import org.rhq.core.pc.util.FacetLockType;
+import org.rhq.core.pluginapi.measurement.MeasurementFacet;
+
+/**
+ * Checks that resources whose measurement facet is hung are skipped, and rescheduled, rather than collected. How a
+ * facet becomes hung and recovers is covered by ResourceContainerTest.
+ */
+@Test
+public class MeasurementCollectorRunnerTest {
+
+    private MeasurementManager measurementManager;
+    private Resource resource;
+    private ResourceContainer container;
+    private Set<ScheduledMeasurementInfo> requests;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        resource = new Resource(1);
+        container = mock(ResourceContainer.class);
+        when(container.getResource()).thenReturn(resource);
+        when(container.getResourceComponentState()).thenReturn(ResourceContainer.ResourceComponentState.STARTED);
+        when(container.getAvailability()).thenReturn(new Availability(resource, AvailabilityType.UP));
+        InventoryManager inventoryManager = mock(InventoryManager.class);
+        when(inventoryManager.getResourceContainer(1)).thenReturn(container);
+
+        measurementManager = mock(MeasurementManager.class);
+        when(measurementManager.getLock()).thenReturn(new ReentrantReadWriteLock());
+        when(measurementManager.getActiveReport()).thenReturn(new MeasurementReport());
+        when(measurementManager.getInventoryManager()).thenReturn(inventoryManager);
+
+        ScheduledMeasurementInfo request = new ScheduledMeasurementInfo(new MeasurementScheduleRequest(1, "metric",
+            30000L, true, DataType.MEASUREMENT), 1);
+        request.setNextCollection(System.currentTimeMillis());
+        requests = Collections.singleton(request);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testHungResourceIsSkippedAndRescheduled() throws Exception {
+        when(container.isFacetInvocationHung(MeasurementFacet.class)).thenReturn(true);
+
+        new MeasurementCollectorRunner(measurementManager).collect(requests);
+
+        verify(measurementManager).collectionSkippedWhileStuck(resource, requests);
+        verify(measurementManager).reschedule(requests);
+        verify(container, never()).createResourceComponentProxy(any(Class.class), any(FacetLockType.class),
+            anyLong(), anyBoolean(), anyBoolean(), anyBoolean());
+    }
+}
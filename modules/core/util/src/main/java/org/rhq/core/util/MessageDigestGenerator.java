@@ -47,6 +47,10 @@ public class MessageDigestGenerator {
     /** you can pass this to the constructor to indicate you want to generate SHA 256 message digests */
     public static final String SHA_256 = "SHA-256";
 
+    // files are read straight into a buffer of up to this size, which is sized to the file for small files
+    private static final int MAX_FILE_BUFFER_SIZE = 256 * 1024;
+    private static final int MIN_FILE_BUFFER_SIZE = 8 * 1024;
+
     private final MessageDigest messageDigest;
 
     /**
@@ -253,7 +257,15 @@ public class MessageDigestGenerator {
 
         try {
             is = new FileInputStream(file);
-            return calcDigest(new BufferedInputStream(is, 1024 * 32));
+            int bufferSize = (int) Math.min(Math.max(file.length(), MIN_FILE_BUFFER_SIZE), MAX_FILE_BUFFER_SIZE);
+            byte[] bytes = new byte[bufferSize];
+            int len;
+
+            while ((len = is.read(bytes, 0, bytes.length)) != -1) {
+                messageDigest.update(bytes, 0, len);
+            }
+
+            return getDigest();
         } finally {
             if (is != null) {
                 is.close();
@@ -35,7 +35,7 @@ import org.rhq.enterprise.agent.i18n.AgentI18NFactory;
 import org.rhq.enterprise.agent.i18n.AgentI18NResourceKeys;
 import org.rhq.enterprise.communications.ServiceContainerConfiguration;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
-import org.rhq.enterprise.communications.command.client.PersistentFifo;
+import org.rhq.enterprise.communications.command.client.SegmentedCommandSpool;
 import org.rhq.enterprise.communications.util.SecurityUtil;
 
 /**
@@ -682,8 +682,8 @@ public class AgentConfiguration {
 
     /**
      * Returns an array of command spool file parameters. The first element of the array is the maximum file size
-     * threshold. The second element is the purge percentage. See {@link PersistentFifo} for the meanings of these
-     * settings.
+     * threshold. The second element is the purge percentage. See {@link SegmentedCommandSpool} for the meanings of
+     * these settings.
      *
      * <p>Because this is a weakly typed method (i.e. you have to know what the elements in the returned array
      * represent), it is recommended that you call {@link #getClientCommandSenderConfiguration()} because it will return
@@ -1171,6 +1171,9 @@ public class AgentConfiguration {
         int avail_scan_threadpool_size = m_preferences.getInt(
             AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE,
             AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE);
+        int avail_scan_parallelism = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_PARALLELISM,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_PARALLELISM);
 
         // get the initial delay before measurement collections begin
         long meas_scan_initial_delay = m_preferences.getLong(
@@ -1185,12 +1188,23 @@ public class AgentConfiguration {
             AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE,
             AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE);
 
+        // get how long a collection may take and how many collections of a single plugin may run concurrently
+        long meas_deadline = m_preferences.getLong(
+            AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLLECTION_DEADLINE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_COLLECTION_DEADLINE);
+        int meas_plugin_concurrency = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY);
+
         // get the drift settings
         long drift_period = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_DRIFT_DETECTION_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_DRIFT_DETECTION_PERIOD);
         long drift_initial_delay = m_preferences.getLong(
             AgentConfigurationConstants.PLUGINS_DRIFT_DETECTION_INITIAL_DELAY,
             AgentConfigurationConstants.DEFAULT_PLUGINS_DRIFT_DETECTION_INITIAL_DELAY);
+        int drift_threadpool_size = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_DRIFT_DETECTION_THREADPOOL_SIZE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_DRIFT_DETECTION_THREADPOOL_SIZE);
 
         // determine how many operation invoker threads should be in the threadpool that is used to execute operations
         int op_threadpool_size = m_preferences.getInt(
@@ -1295,10 +1309,14 @@ public class AgentConfiguration {
         config.setAvailabilityScanInitialDelay(avail_scan_initial_delay);
         config.setAvailabilityScanPeriod(avail_scan_period);
         config.setAvailabilityScanThreadPoolSize(avail_scan_threadpool_size);
+        config.setAvailabilityScanParallelism(avail_scan_parallelism);
         config.setMeasurementCollectionThreadPoolSize(meas_threadpool_size);
         config.setMeasurementCollectionInitialDelay(meas_scan_initial_delay);
+        config.setMeasurementCollectionDeadline(meas_deadline);
+        config.setMeasurementCollectionPluginConcurrency(meas_plugin_concurrency);
         config.setDriftDetectionInitialDelay(drift_initial_delay);
         config.setDriftDetectionPeriod(drift_period);
+        config.setDriftDetectionThreadPoolSize(drift_threadpool_size);
         config.setOperationInvokerThreadPoolSize(op_threadpool_size);
         config.setOperationInvocationTimeout(op_timeout);
         config.setContentDiscoveryThreadPoolSize(con_threadpool_size);
@@ -659,6 +659,17 @@ public interface AgentConfigurationConstants {
      */
     int DEFAULT_PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE = PluginContainerConfiguration.AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT;
 
+    /**
+     * If defined, this is the number of platform subtrees whose availability is checked concurrently during an
+     * availability scan. If not defined, the plugin container should default to something it considers appropriate.
+     */
+    String PLUGINS_AVAILABILITY_SCAN_PARALLELISM = PROPERTY_NAME_PREFIX + "plugins.availability-scan.parallelism";
+
+    /**
+     * The default number of platform subtrees scanned concurrently for availability.
+     */
+    int DEFAULT_PLUGINS_AVAILABILITY_SCAN_PARALLELISM = PluginContainerConfiguration.AVAILABILITY_SCAN_PARALLELISM_DEFAULT;
+
     /**
      * If defined, this is to be the size of the measurement collection thread pool. If not defined, the plugin
      * container should default to something it considers appropriate.
@@ -682,6 +693,29 @@ public interface AgentConfigurationConstants {
      */
     long DEFAULT_PLUGINS_MEASUREMENT_COLLECTION_INITIAL_DELAY = PluginContainerConfiguration.MEASUREMENT_COLLECTION_INITIAL_DELAY_DEFAULT;
 
+    /**
+     * Defines, in seconds, how long a single resource's measurement collection may take before it is abandoned.
+     */
+    String PLUGINS_MEASUREMENT_COLLECTION_DEADLINE = PROPERTY_NAME_PREFIX
+        + "plugins.measurement-collection.deadline-secs";
+
+    /**
+     * The default collection deadline, in seconds.
+     */
+    long DEFAULT_PLUGINS_MEASUREMENT_COLLECTION_DEADLINE = PluginContainerConfiguration.MEASUREMENT_COLLECTION_DEADLINE_DEFAULT;
+
+    /**
+     * If defined, this is the maximum number of collections for resources of a single plugin that may run at the same
+     * time. If not defined, the plugin container derives it from the measurement collection thread pool size.
+     */
+    String PLUGINS_MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY = PROPERTY_NAME_PREFIX
+        + "plugins.measurement-collection.plugin-concurrency";
+
+    /**
+     * The default number of concurrent collections per plugin, 0 meaning derived from the thread pool size.
+     */
+    int DEFAULT_PLUGINS_MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY = PluginContainerConfiguration.MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_DEFAULT;
+
     /**
      * Defines, in seconds, the initial delay before the first drift detection scan is run.
      */
@@ -702,6 +736,17 @@ public interface AgentConfigurationConstants {
      */
     long DEFAULT_PLUGINS_DRIFT_DETECTION_PERIOD = PluginContainerConfiguration.DRIFT_DETECTION_PERIOD_DEFAULT;
 
+    /**
+     * If defined, this is the number of threads that walk the directories and hash the files of a drift detection
+     * scan. If not defined, the plugin container should default to something it considers appropriate.
+     */
+    String PLUGINS_DRIFT_DETECTION_THREADPOOL_SIZE = PROPERTY_NAME_PREFIX + "plugins.drift-detection.threadpool-size";
+
+    /**
+     * The default number of threads of a drift detection scan.
+     */
+    int DEFAULT_PLUGINS_DRIFT_DETECTION_THREADPOOL_SIZE = PluginContainerConfiguration.DRIFT_DETECTION_THREADCOUNT_DEFAULT;
+
     /**
      * If defined, this is to be the size of the content discovery thread pool. If not defined, the plugin container
      * should default to something it considers appropriate.
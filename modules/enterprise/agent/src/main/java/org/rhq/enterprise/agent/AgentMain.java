@@ -2261,6 +2261,9 @@ public class AgentMain {
                 return;
             }
 
+            // until the server says otherwise, assume it cannot read compactly encoded measurement reports
+            setCompactMeasurementReports(false);
+
             Command connectCommand = createConnectAgentCommand();
             getClientCommandSender().preprocessCommand(connectCommand); // important that we are already registered by now!
             CommandResponse connectResponse;
@@ -2307,6 +2310,8 @@ public class AgentMain {
                     }
                 }
 
+                setCompactMeasurementReports(results.isCompactMeasurementReportsSupported());
+
                 long serverTime = results.getServerTime();
                 serverClockNotification(serverTime);
 
@@ -2788,6 +2793,23 @@ public class AgentMain {
         return;
     }
 
+    /**
+     * Tells our {@link ClientCommandSender} whether to send measurement reports in the compact encoding, which only
+     * servers that say so when the agent connects can read.
+     *
+     * @param compact <code>true</code> if the server the agent is connected to reads compact measurement reports
+     */
+    private void setCompactMeasurementReports(boolean compact) {
+        ClientCommandSender sender = getClientCommandSender();
+        if (sender != null) {
+            for (CommandPreprocessor preproc : sender.getCommandPreprocessors()) {
+                if (preproc instanceof ExternalizableStrategyCommandPreprocessor) {
+                    ((ExternalizableStrategyCommandPreprocessor) preproc).setCompactMeasurementReports(compact);
+                }
+            }
+        }
+    }
+
     /**
      * Creates our {@link ClientCommandSender} object so we can be able to send commands to the server.
      *
@@ -18,14 +18,20 @@
  */
 package org.rhq.enterprise.agent;
 
+import org.jboss.remoting.invocation.NameBasedInvocation;
+
+import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.server.ExternalizableStrategy;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.client.ClientCommandSender;
 import org.rhq.enterprise.communications.command.client.CommandPreprocessor;
+import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
 
 /**
  * This command preprocessor is intended to be installed on the agent's {@link ClientCommandSender} so that all commands
- * will get an ExternalizableStrategy inserted into their configuration.
+ * will get an ExternalizableStrategy inserted into their configuration. Once the server the agent has connected to has
+ * said that it reads compactly encoded measurement reports, this also turns on the compact encoding of any
+ * {@link MeasurementReport} passed to the server.
  *
  * @author Jay Shaughnessy
  */
@@ -35,6 +41,11 @@ public class ExternalizableStrategyCommandPreprocessor implements CommandPreproc
      */
     private static final String CMDCONFIG_PROP_EXTERNALIZABLE_STRATEGY = "rhq.externalizable-strategy";
 
+    /**
+     * Tells if the server reads compactly encoded measurement reports.
+     */
+    private volatile boolean m_compactMeasurementReports = false;
+
     /**
      * Ensure the AGENT strategy is employed.
      *
@@ -45,6 +56,28 @@ public class ExternalizableStrategyCommandPreprocessor implements CommandPreproc
         command.getConfiguration().setProperty(CMDCONFIG_PROP_EXTERNALIZABLE_STRATEGY,
             ExternalizableStrategy.Subsystem.AGENT.name());
 
+        if (m_compactMeasurementReports && (command instanceof RemotePojoInvocationCommand)) {
+            NameBasedInvocation invocation = ((RemotePojoInvocationCommand) command).getNameBasedInvocation();
+            Object[] params = (invocation != null) ? invocation.getParameters() : null;
+            if (params != null) {
+                for (Object param : params) {
+                    if (param instanceof MeasurementReport) {
+                        ((MeasurementReport) param).setCompactEncoding(true);
+                    }
+                }
+            }
+        }
+
         return;
     }
+
+    /**
+     * This method is called when the agent connects to a server, so this preprocessor knows if that server reads
+     * compactly encoded measurement reports.
+     *
+     * @param compactMeasurementReports <code>true</code> if the server reads compactly encoded measurement reports
+     */
+    public void setCompactMeasurementReports(boolean compactMeasurementReports) {
+        m_compactMeasurementReports = compactMeasurementReports;
+    }
 }
\ No newline at end of file
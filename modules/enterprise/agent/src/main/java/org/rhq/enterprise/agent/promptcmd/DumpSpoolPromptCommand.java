@@ -26,10 +26,11 @@ import org.rhq.enterprise.agent.i18n.AgentI18NFactory;
 import org.rhq.enterprise.agent.i18n.AgentI18NResourceKeys;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
 import org.rhq.enterprise.communications.command.client.PersistentFifo;
+import org.rhq.enterprise.communications.command.client.SegmentedCommandSpool;
 import org.rhq.enterprise.communications.util.DumpBytes;
 
 /**
- * Dumps the contents of the persisted command spool file. This is probably a rarely used command mainly for testing and
+ * Dumps the contents of the persisted command spool. This is probably a rarely used command mainly for testing and
  * debugging. It allows you to see what commands are currently stored in the command spool file in case you are
  * interested to know what commands marked for guaranteed delivery have been persisted but not yet sent.
  *
@@ -77,13 +78,25 @@ public class DumpSpoolPromptCommand implements AgentPromptCommand {
             return true;
         }
 
-        File spool_file = new File(sender_config.dataDirectory, sender_config.commandSpoolFileName);
+        File spool_dir = new File(sender_config.dataDirectory, sender_config.commandSpoolFileName
+            + SegmentedCommandSpool.DIRECTORY_SUFFIX);
 
         try {
-            PersistentFifo.dumpContents(agent.getOut(), spool_file, agent_config
-                .isClientSenderCommandSpoolFileCompressed(), raw_byte_base);
+            SegmentedCommandSpool.dumpContents(agent.getOut(), spool_dir, raw_byte_base);
         } catch (Exception e) {
-            agent.getOut().println(MSG.getMsg(AgentI18NResourceKeys.DUMPSPOOL_ERROR, spool_file, e));
+            agent.getOut().println(MSG.getMsg(AgentI18NResourceKeys.DUMPSPOOL_ERROR, spool_dir, e));
+        }
+
+        // commands spooled by an older agent are only moved over to the spool directory when the sender starts
+        File legacy_spool_file = new File(sender_config.dataDirectory, sender_config.commandSpoolFileName);
+
+        if (legacy_spool_file.isFile()) {
+            try {
+                PersistentFifo.dumpContents(agent.getOut(), legacy_spool_file, agent_config
+                    .isClientSenderCommandSpoolFileCompressed(), raw_byte_base);
+            } catch (Exception e) {
+                agent.getOut().println(MSG.getMsg(AgentI18NResourceKeys.DUMPSPOOL_ERROR, legacy_spool_file, e));
+            }
         }
 
         return true;
@@ -187,7 +187,7 @@ public class ClientCommandSender {
      * {@link #isDeliveryGuaranteed(Command) guaranteed commands}. The actual objects that will be stored in this object
      * will be {@link CommandAndCallback} objects.
      */
-    private PersistentFifo m_commandStore;
+    private CommandSpool m_commandStore;
 
     /**
      * The configuration for this sender.
@@ -252,16 +252,29 @@ public class ClientCommandSender {
         m_sendCallbacks = null;
 
         if (config.commandSpoolFileName != null) {
-            File cmd_spool_file = new File(config.dataDirectory, config.commandSpoolFileName);
+            File cmd_spool_file = new File(config.dataDirectory, config.commandSpoolFileName
+                + SegmentedCommandSpool.DIRECTORY_SUFFIX);
 
             try {
-                m_commandStore = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
+                m_commandStore = new SegmentedCommandSpool(cmd_spool_file, config.commandSpoolFileMaxSize,
                     config.commandSpoolFilePurgePercentage, config.commandSpoolFileCompressData);
             } catch (Exception e) {
                 m_commandStore = null;
                 LOG.warn(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_COMMAND_SPOOL_ACCESS_ERROR, cmd_spool_file,
                     remote_communicator, e);
             }
+
+            if (m_commandStore != null) {
+                // a failed import must not cost us the spool - the commands already moved are in it, and the old
+                // file is only deleted once all its commands have been moved
+                File legacy_file = new File(config.dataDirectory, config.commandSpoolFileName);
+                try {
+                    importLegacyCommandSpool(legacy_file, config);
+                } catch (Exception e) {
+                    LOG.warn(e, CommI18NResourceKeys.CLIENT_COMMAND_SENDER_LEGACY_SPOOL_IMPORT_FAILURE,
+                        legacy_file, remote_communicator, e);
+                }
+            }
         } else {
             m_commandStore = null;
             LOG.debug(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_NO_COMMAND_SPOOL_FILENAME, remote_communicator);
@@ -953,6 +966,10 @@ public class ClientCommandSender {
 
                 m_metrics.sendingMode.set(false);
                 m_metrics.setThreadPool(null);
+
+                // release the spool so that another sender can take it over; if this sender spools or unspools
+                // commands again, the spool is reopened
+                closeCommandSpool();
             } finally {
                 // before we release the changing mode lock (and thus allow someone to call startSending again)
                 // we need to flip our shutting down tasks flag to false to indicate we are done shutting down all tasks
@@ -1354,6 +1371,13 @@ public class ClientCommandSender {
                     LOG.warn(e, CommI18NResourceKeys.CLIENT_COMMAND_SENDER_SPOOL_FAILURE, m_remoteCommunicator);
                 }
 
+                try {
+                    // we may never be started again, make sure what we just spooled makes it to disk
+                    m_commandStore.flush();
+                } catch (IOException e) {
+                    LOG.warn(e, CommI18NResourceKeys.CLIENT_COMMAND_SENDER_SPOOL_FAILURE, m_remoteCommunicator);
+                }
+
                 LOG.debug(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_SPOOL_DONE, commands_persisted, volatile_commands,
                     m_remoteCommunicator);
             }
@@ -1362,6 +1386,61 @@ public class ClientCommandSender {
         return;
     }
 
+    /**
+     * Closes the command spool, if there is one.
+     */
+    private void closeCommandSpool() {
+        if (m_commandStore != null) {
+            try {
+                m_commandStore.close();
+            } catch (IOException e) {
+                LOG.warn(e, CommI18NResourceKeys.CLIENT_COMMAND_SENDER_SPOOL_FAILURE, m_remoteCommunicator);
+            }
+        }
+
+        return;
+    }
+
+    /**
+     * Moves any commands found in a command spool file written in the old {@link PersistentFifo} format over to the
+     * command store and then deletes the old file. This is a no-op if there is no such file.
+     *
+     * @param  legacy_file the old spool file
+     * @param  config      the sender configuration
+     *
+     * @throws IOException if failed to read the old file or to put its commands in the command store
+     */
+    private void importLegacyCommandSpool(File legacy_file, ClientCommandSenderConfiguration config)
+        throws IOException {
+        if (!legacy_file.isFile()) {
+            return;
+        }
+
+        PersistentFifo legacy_fifo = new PersistentFifo(legacy_file, Long.MAX_VALUE, 99,
+            config.commandSpoolFileCompressData);
+        long imported = 0L;
+
+        try {
+            byte[] entry;
+            while ((entry = legacy_fifo.take()) != null) {
+                m_commandStore.put(entry);
+                imported++;
+            }
+            m_commandStore.flush();
+        } finally {
+            legacy_fifo.close();
+        }
+
+        if (!legacy_file.delete()) {
+            legacy_file.deleteOnExit();
+        }
+
+        LOG.info(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_LEGACY_SPOOL_IMPORTED, imported, legacy_file,
+            m_remoteCommunicator);
+
+        return;
+    }
+
     /**
      * Given a command/callback pair, this will spool it in its serialized form to the command spool file.
      *
@@ -130,12 +130,14 @@ public class ClientCommandSenderConfiguration implements Serializable {
     /**
      * The name of the command spool file (to be located in the {@link #dataDirectory }}. If this value is <code>
      * null</code>, it will be assumed that commands should not be persisted (this means guaranteed delivery will be
-     * implicitly unsupported).
+     * implicitly unsupported). The spool itself is kept in a directory named after this file with the
+     * {@link SegmentedCommandSpool#DIRECTORY_SUFFIX} appended; a file with this exact name is only read to carry over
+     * commands spooled in the old {@link PersistentFifo} format.
      */
     public String commandSpoolFileName;
 
     /**
-     * This is the maximum size of the command spool file. If the file grows beyond this, it will be purged in order to
+     * This is the maximum size of the command spool. If the spool grows beyond this, it will be purged in order to
      * shrink its size down.
      */
     public long commandSpoolFileMaxSize = 1000000L;
@@ -143,7 +145,7 @@ public class ClientCommandSenderConfiguration implements Serializable {
     /**
      * If the command spool file crosses its max size threshold and a purge is initiated, this is the percentage of
      * bytes the command spool file will be allowed to be after the purge completes. This is a percentage of
-     * {@link #commandSpoolFileMaxSize}. See {@link PersistentFifo} for more info on this parameter.
+     * {@link #commandSpoolFileMaxSize}. See {@link SegmentedCommandSpool} for more info on this parameter.
      */
     public int commandSpoolFilePurgePercentage = 75;
 
@@ -0,0 +1,103 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * A persistent FIFO queue of byte arrays, used by the {@link ClientCommandSender} to spool commands that are to be
+ * delivered with guaranteed delivery but could not be sent yet.
+ *
+ * @see PersistentFifo
+ * @see SegmentedCommandSpool
+ */
+public interface CommandSpool {
+    /**
+     * Puts an array of bytes on the queue.
+     *
+     * @param  bytes the data to put in the queue
+     *
+     * @throws IOException if failed to persist the data
+     */
+    void put(byte[] bytes) throws IOException;
+
+    /**
+     * Takes the next entry from the queue and returns it.
+     *
+     * @return the next entry from the queue, or <code>null</code> if the queue is empty
+     *
+     * @throws IOException if failed to read the data
+     */
+    byte[] take() throws IOException;
+
+    /**
+     * Serializes the given object and puts the serialized bytes on the queue.
+     *
+     * @param  o the object to serialize and put in the queue
+     *
+     * @throws IOException      if failed to persist the data
+     * @throws RuntimeException if failed to serialize the data
+     */
+    void putObject(Serializable o) throws IOException, RuntimeException;
+
+    /**
+     * Takes the next entry from the queue and deserializes it.
+     *
+     * @return the deserialized object, or <code>null</code> if the queue is empty
+     *
+     * @throws IOException      if failed to read the data
+     * @throws RuntimeException if failed to deserialize the data
+     */
+    Object takeObject() throws IOException, RuntimeException;
+
+    /**
+     * Returns <code>true</code> if there are no entries in the queue.
+     *
+     * @return <code>true</code> if the queue is empty
+     *
+     * @throws IOException if failed to access the persisted data
+     */
+    boolean isEmpty() throws IOException;
+
+    /**
+     * Returns the number of entries currently in the queue.
+     *
+     * @return the number of entries
+     *
+     * @throws IOException if failed to access the persisted data
+     */
+    long count() throws IOException;
+
+    /**
+     * Forces everything put on the queue so far out to the storage device. Implementations are free to sync lazily, so
+     * call this when the data must survive a system crash, such as after spooling all queued commands at shutdown.
+     *
+     * @throws IOException if failed to sync the persisted data
+     */
+    void flush() throws IOException;
+
+    /**
+     * Releases the files held by the queue. The entries still in the queue stay persisted; if the queue is used again,
+     * it reopens its files.
+     *
+     * @throws IOException if failed to release the files
+     */
+    void close() throws IOException;
+}
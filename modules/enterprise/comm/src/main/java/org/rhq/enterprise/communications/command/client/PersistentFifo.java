@@ -68,9 +68,12 @@ import org.rhq.enterprise.communications.util.DumpBytes;
  *          +------------+
  * </pre>
  *
+ * <p>This is the original spool format. The {@link ClientCommandSender} now spools to a {@link SegmentedCommandSpool}
+ * and only reads this format to carry over commands spooled by older versions.</p>
+ *
  * @author John Mazzitelli
  */
-public class PersistentFifo {
+public class PersistentFifo implements CommandSpool {
     /**
      * Logger
      */
@@ -174,47 +177,62 @@ public class PersistentFifo {
                 entry = fifo.decompress(entry);
             }
 
-            String entry_string;
+            dumpEntry(out, entry_num++, entry, raw_byte_base);
+        }
 
-            out.print("[" + entry_num++ + "] ");
+        out.flush();
 
-            if (raw_byte_base == 0) {
-                Object obj = StreamUtil.deserialize(entry);
-                entry_string = obj.toString();
-            } else {
-                out.println();
-
-                switch (raw_byte_base) {
-                case DumpBytes.BASE_HEX: {
-                    entry_string = DumpBytes.dumpHexData(entry);
-                    break;
-                }
-
-                case DumpBytes.BASE_DEC: {
-                    entry_string = DumpBytes.dumpDecData(entry);
-                    break;
-                }
-
-                case DumpBytes.BASE_OCT: {
-                    entry_string = DumpBytes.dumpOctData(entry);
-                    break;
-                }
-
-                case DumpBytes.BASE_BIN: {
-                    entry_string = DumpBytes.dumpBinData(entry);
-                    break;
-                }
-
-                default: {
-                    entry_string = DumpBytes.dumpData(entry, 7, raw_byte_base);
-                }
-                }
+        return;
+    }
+
+    /**
+     * Dumps a single entry to the given stream, either as an object or as raw bytes in the given base. See
+     * {@link #dumpContents(PrintWriter, File, boolean, int)} for the meaning of <code>raw_byte_base</code>.
+     *
+     * @param out           the stream to dump the output
+     * @param entry_num     the number of the entry within the queue
+     * @param entry         the entry's uncompressed data
+     * @param raw_byte_base 0 to dump the entry as an object, otherwise the base to dump the raw bytes in
+     */
+    static void dumpEntry(PrintWriter out, long entry_num, byte[] entry, int raw_byte_base) {
+        String entry_string;
+
+        out.print("[" + entry_num + "] ");
+
+        if (raw_byte_base == 0) {
+            Object obj = StreamUtil.deserialize(entry);
+            entry_string = obj.toString();
+        } else {
+            out.println();
+
+            switch (raw_byte_base) {
+            case DumpBytes.BASE_HEX: {
+                entry_string = DumpBytes.dumpHexData(entry);
+                break;
+            }
+
+            case DumpBytes.BASE_DEC: {
+                entry_string = DumpBytes.dumpDecData(entry);
+                break;
             }
 
-            out.println(entry_string);
+            case DumpBytes.BASE_OCT: {
+                entry_string = DumpBytes.dumpOctData(entry);
+                break;
+            }
+
+            case DumpBytes.BASE_BIN: {
+                entry_string = DumpBytes.dumpBinData(entry);
+                break;
+            }
+
+            default: {
+                entry_string = DumpBytes.dumpData(entry, 7, raw_byte_base);
+            }
+            }
         }
 
-        out.flush();
+        out.println(entry_string);
 
         return;
     }
@@ -438,6 +456,33 @@ public class PersistentFifo {
         }
     }
 
+    /**
+     * Every write goes straight to the file, there is nothing buffered to sync.
+     *
+     * @see CommandSpool#flush()
+     */
+    public void flush() throws IOException {
+        return;
+    }
+
+    /**
+     * Closes the file. If the FIFO is used again, the file is opened again.
+     *
+     * @throws IOException if failed to close the file
+     *
+     * @see CommandSpool#close()
+     */
+    public void close() throws IOException {
+        synchronized (m_fileLock) {
+            if (m_randomAccessFile != null) {
+                m_randomAccessFile.close();
+                m_randomAccessFile = null;
+            }
+        }
+
+        return;
+    }
+
     /**
      * This initializes the file to indicate that the queue is empty - call this when the file does not yet exist or if
      * you want to shrink the file down to its minimal size.
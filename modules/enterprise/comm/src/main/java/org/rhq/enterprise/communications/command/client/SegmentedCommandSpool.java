@@ -0,0 +1,743 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import mazz.i18n.Logger;
+
+import org.rhq.core.util.stream.StreamUtil;
+import org.rhq.enterprise.communications.i18n.CommI18NFactory;
+import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
+
+/**
+ * Persists byte arrays in a FIFO queue made of append-only, memory-mapped segment files kept in a spool directory.
+ *
+ * <p>Entries are appended to the last segment; when it has no more room a new segment is created. Entries are taken
+ * from the first segment, and once every entry of a segment has been taken the segment file is simply deleted. Like
+ * {@link PersistentFifo}, the spool is bounded: when the segments take up more than the maximum size, the oldest
+ * segments are deleted (along with any entries in them that were not taken yet) until the used space is down to the
+ * purge percentage. Nothing is ever moved around within a file.</p>
+ *
+ * <p>Since the segments are memory-mapped, putting or taking an entry is just a memory copy - there are no seeks and
+ * no system calls. The data survives the VM going away as soon as it is written. To also survive a system crash, the
+ * segments are forced out to disk after every {@link #SYNC_INTERVAL} entries that are put and whenever
+ * {@link #flush()} is called.</p>
+ *
+ * <p>Each segment starts with a header: a magic number, an unused <code>int</code> and the <code>long</code> position
+ * of the next entry to take from the segment. Each entry consists of its length (an <code>int</code>), a flags byte
+ * and its data. The length is written last, so a zero length marks the end of the segment's data.</p>
+ *
+ * <pre>
+ * magic | unused | read-pos | length | flags | entry-byte-array-data | length | flags | entry | 0 ...
+ * </pre>
+ *
+ * <p>If compression is turned on, each entry is deflated at the fastest compression level before being written. The
+ * flags of an entry tell whether it is compressed, so the setting can be changed without invalidating the existing
+ * spool.</p>
+ *
+ * <p>This class is thread-safe; each instance has its own lock. Only one instance in the VM may have a spool
+ * directory open at any one time; another instance can open the directory once the first one is {@link #close()
+ * closed}.</p>
+ */
+public class SegmentedCommandSpool implements CommandSpool {
+    /**
+     * Logger
+     */
+    private static final Logger LOG = CommI18NFactory.getLogger(SegmentedCommandSpool.class);
+
+    /**
+     * The segments are forced to disk each time this many entries have been put since the last sync.
+     */
+    public static final int SYNC_INTERVAL = 100;
+
+    /**
+     * Appended to the name of the command spool file configured for a {@link ClientCommandSender} to get the name of
+     * the spool directory.
+     */
+    public static final String DIRECTORY_SUFFIX = ".segments";
+
+    private static final int MAGIC = 0x52485153; // "RHQS"
+    private static final int HEADER_SIZE = 16;
+    private static final int READ_POSITION_OFFSET = 8;
+    private static final int ENTRY_HEADER_SIZE = 5;
+    private static final byte FLAG_COMPRESSED = 0x01;
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // the spool directories that are open in this VM, as canonical files
+    private static final Set<File> OPEN_DIRECTORIES = new HashSet<File>();
+
+    private final File m_directory;
+    private final long m_maxSizeBytes; // total size of the segments that, when reached, triggers a purge
+    private final long m_purgeResultMaxBytes; // the total size the segments must be less than after a purge
+    private final int m_segmentSize;
+    private final boolean m_compress;
+
+    private final LinkedList<Segment> m_segments = new LinkedList<Segment>();
+    private boolean m_open;
+    private long m_count; // the current count of entries in the spool
+    private long m_totalBytes; // the current size of all segment files
+    private long m_nextSequence;
+    private int m_unsyncedPuts;
+
+    /**
+     * Dumps the entries found in the given spool directory to the given stream without taking them. See
+     * {@link PersistentFifo#dumpContents(PrintWriter, File, boolean, int)} for the meaning of the
+     * <code>raw_byte_base</code>.
+     *
+     * @param  out           the stream to dump the output
+     * @param  directory     the spool directory
+     * @param  raw_byte_base 0 means dump entries as objects, -1 means only dump the number of entries, otherwise it is
+     *                       the base the raw entry data is dumped in
+     *
+     * @throws IOException if failed to read the segments
+     */
+    public static void dumpContents(PrintWriter out, File directory, int raw_byte_base) throws IOException {
+        File[] segment_files = listSegmentFiles(directory);
+        long count = 0L;
+
+        for (File segment_file : segment_files) {
+            count += readEntries(segment_file, null, 0, 0);
+        }
+
+        out.println(directory);
+        out.println(count);
+        out.flush();
+
+        if (raw_byte_base < 0) {
+            return;
+        }
+
+        long entry_num = 0L;
+        for (File segment_file : segment_files) {
+            entry_num += readEntries(segment_file, out, entry_num, raw_byte_base);
+        }
+
+        out.flush();
+
+        return;
+    }
+
+    /**
+     * Opens the spool found in the given directory, creating the directory if it does not exist yet.
+     *
+     * @param  directory        the directory where the segment files are kept
+     * @param  max_size_bytes   the maximum size, in bytes, the segments are allowed to take before a purge is triggered
+     * @param  purge_percentage when a purge is triggered, it will delete enough segments to lower the amount of used
+     *                          space down to this percentage of the total max space
+     * @param  compress         if <code>true</code>, the entries put in the spool will be compressed
+     *
+     * @throws IOException              if the directory cannot be created, is already open or the existing segments
+     *                                  cannot be read
+     * @throws IllegalArgumentException if purge_percentage is not between 0 and 99 or max_size_bytes is less than 1000
+     */
+    public SegmentedCommandSpool(File directory, long max_size_bytes, int purge_percentage, boolean compress)
+        throws IOException {
+        if ((purge_percentage < 0) || (purge_percentage > 99)) {
+            throw new IllegalArgumentException(LOG.getMsgString(CommI18NResourceKeys.INVALID_PURGE_PERCENTAGE,
+                purge_percentage));
+        }
+
+        if (max_size_bytes < 1000L) {
+            throw new IllegalArgumentException(LOG.getMsgString(CommI18NResourceKeys.INVALID_MAX_SIZE, max_size_bytes,
+                1000));
+        }
+
+        m_directory = directory;
+        m_maxSizeBytes = max_size_bytes;
+        m_purgeResultMaxBytes = (long) (max_size_bytes * (purge_percentage / 100.0f));
+        m_compress = compress;
+
+        // ten segments fill the spool, so a purge never has to throw away more than a tenth of it beyond what it must
+        m_segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_SEGMENT_SIZE, max_size_bytes / 10));
+
+        synchronized (this) {
+            open();
+        }
+
+        return;
+    }
+
+    /**
+     * @see CommandSpool#putObject(Serializable)
+     */
+    public void putObject(Serializable o) throws IOException, RuntimeException {
+        put(StreamUtil.serialize(o));
+        return;
+    }
+
+    /**
+     * @see CommandSpool#takeObject()
+     */
+    public Object takeObject() throws IOException, RuntimeException {
+        byte[] serialized_bytes = take();
+        return (serialized_bytes != null) ? StreamUtil.deserialize(serialized_bytes) : null;
+    }
+
+    /**
+     * @see CommandSpool#put(byte[])
+     */
+    public void put(byte[] bytes) throws IOException {
+        byte flags = 0;
+
+        if (m_compress) {
+            bytes = compress(bytes);
+            flags |= FLAG_COMPRESSED;
+        }
+
+        synchronized (this) {
+            open();
+
+            Segment tail = m_segments.isEmpty() ? null : m_segments.getLast();
+
+            if ((tail == null) || !tail.hasRoomFor(bytes.length)) {
+                int capacity = Math.max(m_segmentSize, HEADER_SIZE + ENTRY_HEADER_SIZE + bytes.length);
+                tail = Segment.create(new File(m_directory, segmentFileName(m_nextSequence)), m_nextSequence,
+                    capacity);
+                m_nextSequence++;
+                m_segments.add(tail);
+                m_totalBytes += tail.m_capacity;
+            }
+
+            tail.append(bytes, flags);
+            m_count++;
+
+            if (++m_unsyncedPuts >= SYNC_INTERVAL) {
+                sync();
+            }
+
+            // if we went over the maximum size limit, throw away the oldest segments to make room
+            if (m_totalBytes > m_maxSizeBytes) {
+                purge();
+            }
+        }
+
+        return;
+    }
+
+    /**
+     * @see CommandSpool#take()
+     */
+    public byte[] take() throws IOException {
+        byte[] entry;
+        byte flags;
+
+        synchronized (this) {
+            open();
+
+            if (m_segments.isEmpty()) {
+                return null;
+            }
+
+            Segment head = m_segments.getFirst();
+            flags = head.peekFlags();
+            entry = head.next();
+            m_count--;
+
+            if (head.m_unread == 0) {
+                // every entry in the segment has been taken, the segment is no longer needed
+                m_segments.removeFirst();
+                m_totalBytes -= head.m_capacity;
+                head.delete();
+            }
+        }
+
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            entry = decompress(entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * @see CommandSpool#isEmpty()
+     */
+    public synchronized boolean isEmpty() {
+        return m_count == 0L;
+    }
+
+    /**
+     * @see CommandSpool#count()
+     */
+    public synchronized long count() {
+        return m_count;
+    }
+
+    /**
+     * @see CommandSpool#flush()
+     */
+    public synchronized void flush() throws IOException {
+        sync();
+        return;
+    }
+
+    /**
+     * Syncs and releases all segments, and releases the directory so that another spool can open it. The entries
+     * still in the spool are left in the directory. If entries are put or taken after this is called, the spool opens
+     * the directory again.
+     *
+     * @see CommandSpool#close()
+     */
+    public synchronized void close() {
+        if (!m_open) {
+            return;
+        }
+
+        sync();
+
+        for (Segment segment : m_segments) {
+            segment.unmap();
+        }
+
+        // the count is kept, it is still what the directory holds
+        m_segments.clear();
+        m_totalBytes = 0L;
+        m_open = false;
+
+        synchronized (OPEN_DIRECTORIES) {
+            OPEN_DIRECTORIES.remove(getCanonicalDirectory(m_directory));
+        }
+
+        return;
+    }
+
+    /**
+     * Deletes the given spool directory along with the segments in it, and so all the entries they hold. This is used
+     * when the spool is no longer needed at all, e.g. because the remote endpoint it spools commands for is gone.
+     *
+     * @param  directory the spool directory
+     *
+     * @return <code>true</code> if the directory no longer exists
+     *
+     * @throws IOException if a spool still has the directory open
+     */
+    public static boolean delete(File directory) throws IOException {
+        synchronized (OPEN_DIRECTORIES) {
+            if (OPEN_DIRECTORIES.contains(getCanonicalDirectory(directory))) {
+                throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_ALREADY_OPEN, directory));
+            }
+
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+
+            return directory.delete() || !directory.exists();
+        }
+    }
+
+    /**
+     * Returns the directory where the segment files are kept.
+     *
+     * @return spool directory
+     */
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    /**
+     * Opens the spool directory, if this spool does not have it open already, and loads the segments found in it.
+     *
+     * @throws IOException if the directory cannot be created or another spool has it open
+     */
+    private void open() throws IOException {
+        if (m_open) {
+            return;
+        }
+
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_CANNOT_CREATE_DIRECTORY,
+                m_directory));
+        }
+
+        synchronized (OPEN_DIRECTORIES) {
+            if (!OPEN_DIRECTORIES.add(getCanonicalDirectory(m_directory))) {
+                throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_ALREADY_OPEN,
+                    m_directory));
+            }
+        }
+
+        try {
+            m_count = 0L;
+            m_totalBytes = 0L;
+
+            for (File segment_file : listSegmentFiles(m_directory)) {
+                Segment segment;
+                try {
+                    segment = Segment.open(segment_file);
+                } catch (IOException e) {
+                    // move it out of the way so we don't trip over it again; it is kept around for analysis
+                    LOG.warn(e, CommI18NResourceKeys.SEGMENTED_SPOOL_SKIPPED_SEGMENT, segment_file, e);
+                    segment_file.renameTo(new File(segment_file.getPath() + ".corrupt"));
+                    continue;
+                }
+
+                m_nextSequence = Math.max(m_nextSequence, segment.m_sequence + 1);
+
+                if (segment.m_unread == 0) {
+                    segment.delete();
+                } else {
+                    m_segments.add(segment);
+                    m_count += segment.m_unread;
+                    m_totalBytes += segment.m_capacity;
+                }
+            }
+
+            m_open = true;
+        } finally {
+            if (!m_open) {
+                // don't keep the directory from others if it couldn't be opened
+                synchronized (OPEN_DIRECTORIES) {
+                    OPEN_DIRECTORIES.remove(getCanonicalDirectory(m_directory));
+                }
+            }
+        }
+
+        return;
+    }
+
+    private static File getCanonicalDirectory(File directory) {
+        try {
+            return directory.getCanonicalFile();
+        } catch (IOException e) {
+            return directory.getAbsoluteFile();
+        }
+    }
+
+    private void sync() {
+        for (Segment segment : m_segments) {
+            segment.m_buffer.force();
+        }
+
+        m_unsyncedPuts = 0;
+        return;
+    }
+
+    /**
+     * Deletes the oldest segments, entries and all, until the space used is down to the purge result size. The segment
+     * currently being written to is never deleted.
+     */
+    private void purge() {
+        while ((m_totalBytes > m_purgeResultMaxBytes) && (m_segments.size() > 1)) {
+            Segment oldest = m_segments.removeFirst();
+            m_totalBytes -= oldest.m_capacity;
+            m_count -= oldest.m_unread;
+            LOG.warn(CommI18NResourceKeys.SEGMENTED_SPOOL_PURGED_SEGMENT, oldest.m_file, oldest.m_unread);
+            oldest.delete();
+        }
+
+        return;
+    }
+
+    private static String segmentFileName(long sequence) {
+        // zero-padded so that the natural order of the file names is the order of the segments
+        String number = Long.toString(sequence);
+        StringBuilder name = new StringBuilder(20 + SEGMENT_SUFFIX.length());
+        for (int i = number.length(); i < 20; i++) {
+            name.append('0');
+        }
+        return name.append(number).append(SEGMENT_SUFFIX).toString();
+    }
+
+    private static File[] listSegmentFiles(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return f1.getName().compareTo(f2.getName());
+            }
+        });
+
+        return files;
+    }
+
+    /**
+     * Reads the entries of a segment file that have not been taken yet without modifying the file.
+     *
+     * @param  segment_file  the segment file
+     * @param  out           where to dump the entries, <code>null</code> to just count them
+     * @param  first_num     the number of the first entry in the segment
+     * @param  raw_byte_base how to dump the entries
+     *
+     * @return the number of entries found
+     *
+     * @throws IOException if failed to read the file
+     */
+    private static long readEntries(File segment_file, PrintWriter out, long first_num, int raw_byte_base)
+        throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment_file, "r");
+        try {
+            long length = raf.length();
+            if ((length < HEADER_SIZE) || (raf.readInt() != MAGIC)) {
+                return 0L;
+            }
+
+            raf.seek(READ_POSITION_OFFSET);
+            long position = raf.readLong();
+            long count = 0L;
+
+            while (position + ENTRY_HEADER_SIZE <= length) {
+                raf.seek(position);
+                int entry_length = raf.readInt();
+                if ((entry_length <= 0) || (position + ENTRY_HEADER_SIZE + entry_length > length)) {
+                    break;
+                }
+
+                if (out != null) {
+                    byte flags = raf.readByte();
+                    byte[] entry = new byte[entry_length];
+                    raf.readFully(entry);
+                    if ((flags & FLAG_COMPRESSED) != 0) {
+                        entry = decompress(entry);
+                    }
+                    PersistentFifo.dumpEntry(out, first_num + count, entry, raw_byte_base);
+                }
+
+                position += ENTRY_HEADER_SIZE + entry_length;
+                count++;
+            }
+
+            return count;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                baos.write(chunk, 0, n);
+            }
+
+            return baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] bytes) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            // raw deflate streams need an extra dummy byte at the end of the input
+            byte[] input = Arrays.copyOf(bytes, bytes.length + 1);
+            inflater.setInput(input);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length * 2);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_CORRUPT_ENTRY));
+                }
+                baos.write(chunk, 0, n);
+            }
+
+            return baos.toByteArray();
+        } catch (DataFormatException e) {
+            IOException ioe = new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_CORRUPT_ENTRY));
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * A single memory-mapped segment file.
+     */
+    private static class Segment {
+        private final File m_file;
+        private final long m_sequence;
+        private final int m_capacity;
+        private MappedByteBuffer m_buffer;
+        private int m_readPosition;
+        private int m_writePosition;
+        private int m_unread;
+
+        private Segment(File file, long sequence, MappedByteBuffer buffer) {
+            m_file = file;
+            m_sequence = sequence;
+            m_buffer = buffer;
+            m_capacity = buffer.capacity();
+        }
+
+        static Segment create(File file, long sequence, int capacity) throws IOException {
+            Segment segment = new Segment(file, sequence, map(file, capacity));
+            segment.m_buffer.putInt(0, MAGIC);
+            segment.m_buffer.putLong(READ_POSITION_OFFSET, HEADER_SIZE);
+            segment.m_readPosition = HEADER_SIZE;
+            segment.m_writePosition = HEADER_SIZE;
+            return segment;
+        }
+
+        static Segment open(File file) throws IOException {
+            String name = file.getName();
+            long sequence;
+            try {
+                sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_CORRUPT_SEGMENT, file));
+            }
+
+            long length = file.length();
+            if ((length < HEADER_SIZE) || (length > Integer.MAX_VALUE)) {
+                throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_CORRUPT_SEGMENT, file));
+            }
+
+            Segment segment = new Segment(file, sequence, map(file, (int) length));
+            MappedByteBuffer buffer = segment.m_buffer;
+            long read_position = buffer.getLong(READ_POSITION_OFFSET);
+
+            if ((buffer.getInt(0) != MAGIC) || (read_position < HEADER_SIZE) || (read_position > length)) {
+                segment.unmap();
+                throw new IOException(LOG.getMsgString(CommI18NResourceKeys.SEGMENTED_SPOOL_CORRUPT_SEGMENT, file));
+            }
+
+            // walk the entries to find where the data ends, counting those that have not been taken yet
+            int position = HEADER_SIZE;
+            while (position + ENTRY_HEADER_SIZE <= segment.m_capacity) {
+                int entry_length = buffer.getInt(position);
+                if ((entry_length <= 0) || (position + ENTRY_HEADER_SIZE + entry_length > segment.m_capacity)) {
+                    break;
+                }
+                if (position >= read_position) {
+                    segment.m_unread++;
+                }
+                position += ENTRY_HEADER_SIZE + entry_length;
+            }
+
+            segment.m_readPosition = (int) read_position;
+            segment.m_writePosition = position;
+            return segment;
+        }
+
+        boolean hasRoomFor(int length) {
+            return m_writePosition + ENTRY_HEADER_SIZE + length <= m_capacity;
+        }
+
+        void append(byte[] bytes, byte flags) {
+            MappedByteBuffer buffer = m_buffer;
+            int position = m_writePosition;
+
+            buffer.put(position + 4, flags);
+            buffer.position(position + ENTRY_HEADER_SIZE);
+            buffer.put(bytes);
+
+            // the length goes in last - until it is there, the entry does not exist
+            buffer.putInt(position, bytes.length);
+
+            m_writePosition = position + ENTRY_HEADER_SIZE + bytes.length;
+            m_unread++;
+        }
+
+        byte peekFlags() {
+            return m_buffer.get(m_readPosition + 4);
+        }
+
+        byte[] next() {
+            MappedByteBuffer buffer = m_buffer;
+            int length = buffer.getInt(m_readPosition);
+            byte[] entry = new byte[length];
+
+            buffer.position(m_readPosition + ENTRY_HEADER_SIZE);
+            buffer.get(entry);
+
+            m_readPosition += ENTRY_HEADER_SIZE + length;
+            buffer.putLong(READ_POSITION_OFFSET, m_readPosition);
+            m_unread--;
+
+            return entry;
+        }
+
+        void delete() {
+            unmap();
+            if (!m_file.delete()) {
+                // nothing can be read from it anymore; if we can't delete it now, we'll try again at the next startup
+                LOG.warn(CommI18NResourceKeys.SEGMENTED_SPOOL_CANNOT_DELETE_SEGMENT, m_file);
+            }
+        }
+
+        /**
+         * Releases the mapping right away rather than when the buffer gets garbage collected; some platforms do not
+         * allow deleting a file that is still mapped. If the VM does not support it, the mapping is left to the GC.
+         */
+        void unmap() {
+            MappedByteBuffer buffer = m_buffer;
+            m_buffer = null;
+
+            if (buffer != null) {
+                try {
+                    Method cleaner_method = buffer.getClass().getMethod("cleaner");
+                    cleaner_method.setAccessible(true);
+                    Object cleaner = cleaner_method.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                } catch (Throwable t) {
+                    // not supported on this VM
+                }
+            }
+        }
+
+        private static MappedByteBuffer map(File file, int capacity) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                // the mapping stays valid after the channel is closed
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+}
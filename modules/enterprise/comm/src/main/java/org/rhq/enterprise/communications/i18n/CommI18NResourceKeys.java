@@ -237,6 +237,27 @@ public interface CommI18NResourceKeys {
         @I18NMessage(value = "Die Maximalgrüße [{0}] muss größer oder gleich [{1}] sein", locale = "de") })
     String INVALID_MAX_SIZE = "PersistentFifo.invalid-max-size";
 
+    @I18NMessages( { @I18NMessage("Cannot create the command spool directory [{0}]") })
+    String SEGMENTED_SPOOL_CANNOT_CREATE_DIRECTORY = "SegmentedCommandSpool.cannot-create-directory";
+
+    @I18NMessages( { @I18NMessage("The command spool segment [{0}] is corrupt") })
+    String SEGMENTED_SPOOL_CORRUPT_SEGMENT = "SegmentedCommandSpool.corrupt-segment";
+
+    @I18NMessages( { @I18NMessage("Skipping the command spool segment [{0}] because it cannot be read; the commands in it will not be sent. Cause: {1}") })
+    String SEGMENTED_SPOOL_SKIPPED_SEGMENT = "SegmentedCommandSpool.skipped-segment";
+
+    @I18NMessages( { @I18NMessage("A compressed command spool entry is corrupt and cannot be decompressed") })
+    String SEGMENTED_SPOOL_CORRUPT_ENTRY = "SegmentedCommandSpool.corrupt-entry";
+
+    @I18NMessages( { @I18NMessage("The command spool is full - purged the oldest segment [{0}] which still had [{1}] commands in it") })
+    String SEGMENTED_SPOOL_PURGED_SEGMENT = "SegmentedCommandSpool.purged-segment";
+
+    @I18NMessages( { @I18NMessage("Failed to delete the command spool segment [{0}]; it will be deleted at the next startup") })
+    String SEGMENTED_SPOOL_CANNOT_DELETE_SEGMENT = "SegmentedCommandSpool.cannot-delete-segment";
+
+    @I18NMessages( { @I18NMessage("The command spool directory [{0}] is already in use by another command spool") })
+    String SEGMENTED_SPOOL_ALREADY_OPEN = "SegmentedCommandSpool.already-open";
+
     @I18NMessages( { @I18NMessage("Failed to execute remote POJO method [{0}]. Cause: {1}") })
     String CLIENT_REMOTE_POJO_INVOKER_EXECUTION_FAILURE = "ClientRemotePojoFactory.execution-failure";
 
@@ -346,6 +367,12 @@ public interface CommI18NResourceKeys {
     @I18NMessages( { @I18NMessage("Cannot access the command spool file [{0}] - cannot guarantee the delivery of commands to [{1}]. Cause: {2}") })
     String CLIENT_COMMAND_SENDER_COMMAND_SPOOL_ACCESS_ERROR = "ClientCommandSender.command-spool-access-error";
 
+    @I18NMessages( { @I18NMessage("Moved [{0}] commands from the old command spool file [{1}] to the command spool for [{2}]") })
+    String CLIENT_COMMAND_SENDER_LEGACY_SPOOL_IMPORTED = "ClientCommandSender.legacy-spool-imported";
+
+    @I18NMessages( { @I18NMessage("Failed to move the commands of the old command spool file [{0}] to the command spool for [{1}]; the commands left in it will be moved the next time the sender is created. Cause: {2}") })
+    String CLIENT_COMMAND_SENDER_LEGACY_SPOOL_IMPORT_FAILURE = "ClientCommandSender.legacy-spool-import-failure";
+
     @I18NMessages( { @I18NMessage("Failed to queue up the previously queued tasks - some commands are lost for [{0}]") })
     String CLIENT_COMMAND_SENDER_REQUEUE_FAILED = "ClientCommandSender.requeue-failed";
 
@@ -0,0 +1,193 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.util;
+
+/**
+ * A concurrency limit whose size follows the observed processing latency, using additive increase/multiplicative
+ * decrease (AIMD). The limit starts at, and never grows beyond, the configured maximum number of permits.
+ *
+ * <p>Every released permit reports how long its holder worked. The latencies are smoothed into a moving average which
+ * is compared against a baseline, the lowest average seen recently. While the average stays within
+ * {@link #LATENCY_TOLERANCE} times the baseline and the pool is in use, the limit grows by about one permit per round
+ * of completions. When the average exceeds that tolerance, or when the caller reports that a resource the work depends
+ * on is overloaded, the limit is cut by {@link #BACKOFF_RATIO}, at most once per average latency so that one slow round
+ * does not collapse the limit.</p>
+ *
+ * <p>All methods are synchronized; the work done under the lock is a handful of arithmetic operations.</p>
+ */
+public class AdaptiveConcurrencyLimit {
+    /**
+     * The average latency may be this many times the baseline latency before the limit is decreased.
+     */
+    public static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * The factor the limit is multiplied by when the server is congested.
+     */
+    public static final double BACKOFF_RATIO = 0.75;
+
+    /**
+     * Bounds of the retry-after hint given to denied callers, in milliseconds.
+     */
+    public static final long MIN_RETRY_AFTER = 1000L;
+    public static final long MAX_RETRY_AFTER = 60000L;
+
+    // weight of a new sample in the average latency
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    // how fast the baseline follows an average that is above it, so that the baseline is able to adjust to a
+    // permanently slower server, just much slower than the average latency itself reacts
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private double averageLatency;
+    private double baselineLatency;
+    private boolean overloaded;
+    private long lastDecrease;
+    private long decreases;
+
+    /**
+     * @param name the name of the limit, only used for display purposes
+     * @param maxLimit the configured number of permits, which is the initial and highest limit
+     */
+    public AdaptiveConcurrencyLimit(String name, int maxLimit) {
+        if (maxLimit <= 0) {
+            throw new IllegalArgumentException("maxLimit must be positive: " + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = 1;
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * @return <code>true</code> if a permit was granted and must be {@link #release(long, boolean) released}
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        ++inFlight;
+        return true;
+    }
+
+    /**
+     * Returns a permit and adjusts the limit.
+     *
+     * @param latency the time, in milliseconds, the permit was held
+     * @param overloaded <code>true</code> if a resource the limited work depends on is saturated
+     */
+    public synchronized void release(long latency, boolean overloaded) {
+        release(latency, overloaded, System.currentTimeMillis());
+    }
+
+    synchronized void release(long latency, boolean overloaded, long now) {
+        if (inFlight > 0) {
+            --inFlight;
+        }
+        this.overloaded = overloaded;
+
+        latency = Math.max(latency, 0L);
+        if (averageLatency == 0.0) {
+            averageLatency = latency;
+        } else {
+            averageLatency += (latency - averageLatency) * LATENCY_SMOOTHING;
+        }
+        if (baselineLatency == 0.0 || averageLatency < baselineLatency) {
+            baselineLatency = averageLatency;
+        } else {
+            baselineLatency += (averageLatency - baselineLatency) * BASELINE_DRIFT;
+        }
+
+        if (overloaded || averageLatency > baselineLatency * LATENCY_TOLERANCE) {
+            if (now - lastDecrease >= averageLatency) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                lastDecrease = now;
+                ++decreases;
+            }
+        } else if (inFlight + 1 >= limit / 2) {
+            // only grow while the permits are actually used, otherwise the limit drifts to the max while idle and
+            // means nothing when the load comes back
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * Estimates how long a denied caller should wait before retrying: the time it takes the permits to turn over as
+     * many times as needed to serve the callers denied before it. The hint doubles while the server is overloaded.
+     *
+     * @param deniedCount the number of callers denied since a permit was last released
+     *
+     * @return the retry-after hint, in milliseconds
+     */
+    public synchronized long getRetryAfter(int deniedCount) {
+        double rounds = 1.0 + ((double) deniedCount / getLimit());
+        double retryAfter = Math.max(averageLatency, 1.0) * rounds;
+        if (overloaded) {
+            retryAfter *= 2;
+        }
+        return Math.min(MAX_RETRY_AFTER, Math.max(MIN_RETRY_AFTER, (long) retryAfter));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of permits currently allowed to be held concurrently
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized long getAverageLatency() {
+        return (long) averageLatency;
+    }
+
+    public synchronized long getBaselineLatency() {
+        return (long) baselineLatency;
+    }
+
+    /**
+     * @return how many times the limit has been decreased
+     */
+    public synchronized long getDecreases() {
+        return decreases;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "limit=" + getLimit() + "/" + maxLimit + ", inFlight=" + inFlight + ", avgLatency="
+            + (long) averageLatency + "ms, baselineLatency=" + (long) baselineLatency + "ms, overloaded=" + overloaded
+            + ", decreases=" + decreases;
+    }
+}
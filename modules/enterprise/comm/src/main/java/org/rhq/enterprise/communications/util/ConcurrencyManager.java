@@ -18,8 +18,11 @@
  */
 package org.rhq.enterprise.communications.util;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import mazz.i18n.Logger;
@@ -40,12 +43,18 @@ import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
  * per counting semaphore by passing in a set of names with their associated number-of-permits-allowed to the
  * constructor.</p>
  *
+ * <p>Named limits can also be made adaptive. An adaptive limit is not backed by a counting semaphore but by an
+ * {@link AdaptiveConcurrencyLimit} that starts at the configured number of permits and shrinks when the time permits
+ * are held goes up or when the {@link LoadIndicator} reports the server is overloaded, growing back once the load
+ * drops. Threads denied an adaptive permit are told to retry after a time derived from the observed latency.</p>
+ *
  * @author John Mazzitelli
  */
 public class ConcurrencyManager {
     public static class Permit {
         private String name;
         private int managerId;
+        private long acquireTime;
     }
 
     private static final Logger LOG = CommI18NFactory.getLogger(ConcurrencyManager.class);
@@ -62,10 +71,33 @@ public class ConcurrencyManager {
     // of consecutive denials since the last release of a semaphore permit).
     private final Map<String, AtomicInteger> deniedCounts = new HashMap<String, AtomicInteger>();
 
+    // the names of the limits that are adaptive, this never changes after instantiation
+    private final Set<String> adaptiveLimitNames = new HashSet<String>();
+
+    // the adaptive limits (key=limit name, value=limit), used in place of semaphores for the adaptive limit names
+    private final Map<String, AdaptiveConcurrencyLimit> adaptiveLimits =
+        new HashMap<String, AdaptiveConcurrencyLimit>();
+
+    private final LoadIndicator loadIndicator;
+
     public ConcurrencyManager(Map<String, Integer> newPermitsAllowed) {
+        this(newPermitsAllowed, null, null);
+    }
+
+    /**
+     * @param newPermitsAllowed the number of permits allowed, keyed on permit name (may be <code>null</code>)
+     * @param newAdaptiveLimitNames the names of the permits whose limits adapt to the load (may be <code>null</code>)
+     * @param loadIndicator consulted by the adaptive limits, in addition to the latency (may be <code>null</code>)
+     */
+    public ConcurrencyManager(Map<String, Integer> newPermitsAllowed, Set<String> newAdaptiveLimitNames,
+        LoadIndicator loadIndicator) {
         if (newPermitsAllowed != null) {
             numPermitsAllowed.putAll(newPermitsAllowed);
         }
+        if (newAdaptiveLimitNames != null) {
+            adaptiveLimitNames.addAll(newAdaptiveLimitNames);
+        }
+        this.loadIndicator = loadIndicator;
     }
 
     /**
@@ -90,6 +122,20 @@ public class ConcurrencyManager {
             return permit;
         }
 
+        if (adaptiveLimitNames.contains(name)) {
+            AdaptiveConcurrencyLimit limit = getAdaptiveLimit(name);
+            if (limit == null) {
+                permit.name = null;
+                return permit;
+            }
+            if (!limit.tryAcquire()) {
+                int deniedCount = getDeniedCount(name).incrementAndGet();
+                throw new NotPermittedException(limit.getRetryAfter(deniedCount));
+            }
+            permit.acquireTime = System.currentTimeMillis();
+            return permit;
+        }
+
         Semaphore semaphore = getSemaphore(name);
         if (semaphore == null) {
             // there is no limit, always allow it
@@ -116,6 +162,16 @@ public class ConcurrencyManager {
     public void releasePermit(Permit permit) {
         // ignore this permit if it is null, indicated an infinite limit or if it was not granted by this specific concurrency manager instance
         if ((permit != null) && (permit.name != null) && (permit.managerId == this.hashCode())) {
+            if (adaptiveLimitNames.contains(permit.name)) {
+                AdaptiveConcurrencyLimit limit = getAdaptiveLimit(permit.name);
+                if (limit != null) {
+                    boolean overloaded = (loadIndicator != null) && loadIndicator.isOverloaded();
+                    limit.release(System.currentTimeMillis() - permit.acquireTime, overloaded);
+                }
+                getDeniedCount(permit.name).set(0);
+                return;
+            }
+
             Semaphore semaphore = getSemaphore(permit.name);
             if (semaphore != null) {
                 semaphore.release();
@@ -139,6 +195,52 @@ public class ConcurrencyManager {
         return new HashMap<String, Integer>(numPermitsAllowed);
     }
 
+    /**
+     * Returns the names of the limits that adapt to the load. The returned set is a copy and not backed by this
+     * manager.
+     *
+     * @return the adaptive limit names
+     */
+    public Set<String> getAdaptiveLimitNames() {
+        return new HashSet<String>(adaptiveLimitNames);
+    }
+
+    /**
+     * Returns the state of the adaptive limits that have been used so far: the current limit, the permits held, the
+     * observed latency and so on. This is meant for display, e.g. through a management interface.
+     *
+     * @return map keyed on permit names whose values describe the state of the adaptive limit
+     */
+    public Map<String, String> getAdaptiveLimitStates() {
+        Map<String, String> states = new HashMap<String, String>();
+        synchronized (adaptiveLimits) {
+            for (AdaptiveConcurrencyLimit limit : adaptiveLimits.values()) {
+                states.put(limit.getName(), limit.toString());
+            }
+        }
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Returns the number of permits currently allowed on the named limit. This is the configured number of permits
+     * unless the limit is adaptive and has been used, in which case it is the number the limit has adapted to.
+     *
+     * @param  name the name of the semaphore
+     *
+     * @return number of permits currently allowed on the named semaphore
+     */
+    public int getCurrentNumberOfPermitsAllowed(String name) {
+        if (adaptiveLimitNames.contains(name)) {
+            synchronized (adaptiveLimits) {
+                AdaptiveConcurrencyLimit limit = adaptiveLimits.get(name);
+                if (limit != null) {
+                    return limit.getLimit();
+                }
+            }
+        }
+        return getConfiguredNumberOfPermitsAllowed(name);
+    }
+
     /**
      * If the named semaphore has a configured number-of-permits-allowed (numPermitsAllowed) then the number of permits
      * allowed is returned. Otherwise, this checks system properties - if there is a system property with the given
@@ -204,6 +306,32 @@ public class ConcurrencyManager {
         return semaphore;
     }
 
+    /**
+     * Like {@link #getSemaphore(String)} but for adaptive limits. The limit is sized with the configured number of
+     * permits as its maximum.
+     *
+     * @param  name limit name
+     *
+     * @return the limit, or <code>null</code> if there is no limit for the given name
+     */
+    private AdaptiveConcurrencyLimit getAdaptiveLimit(String name) {
+        AdaptiveConcurrencyLimit limit;
+
+        synchronized (adaptiveLimits) {
+            limit = adaptiveLimits.get(name);
+
+            if (limit == null) {
+                int permits = getConfiguredNumberOfPermitsAllowed(name);
+                if (permits > 0) {
+                    limit = new AdaptiveConcurrencyLimit(name, permits);
+                    adaptiveLimits.put(name, limit);
+                }
+            }
+        }
+
+        return limit;
+    }
+
     private AtomicInteger getDeniedCount(String name) {
         AtomicInteger deniedCount;
 
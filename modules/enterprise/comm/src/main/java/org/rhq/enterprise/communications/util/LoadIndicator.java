@@ -0,0 +1,32 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.util;
+
+/**
+ * Tells the {@link ConcurrencyManager} whether a resource shared by the work it limits, such as a database connection
+ * pool, is saturated. Adaptive limits shrink while this is the case, regardless of the latency they observe.
+ */
+public interface LoadIndicator {
+    /**
+     * Called whenever an adaptive permit is released, so implementations should be cheap or cache their answer.
+     *
+     * @return <code>true</code> if the server should take on less work
+     */
+    boolean isOverloaded();
+}
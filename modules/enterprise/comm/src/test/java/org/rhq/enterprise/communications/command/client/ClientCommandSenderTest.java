@@ -19,7 +19,6 @@
 package org.rhq.enterprise.communications.command.client;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.LinkedList;
 import org.testng.annotations.Test;
 import org.rhq.enterprise.communications.command.Command;
@@ -92,10 +91,8 @@ public class ClientCommandSenderTest {
         config.commandSpoolFileMaxSize = 2000000L;
         config.maxConcurrent = 10;
 
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getCommandSpoolDirectory(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
-        PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-            config.commandSpoolFilePurgePercentage, false);
 
         // sent 500 guaranteed and 500 volatile commands, ensure we send all of them
         try {
@@ -114,9 +111,12 @@ public class ClientCommandSenderTest {
             // only volatile commands are returned - guaranteed commands are spooled (why did I do this? I lost the FIFO order of the commands now)
             // after drained, the only messages this sender will send are the spooled/guaranteed commands
             LinkedList<Runnable> drained_commands = sender.drainQueuedCommands();
-            assert fifo.count() == 500 : "did not persist enough: " + fifo.count();
+            assert getSpoolCount(sender) == 500 : "did not persist enough: " + getSpoolCount(sender);
             assert drained_commands.size() == 500 : "missing some volatile commands: " + drained_commands.size();
 
+            // the old sender has to release the command spool before the new one can take it over
+            sender.stopSending(false);
+
             // create a new sender and reconsitute the queue with our old volatile commands, persisted file has the rest
             sender = new ClientCommandSender(comm, config, drained_commands);
             sender.startSending();
@@ -131,11 +131,10 @@ public class ClientCommandSenderTest {
             assert comm.getSentCount() == 1000 : "should have been able to send all commands with two senders: "
                 + comm.getSentCount();
             assert comm.getSentSuccessfulCount() == 1000;
-            assert fifo.isEmpty();
-            assert fifo.count() == 0; // just checking - making sure isEmpty was right
+            assert getSpoolCount(sender) == 0;
         } finally {
             sender.stopSending(false);
-            getPersistentFifoFile(true);
+            getCommandSpoolDirectory(true);
         }
 
         return;
@@ -156,10 +155,8 @@ public class ClientCommandSenderTest {
         config.defaultTimeoutMillis = 500L; // default will be less than the time the comm.send will return
         comm.setSleepPeriod(1000L); // simulate the server taking 1sec to process the request
 
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getCommandSpoolDirectory(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
-        PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-            config.commandSpoolFilePurgePercentage, false);
 
         try {
             sender.startSending();
@@ -177,10 +174,10 @@ public class ClientCommandSenderTest {
             assert comm.getSentSuccessfulCount() == 0 : "should not have been able to send the command successfully: "
                 + comm.getSentSuccessfulCount();
 
-            assert fifo.count() == 1 : "not sending so we should have spooled that guaranteed command to disk";
+            assert getSpoolCount(sender) == 1 : "not sending so we should have spooled that guaranteed command to disk";
         } finally {
             sender.stopSending(false);
-            getPersistentFifoFile(true);
+            getCommandSpoolDirectory(true);
         }
 
         return;
@@ -200,7 +197,7 @@ public class ClientCommandSenderTest {
         config.defaultTimeoutMillis = 1000L; // default will be less than the time the comm.send will return
         comm.setSleepPeriod(1500L);
 
-        getPersistentFifoFile(true);
+        getCommandSpoolDirectory(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
 
         try {
@@ -216,7 +213,7 @@ public class ClientCommandSenderTest {
             assert comm.getSentSuccessfulCount() == 1 : "should not have sent the command more than once";
         } finally {
             sender.stopSending(false);
-            getPersistentFifoFile(true);
+            getCommandSpoolDirectory(true);
         }
 
         return;
@@ -237,7 +234,7 @@ public class ClientCommandSenderTest {
         config.defaultTimeoutMillis = 750L; // default will be less than the time the comm.send will return
         comm.setSleepPeriod(1250L);
 
-        getPersistentFifoFile(true);
+        getCommandSpoolDirectory(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
 
         try {
@@ -255,7 +252,42 @@ public class ClientCommandSenderTest {
             assert comm.getSentSuccessfulCount() == 1 : "should not have sent the command more than once successfully";
         } finally {
             sender.stopSending(false);
-            getPersistentFifoFile(true);
+            getCommandSpoolDirectory(true);
+        }
+
+        return;
+    }
+
+    /**
+     * Tests that commands found in an old style {@link PersistentFifo} spool file are carried over to the command spool
+     * and sent once the sender starts.
+     *
+     * @throws Exception
+     */
+    public void testImportLegacyCommandSpool() throws Exception {
+        DummyRemoteCommunicator comm = new DummyRemoteCommunicator();
+        ClientCommandSenderConfiguration config = createConfig();
+        getCommandSpoolDirectory(true);
+
+        File legacy_file = new File(config.dataDirectory, config.commandSpoolFileName);
+        PersistentFifo legacy_fifo = new PersistentFifo(legacy_file, config.commandSpoolFileMaxSize,
+            config.commandSpoolFilePurgePercentage, false);
+        legacy_fifo.putObject(new CommandAndCallback(createGenericCommand(), null));
+        legacy_fifo.putObject(new CommandAndCallback(createGenericCommand(), null));
+        legacy_fifo.close();
+
+        ClientCommandSender sender = new ClientCommandSender(comm, config);
+
+        try {
+            assert !legacy_file.exists() : "the old spool file should have been deleted after its import";
+            assert getSpoolCount(sender) == 2 : "the old spooled commands should have been imported";
+            sender.startSending();
+            Thread.sleep(1000L); // give it time to dequeue and send
+            assert getSpoolCount(sender) == 0 : "the commands should have been unspooled after the sender was started";
+            assert comm.getSentCount() == 2 : "should have sent the imported commands by now";
+        } finally {
+            sender.stopSending(false);
+            getCommandSpoolDirectory(true);
         }
 
         return;
@@ -271,7 +303,7 @@ public class ClientCommandSenderTest {
         DummyRemoteCommunicator comm = new DummyRemoteCommunicator();
         GenericCommand command = createGenericCommand();
         ClientCommandSenderConfiguration config = createConfig();
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getCommandSpoolDirectory(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
 
         try {
@@ -283,18 +315,16 @@ public class ClientCommandSenderTest {
 
             sender.sendAsynchGuaranteed(command, null);
 
-            PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-                config.commandSpoolFilePurgePercentage, false);
-            assert fifo.count() == 1 : "not sending so we should have spooled that guaranteed command to disk";
+            assert getSpoolCount(sender) == 1 : "not sending so we should have spooled that guaranteed command to disk";
             assert comm.getSentCount() == 0 : "should not have sent any command yet";
             sender.startSending();
             Thread.sleep(1000L); // give it time to dequeue and send; there is no throttling enabled so the sending should happen fast
-            assert fifo.count() == 0 : "the command should have been unspooled after the sender was started";
+            assert getSpoolCount(sender) == 0 : "the command should have been unspooled after the sender was started";
             assert comm.getSentCount() == 1 : "should have sent the command by now";
             assert comm.getSentSuccessfulCount() == 1 : "should have sent the command by now";
         } finally {
             sender.stopSending(false);
-            getPersistentFifoFile(true);
+            getCommandSpoolDirectory(true);
         }
 
         return;
@@ -310,7 +340,7 @@ public class ClientCommandSenderTest {
         DummyRemoteCommunicator comm = new DummyRemoteCommunicator();
         GenericCommand command = createGenericCommand();
         ClientCommandSenderConfiguration config = createConfig();
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getCommandSpoolDirectory(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
 
         try {
@@ -329,18 +359,16 @@ public class ClientCommandSenderTest {
                 }
             });
 
-            PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-                config.commandSpoolFilePurgePercentage, false);
-            assert fifo.count() == 1 : "not sending so we should have spooled that guaranteed command to disk";
+            assert getSpoolCount(sender) == 1 : "not sending so we should have spooled that guaranteed command to disk";
             assert comm.getSentCount() == 0 : "should not have sent any command yet";
             sender.startSending();
             Thread.sleep(1000L); // give it time to dequeue and send; there is no throttling enabled so the sending should happen fast
-            assert fifo.count() == 0 : "the command should have been unspooled after the sender was started";
+            assert getSpoolCount(sender) == 0 : "the command should have been unspooled after the sender was started";
             assert comm.getSentCount() == 1 : "should have sent the command by now";
             assert comm.getSentSuccessfulCount() == 1 : "should have sent the command by now";
         } finally {
             sender.stopSending(false);
-            getPersistentFifoFile(true);
+            getCommandSpoolDirectory(true);
         }
 
         return;
@@ -390,27 +418,40 @@ public class ClientCommandSenderTest {
     }
 
     /**
-     * Returns the spool file. Caller can ask to start with an empty one by passing in <code>true</code>.
+     * Returns the number of commands the sender has in its command spool.
      *
-     * @param  delete_it if caller wants to make sure the persistent file is empty, set this to <code>true</code>
+     * @param  sender the sender
      *
-     * @return the spool file where command/callback pairs are stored
+     * @return number of spooled commands
      */
-    private File getPersistentFifoFile(boolean delete_it) {
+    private long getSpoolCount(ClientCommandSender sender) {
+        return sender.getMetrics().getNumberCommandsSpooled();
+    }
+
+    /**
+     * Returns the spool directory. Caller can ask to start with an empty one by passing in <code>true</code>.
+     *
+     * @param  delete_it if caller wants to make sure the spool is empty, set this to <code>true</code>
+     *
+     * @return the spool directory where command/callback pairs are stored
+     */
+    private File getCommandSpoolDirectory(boolean delete_it) {
         // we know the file name that the command spool file is - that's always the same and its in the data directory
-        File ret_file = new File(createConfig().dataDirectory, "command-spool.dat");
+        File data_dir = createConfig().dataDirectory;
+        File ret_dir = new File(data_dir, "command-spool.dat" + SegmentedCommandSpool.DIRECTORY_SUFFIX);
 
         if (delete_it) {
-            // in case we can't outright delete it, let's first empty it
-            try {
-                new PersistentFifo(ret_file, 10000L, 0, false).initializeEmptyFile();
-            } catch (IOException ignore) {
+            File[] segments = ret_dir.listFiles();
+            if (segments != null) {
+                for (File segment : segments) {
+                    segment.delete();
+                }
             }
 
-            // now try to delete it
-            ret_file.delete();
+            // an old style spool file would get imported into the spool, so get rid of that too
+            new File(data_dir, "command-spool.dat").delete();
         }
 
-        return ret_file;
+        return ret_dir;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,261 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the segmented command spool.
+ */
+@Test(groups = "comm.client")
+public class SegmentedCommandSpoolTest {
+    private File spoolDir;
+    private File fifoFile;
+
+    @BeforeMethod
+    public void setUp() {
+        String tmpDir = System.getProperty("java.io.tmpdir");
+        spoolDir = new File(tmpDir, "TEST-spool" + SegmentedCommandSpool.DIRECTORY_SUFFIX);
+        fifoFile = new File(tmpDir, "TEST-spool.data");
+        cleanUp();
+    }
+
+    @AfterMethod
+    public void cleanUp() {
+        File[] files = spoolDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        spoolDir.delete();
+        fifoFile.delete();
+    }
+
+    /**
+     * Tests putting and taking from the spool.
+     */
+    public void testSpool() throws Exception {
+        doSpoolTests(false);
+    }
+
+    /**
+     * Tests putting and taking from the spool with compression on.
+     */
+    public void testSpoolCompressed() throws Exception {
+        doSpoolTests(true);
+    }
+
+    /**
+     * Entries that were not taken must still be there, and only those, when the spool is opened again.
+     */
+    public void testReopen() throws Exception {
+        SegmentedCommandSpool spool = new SegmentedCommandSpool(spoolDir, 100000L, 75, false);
+        for (int i = 0; i < 1000; i++) {
+            spool.put(("entry " + i).getBytes());
+        }
+        for (int i = 0; i < 400; i++) {
+            assert ("entry " + i).equals(new String(spool.take()));
+        }
+        spool.close();
+
+        spool = new SegmentedCommandSpool(spoolDir, 100000L, 75, false);
+        assert spool.count() == 600 : "should have found the entries not taken yet: " + spool.count();
+        spool.put("entry 1000".getBytes());
+        for (int i = 400; i <= 1000; i++) {
+            assert ("entry " + i).equals(new String(spool.take()));
+        }
+        assert spool.take() == null;
+        assert spool.isEmpty();
+        spool.close();
+
+        assert spoolDir.list().length == 0 : "segments should be deleted once consumed: " + spoolDir.list().length;
+    }
+
+    /**
+     * Only one spool may have the directory open at a time; once closed, another may take it over, and once no spool
+     * has it open it can be deleted.
+     */
+    public void testDirectoryInUse() throws Exception {
+        SegmentedCommandSpool spool = new SegmentedCommandSpool(spoolDir, 100000L, 75, false);
+        spool.put("entry".getBytes());
+
+        try {
+            new SegmentedCommandSpool(spoolDir, 100000L, 75, false);
+            assert false : "should not have been able to open a directory that is in use";
+        } catch (IOException expected) {
+            // expected
+        }
+
+        try {
+            SegmentedCommandSpool.delete(spoolDir);
+            assert false : "should not have been able to delete a directory that is in use";
+        } catch (IOException expected) {
+            // expected
+        }
+
+        spool.close();
+        assert spool.count() == 1 : "a closed spool should still know its count";
+
+        SegmentedCommandSpool other = new SegmentedCommandSpool(spoolDir, 100000L, 75, false);
+        assert "entry".equals(new String(other.take()));
+        other.put("other".getBytes());
+        other.close();
+
+        // the closed spool reopens its directory when used again
+        assert "other".equals(new String(spool.take()));
+        spool.put("last".getBytes());
+        spool.close();
+
+        assert SegmentedCommandSpool.delete(spoolDir) : "should have deleted the spool directory";
+        assert !spoolDir.exists();
+    }
+
+    /**
+     * Once full, the spool deletes its oldest segments, keeping the newest entries.
+     */
+    public void testPurge() throws Exception {
+        SegmentedCommandSpool spool = new SegmentedCommandSpool(spoolDir, 100000L, 50, false);
+        byte[] entry = new byte[1000];
+        int total = 500;
+
+        for (int i = 0; i < total; i++) {
+            Arrays.fill(entry, (byte) i);
+            spool.put(entry);
+        }
+
+        long count = spool.count();
+        assert count < total : "some entries should have been purged";
+        assert count > 0 : "not everything should have been purged";
+
+        long size = 0L;
+        for (File segment : spoolDir.listFiles()) {
+            size += segment.length();
+        }
+        assert size <= 100000L : "spool should have been shrunk below its max size: " + size;
+
+        // the entries that survived must be the newest ones, still in order
+        for (long i = total - count; i < total; i++) {
+            byte[] taken = spool.take();
+            assert taken[0] == (byte) i : "expected entry " + i;
+        }
+        assert spool.take() == null;
+        spool.close();
+    }
+
+    /**
+     * Tests that the spool can be dumped without consuming it.
+     */
+    public void testDumpContents() throws Exception {
+        SegmentedCommandSpool spool = new SegmentedCommandSpool(spoolDir, 100000L, 75, true);
+        spool.putObject("first");
+        spool.putObject("second");
+        spool.take();
+        spool.flush();
+
+        StringWriter out = new StringWriter();
+        SegmentedCommandSpool.dumpContents(new PrintWriter(out), spoolDir, 0);
+        assert out.toString().contains("second") : out;
+        assert !out.toString().contains("first") : out;
+        assert spool.count() == 1;
+        spool.close();
+    }
+
+    /**
+     * Compares replaying 100,000 spooled commands from the segmented spool and from the {@link PersistentFifo}. This
+     * is not a strict benchmark, the numbers are only printed out.
+     */
+    public void testReplayPerformance() throws Exception {
+        int commands = 100000;
+        byte[] command = new byte[500];
+        Arrays.fill(command, (byte) 'x');
+
+        SegmentedCommandSpool spool = new SegmentedCommandSpool(spoolDir, 200000000L, 90, false);
+        long spoolTime = replay(spool, commands, command);
+        spool.close();
+
+        PersistentFifo fifo = new PersistentFifo(fifoFile, 200000000L, 90, false);
+        long fifoTime = replay(fifo, commands, command);
+        fifo.close();
+
+        print("Replayed " + commands + " commands: SegmentedCommandSpool=" + spoolTime + "ms, PersistentFifo="
+            + fifoTime + "ms");
+    }
+
+    private long replay(CommandSpool spool, int commands, byte[] command) throws Exception {
+        for (int i = 0; i < commands; i++) {
+            spool.put(command);
+        }
+        spool.flush();
+
+        long start = System.currentTimeMillis();
+        int taken = 0;
+        while (spool.take() != null) {
+            taken++;
+        }
+        assert taken == commands : "should have replayed all commands: " + taken;
+        return System.currentTimeMillis() - start;
+    }
+
+    private void doSpoolTests(boolean compress) throws Exception {
+        SegmentedCommandSpool spool = new SegmentedCommandSpool(spoolDir, 1000L, 0, compress);
+
+        assert spool.take() == null : "SHOULD NOT BE ABLE TO TAKE";
+        assert spool.isEmpty() : "SHOULD BE EMPTY";
+        assert spool.count() == 0 : "SHOULD BE EMPTY - count should be 0";
+
+        spool.put("Entry 1".getBytes());
+
+        assert !spool.isEmpty() : "SHOULD NOT BE EMPTY";
+        assert spool.count() == 1 : "count should be 1";
+        assert "Entry 1".equals(new String(spool.take()));
+        assert spool.take() == null : "SHOULD NOT BE ABLE TO TAKE";
+        assert spool.isEmpty() : "SHOULD BE EMPTY";
+
+        spool.put("Entry 2".getBytes());
+        spool.put("Entry 3".getBytes());
+        spool.put("Entry 4".getBytes());
+        assert spool.count() == 3 : "count should be 3";
+        assert "Entry 2".equals(new String(spool.take()));
+        spool.put("Entry 5".getBytes());
+        assert "Entry 3".equals(new String(spool.take()));
+        assert "Entry 4".equals(new String(spool.take()));
+        assert "Entry 5".equals(new String(spool.take()));
+        assert spool.take() == null : "SHOULD NOT BE ABLE TO TAKE";
+        assert spool.count() == 0 : "count should be 0";
+
+        spool.putObject(Long.valueOf(42L));
+        assert Long.valueOf(42L).equals(spool.takeObject());
+        assert spool.takeObject() == null;
+
+        spool.close();
+    }
+
+    private void print(String s) {
+        System.out.println(s);
+    }
+}
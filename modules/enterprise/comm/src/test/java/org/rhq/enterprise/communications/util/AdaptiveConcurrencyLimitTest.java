@@ -0,0 +1,112 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.util;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link AdaptiveConcurrencyLimit}.
+ */
+@Test
+public class AdaptiveConcurrencyLimitTest {
+    public void testLimitDecreasesWhenLatencyGoesUp() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 20);
+        long now = 0L;
+
+        // steady state, the limit stays at the max
+        for (int i = 0; i < 100; i++) {
+            assert limit.tryAcquire();
+            limit.release(100L, false, now += 100L);
+        }
+        assert limit.getLimit() == 20 : limit;
+        assert limit.getBaselineLatency() == 100L : limit;
+
+        // processing slows down a lot
+        for (int i = 0; i < 100; i++) {
+            assert limit.tryAcquire();
+            limit.release(1000L, false, now += 1000L);
+        }
+        assert limit.getLimit() < 20 : limit;
+        assert limit.getDecreases() > 0 : limit;
+    }
+
+    public void testLimitDecreasesAtMostOncePerLatency() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 100);
+        long now = 10000L;
+
+        for (int i = 0; i < 10; i++) {
+            assert limit.tryAcquire();
+        }
+        for (int i = 0; i < 10; i++) {
+            limit.release(500L, true, now); // all complete at the same time
+        }
+        assert limit.getDecreases() == 1 : limit;
+        assert limit.getLimit() == 75 : limit;
+    }
+
+    public void testLimitNeverBelowOne() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 4);
+        long now = 0L;
+
+        for (int i = 0; i < 50; i++) {
+            assert limit.tryAcquire();
+            limit.release(10L, true, now += 1000L);
+        }
+        assert limit.getLimit() == 1 : limit;
+        assert limit.tryAcquire();
+        assert !limit.tryAcquire();
+    }
+
+    public void testLimitRecovers() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 10);
+        long now = 0L;
+
+        for (int i = 0; i < 10; i++) {
+            assert limit.tryAcquire();
+            limit.release(10L, true, now += 1000L);
+        }
+        assert limit.getLimit() == 1 : limit;
+
+        // the overload is gone, keep the pool busy and the limit grows back to the max, but not beyond
+        for (int i = 0; i < 1000; i++) {
+            while (limit.tryAcquire()) {
+                // fill the pool
+            }
+            limit.release(10L, false, now += 10L);
+            while (limit.getInFlight() > 0) {
+                limit.release(10L, false, now);
+            }
+        }
+        assert limit.getLimit() == 10 : limit;
+    }
+
+    public void testRetryAfter() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 2);
+        assert limit.getRetryAfter(1) == AdaptiveConcurrencyLimit.MIN_RETRY_AFTER;
+
+        for (int i = 0; i < 100; i++) {
+            assert limit.tryAcquire();
+            limit.release(4000L, false, 4000L * i);
+        }
+        // half of the denied callers can go after each turn over of the two permits
+        assert limit.getRetryAfter(0) == 4000L : limit.getRetryAfter(0);
+        assert limit.getRetryAfter(4) == 12000L : limit.getRetryAfter(4);
+        assert limit.getRetryAfter(1000) == AdaptiveConcurrencyLimit.MAX_RETRY_AFTER;
+    }
+}
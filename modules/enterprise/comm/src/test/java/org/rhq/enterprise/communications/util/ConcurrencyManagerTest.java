@@ -18,6 +18,7 @@
  */
 package org.rhq.enterprise.communications.util;
 
+import java.util.Collections;
 import java.util.HashMap;
 import org.testng.annotations.Test;
 import org.rhq.enterprise.communications.util.ConcurrencyManager.Permit;
@@ -91,4 +92,51 @@ public class ConcurrencyManagerTest {
         cm2.releasePermit(permit2);
         cm2.releasePermit(permit1); // a no-op since permit1 wasn't granted by cm2
     }
+
+    public void testAdaptiveConcurrencyManager() {
+        String foo = "foo";
+
+        HashMap<String, Integer> map = new HashMap<String, Integer>();
+        map.put(foo, 2);
+        final boolean[] overloaded = new boolean[] { false };
+        ConcurrencyManager cm = new ConcurrencyManager(map, Collections.singleton(foo), new LoadIndicator() {
+            public boolean isOverloaded() {
+                return overloaded[0];
+            }
+        });
+
+        assert cm.getAdaptiveLimitNames().contains(foo);
+        assert cm.getCurrentNumberOfPermitsAllowed(foo) == 2;
+
+        Permit permit1 = cm.getPermit(foo);
+        Permit permit2 = cm.getPermit(foo);
+        try {
+            cm.getPermit(foo);
+            assert false : "should not have succeeded";
+        } catch (NotPermittedException e) {
+            assert e.getSleepBeforeRetry() >= AdaptiveConcurrencyLimit.MIN_RETRY_AFTER : e.getSleepBeforeRetry();
+            assert e.getSleepBeforeRetry() <= AdaptiveConcurrencyLimit.MAX_RETRY_AFTER : e.getSleepBeforeRetry();
+        }
+
+        // the server reports it is overloaded, the limit must shrink
+        overloaded[0] = true;
+        cm.releasePermit(permit1);
+        cm.releasePermit(permit2);
+        assert cm.getCurrentNumberOfPermitsAllowed(foo) == 1 : cm.getAdaptiveLimitStates();
+        assert cm.getConfiguredNumberOfPermitsAllowed(foo) == 2;
+        assert cm.getAdaptiveLimitStates().containsKey(foo);
+
+        Permit permit = cm.getPermit(foo);
+        try {
+            cm.getPermit(foo);
+            assert false : "should not have succeeded with the decreased limit";
+        } catch (NotPermittedException e) {
+            // this exception is the one that is to be expected
+        }
+        cm.releasePermit(permit);
+
+        ConcurrencyManager cm2 = new ConcurrencyManager(map, Collections.singleton(foo), null);
+        cm2.releasePermit(permit); // should be ignored since permit wasn't granted by cm2
+        assert cm2.getAdaptiveLimitStates().isEmpty();
+    }
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.apache.commons.logging.LogFactory;
 import org.hibernate.StatelessSession;
 
 import org.rhq.server.metrics.domain.MetricsTable;
+import org.rhq.server.metrics.domain.RawDataPartitions;
 import org.rhq.server.metrics.migrator.DataMigrator;
 import org.rhq.server.metrics.migrator.DataMigrator.DataMigratorConfiguration;
 import org.rhq.server.metrics.migrator.DataMigrator.Task;
@@ -223,6 +224,7 @@ public class RawDataMigrator extends AbstractMigrationWorker implements Callable
                 Date creationTime = new Date(creationTimeMillis);
 
                 batch.add(QueryBuilder.insertInto(MetricsTable.RAW.toString()).value("schedule_id", scheduleId)
+                    .value("day", new Date(RawDataPartitions.getDay(creationTimeMillis)))
                     .value("time", creationTime)
                     .value("value", Double.parseDouble(rawDataPoint[MigrationQuery.VALUE_INDEX].toString()))
                     .using(ttl((int) itemTTLSeconds)));
@@ -23,6 +23,7 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.rhq.test.AssertUtils.timedAssertion;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -58,6 +59,10 @@ import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.alert.AlertDefinitionManagerLocal;
 import org.rhq.enterprise.server.alert.AlertManagerLocal;
+import org.rhq.enterprise.server.alert.CachedConditionManagerLocal;
+import org.rhq.enterprise.server.alert.engine.jms.model.AbstractAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.ActiveAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.InactiveAlertConditionMessage;
 import org.rhq.enterprise.server.measurement.AvailabilityManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementDataManagerLocal;
 import org.rhq.enterprise.server.resource.metadata.test.UpdatePluginMetadataTestBase;
@@ -518,6 +523,57 @@ public class AlertConditionTest extends UpdatePluginMetadataTestBase {
         assert alerts.size() == 1 : "1 alert should have fired: " + alerts;
     }
 
+    /**
+     * The messages of a batch are processed in one transaction, the condition logs of a message must see the changes
+     * made by the earlier messages of the batch.
+     */
+    public void testActiveAndInactiveMessagesOfOneConditionInOneBatch() throws Exception {
+        MeasurementDefinition metricDef = createResourceWithMetricSchedule();
+        AlertDefinition alertDef = createAlertDefinitionWithTwoConditionsALL(metricDef, resource.getId());
+
+        int greaterThanId = 0;
+        int lessThanId = 0;
+        for (AlertCondition cond : alertDef.getConditions()) {
+            if (cond.getComparator().equals(">")) {
+                greaterThanId = cond.getId();
+            } else {
+                lessThanId = cond.getId();
+            }
+        }
+        assert greaterThanId > 0 && lessThanId > 0 : "failed to get the condition IDs - something is wrong with test "
+            + "setup";
+
+        // the log of the first message is removed by the second, the third message must create a new one
+        long lastMatch = getTimestamp(10);
+        List<AbstractAlertConditionMessage> messages = new ArrayList<AbstractAlertConditionMessage>();
+        messages.add(new ActiveAlertConditionMessage(lessThanId, getTimestamp(30), "30.0"));
+        messages.add(new InactiveAlertConditionMessage(lessThanId, getTimestamp(20)));
+        messages.add(new ActiveAlertConditionMessage(lessThanId, lastMatch, "20.0"));
+
+        CachedConditionManagerLocal cachedConditionManager = LookupUtil.getCachedConditionManager();
+        List<Alert> newAlerts = cachedConditionManager.processCachedConditionMessagesNewTx(Collections.singletonMap(
+            alertDef.getId(), messages));
+        assert newAlerts.isEmpty() : "only one of the two conditions is true, no alert should have fired: "
+            + newAlerts;
+
+        Set<AlertConditionLog> logs = getAlertConditionWithLogs(lessThanId).getConditionLogs();
+        assert logs.size() == 1 : "there should be exactly one unmatched log for the condition: " + logs;
+        AlertConditionLog unmatchedLog = logs.iterator().next();
+        assert unmatchedLog.getAlert() == null : "the log should not be matched: " + unmatchedLog;
+        Assert.assertEquals(unmatchedLog.getCtime(), lastMatch, "the log should be the one of the last message");
+
+        // now make the other condition true as well, the alert must fire with the log of the last message
+        messages = new ArrayList<AbstractAlertConditionMessage>();
+        messages.add(new ActiveAlertConditionMessage(greaterThanId, getTimestamp(5), "50.0"));
+        newAlerts = cachedConditionManager.processCachedConditionMessagesNewTx(Collections.singletonMap(
+            alertDef.getId(), messages));
+        assert newAlerts.size() == 1 : "both conditions are true, one alert should have fired: " + newAlerts;
+
+        PageList<Alert> alerts = getAlerts(resource.getId());
+        assert alerts.size() == 1 : "1 alert should have fired: " + alerts;
+        Assert.assertEquals(alerts.get(0).getConditionLogs().size(), 2, "the alert should have a log per condition");
+    }
+
     private PageList<Alert> getAlerts(int resourceId) {
         AlertManagerLocal alertManager = LookupUtil.getAlertManager();
         AlertCriteria alertCriteria = new AlertCriteria();
@@ -26,10 +26,13 @@ import static org.rhq.core.domain.resource.CreateResourceStatus.SUCCESS;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -124,6 +127,8 @@ public class DiscoveryBossBeanTest extends AbstractEJB3Test {
         resourceTypeManager = LookupUtil.getResourceTypeManager();
 
         initDB();
+        // the types are recreated for every test
+        ResourceTypeCache.getSingleton().invalidate();
 
         platformType = getEntityManager().find(ResourceType.class, 15641);
         serverType = getEntityManager().find(ResourceType.class, 15642);
@@ -233,6 +238,80 @@ public class DiscoveryBossBeanTest extends AbstractEJB3Test {
         assertNotNull(results.getPlatformSyncInfo());
     }
 
+    /**
+     * Merges a large report twice, the second merge finding every resource in inventory, and logs how long the merges
+     * took. The size of the report is set with the <code>rhq.test.discovery.report-size</code> system property, i.e.
+     * the number of servers, each of which has 10 services.
+     *
+     * <p>Real reports can be replayed instead by setting <code>rhq.test.discovery.report-dir</code> to a directory of
+     * serialized {@link InventoryReport}s. Their agent and resource types must exist, so this must be run against a
+     * database with the agent registered and the plugins deployed. The replayed resources are not cleaned up.</p>
+     */
+    @Test(groups = "integration.ejb3")
+    public void testLargeInventoryReportMerge() throws Exception {
+        String reportDir = System.getProperty("rhq.test.discovery.report-dir");
+        if (null != reportDir) {
+            File[] reportFiles = new File(reportDir).listFiles();
+            assertNotNull("Not a directory: " + reportDir, reportFiles);
+            Arrays.sort(reportFiles);
+            for (File reportFile : reportFiles) {
+                InventoryReport report = readReport(reportFile);
+                timeMerge(reportFile.getName() + " (initial)", report);
+                timeMerge(reportFile.getName() + " (re-merge)", report);
+            }
+            return;
+        }
+
+        int numServers = Integer.getInteger("rhq.test.discovery.report-size", 100);
+        InventoryReport inventoryReport = new InventoryReport(agent);
+        Resource platform = new Resource(prefix("large"), prefix("platform"), platformType);
+        platform.setUuid(UUID.randomUUID().toString());
+        for (int i = 0; i < numServers; ++i) {
+            Resource server = new Resource(prefix("server-" + i), prefix("server " + i), serverType);
+            server.setUuid(UUID.randomUUID().toString());
+            platform.addChildResource(server);
+            for (int j = 0; j < 10; ++j) {
+                // the same keys under every server, resource keys only need to be unique among siblings
+                Resource service = new Resource(prefix("service-" + j), prefix("service " + j),
+                    (j % 2 == 0) ? serviceType1 : serviceType2);
+                service.setUuid(UUID.randomUUID().toString());
+                server.addChildResource(service);
+            }
+        }
+        inventoryReport.addAddedRoot(platform);
+
+        MergeInventoryReportResults results = timeMerge("initial", inventoryReport);
+        int platformId = results.getPlatformSyncInfo().getPlatform().getId();
+        int expectedCount = 1 + (numServers * 11);
+        assertEquals(expectedCount, discoveryBoss.getResourceSyncInfo(platformId).size());
+
+        // the agent reports the resources again, e.g. after its inventory was purged
+        results = timeMerge("re-merge", inventoryReport);
+        assertEquals(platformId, results.getPlatformSyncInfo().getPlatform().getId());
+        assertEquals(expectedCount, discoveryBoss.getResourceSyncInfo(platformId).size());
+    }
+
+    private MergeInventoryReportResults timeMerge(String description, InventoryReport inventoryReport)
+        throws Exception {
+        InventoryReport transferred = serialize(inventoryReport);
+        long start = System.currentTimeMillis();
+        MergeInventoryReportResults results = discoveryBoss.mergeInventoryReport(transferred);
+        long duration = System.currentTimeMillis() - start;
+        assertNotNull(results);
+        LOG.info("Merged inventory report " + description + " with " + inventoryReport.getResourceCount()
+            + " resources in " + duration + "ms");
+        return results;
+    }
+
+    private InventoryReport readReport(File file) throws Exception {
+        ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file));
+        try {
+            return (InventoryReport) ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+
     // given test interaction there could be ignored types, make sure they are not relevant to these tests
     private boolean checkIgnoredTypes(MergeInventoryReportResults results) {
         return checkIgnoredTypes(results, 0);
@@ -175,6 +175,55 @@ public class EventManagerTest extends AbstractEJB3Test {
         });
     }
 
+    @Test
+    public void testHistogramsOfLongRange() throws Exception {
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                Resource resource = SessionTestHelper.createNewResource(em, "fake resource");
+                EventDefinition eDef = createEventDefinition(resource);
+                em.persist(eDef);
+                em.flush();
+
+                // two days in hourly buckets, read from the hourly event counts
+                long hour = 60L * 60L * 1000L;
+                long now = System.currentTimeMillis();
+                long begin = now - (now % hour) - (48L * hour);
+                long end = begin + (48L * hour);
+
+                EventSource evSrc = new EventSource("ESource", eDef, resource);
+                Event info = new Event("EType", "ESource", begin + hour + 1000L, EventSeverity.INFO, "info", evSrc);
+                Event warn = new Event("EType", "ESource", begin + hour + 2000L, EventSeverity.WARN, "warn", evSrc);
+                Event fatal = new Event("EType", "ESource", begin + (30L * hour), EventSeverity.FATAL, "fatal", evSrc);
+                eventManager.addEventData(newEventMap(evSrc, wrapEvents(info, warn, fatal)));
+
+                Subject overlord = LookupUtil.getSubjectManager().getOverlord();
+                int resourceId = resource.getId();
+                int[] counts = eventManager.getEventCounts(overlord, resourceId, begin, end, 48);
+                assert counts[1] == 2 : "Expected 2 events in bucket 1, got " + counts[1];
+                assert counts[30] == 1 : "Expected 1 event in bucket 30, got " + counts[30];
+
+                EventSeverity[] severities = eventManager.getSeverityBuckets(overlord, resourceId, begin, end, 48);
+                assert severities[0] == null : "Expected no events in bucket 0, got " + severities[0];
+                assert severities[1] == EventSeverity.WARN : "Expected WARN in bucket 1, got " + severities[1];
+                assert severities[30] == EventSeverity.FATAL : "Expected FATAL in bucket 30, got " + severities[30];
+
+                // the hourly event counts follow the deletion of events
+                EntityContext context = EntityContext.forResource(resourceId);
+                List<EventComposite> fatalEvents = eventManager.findEventComposites(overlord, context, begin, end,
+                    new EventSeverity[] { EventSeverity.FATAL }, null, null, PageControl.getUnlimitedInstance());
+                assert fatalEvents.size() == 1 : "Expected 1 FATAL event, got " + fatalEvents.size();
+                eventManager.deleteEventsForContext(overlord, context,
+                    Collections.singletonList(fatalEvents.get(0).getEventId()));
+
+                counts = eventManager.getEventCounts(overlord, resourceId, begin, end, 48);
+                assert counts[30] == 0 : "Expected no events in bucket 30, got " + counts[30];
+                severities = eventManager.getSeverityBuckets(overlord, resourceId, begin, end, 48);
+                assert severities[30] == null : "Expected no events in bucket 30, got " + severities[30];
+            }
+        });
+    }
+
     @Test
     public void testGetEventDetailForEventId() {
         executeInTransaction(new TransactionCallback() {
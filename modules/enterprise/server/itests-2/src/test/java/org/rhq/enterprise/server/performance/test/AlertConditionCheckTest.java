@@ -0,0 +1,244 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.performance.test;
+
+import static org.rhq.core.domain.measurement.DataType.MEASUREMENT;
+import static org.rhq.core.domain.measurement.NumericType.DYNAMIC;
+import static org.rhq.core.domain.resource.ResourceCategory.SERVER;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.testng.ITestResult;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.AlertCondition;
+import org.rhq.core.domain.alert.AlertConditionCategory;
+import org.rhq.core.domain.alert.AlertDampening;
+import org.rhq.core.domain.alert.AlertDefinition;
+import org.rhq.core.domain.alert.AlertPriority;
+import org.rhq.core.domain.alert.BooleanExpression;
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDefinition;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.enterprise.server.alert.AlertDefinitionManagerLocal;
+import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
+import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
+import org.rhq.enterprise.server.alert.engine.internal.AlertConditionCacheCoordinator;
+import org.rhq.enterprise.server.test.AbstractEJB3PerformanceTest;
+import org.rhq.enterprise.server.test.TransactionCallback;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Measures checking a million measurement datapoints against 100k cached threshold conditions, in reports of the size
+ * the agents send. The values stay below the thresholds so that the lookups and comparisons are measured rather than
+ * the JMS messages of matched conditions.
+ */
+@Test(groups = "PERF")
+public class AlertConditionCheckTest extends AbstractEJB3PerformanceTest {
+
+    private static final String PREFIX = AlertConditionCheckTest.class.getSimpleName();
+
+    private static final int NUM_DEFINITIONS = 100;
+
+    private static final int NUM_RESOURCES = 1000;
+
+    private static final int DATAPOINTS = 1000000;
+
+    private static final int REPORT_SIZE = 1000;
+
+    private static final double THRESHOLD = 1000.0;
+
+    private static final String CHECK = "Check conditions";
+
+    private AlertConditionCacheManagerLocal alertConditionCacheManager;
+
+    private List<Integer> scheduleIds;
+
+    private int agentId;
+
+    @Override
+    protected void beforeMethod(Method method) throws Exception {
+        super.setupTimings(method);
+        alertConditionCacheManager = LookupUtil.getAlertConditionCacheManager();
+        scheduleIds = new ArrayList<Integer>(NUM_DEFINITIONS * NUM_RESOURCES);
+        purgeInventory();
+        createInventory();
+    }
+
+    @Override
+    protected void afterMethod(ITestResult result, Method meth) throws Exception {
+        super.afterMethod(result, meth);
+        purgeInventory();
+        alertConditionCacheManager.reloadCachesForAgent(agentId);
+    }
+
+    public void checkMeasurementData() throws Exception {
+        alertConditionCacheManager.reloadCachesForAgent(agentId);
+        int conditions = AlertConditionCacheCoordinator.getInstance().getCacheSize(
+            AlertConditionCacheCoordinator.Cache.MeasurementDataCache);
+        assertEquals("Every schedule should have a cached condition", scheduleIds.size(), conditions);
+
+        // a tenth of the datapoints are for schedules without a condition, as for an agent with partial coverage
+        Random random = new Random(42);
+        List<MeasurementData[]> reports = new ArrayList<MeasurementData[]>(DATAPOINTS / REPORT_SIZE);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < DATAPOINTS / REPORT_SIZE; ++i) {
+            MeasurementData[] report = new MeasurementData[REPORT_SIZE];
+            for (int j = 0; j < REPORT_SIZE; ++j) {
+                int index = random.nextInt(scheduleIds.size() + scheduleIds.size() / 10);
+                int scheduleId = (index < scheduleIds.size()) ? scheduleIds.get(index) : -index;
+                report[j] = new MeasurementDataNumeric(now, scheduleId, random.nextDouble() * THRESHOLD);
+            }
+            // the agent of a report is looked up from its first datum
+            report[0] = new MeasurementDataNumeric(now, scheduleIds.get(i % scheduleIds.size()), 0.0);
+            reports.add(report);
+        }
+
+        // warm up the lookup path before measuring
+        for (MeasurementData[] report : reports) {
+            alertConditionCacheManager.checkConditions(report);
+        }
+
+        int matched = 0;
+        startTiming(CHECK);
+        for (MeasurementData[] report : reports) {
+            AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(report);
+            matched += stats.matched;
+        }
+        endTiming(CHECK);
+
+        assertEquals("No datapoint should have crossed its threshold", 0, matched);
+        // the target is a million datapoints per second
+        assertTiming(CHECK, 1000L);
+    }
+
+    private void createInventory() {
+        final ResourceType resourceType = new ResourceType(PREFIX + "_TYPE", PREFIX + "_PLUGIN", SERVER, null);
+        final Agent agent = new Agent(PREFIX + "_AGENT", "localhost", 9999, "", PREFIX + "_TOKEN");
+        final List<MeasurementDefinition> definitions = new ArrayList<MeasurementDefinition>(NUM_DEFINITIONS);
+        final List<Integer> resourceIds = new ArrayList<Integer>(NUM_RESOURCES);
+
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                EntityManager em = getEntityManager();
+                em.persist(resourceType);
+                em.persist(agent);
+                for (int i = 0; i < NUM_DEFINITIONS; ++i) {
+                    MeasurementDefinition definition = new MeasurementDefinition(resourceType, PREFIX + "_DYNAMIC" + i);
+                    definition.setDefaultOn(true);
+                    definition.setDataType(MEASUREMENT);
+                    definition.setMeasurementType(DYNAMIC);
+                    em.persist(definition);
+                    definitions.add(definition);
+                }
+            }
+        });
+        agentId = agent.getId();
+
+        // one transaction per resource keeps the persistence context small
+        for (int i = 0; i < NUM_RESOURCES; ++i) {
+            final int index = i;
+            executeInTransaction(false, new TransactionCallback() {
+                @Override
+                public void execute() throws Exception {
+                    EntityManager em = getEntityManager();
+                    Resource resource = new Resource(PREFIX + "_KEY" + index, PREFIX + "_NAME" + index,
+                        em.find(ResourceType.class, resourceType.getId()));
+                    resource.setUuid(PREFIX + "_UUID" + index);
+                    resource.setAgent(em.find(Agent.class, agent.getId()));
+                    em.persist(resource);
+                    resourceIds.add(resource.getId());
+
+                    for (MeasurementDefinition definition : definitions) {
+                        MeasurementSchedule schedule = new MeasurementSchedule(em.getReference(
+                            MeasurementDefinition.class, definition.getId()), resource);
+                        schedule.setEnabled(true);
+                        resource.addSchedule(schedule);
+                        em.persist(schedule);
+                        scheduleIds.add(schedule.getId());
+                    }
+                }
+            });
+        }
+
+        // one alert definition per resource, with a threshold condition on each of its metrics
+        Subject overlord = LookupUtil.getSubjectManager().getOverlord();
+        AlertDefinitionManagerLocal alertDefinitionManager = LookupUtil.getAlertDefinitionManager();
+        for (Integer resourceId : resourceIds) {
+            Set<AlertCondition> conditions = new HashSet<AlertCondition>(NUM_DEFINITIONS);
+            for (MeasurementDefinition definition : definitions) {
+                AlertCondition condition = new AlertCondition();
+                condition.setCategory(AlertConditionCategory.THRESHOLD);
+                condition.setName(definition.getName());
+                condition.setComparator(">");
+                condition.setThreshold(THRESHOLD);
+                condition.setMeasurementDefinition(definition);
+                conditions.add(condition);
+            }
+
+            AlertDefinition alertDefinition = new AlertDefinition();
+            alertDefinition.setName(PREFIX + "_ALERT" + resourceId);
+            alertDefinition.setEnabled(true);
+            alertDefinition.setPriority(AlertPriority.MEDIUM);
+            alertDefinition.setAlertDampening(new AlertDampening(AlertDampening.Category.NONE));
+            alertDefinition.setRecoveryId(0);
+            alertDefinition.setConditionExpression(BooleanExpression.ANY);
+            alertDefinition.setConditions(conditions);
+            alertDefinitionManager.createAlertDefinitionInNewTransaction(overlord, alertDefinition, resourceId, true);
+        }
+    }
+
+    private void purgeInventory() {
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                EntityManager em = getEntityManager();
+                String alertDefinitions = "SELECT d.id FROM AlertDefinition d "
+                    + "WHERE d.resource.resourceType.name = :type";
+                em.createQuery("DELETE FROM AlertCondition c WHERE c.alertDefinition.id IN (" + alertDefinitions + ")")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM AlertDefinition d WHERE d.id IN (" + alertDefinitions + ")")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM MeasurementSchedule s WHERE s.resource.resourceType.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM Resource r WHERE r.resourceType.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM MeasurementDefinition d WHERE d.resourceType.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM ResourceType t WHERE t.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM Agent a WHERE a.name = :name").setParameter("name", PREFIX + "_AGENT")
+                    .executeUpdate();
+            }
+        });
+    }
+}
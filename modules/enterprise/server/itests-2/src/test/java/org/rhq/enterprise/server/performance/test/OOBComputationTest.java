@@ -0,0 +1,187 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.performance.test;
+
+import static org.rhq.core.domain.measurement.DataType.MEASUREMENT;
+import static org.rhq.core.domain.measurement.NumericType.DYNAMIC;
+import static org.rhq.core.domain.resource.ResourceCategory.SERVER;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.joda.time.DateTime;
+import org.testng.ITestResult;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.measurement.MeasurementBaseline;
+import org.rhq.core.domain.measurement.MeasurementDefinition;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.enterprise.server.measurement.MeasurementOOBManagerLocal;
+import org.rhq.enterprise.server.test.AbstractEJB3PerformanceTest;
+import org.rhq.enterprise.server.test.TransactionCallback;
+import org.rhq.enterprise.server.util.LookupUtil;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
+
+/**
+ * Measures the end-to-end OOB computation of an hour with 200k schedules, a quarter of which are out of bounds.
+ */
+@Test(groups = "PERF")
+public class OOBComputationTest extends AbstractEJB3PerformanceTest {
+
+    private static final String PREFIX = OOBComputationTest.class.getSimpleName();
+
+    private static final int NUM_DEFINITIONS = 200;
+
+    private static final int NUM_RESOURCES = 1000;
+
+    private static final String COMPUTE = "Compute OOBs";
+
+    private MeasurementOOBManagerLocal oobManager;
+
+    private List<Integer> scheduleIds;
+
+    @Override
+    protected void beforeMethod(Method method) throws Exception {
+        super.setupTimings(method);
+        oobManager = LookupUtil.getOOBManager();
+        scheduleIds = new ArrayList<Integer>(NUM_DEFINITIONS * NUM_RESOURCES);
+        purgeInventory();
+        createInventory();
+    }
+
+    @Override
+    protected void afterMethod(ITestResult result, Method meth) throws Exception {
+        super.afterMethod(result, meth);
+        purgeInventory();
+    }
+
+    public void computeOOBsForLastHour() throws Exception {
+        Subject overlord = LookupUtil.getSubjectManager().getOverlord();
+        long lastHour = new DateTime().hourOfDay().roundFloorCopy().minusHours(1).getMillis();
+
+        List<AggregateNumericMetric> metrics = new ArrayList<AggregateNumericMetric>(scheduleIds.size());
+        for (int i = 0; i < scheduleIds.size(); ++i) {
+            // baselines are [10, 20], every fourth metric goes past the upper bound
+            double max = (i % 4 == 0) ? 25.0 + (i % 10) : 19.0;
+            metrics.add(new AggregateNumericMetric(scheduleIds.get(i), Bucket.ONE_HOUR, max - 1, 11.0, max, lastHour));
+        }
+
+        startTiming(COMPUTE);
+        oobManager.computeOOBsForLastHour(overlord, metrics);
+        endTiming(COMPUTE);
+
+        // a second round updates the OOBs of the first one
+        startTiming(COMPUTE + " again");
+        oobManager.computeOOBsForLastHour(overlord, metrics);
+        endTiming(COMPUTE + " again");
+
+        Number count = (Number) getEntityManager().createQuery("SELECT COUNT(o) FROM MeasurementOOB o")
+            .getSingleResult();
+        assertEquals("Every fourth schedule should have an OOB", scheduleIds.size() / 4, count.intValue());
+    }
+
+    private void createInventory() {
+        final ResourceType resourceType = new ResourceType(PREFIX + "_TYPE", PREFIX + "_PLUGIN", SERVER, null);
+        final Agent agent = new Agent(PREFIX + "_AGENT", "localhost", 9999, "", PREFIX + "_TOKEN");
+        final List<MeasurementDefinition> definitions = new ArrayList<MeasurementDefinition>(NUM_DEFINITIONS);
+
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                EntityManager em = getEntityManager();
+                em.persist(resourceType);
+                em.persist(agent);
+                for (int i = 0; i < NUM_DEFINITIONS; ++i) {
+                    MeasurementDefinition definition = new MeasurementDefinition(resourceType, PREFIX + "_DYNAMIC" + i);
+                    definition.setDefaultOn(true);
+                    definition.setDataType(MEASUREMENT);
+                    definition.setMeasurementType(DYNAMIC);
+                    em.persist(definition);
+                    definitions.add(definition);
+                }
+            }
+        });
+
+        // one transaction per resource keeps the persistence context small
+        for (int i = 0; i < NUM_RESOURCES; ++i) {
+            final int index = i;
+            executeInTransaction(false, new TransactionCallback() {
+                @Override
+                public void execute() throws Exception {
+                    EntityManager em = getEntityManager();
+                    Resource resource = new Resource(PREFIX + "_KEY" + index, PREFIX + "_NAME" + index,
+                        em.find(ResourceType.class, resourceType.getId()));
+                    resource.setUuid(PREFIX + "_UUID" + index);
+                    resource.setAgent(em.find(Agent.class, agent.getId()));
+                    em.persist(resource);
+
+                    for (MeasurementDefinition definition : definitions) {
+                        MeasurementSchedule schedule = new MeasurementSchedule(em.getReference(
+                            MeasurementDefinition.class, definition.getId()), resource);
+                        schedule.setEnabled(true);
+                        resource.addSchedule(schedule);
+                        em.persist(schedule);
+
+                        MeasurementBaseline baseline = new MeasurementBaseline();
+                        baseline.setSchedule(schedule);
+                        baseline.setMean(15.0);
+                        baseline.setMin(10.0);
+                        baseline.setMax(20.0);
+                        em.persist(baseline);
+
+                        scheduleIds.add(schedule.getId());
+                    }
+                }
+            });
+        }
+    }
+
+    private void purgeInventory() {
+        executeInTransaction(false, new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                EntityManager em = getEntityManager();
+                String schedules = "SELECT s.id FROM MeasurementSchedule s WHERE s.resource.resourceType.name = :type";
+                em.createQuery("DELETE FROM MeasurementOOB o WHERE o.id IN (" + schedules + ")")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM MeasurementBaseline b WHERE b.schedule.id IN (" + schedules + ")")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM MeasurementSchedule s WHERE s.id IN (" + schedules + ")")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM Resource r WHERE r.resourceType.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM MeasurementDefinition d WHERE d.resourceType.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM ResourceType t WHERE t.name = :type")
+                    .setParameter("type", PREFIX + "_TYPE").executeUpdate();
+                em.createQuery("DELETE FROM Agent a WHERE a.name = :name").setParameter("name", PREFIX + "_AGENT")
+                    .executeUpdate();
+            }
+        });
+    }
+}
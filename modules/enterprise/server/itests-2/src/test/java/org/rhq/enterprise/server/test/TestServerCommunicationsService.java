@@ -149,6 +149,25 @@ public class TestServerCommunicationsService implements TestServerCommunications
     public void setConfigurationUpdateConcurrencyLimit(Integer maxConcurrency) {
     }
 
+    public Boolean getAdaptiveConcurrencyLimits() {
+        return false;
+    }
+
+    public void setAdaptiveConcurrencyLimits(Boolean flag) {
+    }
+
+    public Map<String, String> getAdaptiveConcurrencyLimitStates() {
+        return new HashMap<String, String>();
+    }
+
+    public Integer getMeasurementReportCurrentConcurrencyLimit() {
+        return 1;
+    }
+
+    public Integer getAvailabilityReportCurrentConcurrencyLimit() {
+        return 1;
+    }
+
     public Boolean getMaintenanceModeAtStartup() {
         return Boolean.FALSE;
     }
@@ -53,8 +53,6 @@ public class AlertConditionLogManagerBean implements AlertConditionLogManagerLoc
     @EJB
     private AlertConditionLogManagerLocal alertConditionLogManager;
     @EJB
-    private AlertConditionManagerLocal alertConditionManager;
-    @EJB
     private AlertDampeningManagerLocal alertDampeningManager;
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
@@ -81,11 +79,11 @@ public class AlertConditionLogManagerBean implements AlertConditionLogManagerLoc
     }
 
     @Override
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void updateUnmatchedLogByAlertConditionId(int alertConditionId, long ctime, String value) {
         /*
-         * this method is marked as REQUIRES_NEW because I want this log work to complete before I resume the
-         * outer-scoping transaction, which will operate on the results.
+         * this method joins the transaction of the caller, which processes a batch of condition messages. A new
+         * transaction would not see the logs removed or added by the earlier messages of the batch, and would block on
+         * the rows they locked. The log is flushed so that the caller can operate on the results.
          */
         try {
             try {
@@ -110,6 +108,11 @@ public class AlertConditionLogManagerBean implements AlertConditionLogManagerLoc
             } catch (NoResultException nre) { // this is the expected case 90% of the time
                 // lookup the condition entity
                 AlertCondition condition = entityManager.find(AlertCondition.class, alertConditionId);
+                if (condition == null) {
+                    // the condition was just deleted, don't let the failed insert roll back the whole batch
+                    log.debug("AlertCondition[id=" + alertConditionId + "] was deleted, not inserting a log entry");
+                    return;
+                }
 
                 // persist the log entry
                 AlertConditionLog conditionLog = new AlertConditionLog(condition, ctime);
@@ -172,10 +175,7 @@ public class AlertConditionLogManagerBean implements AlertConditionLogManagerLoc
     }
 
     @Override
-    public Alert checkForCompletedAlertConditionSet(int alertConditionId) {
-        Integer alertDefinitionId = alertConditionManager
-            .getAlertDefinitionByConditionIdNewTx(alertConditionId);
-
+    public Alert checkForCompletedAlertConditionSet(int alertConditionId, int alertDefinitionId) {
         // ok, so figure out whether all of the conditions have been met
         boolean conditionSetResult = evaluateConditionSet(alertDefinitionId);
 
@@ -42,9 +42,10 @@ public interface AlertConditionLogManagerLocal {
 
     /**
      * @param alertConditionId
+     * @param alertDefinitionId the definition of the condition, already known by the caller
      * @return The newly fired alert for a completed condition set, or null if no alert was fired
      */
-    Alert checkForCompletedAlertConditionSet(int alertConditionId);
+    Alert checkForCompletedAlertConditionSet(int alertConditionId, int alertDefinitionId);
 
     /**
      * Used for internal processing, exposed here so the tiniest amount of data can be gotten in a new transaction
@@ -18,6 +18,8 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
@@ -38,6 +40,7 @@ import org.rhq.core.domain.alert.AlertCondition;
 import org.rhq.core.domain.alert.AlertConditionCategory;
 import org.rhq.core.domain.alert.AlertDefinition;
 import org.rhq.core.domain.alert.composite.AbstractAlertConditionCategoryComposite;
+import org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.criteria.AlertDefinitionCriteria;
@@ -177,6 +180,25 @@ public class AlertConditionManagerBean implements AlertConditionManagerLocal {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public List<AlertConditionDefinitionComposite> getAlertConditionDefinitionCompositesNewTx(
+        Collection<Integer> alertConditionIds) {
+        List<AlertConditionDefinitionComposite> result = new ArrayList<AlertConditionDefinitionComposite>(
+            alertConditionIds.size());
+        List<Integer> ids = new ArrayList<Integer>(alertConditionIds);
+
+        // stay below the maximum number of IN list expressions supported by Oracle
+        for (int i = 0; i < ids.size(); i += 1000) {
+            Query query = entityManager.createNamedQuery(AlertCondition.QUERY_FIND_DEFINITION_COMPOSITES_BY_IDS);
+            query.setParameter("alertConditionIds", ids.subList(i, Math.min(i + 1000, ids.size())));
+            result.addAll(query.getResultList());
+        }
+
+        return result;
+    }
+
     @Override
     public int purgeOrphanedAlertConditions() {
         Query purgeQuery = entityManager.createNamedQuery(AlertCondition.QUERY_DELETE_ORPHANED);
@@ -18,11 +18,15 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.Collection;
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.rhq.core.domain.alert.AlertCondition;
 import org.rhq.core.domain.alert.AlertConditionCategory;
 import org.rhq.core.domain.alert.composite.AbstractAlertConditionCategoryComposite;
+import org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.core.domain.util.PageControl;
@@ -44,5 +48,15 @@ public interface AlertConditionManagerLocal {
 
     InventoryStatus getResourceStatusByConditionIdNewTx(int alertConditionId);
 
+    /**
+     * Set-based version of {@link #getAlertDefinitionByConditionIdNewTx(int)} and
+     * {@link #getResourceStatusByConditionIdNewTx(int)}.
+     *
+     * @param alertConditionIds the ids of the conditions to look up
+     * @return a composite for each condition that still exists and belongs to an enabled alert definition
+     */
+    List<AlertConditionDefinitionComposite> getAlertConditionDefinitionCompositesNewTx(
+        Collection<Integer> alertConditionIds);
+
     int purgeOrphanedAlertConditions();
 }
\ No newline at end of file
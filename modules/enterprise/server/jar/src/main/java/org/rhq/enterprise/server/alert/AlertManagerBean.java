@@ -53,7 +53,6 @@ import org.rhq.core.domain.alert.AlertDefinition;
 import org.rhq.core.domain.alert.notification.AlertNotification;
 import org.rhq.core.domain.alert.notification.AlertNotificationLog;
 import org.rhq.core.domain.alert.notification.ResultState;
-import org.rhq.core.domain.alert.notification.SenderResult;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.common.EntityContext;
@@ -551,6 +550,9 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
         /*
          * make this method public in case we show the notification failure to the user in the UI in the future and want
          * to give them some way to explicitly try to re-send the notification for some client-side auditing purposes
+         *
+         * the notifications are only queued here, they are sent by the AlertNotificationDispatcher so that a slow
+         * sender does not hold up the processing of alert conditions
          */
         try {
             if (log.isDebugEnabled()) {
@@ -580,28 +582,17 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
                             if (notificationSender == null) {
                                 notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
                                     "Failed to obtain a sender with given name");
-                            } else {
-                                try {
-                                    SenderResult result = notificationSender.send(alert);
-                                    if (log.isDebugEnabled()) {
-                                        log.debug(result);
-                                    }
-
-                                    if (result == null) {
-                                        notificationLog = new AlertNotificationLog(alert, senderName,
-                                            ResultState.UNKNOWN, "Sender did not return any result");
-                                    } else {
-                                        notificationLog = new AlertNotificationLog(alert, senderName, result);
-                                    }
-                                } catch (Throwable t) {
-                                    log.error("Notification processing terminated abruptly" + t.getMessage());
-                                    notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
-                                        "Notification processing terminated abruptly, cause: " + t.getMessage());
-                                }
+                            } else if (!alertSenderPluginManager.getNotificationDispatcher().dispatch(alert,
+                                senderName, notificationSender)) {
+                                notificationLog = new AlertNotificationLog(alert, senderName, ResultState.FAILURE,
+                                    "Notification was not sent as the notification queue of the sender is full");
                             }
                         }
 
-                        alertManager.addNotificationLog(alert.getId(), notificationLog);
+                        // dispatched notifications record their result once they are sent
+                        if (null != notificationLog) {
+                            alertManager.addNotificationLog(alert.getId(), notificationLog);
+                        }
 
                     } catch (Throwable t) {
                         log.error(
@@ -665,17 +656,10 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
             return new ArrayList<String>(0); // No email to send -> no bad addresses
         }
 
-        AlertDefinition alertDefinition = alert.getAlertDefinition();
-        Resource resource = alertDefinition.getResource();
+        Resource resource = alert.getAlertDefinition().getResource();
         Map<Integer, String> ancestry = resourceManager.getResourcesAncestry(subjectManager.getOverlord(),
             new Integer[] { resource.getId() }, ResourceAncestryFormat.VERBOSE);
-        Map<String, String> alertMessage = emailManager.getAlertEmailMessage(ancestry.get(resource.getId()), //
-            resource.getName(), //
-            alertDefinition.getName(), //
-            alertDefinition.getPriority().toString(), //
-            new Date(alert.getCtime()).toString(), //
-            prettyPrintAlertConditions(alert.getConditionLogs(), false), //
-            prettyPrintAlertURL(alert));
+        Map<String, String> alertMessage = getAlertEmailMessage(alert, ancestry);
 
         String messageSubject = alertMessage.keySet().iterator().next();
         String messageBody = alertMessage.values().iterator().next();
@@ -694,6 +678,65 @@ public class AlertManagerBean implements AlertManagerLocal, AlertManagerRemote {
         return badAddresses;
     }
 
+    @Override
+    public Collection<String> sendAlertNotificationEmails(List<Alert> alerts, Collection<String> emailAddresses) {
+        if (alerts.size() == 1) {
+            return sendAlertNotificationEmails(alerts.get(0), emailAddresses);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Sending alert notifications for " + alerts.size() + " alerts in one email...");
+        }
+
+        if (emailAddresses.size() == 0) {
+            return new ArrayList<String>(0); // No email to send -> no bad addresses
+        }
+
+        Set<Integer> resourceIds = new HashSet<Integer>();
+        for (Alert alert : alerts) {
+            resourceIds.add(alert.getAlertDefinition().getResource().getId());
+        }
+        Map<Integer, String> ancestry = resourceManager.getResourcesAncestry(subjectManager.getOverlord(),
+            resourceIds.toArray(new Integer[resourceIds.size()]), ResourceAncestryFormat.VERBOSE);
+
+        // the body is made of the messages of every alert, as they would have been sent one by one
+        String messageSubject = "[ALERT] " + alerts.size() + " alerts fired";
+        StringBuilder messageBody = new StringBuilder();
+        for (Alert alert : alerts) {
+            if (messageBody.length() > 0) {
+                messageBody.append(NEW_LINE).append("==========================================").append(NEW_LINE)
+                    .append(NEW_LINE);
+            }
+            messageBody.append(getAlertEmailMessage(alert, ancestry).values().iterator().next());
+        }
+
+        Set<String> uniqueAddresses = new HashSet<String>(emailAddresses);
+        Collection<String> badAddresses = emailManager.sendEmail(uniqueAddresses, messageSubject,
+            messageBody.toString());
+
+        if (log.isDebugEnabled()) {
+            if (badAddresses.isEmpty()) {
+                log.debug("All notifications for " + alerts.size() + " alerts succeeded");
+            } else {
+                log.debug("Sending email notifications for " + badAddresses + " failed");
+            }
+        }
+
+        return badAddresses;
+    }
+
+    private Map<String, String> getAlertEmailMessage(Alert alert, Map<Integer, String> ancestry) {
+        AlertDefinition alertDefinition = alert.getAlertDefinition();
+        Resource resource = alertDefinition.getResource();
+        return emailManager.getAlertEmailMessage(ancestry.get(resource.getId()), //
+            resource.getName(), //
+            alertDefinition.getName(), //
+            alertDefinition.getPriority().toString(), //
+            new Date(alert.getCtime()).toString(), //
+            prettyPrintAlertConditions(alert.getConditionLogs(), false), //
+            prettyPrintAlertURL(alert));
+    }
+
     private static String NEW_LINE = System.getProperty("line.separator");
 
     /**
@@ -83,6 +83,14 @@ public interface AlertManagerLocal {
 
     Collection<String> sendAlertNotificationEmails(Alert alert, Collection<String> emailAddresses);
 
+    /**
+     * Sends one email with the messages of all the given alerts.
+     * @param alerts the alerts to notify about
+     * @param emailAddresses the recipients
+     * @return the addresses the email could not be sent to
+     */
+    Collection<String> sendAlertNotificationEmails(List<Alert> alerts, Collection<String> emailAddresses);
+
     String prettyPrintAlertURL(Alert alert);
 
     // !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
@@ -18,6 +18,10 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -37,9 +41,7 @@ import org.rhq.enterprise.server.alert.engine.jms.model.ActiveAlertConditionMess
 import org.rhq.enterprise.server.alert.engine.jms.model.InactiveAlertConditionMessage;
 
 /**
- * see {@link CachedConditionManagerLocal#processCachedConditionMessage(
- * org.rhq.enterprise.server.alert.engine.jms.model.AbstractAlertConditionMessage, Integer)}
- * for more information.
+ * see {@link CachedConditionManagerLocal#processCachedConditionMessagesNewTx(Map)} for more information.
  *
  * @author Joseph Marques
  */
@@ -59,7 +61,24 @@ public class CachedConditionManagerBean implements CachedConditionManagerLocal {
 
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public Alert processCachedConditionMessageNewTx(AbstractAlertConditionMessage conditionMessage, Integer definitionId) {
+    public List<Alert> processCachedConditionMessagesNewTx(
+        Map<Integer, List<AbstractAlertConditionMessage>> conditionMessagesByDefinitionId) {
+        List<Alert> result = new ArrayList<Alert>();
+
+        for (Map.Entry<Integer, List<AbstractAlertConditionMessage>> entry : conditionMessagesByDefinitionId
+            .entrySet()) {
+            for (AbstractAlertConditionMessage conditionMessage : entry.getValue()) {
+                Alert newAlert = processCachedConditionMessage(conditionMessage, entry.getKey());
+                if (null != newAlert) {
+                    result.add(newAlert);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private Alert processCachedConditionMessage(AbstractAlertConditionMessage conditionMessage, Integer definitionId) {
         Alert result = null;
 
         /*
@@ -84,8 +103,8 @@ public class CachedConditionManagerBean implements CachedConditionManagerLocal {
             alertConditionLogManager.updateUnmatchedLogByAlertConditionId(activeConditionMessage.getAlertConditionId(),
                 activeConditionMessage.getTimestamp(), activeConditionMessage.getValue());
 
-            result = alertConditionLogManager.checkForCompletedAlertConditionSet(activeConditionMessage
-                .getAlertConditionId());
+            result = alertConditionLogManager.checkForCompletedAlertConditionSet(
+                activeConditionMessage.getAlertConditionId(), definitionId);
 
         } else if (conditionMessage instanceof InactiveAlertConditionMessage) {
             // first do some bookkeeping by removing partially matched condition logs
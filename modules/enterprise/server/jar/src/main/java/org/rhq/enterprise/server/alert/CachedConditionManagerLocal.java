@@ -18,6 +18,9 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.ejb.Local;
 import javax.ejb.TransactionAttributeType;
 
@@ -37,9 +40,13 @@ public interface CachedConditionManagerLocal {
      * will be visible to it as well as any other thread that is blocked, waiting for it
      * to complete.
      *
-     * @param conditionMessage
-     * @param definitionId
-     * @return the newly fired alert resulting from the condition message, or null if no alert was fired.
+     * The messages of a batch are all processed in one transaction. The messages of each
+     * definition are processed in list order, and the caller must hold the
+     * {@link org.rhq.enterprise.server.util.concurrent.AlertSerializer} lock of every definition.
+     *
+     * @param conditionMessagesByDefinitionId the condition messages of the batch, keyed by alert definition id
+     * @return the newly fired alerts resulting from the condition messages, empty if no alert was fired.
      */
-    Alert processCachedConditionMessageNewTx(AbstractAlertConditionMessage conditionMessage, Integer definitionId);
+    List<Alert> processCachedConditionMessagesNewTx(
+        Map<Integer, List<AbstractAlertConditionMessage>> conditionMessagesByDefinitionId);
 }
@@ -76,12 +76,23 @@ import org.rhq.enterprise.server.util.LookupUtil;
  */
 class AgentConditionCache extends AbstractConditionCache {
 
+    /*
+     * The caches are filled into these maps while loading and then frozen into the read-only snapshots below, which
+     * are what condition checks look at. A cache is never modified once constructed; a reload builds a whole new
+     * AgentConditionCache which the coordinator swaps in.
+     */
     private Map<Integer, List<NumericDoubleCacheElement>> measurementDataCache; // key: schedule ID
     private Map<Integer, List<MeasurementTraitCacheElement>> measurementTraitCache; // key: schedule ID
     private Map<Integer, List<CallTimeDataCacheElement>> callTimeCache; // key: schedule ID
     private Map<Integer, List<EventCacheElement>> eventsCache; // key: resource ID
     private Map<Integer, List<DriftCacheElement>> driftCache; // key: resource ID
 
+    private final ImmutableIntMap<List<NumericDoubleCacheElement>> measurementDataSnapshot;
+    private final ImmutableIntMap<List<MeasurementTraitCacheElement>> measurementTraitSnapshot;
+    private final ImmutableIntMap<List<CallTimeDataCacheElement>> callTimeSnapshot;
+    private final ImmutableIntMap<List<EventCacheElement>> eventsSnapshot;
+    private final ImmutableIntMap<List<DriftCacheElement>> driftSnapshot;
+
     private AlertConditionManagerLocal alertConditionManager;
     private MeasurementDataManagerLocal measurementDataManager;
     private SubjectManagerLocal subjectManager;
@@ -104,6 +115,18 @@ class AgentConditionCache extends AbstractConditionCache {
         subjectManager = LookupUtil.getSubjectManager();
 
         loadCachesForAgent(agentId);
+
+        measurementDataSnapshot = ImmutableIntMap.copyOf(measurementDataCache);
+        measurementTraitSnapshot = ImmutableIntMap.copyOf(measurementTraitCache);
+        callTimeSnapshot = ImmutableIntMap.copyOf(callTimeCache);
+        eventsSnapshot = ImmutableIntMap.copyOf(eventsCache);
+        driftSnapshot = ImmutableIntMap.copyOf(driftCache);
+
+        measurementDataCache = null;
+        measurementTraitCache = null;
+        callTimeCache = null;
+        eventsCache = null;
+        driftCache = null;
     }
 
     /**
@@ -222,14 +245,17 @@ class AgentConditionCache extends AbstractConditionCache {
 
             /*
              * yes, calculatedValue may be null, but that's OK because the match
-             * method for MeasurementBaselineCacheElement handles nulls just fine
+             * method for MeasurementBaselineCacheElement handles nulls just fine; the schedule
+             * may not have a baseline yet, in which case the element waits for it to show up
+             * in the baseline store
              */
-            Double calculatedValue = getCalculatedBaselineValue(alertConditionId, baselineComposite, optionStatus,
-                threshold);
+            Double calculatedValue = (baselineComposite.getBaselineId() == null) ? Double.NaN
+                : getCalculatedBaselineValue(alertConditionId, baselineComposite, optionStatus, threshold);
 
             try {
                 MeasurementBaselineCacheElement cacheElement = new MeasurementBaselineCacheElement(
-                    alertConditionOperator, calculatedValue, alertConditionId, optionStatus);
+                    alertConditionOperator, calculatedValue, alertConditionId, optionStatus,
+                    baselineComposite.getScheduleId(), threshold);
 
                 // auto-boxing (of alertConditionId) is always safe
                 addTo("measurementDataCache", measurementDataCache, baselineComposite.getScheduleId(), cacheElement,
@@ -581,23 +607,23 @@ class AgentConditionCache extends AbstractConditionCache {
     }
 
     private List<? extends NumericDoubleCacheElement> lookupMeasurementDataCacheElements(int scheduleId) {
-        return measurementDataCache.get(scheduleId); // yup, might be null
+        return measurementDataSnapshot.get(scheduleId); // yup, might be null
     }
 
     private List<? extends CallTimeDataCacheElement> lookupCallTimeDataCacheElements(int scheduleId) {
-        return callTimeCache.get(scheduleId); // yup, might be null
+        return callTimeSnapshot.get(scheduleId); // yup, might be null
     }
 
     private List<MeasurementTraitCacheElement> lookupMeasurementTraitCacheElements(int scheduleId) {
-        return measurementTraitCache.get(scheduleId); // yup, might be null
+        return measurementTraitSnapshot.get(scheduleId); // yup, might be null
     }
 
     private List<EventCacheElement> lookupEventCacheElements(int resourceId) {
-        return eventsCache.get(resourceId); // yup, might be null
+        return eventsSnapshot.get(resourceId); // yup, might be null
     }
 
     private List<DriftCacheElement> lookupDriftCacheElements(int resourceId) {
-        return driftCache.get(resourceId); // yup, might be null
+        return driftSnapshot.get(resourceId); // yup, might be null
     }
 
     private Double getCalculatedBaselineValue(int conditionId, AlertConditionBaselineCategoryComposite composite,
@@ -638,15 +664,15 @@ class AgentConditionCache extends AbstractConditionCache {
     @Override
     public int getCacheSize(Cache cache) {
         if (cache == AlertConditionCacheCoordinator.Cache.MeasurementDataCache) {
-            return AlertConditionCacheUtils.getMapListCount(measurementDataCache);
+            return AlertConditionCacheUtils.getMapListCount(measurementDataSnapshot);
         } else if (cache == AlertConditionCacheCoordinator.Cache.MeasurementTraitCache) {
-            return AlertConditionCacheUtils.getMapListCount(measurementTraitCache);
+            return AlertConditionCacheUtils.getMapListCount(measurementTraitSnapshot);
         } else if (cache == AlertConditionCacheCoordinator.Cache.CallTimeDataCache) {
-            return AlertConditionCacheUtils.getMapListCount(callTimeCache);
+            return AlertConditionCacheUtils.getMapListCount(callTimeSnapshot);
         } else if (cache == AlertConditionCacheCoordinator.Cache.EventsCache) {
-            return AlertConditionCacheUtils.getMapListCount(eventsCache);
+            return AlertConditionCacheUtils.getMapListCount(eventsSnapshot);
         } else if (cache == AlertConditionCacheCoordinator.Cache.DriftCache) {
-            return AlertConditionCacheUtils.getMapListCount(driftCache);
+            return AlertConditionCacheUtils.getMapListCount(driftSnapshot);
         } else {
             throw new IllegalArgumentException("The " + AgentConditionCache.class.getSimpleName()
                 + " either does not manage caches of type " + cache.type + ", or does not support obtaining their size");
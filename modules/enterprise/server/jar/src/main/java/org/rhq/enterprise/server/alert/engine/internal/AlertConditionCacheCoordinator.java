@@ -23,7 +23,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.persistence.EntityNotFoundException;
 
@@ -105,9 +104,15 @@ public final class AlertConditionCacheCoordinator {
     }
 
     private volatile GlobalConditionCache globalCache;
-    private Map<Integer, AgentConditionCache> agentCaches;
 
-    private ReentrantReadWriteLock agentReadWriteLock;
+    /*
+     * Copy-on-write snapshot of the agent caches, keyed by agent id. Condition checks read it without locking; a reload
+     * builds the new agent cache off to the side and then publishes a new snapshot, so it never holds up the checks
+     * for any agent, including the one being reloaded.
+     */
+    private volatile ImmutableIntMap<AgentConditionCache> agentCaches;
+
+    private final Object agentCachesWriteLock = new Object();
 
     private AgentManagerLocal agentManager;
     private StatusManagerLocal statusManager;
@@ -119,8 +124,7 @@ public final class AlertConditionCacheCoordinator {
         globalCache = new GlobalConditionCache();
 
         // create the collections ahead of time
-        agentCaches = new HashMap<Integer, AgentConditionCache>();
-        agentReadWriteLock = new ReentrantReadWriteLock();
+        agentCaches = ImmutableIntMap.empty();
     }
 
     public static AlertConditionCacheCoordinator getInstance() {
@@ -132,6 +136,7 @@ public final class AlertConditionCacheCoordinator {
             // simply "forget" about the old cache, let the JVM release the memory in time
             log.debug("Start reloading global cache");
             globalCache = new GlobalConditionCache();
+            AlertConditionDefinitionCache.getInstance().clear();
             log.debug("Finished reloading global cache");
         } catch (Throwable t) {
             try {
@@ -192,15 +197,15 @@ public final class AlertConditionCacheCoordinator {
         }
 
         if (agentCache != null) {
-            agentReadWriteLock.writeLock().lock();
             try {
                 // simply "forget" about the old cache, let the JVM release the memory in time
-                agentCaches.put(agentId, agentCache);
+                synchronized (agentCachesWriteLock) {
+                    agentCaches = agentCaches.with(agentId, agentCache);
+                }
+                AlertConditionDefinitionCache.getInstance().clear();
                 log.debug("Reloaded agent[id=" + agentId + "] cache");
             } catch (Throwable t) {
                 log.error("Error reloading cache for agent[id=" + agentId + "]", t); // don't let any exceptions bubble up to the calling SLSB layer
-            } finally {
-                agentReadWriteLock.writeLock().unlock();
             }
         }
     }
@@ -218,15 +223,7 @@ public final class AlertConditionCacheCoordinator {
         }
 
         AlertConditionCacheStats stats = null;
-        AgentConditionCache agentCache = null;
-        agentReadWriteLock.readLock().lock();
-        try {
-            agentCache = agentCaches.get(agentId);
-        } catch (Throwable t) {
-            log.error("Error during checkConditions", t); // don't let any exceptions bubble up to the calling SLSB layer
-        } finally {
-            agentReadWriteLock.readLock().unlock();
-        }
+        AgentConditionCache agentCache = agentCaches.get(agentId);
         if (agentCache != null) {
             stats = agentCache.checkConditions(measurementData);
         } else {
@@ -249,15 +246,7 @@ public final class AlertConditionCacheCoordinator {
         }
 
         AlertConditionCacheStats stats = null;
-        AgentConditionCache agentCache = null;
-        agentReadWriteLock.readLock().lock();
-        try {
-            agentCache = agentCaches.get(agentId);
-        } catch (Throwable t) {
-            log.error("Error during checkConditions", t); // don't let any exceptions bubble up to the calling SLSB layer
-        } finally {
-            agentReadWriteLock.readLock().unlock();
-        }
+        AgentConditionCache agentCache = agentCaches.get(agentId);
         if (agentCache != null) {
             stats = agentCache.checkConditions(callTimeData);
         } else {
@@ -307,15 +296,7 @@ public final class AlertConditionCacheCoordinator {
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
         List<Event> unprocessedEvents = new ArrayList(Arrays.asList(events)); // need a List that supports iterator remove
         while (!unprocessedEvents.isEmpty()) {
-            AgentConditionCache agentCache = null;
-            agentReadWriteLock.readLock().lock();
-            try {
-                agentCache = agentCaches.get(agentId);
-            } catch (Throwable t) {
-                log.error("Error during checkConditions", t); // don't let any exceptions bubble up to the calling SLSB layer
-            } finally {
-                agentReadWriteLock.readLock().unlock();
-            }
+            AgentConditionCache agentCache = agentCaches.get(agentId);
             if (agentCache != null) {
                 stats.add(agentCache.checkConditions(source, unprocessedEvents));
                 if (!unprocessedEvents.isEmpty()) {
@@ -346,15 +327,7 @@ public final class AlertConditionCacheCoordinator {
         }
 
         AlertConditionCacheStats stats = null;
-        AgentConditionCache agentCache = null;
-        agentReadWriteLock.readLock().lock();
-        try {
-            agentCache = agentCaches.get(agentId);
-        } catch (Throwable t) {
-            log.error("Error during checkConditions", t); // don't let any exceptions bubble up to the calling SLSB layer
-        } finally {
-            agentReadWriteLock.readLock().unlock();
-        }
+        AgentConditionCache agentCache = agentCaches.get(agentId);
         if (agentCache != null) {
             stats = agentCache.checkConditions(driftChangeSetSummary);
         } else {
@@ -438,17 +411,7 @@ public final class AlertConditionCacheCoordinator {
         if (cache.type == Cache.Type.Global) {
             result += globalCache.getCacheSize(cache);
         } else if (cache.type == Cache.Type.Agent) {
-            List<AgentConditionCache> cachesCopy = null;
-            agentReadWriteLock.readLock().lock();
-            try {
-                cachesCopy = new ArrayList<AgentConditionCache>(agentCaches.values());
-            } catch (Throwable t) {
-                log.error("Error during getCacheSize", t); // don't let any exceptions bubble up to the calling SLSB layer
-            } finally {
-                agentReadWriteLock.readLock().unlock();
-            }
-
-            for (AgentConditionCache agentCache : cachesCopy) {
+            for (AgentConditionCache agentCache : agentCaches.values()) {
                 result += agentCache.getCacheSize(cache);
             }
         } else {
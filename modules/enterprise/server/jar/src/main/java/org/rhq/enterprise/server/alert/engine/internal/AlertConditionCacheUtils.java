@@ -168,6 +168,19 @@ class AlertConditionCacheUtils {
         return count;
     }
 
+    static <T> int getMapListCount(ImmutableIntMap<List<T>> mapList) {
+        int count = 0;
+        try {
+            for (List<?> listValue : mapList.values()) {
+                count += listValue.size();
+            }
+        } catch (Throwable t) {
+            // don't let any exceptions bubble up to the calling SLSB layer
+            log.error("Error counting MapList", t);
+        }
+        return count;
+    }
+
     public static <R, S, T> int getMapMapListCount(Map<R, Map<S, List<T>>> mapMapList) {
         int count = 0;
         try {
@@ -0,0 +1,123 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite;
+
+/**
+ * Remembers which alert definition each triggered alert condition belongs to, and the inventory status of the
+ * definition's resource, so that the consumer of the alert condition queue does not have to look them up for every
+ * message.
+ * <p/>
+ * The entries are only valid as long as the alert condition caches that triggered the conditions, so this map is
+ * cleared whenever one of those caches is reloaded, i.e. whenever alert definitions are created, updated, enabled,
+ * disabled or removed. Since the inventory status of a resource can change without a cache reload, entries also
+ * expire after {@link #ENTRY_TTL} ms.
+ */
+public final class AlertConditionDefinitionCache {
+
+    /**
+     * Matches the interval of the periodic check for alert condition cache reloads.
+     */
+    public static final long ENTRY_TTL = 30000L;
+
+    private static final AlertConditionDefinitionCache instance = new AlertConditionDefinitionCache();
+
+    private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+    // incremented by every clear(), so that composites loaded before a clear are not cached after it
+    private final AtomicLong generation = new AtomicLong();
+
+    private static class Entry {
+        final AlertConditionDefinitionComposite composite;
+        final long expiration;
+
+        Entry(AlertConditionDefinitionComposite composite, long expiration) {
+            this.composite = composite;
+            this.expiration = expiration;
+        }
+    }
+
+    private AlertConditionDefinitionCache() {
+    }
+
+    public static AlertConditionDefinitionCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param alertConditionIds the ids of the conditions to look up
+     * @return the cached composites of the given conditions, keyed by condition id; conditions which are not cached,
+     * or whose entry expired, are not in the result
+     */
+    public Map<Integer, AlertConditionDefinitionComposite> get(Collection<Integer> alertConditionIds) {
+        Map<Integer, AlertConditionDefinitionComposite> result;
+        result = new HashMap<Integer, AlertConditionDefinitionComposite>();
+        long now = System.currentTimeMillis();
+        for (Integer alertConditionId : alertConditionIds) {
+            Entry entry = entries.get(alertConditionId);
+            if (entry != null) {
+                if (entry.expiration > now) {
+                    result.put(alertConditionId, entry.composite);
+                } else {
+                    entries.remove(alertConditionId, entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the value to pass to {@link #put(Collection, long)} for composites loaded after this call
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param composites the composites to cache
+     * @param generation the {@link #getGeneration() generation} obtained before the composites were loaded; if the
+     * cache has been cleared since, the composites may be stale and are not cached
+     */
+    public void put(Collection<AlertConditionDefinitionComposite> composites, long generation) {
+        long expiration = System.currentTimeMillis() + ENTRY_TTL;
+        for (AlertConditionDefinitionComposite composite : composites) {
+            if (this.generation.get() != generation) {
+                return;
+            }
+            entries.put(composite.getConditionId(), new Entry(composite, expiration));
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
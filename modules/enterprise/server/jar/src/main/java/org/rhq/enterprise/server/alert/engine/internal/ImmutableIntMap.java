@@ -0,0 +1,157 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable map from primitive int keys to non-null values, used as a read-only snapshot of the alert condition
+ * caches. Lookups neither box the key nor take a lock; the map is built once, off to the side, and then published
+ * through a final or volatile field. Modifications produce a new copy, so they are only suitable for maps that change
+ * rarely compared to how often they are read (e.g. the per-agent caches, which are only swapped on reload).
+ * <p/>
+ * The implementation is an open addressing table with linear probing, kept at most half full.
+ */
+final class ImmutableIntMap<V> {
+
+    private static final ImmutableIntMap<Object> EMPTY = new ImmutableIntMap<Object>(new int[1], new Object[1], 0);
+
+    private final int[] keys;
+    private final Object[] values; // null marks an empty slot
+    private final int mask;
+    private final int size;
+
+    private ImmutableIntMap(int[] keys, Object[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> ImmutableIntMap<V> empty() {
+        return (ImmutableIntMap<V>) EMPTY;
+    }
+
+    static <V> ImmutableIntMap<V> copyOf(Map<Integer, ? extends V> map) {
+        if (map.isEmpty()) {
+            return empty();
+        }
+        int capacity = tableSizeFor(map.size());
+        int[] keys = new int[capacity];
+        Object[] values = new Object[capacity];
+        for (Map.Entry<Integer, ? extends V> entry : map.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("null values are not supported, key=" + entry.getKey());
+            }
+            insert(keys, values, entry.getKey(), entry.getValue());
+        }
+        return new ImmutableIntMap<V>(keys, values, map.size());
+    }
+
+    /**
+     * @return the value mapped to the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int i = hash(key) & mask;
+        Object value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == key) {
+                return (V) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of this map with the key mapped to the given value, replacing any previous mapping
+     */
+    ImmutableIntMap<V> with(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported, key=" + key);
+        }
+        boolean replacing = get(key) != null;
+        int newSize = replacing ? size : size + 1;
+        int capacity = Math.max(keys.length, tableSizeFor(newSize));
+        int[] newKeys;
+        Object[] newValues;
+        if (capacity == keys.length) {
+            newKeys = keys.clone();
+            newValues = values.clone();
+        } else {
+            newKeys = new int[capacity];
+            newValues = new Object[capacity];
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) {
+                    insert(newKeys, newValues, keys[i], values[i]);
+                }
+            }
+        }
+        insert(newKeys, newValues, key, value);
+        return new ImmutableIntMap<V>(newKeys, newValues, newSize);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    Collection<V> values() {
+        List<V> result = new ArrayList<V>(size);
+        for (Object value : values) {
+            if (value != null) {
+                result.add((V) value);
+            }
+        }
+        return result;
+    }
+
+    private static void insert(int[] keys, Object[] values, int key, Object value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private static int tableSizeFor(int size) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(int key) {
+        // ids are mostly sequential, spread them so that runs of ids do not form long probe chains
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
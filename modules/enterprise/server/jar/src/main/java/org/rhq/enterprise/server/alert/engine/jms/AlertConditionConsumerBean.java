@@ -18,21 +18,36 @@
  */
 package org.rhq.enterprise.server.alert.engine.jms;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Resource;
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
 import javax.ejb.MessageDriven;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
 import javax.jms.Message;
+import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
 import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.Session;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite;
 import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.enterprise.server.alert.AlertConditionManagerLocal;
 import org.rhq.enterprise.server.alert.AlertManagerLocal;
 import org.rhq.enterprise.server.alert.CachedConditionManagerLocal;
+import org.rhq.enterprise.server.alert.engine.internal.AlertConditionDefinitionCache;
 import org.rhq.enterprise.server.alert.engine.jms.model.AbstractAlertConditionMessage;
 import org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerLocal;
 import org.rhq.enterprise.server.util.concurrent.AlertSerializer;
@@ -40,6 +55,11 @@ import org.rhq.enterprise.server.util.concurrent.AlertSerializer;
 /**
  * Use the default message provider
  *
+ * Messages are processed in micro-batches: when a message is delivered, the messages already waiting in the queue,
+ * up to {@link #BATCH_SIZE} in total, are received along with it. The alert definitions of the conditions are resolved
+ * from the {@link AlertConditionDefinitionCache}, the messages are grouped by definition, and the whole batch is
+ * processed in one transaction. When the queue is not backed up the batches are made of a single message, as before.
+ *
  * @author Joseph Marques
  */
 @MessageDriven(activationConfig = {
@@ -49,6 +69,11 @@ import org.rhq.enterprise.server.util.concurrent.AlertSerializer;
     @ActivationConfigProperty(propertyName = "subscriptionDurability", propertyValue = "NonDurable") })
 public class AlertConditionConsumerBean implements MessageListener {
 
+    /**
+     * The maximum number of messages processed together, 1 disables batching.
+     */
+    static final int BATCH_SIZE = Integer.getInteger("rhq.server.alert-condition.batch-size", 100);
+
     private final Log log = LogFactory.getLog(AlertConditionConsumerBean.class);
 
     @EJB
@@ -60,48 +85,48 @@ public class AlertConditionConsumerBean implements MessageListener {
     @EJB
     private CacheConsistencyManagerLocal cacheConsistencyManager;
 
+    /*
+     * Get the transactional connection factory, the additional messages are then received as part of the transaction
+     * of the message that was delivered
+     */
+    @Resource(mappedName = "java:/JmsXA")
+    private ConnectionFactory factory;
+
+    @Resource(mappedName = "java:/queue/AlertConditionQueue")
+    private Queue alertConditionQueue;
+
     @Override
     public void onMessage(Message message) {
-        AbstractAlertConditionMessage conditionMessage = null;
+        List<AbstractAlertConditionMessage> conditionMessages = new ArrayList<AbstractAlertConditionMessage>();
 
-        try {
-            ObjectMessage objectMessage = (ObjectMessage) message;
-            conditionMessage = (AbstractAlertConditionMessage) objectMessage.getObject();
-        } catch (Throwable t) {
-            log.error("Error getting content of jms message", t);
+        AbstractAlertConditionMessage conditionMessage = getConditionMessage(message);
+        if (conditionMessage == null) {
             return;
         }
+        conditionMessages.add(conditionMessage);
 
-        Integer definitionId = null;
-        try {
-            if (log.isDebugEnabled()) {
-                log.debug("Received message: " + conditionMessage);
-            }
+        if (BATCH_SIZE > 1) {
+            receiveWaitingMessages(conditionMessages);
+        }
 
-            int alertConditionId = conditionMessage.getAlertConditionId();
-            InventoryStatus status = alertConditionManager.getResourceStatusByConditionIdNewTx(alertConditionId);
-            if (status != InventoryStatus.COMMITTED) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Resource for AlertCondition[id=" + alertConditionId
-                        + "] is no longer COMMITTED, status was '" + status + "'; this message will be discarded");
-                }
-                return;
-            }
+        // keyed by alert definition id, sorted so that the definitions are always locked in the same order
+        Map<Integer, List<AbstractAlertConditionMessage>> messagesByDefinitionId = groupByDefinition(conditionMessages);
+        if (messagesByDefinitionId.isEmpty()) {
+            return;
+        }
 
-            definitionId = alertConditionManager.getAlertDefinitionByConditionIdNewTx(alertConditionId);
-            if (definitionId == null) {
-                log.info("AlertCondition[id=" + alertConditionId
-                    + "] has been removed after it was triggered; this message will be discarded");
-                return;
+        List<Integer> lockedDefinitionIds = new ArrayList<Integer>(messagesByDefinitionId.size());
+        try {
+            for (Integer definitionId : messagesByDefinitionId.keySet()) {
+                AlertSerializer.getSingleton().lock(definitionId);
+                lockedDefinitionIds.add(definitionId);
             }
 
-            AlertSerializer.getSingleton().lock(definitionId);
-
             /*
              * must be executed in a new, nested transaction so that by it completes and unlocks, the next thread
              * will see all of its results.
              */
-            Alert newAlert = cachedConditionManager.processCachedConditionMessageNewTx(conditionMessage, definitionId);
+            List<Alert> newAlerts = processMessages(messagesByDefinitionId);
 
             /*
              * In general it's not required to reload the caches directly. Changes made via the AlertDefinitionManager
@@ -120,23 +145,164 @@ public class AlertConditionConsumerBean implements MessageListener {
              * updated before executing notifications that could initiate recovery processing (like an automated
              * restart of a down resource).  It also makes the alert firing transaction more lean.
              */
-            if (null != newAlert) {
+            if (!newAlerts.isEmpty()) {
                 log.debug("Checking for cache reload due to alert firing");
                 cacheConsistencyManager.reloadServerCacheIfNeededNSTx();
 
-                //  the alert is already persisted, now process notifications
-                alertManager.sendAlertNotificationsNSTx(newAlert);
+                //  the alerts are already persisted, now process notifications
+                for (Alert newAlert : newAlerts) {
+                    try {
+                        alertManager.sendAlertNotificationsNSTx(newAlert);
+                    } catch (Throwable t) {
+                        log.error("Error sending notifications for " + newAlert + " - " + t.toString());
+                    }
+                }
             }
 
         } catch (Throwable t) {
-            log.error("Error handling " + conditionMessage + " - " + t.toString());
+            log.error("Error handling " + conditionMessages.size() + " alert condition messages - " + t.toString());
         } finally {
-            try {
-                if (definitionId != null) {
+            for (Integer definitionId : lockedDefinitionIds) {
+                try {
                     AlertSerializer.getSingleton().unlock(definitionId);
+                } catch (Throwable t) {
+                }
+            }
+        }
+    }
+
+    private AbstractAlertConditionMessage getConditionMessage(Message message) {
+        try {
+            ObjectMessage objectMessage = (ObjectMessage) message;
+            AbstractAlertConditionMessage conditionMessage = (AbstractAlertConditionMessage) objectMessage
+                .getObject();
+            if (log.isDebugEnabled()) {
+                log.debug("Received message: " + conditionMessage);
+            }
+            return conditionMessage;
+        } catch (Throwable t) {
+            log.error("Error getting content of jms message", t);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the messages waiting in the queue, without waiting for new ones, until the batch is full.
+     */
+    private void receiveWaitingMessages(List<AbstractAlertConditionMessage> conditionMessages) {
+        Connection connection = null;
+        try {
+            connection = factory.createConnection();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(alertConditionQueue);
+            connection.start();
+
+            while (conditionMessages.size() < BATCH_SIZE) {
+                Message message = consumer.receiveNoWait();
+                if (message == null) {
+                    break;
+                }
+                AbstractAlertConditionMessage conditionMessage = getConditionMessage(message);
+                if (conditionMessage != null) {
+                    conditionMessages.add(conditionMessage);
+                }
+            }
+        } catch (Throwable t) {
+            // process what we have, the remaining messages will be delivered to this or another consumer
+            log.warn("Error receiving waiting alert condition messages, processing " + conditionMessages.size()
+                + " messages - " + t.toString());
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (Throwable t) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the alert definitions of the conditions, discarding the messages whose condition was removed or whose
+     * resource is no longer COMMITTED. The order of the messages of each definition is preserved.
+     */
+    private Map<Integer, List<AbstractAlertConditionMessage>> groupByDefinition(
+        List<AbstractAlertConditionMessage> conditionMessages) {
+        Set<Integer> alertConditionIds = new HashSet<Integer>();
+        for (AbstractAlertConditionMessage conditionMessage : conditionMessages) {
+            alertConditionIds.add(conditionMessage.getAlertConditionId());
+        }
+
+        AlertConditionDefinitionCache cache = AlertConditionDefinitionCache.getInstance();
+        Map<Integer, AlertConditionDefinitionComposite> composites = cache.get(alertConditionIds);
+        if (composites.size() < alertConditionIds.size()) {
+            alertConditionIds.removeAll(composites.keySet());
+            long generation = cache.getGeneration();
+            List<AlertConditionDefinitionComposite> loaded = alertConditionManager
+                .getAlertConditionDefinitionCompositesNewTx(alertConditionIds);
+            cache.put(loaded, generation);
+            for (AlertConditionDefinitionComposite composite : loaded) {
+                composites.put(composite.getConditionId(), composite);
+            }
+        }
+
+        Map<Integer, List<AbstractAlertConditionMessage>> result;
+        result = new TreeMap<Integer, List<AbstractAlertConditionMessage>>();
+        for (AbstractAlertConditionMessage conditionMessage : conditionMessages) {
+            int alertConditionId = conditionMessage.getAlertConditionId();
+            AlertConditionDefinitionComposite composite = composites.get(alertConditionId);
+            if (composite == null) {
+                log.info("AlertCondition[id=" + alertConditionId
+                    + "] has been removed after it was triggered; this message will be discarded");
+                continue;
+            }
+
+            InventoryStatus status = composite.getResourceStatus();
+            if (status != InventoryStatus.COMMITTED) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Resource for AlertCondition[id=" + alertConditionId
+                        + "] is no longer COMMITTED, status was '" + status + "'; this message will be discarded");
                 }
+                continue;
+            }
+
+            List<AbstractAlertConditionMessage> definitionMessages = result.get(composite.getAlertDefinitionId());
+            if (definitionMessages == null) {
+                definitionMessages = new ArrayList<AbstractAlertConditionMessage>();
+                result.put(composite.getAlertDefinitionId(), definitionMessages);
+            }
+            definitionMessages.add(conditionMessage);
+        }
+
+        return result;
+    }
+
+    /**
+     * Processes the batch in one transaction. Should that fail, e.g. because of a problem with the data of a single
+     * definition, the definitions are processed one by one so that the others are not affected.
+     */
+    private List<Alert> processMessages(Map<Integer, List<AbstractAlertConditionMessage>> messagesByDefinitionId) {
+        if (messagesByDefinitionId.size() == 1) {
+            return cachedConditionManager.processCachedConditionMessagesNewTx(messagesByDefinitionId);
+        }
+
+        try {
+            return cachedConditionManager.processCachedConditionMessagesNewTx(messagesByDefinitionId);
+        } catch (Throwable t) {
+            log.warn("Error processing a batch of alert condition messages for " + messagesByDefinitionId.size()
+                + " alert definitions, processing them one definition at a time - " + t.toString());
+        }
+
+        List<Alert> newAlerts = new ArrayList<Alert>();
+        for (Map.Entry<Integer, List<AbstractAlertConditionMessage>> entry : messagesByDefinitionId.entrySet()) {
+            Map<Integer, List<AbstractAlertConditionMessage>> definitionMessages;
+            definitionMessages = new TreeMap<Integer, List<AbstractAlertConditionMessage>>();
+            definitionMessages.put(entry.getKey(), entry.getValue());
+            try {
+                newAlerts.addAll(cachedConditionManager.processCachedConditionMessagesNewTx(definitionMessages));
             } catch (Throwable t) {
+                log.error("Error handling " + entry.getValue() + " - " + t.toString());
             }
         }
+        return newAlerts;
     }
-}
\ No newline at end of file
+}
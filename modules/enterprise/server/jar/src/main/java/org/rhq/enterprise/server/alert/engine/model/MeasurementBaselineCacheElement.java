@@ -19,6 +19,8 @@
 package org.rhq.enterprise.server.alert.engine.model;
 
 import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.core.domain.measurement.MeasurementBaseline;
+import org.rhq.enterprise.server.measurement.BaselineStore;
 
 /**
  * @author Joseph Marques
@@ -26,6 +28,8 @@ import org.rhq.core.domain.alert.AlertConditionOperator;
 
 public class MeasurementBaselineCacheElement extends NumericDoubleCacheElement {
     private String option;
+    private int scheduleId;
+    private Double threshold;
 
     public MeasurementBaselineCacheElement(AlertConditionOperator operator, Double value, int conditionTriggerId,
         String option) {
@@ -33,10 +37,45 @@ public class MeasurementBaselineCacheElement extends NumericDoubleCacheElement {
         this.option = option;
     }
 
+    /**
+     * Creates an element that compares against the current baseline of the schedule in the {@link BaselineStore},
+     * so that it does not need to be reloaded when the baseline is recalculated. Until the store is loaded, the
+     * element compares against the given value.
+     */
+    public MeasurementBaselineCacheElement(AlertConditionOperator operator, Double value, int conditionTriggerId,
+        String option, int scheduleId, Double threshold) {
+        this(operator, value, conditionTriggerId, option);
+        this.scheduleId = scheduleId;
+        this.threshold = threshold;
+    }
+
     public String getOption() {
         return option;
     }
 
+    @Override
+    public boolean matches(Double providedValue, Object... extraParams) {
+        BaselineStore store = BaselineStore.getInstance();
+        if (threshold != null && store.isLoaded()) {
+            // the element is shared by the threads checking data, so the baseline value must not be kept in it
+            return matches(getBaselineValue(store.getBaseline(scheduleId)), providedValue);
+        }
+        return super.matches(providedValue, extraParams);
+    }
+
+    private Double getBaselineValue(MeasurementBaseline baseline) {
+        if (baseline == null) {
+            return null;
+        } else if ("min".equals(option)) {
+            return threshold * baseline.getMin();
+        } else if ("mean".equals(option)) {
+            return threshold * baseline.getMean();
+        } else if ("max".equals(option)) {
+            return threshold * baseline.getMax();
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         return super.toString() + "; option=" + option;
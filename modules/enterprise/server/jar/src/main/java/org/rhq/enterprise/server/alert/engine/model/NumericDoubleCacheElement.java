@@ -34,12 +34,20 @@ public abstract class NumericDoubleCacheElement extends AbstractCacheElement<Dou
 
     @Override
     public boolean matches(Double providedValue, Object... extraParams) {
+        return matches(alertConditionValue, providedValue);
+    }
+
+    /**
+     * Compares the provided value against the given condition value rather than the one of this element, e.g. a value
+     * computed for this match only.
+     */
+    protected boolean matches(Double conditionValue, Double providedValue) {
         /*
          * allow null/NaN/infinite Numeric elements to be processed;
          *
          * this will support baseline-based AlertConditions whose baselines haven't been calculated yet
          */
-        if (alertConditionValue == null || alertConditionValue.isNaN() || alertConditionValue.isInfinite()) {
+        if (conditionValue == null || conditionValue.isNaN() || conditionValue.isInfinite()) {
             return false;
         }
 
@@ -48,18 +56,18 @@ public abstract class NumericDoubleCacheElement extends AbstractCacheElement<Dou
         }
 
         if (alertConditionOperator == AlertConditionOperator.GREATER_THAN) {
-            return (providedValue.compareTo(alertConditionValue) > 0);
+            return (providedValue.compareTo(conditionValue) > 0);
 
         } else if (alertConditionOperator == AlertConditionOperator.LESS_THAN) {
-            return (providedValue.compareTo(alertConditionValue) < 0);
+            return (providedValue.compareTo(conditionValue) < 0);
 
         } else if (alertConditionOperator == AlertConditionOperator.EQUALS) {
-            return (providedValue.compareTo(alertConditionValue) == 0);
+            return (providedValue.compareTo(conditionValue) == 0);
 
         } else if (alertConditionOperator == AlertConditionOperator.CHANGES) {
             boolean result;
 
-            result = (alertConditionValue.compareTo(providedValue) != 0);
+            result = (conditionValue.compareTo(providedValue) != 0);
 
             alertConditionValue = providedValue;
 
@@ -0,0 +1,144 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the ids of the resources and groups every subject can view, so that the authorization checks do not have to
+ * join the resource, group, role and subject tables on every call. The bitmaps are built lazily by the
+ * {@link AuthorizationManagerBean} and dropped, for all subjects, whenever roles, role memberships, group memberships
+ * or groups change. When only the members of some groups change, they are dropped for the subjects of their roles.
+ * <p/>
+ * Changes made through another server of the cloud are not seen by this one, so the bitmaps also expire after the
+ * number of milliseconds set by the <code>rhq.server.authz.cache-ttl</code> system property, one minute by default. A
+ * time to live of 0 disables the cache.
+ * <p/>
+ * A bitmap built from data read before an invalidation is not cached: the builder takes the
+ * {@link #getGeneration() generation} before reading and the put is ignored if the generation changed since.
+ */
+public class AuthorizationCache {
+
+    static final String TIME_TO_LIVE_PROP = "rhq.server.authz.cache-ttl";
+
+    private static final AuthorizationCache singleton = new AuthorizationCache(Long.getLong(TIME_TO_LIVE_PROP,
+        60 * 1000L));
+
+    private final long timeToLive;
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<Integer, Entry> visibleResources = new ConcurrentHashMap<Integer, Entry>();
+    private final ConcurrentMap<Integer, Entry> visibleGroups = new ConcurrentHashMap<Integer, Entry>();
+
+    AuthorizationCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public static AuthorizationCache getSingleton() {
+        return singleton;
+    }
+
+    public boolean isEnabled() {
+        return timeToLive > 0;
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return the ids of the resources the subject can view, or <code>null</code> if they are not cached
+     */
+    public IdBitmap getVisibleResources(int subjectId) {
+        return get(visibleResources, subjectId);
+    }
+
+    /**
+     * @param generation the {@link #getGeneration() generation} taken before the ids were read
+     */
+    public void putVisibleResources(int subjectId, long generation, IdBitmap resourceIds) {
+        put(visibleResources, subjectId, generation, resourceIds);
+    }
+
+    /**
+     * @return the ids of the groups the subject can view, or <code>null</code> if they are not cached
+     */
+    public IdBitmap getVisibleGroups(int subjectId) {
+        return get(visibleGroups, subjectId);
+    }
+
+    /**
+     * @param generation the {@link #getGeneration() generation} taken before the ids were read
+     */
+    public void putVisibleGroups(int subjectId, long generation, IdBitmap groupIds) {
+        put(visibleGroups, subjectId, generation, groupIds);
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        visibleResources.clear();
+        visibleGroups.clear();
+    }
+
+    /**
+     * Drops the ids cached for the given subjects. The ids being read for other subjects are not cached either.
+     */
+    public void invalidate(Collection<Integer> subjectIds) {
+        generation.incrementAndGet();
+        for (Integer subjectId : subjectIds) {
+            visibleResources.remove(subjectId);
+            visibleGroups.remove(subjectId);
+        }
+    }
+
+    private IdBitmap get(ConcurrentMap<Integer, Entry> entries, int subjectId) {
+        Entry entry = entries.get(subjectId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.creationTime > timeToLive) {
+            entries.remove(subjectId, entry);
+            return null;
+        }
+        return entry.ids;
+    }
+
+    private void put(ConcurrentMap<Integer, Entry> entries, int subjectId, long generation, IdBitmap ids) {
+        if (!isEnabled() || generation != this.generation.get()) {
+            return;
+        }
+        Entry entry = new Entry(ids);
+        entries.put(subjectId, entry);
+        // an invalidation may have happened since the check above, in which case it may not have seen the new entry
+        if (generation != this.generation.get()) {
+            entries.remove(subjectId, entry);
+        }
+    }
+
+    private static class Entry {
+        final IdBitmap ids;
+        final long creationTime = System.currentTimeMillis();
+
+        Entry(IdBitmap ids) {
+            this.ids = ids;
+        }
+    }
+}
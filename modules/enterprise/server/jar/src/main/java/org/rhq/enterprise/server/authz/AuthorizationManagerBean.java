@@ -23,11 +23,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.Resource;
 import javax.ejb.Stateless;
 import javax.interceptor.ExcludeDefaultInterceptors;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
@@ -51,6 +54,9 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @Override
     @SuppressWarnings("unchecked")
     public Set<Permission> getExplicitGlobalPermissions(Subject subject) {
@@ -291,6 +297,11 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        IdBitmap visibleResourceIds = getVisibleResourceIds(subject.getId());
+        if (visibleResourceIds != null) {
+            return visibleResourceIds.contains(resourceId);
+        }
+
         Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_RESOURCE);
         query.setParameter("subject", subject);
         query.setParameter("resourceId", resourceId);
@@ -304,6 +315,11 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        IdBitmap visibleResourceIds = getVisibleResourceIds(subject.getId());
+        if (visibleResourceIds != null) {
+            return visibleResourceIds.containsAll(resourceIds);
+        }
+
         Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_RESOURCES);
         query.setParameter("subject", subject);
         query.setParameter("resourceIds", resourceIds);
@@ -318,6 +334,11 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        IdBitmap visibleGroupIds = getVisibleGroupIds(subject.getId());
+        if (visibleGroupIds != null) {
+            return visibleGroupIds.contains(groupId);
+        }
+
         Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_GROUP);
         query.setParameter("subject", subject);
         query.setParameter("groupId", groupId);
@@ -374,6 +395,87 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
         return (count != 0);
     }
 
+    @Override
+    public IdBitmap getVisibleResourceIds(int subjectId) {
+        AuthorizationCache cache = AuthorizationCache.getSingleton();
+        if (!cache.isEnabled()) {
+            return null;
+        }
+
+        IdBitmap resourceIds = cache.getVisibleResources(subjectId);
+        if (resourceIds == null) {
+            long generation = cache.getGeneration();
+            Query query = entityManager.createNamedQuery(Subject.QUERY_GET_VISIBLE_RESOURCE_IDS);
+            query.setParameter("subjectId", subjectId);
+            @SuppressWarnings("unchecked")
+            List<Integer> ids = query.getResultList();
+            resourceIds = new IdBitmap(ids);
+            cache.putVisibleResources(subjectId, generation, resourceIds);
+        }
+        return resourceIds;
+    }
+
+    private IdBitmap getVisibleGroupIds(int subjectId) {
+        AuthorizationCache cache = AuthorizationCache.getSingleton();
+        if (!cache.isEnabled()) {
+            return null;
+        }
+
+        IdBitmap groupIds = cache.getVisibleGroups(subjectId);
+        if (groupIds == null) {
+            long generation = cache.getGeneration();
+            Query query = entityManager.createNamedQuery(Subject.QUERY_GET_VISIBLE_GROUP_IDS);
+            query.setParameter("subjectId", subjectId);
+            @SuppressWarnings("unchecked")
+            List<Integer> ids = query.getResultList();
+            groupIds = new IdBitmap(ids);
+            cache.putVisibleGroups(subjectId, generation, groupIds);
+        }
+        return groupIds;
+    }
+
+    @Override
+    public void invalidateAuthorizationCache() {
+        final AuthorizationCache cache = AuthorizationCache.getSingleton();
+        cache.invalidate();
+
+        // until the transaction commits other transactions still read, and may cache, the old memberships
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+            }
+
+            public void afterCompletion(int status) {
+                cache.invalidate();
+            }
+        });
+    }
+
+    @Override
+    public void invalidateAuthorizationCache(Collection<Integer> groupIds) {
+        if (groupIds.isEmpty()) {
+            return;
+        }
+        Query query = entityManager.createNamedQuery(Subject.QUERY_GET_SUBJECT_IDS_BY_GROUP_IDS);
+        query.setParameter("groupIds", groupIds);
+        @SuppressWarnings("unchecked")
+        final List<Integer> subjectIds = query.getResultList();
+        if (subjectIds.isEmpty()) {
+            return;
+        }
+
+        final AuthorizationCache cache = AuthorizationCache.getSingleton();
+        cache.invalidate(subjectIds);
+
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+            }
+
+            public void afterCompletion(int status) {
+                cache.invalidate(subjectIds);
+            }
+        });
+    }
+
     @Override
     public boolean isInventoryManager(Subject subject) {
         return hasGlobalPermission(subject, Permission.MANAGE_INVENTORY);
@@ -273,6 +273,30 @@ public interface AuthorizationManagerLocal {
      */
     boolean isInventoryManager(Subject subject);
 
+    /**
+     * Returns the ids of the resources the subject can view through its roles, from the {@link AuthorizationCache}.
+     * They are loaded, and cached, if needed.
+     *
+     * @param  subjectId the id of the current subject or caller
+     *
+     * @return the ids of the visible resources, or <code>null</code> if the cache is disabled
+     */
+    IdBitmap getVisibleResourceIds(int subjectId);
+
+    /**
+     * Drops the resources and groups cached as visible by the subjects. This must be called, in the same transaction,
+     * by anything that changes the subjects or groups of a role, the members of a group or that creates a group.
+     */
+    void invalidateAuthorizationCache();
+
+    /**
+     * Drops the resources and groups cached as visible by the subjects whose roles include any of the given groups.
+     * This is enough, and must be called in the same transaction, when only the members of these groups change.
+     *
+     * @param groupIds the ids of the groups whose members change
+     */
+    void invalidateAuthorizationCache(Collection<Integer> groupIds);
+
     /**
      * Gets the set of global permissions that the current user explicitly possesses.
      *
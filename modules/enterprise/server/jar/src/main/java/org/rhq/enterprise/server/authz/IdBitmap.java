@@ -0,0 +1,242 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A compressed set of non-negative ids, in the manner of roaring bitmaps. The ids are split into chunks by their high
+ * 16 bits and every chunk stores the low 16 bits either as a sorted array, while it holds at most 4096 ids, or as a
+ * bitmap of 2^16 bits. A dense chunk, like the resources of a platform imported at once, takes 8KB at most and a
+ * sparse one takes 2 bytes per id.
+ * <p/>
+ * A bitmap is not thread-safe while it is being built. The bitmaps of the {@link AuthorizationCache} are not modified
+ * once they are cached though, so they can be read concurrently.
+ */
+public class IdBitmap {
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int numContainers;
+    private int cardinality;
+
+    public IdBitmap() {
+    }
+
+    public IdBitmap(Collection<Integer> ids) {
+        for (Integer id : ids) {
+            add(id);
+        }
+    }
+
+    /**
+     * @param id a non-negative id
+     * @return true if the id was not in the set yet
+     */
+    public boolean add(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Ids must not be negative: " + id);
+        }
+
+        int key = id >>> 16;
+        int index = Arrays.binarySearch(keys, 0, numContainers, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key);
+        }
+
+        Container container = containers[index];
+        if (!container.add((char) id)) {
+            return false;
+        }
+        if (container instanceof ArrayContainer && container.cardinality > MAX_ARRAY_CARDINALITY) {
+            containers[index] = ((ArrayContainer) container).toBitmapContainer();
+        }
+        ++cardinality;
+        return true;
+    }
+
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, numContainers, id >>> 16);
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    public boolean containsAll(Collection<Integer> ids) {
+        for (Integer id : ids) {
+            if (!contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getCardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Returns the ids as ranges of consecutive ids, in ascending order.
+     *
+     * @param maxRanges the maximum number of ranges wanted
+     * @return the inclusive [first, last] ranges, or <code>null</code> if there are more than maxRanges of them
+     */
+    public List<int[]> getRanges(int maxRanges) {
+        Ranges ranges = new Ranges(maxRanges);
+        for (int i = 0; i < numContainers; ++i) {
+            if (!containers[i].addTo(ranges, keys[i] << 16)) {
+                return null;
+            }
+        }
+        return ranges.ranges;
+    }
+
+    private void insertContainer(int index, int key) {
+        if (numContainers == keys.length) {
+            keys = Arrays.copyOf(keys, numContainers * 2);
+            containers = Arrays.copyOf(containers, numContainers * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, numContainers - index);
+        System.arraycopy(containers, index, containers, index + 1, numContainers - index);
+        keys[index] = key;
+        containers[index] = new ArrayContainer();
+        ++numContainers;
+    }
+
+    private abstract static class Container {
+        int cardinality;
+
+        abstract boolean add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract boolean addTo(Ranges ranges, int base);
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values = new char[16];
+
+        @Override
+        boolean add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, cardinality * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            ++cardinality;
+            return true;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        boolean addTo(Ranges ranges, int base) {
+            for (int i = 0; i < cardinality; ++i) {
+                if (!ranges.add(base | values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        BitmapContainer toBitmapContainer() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; ++i) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words = new long[1 << 10];
+
+        @Override
+        boolean add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[value >>> 6] |= bit;
+            ++cardinality;
+            return true;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        boolean addTo(Ranges ranges, int base) {
+            for (int i = 0; i < words.length; ++i) {
+                long word = words[i];
+                while (word != 0) {
+                    if (!ranges.add(base | (i << 6) | Long.numberOfTrailingZeros(word))) {
+                        return false;
+                    }
+                    word &= word - 1;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Ranges {
+        private final int maxRanges;
+        private final List<int[]> ranges = new ArrayList<int[]>();
+        private int[] current;
+
+        Ranges(int maxRanges) {
+            this.maxRanges = maxRanges;
+        }
+
+        // ids are added in ascending order
+        boolean add(int id) {
+            if (current != null && current[1] == id - 1) {
+                current[1] = id;
+                return true;
+            }
+            if (ranges.size() == maxRanges) {
+                return false;
+            }
+            current = new int[] { id, id };
+            ranges.add(current);
+            return true;
+        }
+    }
+}
@@ -190,6 +190,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void deleteRoles(Subject subject, int[] doomedRoleIds) {
         if (doomedRoleIds != null) {
+            authorizationManager.invalidateAuthorizationCache();
+
             for (int roleId : doomedRoleIds) {
                 Role doomedRole = entityManager.find(Role.class, roleId);
 
@@ -267,6 +269,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             }
 
             subjectToModify.getRoles().size();
+            authorizationManager.invalidateAuthorizationCache();
 
             for (Integer roleId : roleIds) {
                 Role role = entityManager.find(Role.class, roleId);
@@ -293,6 +296,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             if (role == null) {
                 throw new IllegalArgumentException("Could not find role[" + roleId + "] to add subjects to");
             }
+            authorizationManager.invalidateAuthorizationCache();
 
             for (Integer subjectId : subjectIds) {
                 Subject newSubject = entityManager.find(Subject.class, subjectId);
@@ -327,6 +331,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
                 throw new PermissionException("You cannot remove roles from user [" + subjectToModify.getName()
                     + "] - roles are fixed for this user");
             }
+            authorizationManager.invalidateAuthorizationCache();
 
             for (Integer roleId : roleIds) {
                 Role role = entityManager.find(Role.class, roleId);
@@ -425,6 +430,10 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
 
         // Then update the subjects, resourceGroups, ldapGroups, and/or bundle groups, but only if those fields are
         // non-null on the passed-in Role.
+        if (role.getSubjects() != null || role.getResourceGroups() != null) {
+            authorizationManager.invalidateAuthorizationCache();
+        }
+
         Set<Subject> newSubjects = role.getSubjects();
         if (newSubjects != null) {
             Set<Subject> currentSubjects = attachedRole.getSubjects();
@@ -651,6 +660,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             if (role == null) {
                 throw new IllegalArgumentException("Could not find role[" + roleId + "] to add resourceGroups to");
             }
+            authorizationManager.invalidateAuthorizationCache();
             role.getResourceGroups().size(); // load them in
 
             for (Integer groupId : groupIds) {
@@ -699,6 +709,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             if (role == null) {
                 throw new IllegalArgumentException("Could not find role[" + roleId + "] to remove resourceGroups from");
             }
+            authorizationManager.invalidateAuthorizationCache();
             role.getResourceGroups().size(); // load them in
 
             for (Integer groupId : groupIds) {
@@ -812,6 +823,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             if (role == null) {
                 throw new IllegalArgumentException("Could not find role[" + roleId + "] to remove subjects from");
             }
+            authorizationManager.invalidateAuthorizationCache();
             role.getSubjects().size(); // load them in
 
             for (Integer subjectId : subjectIds) {
@@ -894,6 +906,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             if (group == null) {
                 throw new IllegalArgumentException("Could not find resourceGroup[" + groupId + "] to remove roles from");
             }
+            authorizationManager.invalidateAuthorizationCache();
             group.getRoles().size(); // load them in
 
             for (Integer roleId : roleIds) {
@@ -946,6 +959,7 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
             if (group == null) {
                 throw new IllegalArgumentException("Could not find resourceGroup[" + groupId + "] to add roles to");
             }
+            authorizationManager.invalidateAuthorizationCache();
             group.getRoles().size(); // load them in
 
             for (Integer roleId : roleIds) {
@@ -36,6 +36,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
+import org.rhq.enterprise.server.measurement.MeasurementBaselineManagerLocal;
 
 /**
  * Each server has partitioned alerts condition cache data.  This session bean exists
@@ -58,6 +59,9 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
     @EJB
     AlertConditionCacheManagerLocal cacheManager;
 
+    @EJB
+    MeasurementBaselineManagerLocal baselineManager;
+
     @EJB
     CacheConsistencyManagerLocal cacheConsistencyManager;
 
@@ -94,9 +98,22 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
     public void reloadServerCacheIfNeededNSTx() {
         // try reload the global cache separate from the agent caches for purposes of isolated failures
         reloadGlobalCacheIfNeeded();
+        refreshBaselineStore();
         reloadAgentCachesAsNeeded();
     }
 
+    private void refreshBaselineStore() {
+        try {
+            baselineManager.refreshBaselineStore();
+        } catch (Throwable t) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to refresh baseline store", t);
+            } else {
+                log.error("Failed to refresh baseline store, cause: " + t.getMessage());
+            }
+        }
+    }
+
     private void reloadGlobalCacheIfNeeded() {
         try {
             boolean hadServerStatus = serverManager.getAndClearServerStatus();
@@ -361,8 +361,9 @@ public class CoreServerServiceImpl implements CoreServerService {
             PartitionEventType.AGENT_CONNECT, agentName + " - " + server.getName());
 
         log.info("Agent [" + agentName + "] has connected to this server at " + new Date());
+        // this server reads measurement reports in either encoding, so the agent may send them compactly
         return new ConnectAgentResults(System.currentTimeMillis(), agent.isBackFilled(),
-            agentVersionCheckResults.getLatestAgentVersion());
+            agentVersionCheckResults.getLatestAgentVersion(), true);
     }
 
     /**
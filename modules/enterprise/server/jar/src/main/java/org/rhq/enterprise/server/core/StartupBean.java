@@ -75,6 +75,7 @@ import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.SyncEndpointAddressException;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
 import org.rhq.enterprise.server.core.plugin.PluginDeploymentScannerMBean;
+import org.rhq.enterprise.server.measurement.MeasurementBaselineManagerLocal;
 import org.rhq.enterprise.server.naming.NamingHack;
 import org.rhq.enterprise.server.plugin.pc.MasterServerPluginContainer;
 import org.rhq.enterprise.server.plugin.pc.ServerPluginServiceMBean;
@@ -135,6 +136,9 @@ public class StartupBean implements StartupLocal {
     @EJB
     private ResourceTypeManagerLocal resourceTypeManager;
 
+    @EJB
+    private MeasurementBaselineManagerLocal measurementBaselineManager;
+
     @EJB
     private SchedulerLocal schedulerBean;
 
@@ -212,6 +216,13 @@ public class StartupBean implements StartupLocal {
             log.error("Could not load ResourceFacets cache.", t);
         }
 
+        // load the baselines used by OOB computation and alerting, this is refreshed on the cache heartbeat too
+        try {
+            measurementBaselineManager.refreshBaselineStore();
+        } catch (Throwable t) {
+            log.warn("Could not load baseline store, will try again later: " + t);
+        }
+
         //Server depends on the storage cluster availability. Since the storage client init just
         //establishes connectivity with the storage cluster, then run it before the server init.
         initStorageClient();
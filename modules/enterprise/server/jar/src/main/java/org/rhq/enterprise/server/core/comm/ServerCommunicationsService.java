@@ -27,10 +27,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.InvalidPreferencesFormatException;
 import java.util.prefs.Preferences;
@@ -69,6 +73,7 @@ import org.rhq.enterprise.communications.ServiceContainerMetricsMBean;
 import org.rhq.enterprise.communications.command.client.ClientCommandSender;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
 import org.rhq.enterprise.communications.command.client.ClientRemotePojoFactory;
+import org.rhq.enterprise.communications.command.client.SegmentedCommandSpool;
 import org.rhq.enterprise.communications.command.server.CommandProcessorMetrics.Calltime;
 import org.rhq.enterprise.communications.command.server.discovery.AutoDiscoveryListener;
 import org.rhq.enterprise.communications.util.ConcurrencyManager;
@@ -107,6 +112,21 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
     private static final String REMOTE_API_SUBSYSTEM = "REMOTEAPI";
     private static final String WS_REMOTE_API_SUBSYSTEM = "WSREMOTEAPI";
 
+    /**
+     * The server property that turns on the adaptive concurrency limits.
+     */
+    public static final String ADAPTIVE_CONCURRENCY_LIMITS_PROPERTY = "rhq.server.concurrency-limit.adaptive";
+
+    /**
+     * The limits on the processing of agent reports, which are the ones made adaptive.
+     */
+    private static final Set<String> ADAPTIVE_CONCURRENCY_LIMITS = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList(DiscoveryServerService.CONCURRENCY_LIMIT_INVENTORY_REPORT,
+            DiscoveryServerService.CONCURRENCY_LIMIT_AVAILABILITY_REPORT,
+            DiscoveryServerService.CONCURRENCY_LIMIT_INVENTORY_SYNC,
+            ContentServerService.CONCURRENCY_LIMIT_CONTENT_REPORT,
+            MeasurementServerService.CONCURRENCY_LIMIT_MEASUREMENT_REPORT)));
+
     /**
      * The MBeanServer where this bootstrap service is registered and where the server-side comm services will be
      * registered.
@@ -173,6 +193,11 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
      */
     private RemoteSafeInvocationHandler m_remoteApiHandler;
 
+    /**
+     * Tells the adaptive concurrency limits when the database or the storage can't keep up.
+     */
+    private final ServerLoadIndicator m_loadIndicator = new ServerLoadIndicator();
+
     /**
      * Actually starts the communications services. Once this returns, agents can communicate with the server. This
      * method exists (as opposed to "start()") because we do not want these communications services initialized until
@@ -198,6 +223,13 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
             container.start(config.getServiceContainerPreferences().getPreferences(), config
                 .getClientCommandSenderConfiguration(), m_mbs);
 
+            if (Boolean.getBoolean(ADAPTIVE_CONCURRENCY_LIMITS_PROPERTY)) {
+                ConcurrencyManager concurrencyManager = container.getConcurrencyManager();
+                container.setConcurrencyManager(new ConcurrencyManager(concurrencyManager
+                    .getAllConfiguredNumberOfPermitsAllowed(), ADAPTIVE_CONCURRENCY_LIMITS, m_loadIndicator));
+                LOG.info(ServerI18NResourceKeys.ADAPTIVE_CONCURRENCY_LIMITS, true, ADAPTIVE_CONCURRENCY_LIMITS);
+            }
+
             // now let's add our additional handler to support the remote clients (e.g. CLI)
             m_remoteApiHandler = new RemoteSafeInvocationHandler();
             m_remoteApiHandler.registerMetricsMBean(container.getMBeanServer());
@@ -411,12 +443,18 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
                     }
                 }
 
+                // a dirty cache entry is "logically" the same as the new one, but with outdated auth info; it must be
+                // stopped before the new one is created, so that it persists its queued commands and releases the
+                // command spool the new one takes over
+                if (agent_client != null) {
+                    agent_client.stopSending();
+                }
+
                 ClientCommandSenderConfiguration client_config = getSenderConfiguration(agent);
                 ClientCommandSender sender = getServiceContainer().createClientCommandSender(remote_uri, client_config);
                 agent_client = new AgentClientImpl(agent, sender);
 
-                // add the new cache entry, or replace the dirty cache entry (note that dirty cache entries don't
-                // need to be destroyed as the new one is "logically" the same, but with updated auth info.)
+                // add the new cache entry, or replace the dirty cache entry
                 m_knownAgentClients.put(getEndpointKey(agent_address, agent_port), agent_client);
             }
         }
@@ -439,12 +477,16 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
                 agent_client.stopSending();
             }
 
-            // purge the spool file, if it exists
+            // purge the spool, if it exists - both the segment directory and the file of the old spool format
             File spool_file = null;
 
             try {
                 ClientCommandSenderConfiguration sender_config = getSenderConfiguration(agent);
                 if (sender_config.commandSpoolFileName != null) {
+                    spool_file = new File(sender_config.dataDirectory, sender_config.commandSpoolFileName
+                        + SegmentedCommandSpool.DIRECTORY_SUFFIX);
+                    SegmentedCommandSpool.delete(spool_file);
+
                     spool_file = new File(sender_config.dataDirectory, sender_config.commandSpoolFileName);
                     if (spool_file.exists()) {
                         // first truncate it, in case Windows is locking it; then try to delete
@@ -497,12 +539,14 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
             throw new IllegalArgumentException(e);
         }
 
+        // stop it while holding the lock, so that a new client for the agent isn't created before this one has
+        // released its command spool
         synchronized (m_knownAgentClients) {
             client = m_knownAgentClients.remove(getEndpointKey(locator.getHost(), locator.getPort()));
-        }
 
-        if (client != null) {
-            client.stopSending();
+            if (client != null) {
+                client.stopSending();
+            }
         }
 
         return;
@@ -651,6 +695,46 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
         setConcurrencyLimit(ConfigurationServerService.CONCURRENCY_LIMIT_CONFIG_UPDATE, maxConcurrency, true);
     }
 
+    @Override
+    public Boolean getAdaptiveConcurrencyLimits() {
+        return !getServiceContainer().getConcurrencyManager().getAdaptiveLimitNames().isEmpty();
+    }
+
+    @Override
+    public void setAdaptiveConcurrencyLimits(Boolean flag) {
+        if (flag == null) {
+            flag = Boolean.FALSE;
+        }
+
+        persistServerProperty(ADAPTIVE_CONCURRENCY_LIMITS_PROPERTY, flag.toString());
+        System.setProperty(ADAPTIVE_CONCURRENCY_LIMITS_PROPERTY, flag.toString());
+
+        ConcurrencyManager concurrencyManager = getServiceContainer().getConcurrencyManager();
+        Set<String> adaptiveLimits = flag ? ADAPTIVE_CONCURRENCY_LIMITS : null;
+        getServiceContainer().setConcurrencyManager(
+            new ConcurrencyManager(concurrencyManager.getAllConfiguredNumberOfPermitsAllowed(), adaptiveLimits,
+                m_loadIndicator));
+
+        LOG.info(ServerI18NResourceKeys.ADAPTIVE_CONCURRENCY_LIMITS, flag, ADAPTIVE_CONCURRENCY_LIMITS);
+    }
+
+    @Override
+    public Map<String, String> getAdaptiveConcurrencyLimitStates() {
+        return getServiceContainer().getConcurrencyManager().getAdaptiveLimitStates();
+    }
+
+    @Override
+    public Integer getMeasurementReportCurrentConcurrencyLimit() {
+        return getServiceContainer().getConcurrencyManager().getCurrentNumberOfPermitsAllowed(
+            MeasurementServerService.CONCURRENCY_LIMIT_MEASUREMENT_REPORT);
+    }
+
+    @Override
+    public Integer getAvailabilityReportCurrentConcurrencyLimit() {
+        return getServiceContainer().getConcurrencyManager().getCurrentNumberOfPermitsAllowed(
+            DiscoveryServerService.CONCURRENCY_LIMIT_AVAILABILITY_REPORT);
+    }
+
     @Override
     public Boolean getMaintenanceModeAtStartup() {
         InputStream inputStream = null;
@@ -1045,7 +1129,9 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
         Map<String, Integer> limits = concurrencyManager.getAllConfiguredNumberOfPermitsAllowed();
         limits.put(limitName, maxConcurrency);
 
-        getServiceContainer().setConcurrencyManager(new ConcurrencyManager(limits));
+        // the adaptive limits start over from the new configuration
+        getServiceContainer().setConcurrencyManager(
+            new ConcurrencyManager(limits, concurrencyManager.getAdaptiveLimitNames(), m_loadIndicator));
 
         LOG.info(ServerI18NResourceKeys.NEW_CONCURRENCY_LIMIT, limitName, maxConcurrency);
     }
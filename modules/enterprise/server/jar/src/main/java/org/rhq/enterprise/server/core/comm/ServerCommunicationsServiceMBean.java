@@ -19,6 +19,7 @@
 package org.rhq.enterprise.server.core.comm;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.management.ObjectName;
 
@@ -356,6 +357,48 @@ public interface ServerCommunicationsServiceMBean extends ServiceContainerMetric
      */
     void setConfigurationUpdateConcurrencyLimit(Integer maxConcurrency);
 
+    /**
+     * Returns <code>true</code> if the limits on the processing of agent reports (inventory, availability, content
+     * and measurement reports as well as inventory synchronizations) adapt to the load. An adaptive limit never allows
+     * more concurrent reports than its configured limit, but allows fewer while the processing time of the reports
+     * goes up or while the database connection pool or the metrics storage queue is saturated. Agents that are
+     * turned away are told how long to wait based on the observed processing time.
+     *
+     * @return <code>true</code> if the report concurrency limits are adaptive
+     */
+    Boolean getAdaptiveConcurrencyLimits();
+
+    /**
+     * Turns the adaptive concurrency limits on or off. See {@link #getAdaptiveConcurrencyLimits()} for more.
+     *
+     * @param flag
+     */
+    void setAdaptiveConcurrencyLimits(Boolean flag);
+
+    /**
+     * Returns the state of each adaptive concurrency limit that has been used: its current and configured limit, the
+     * reports in progress, their average processing time and how often the limit was decreased.
+     *
+     * @return the state of the adaptive limits keyed on limit name
+     */
+    Map<String, String> getAdaptiveConcurrencyLimitStates();
+
+    /**
+     * Gets the number of measurement reports currently allowed to be processed concurrently. This is less than the
+     * {@link #getMeasurementReportConcurrencyLimit() configured limit} if the adaptive limit has been decreased.
+     *
+     * @return number of concurrent calls currently allowed
+     */
+    Integer getMeasurementReportCurrentConcurrencyLimit();
+
+    /**
+     * Gets the number of availability reports currently allowed to be processed concurrently. This is less than the
+     * {@link #getAvailabilityReportConcurrencyLimit() configured limit} if the adaptive limit has been decreased.
+     *
+     * @return number of concurrent calls currently allowed
+     */
+    Integer getAvailabilityReportCurrentConcurrencyLimit();
+
     /**
      * Returns <code>true</code> if the server should always start up in maintenance mode.
      * If <code>false</code>, the server will startup in the same state it was in when it
@@ -47,6 +47,9 @@ public interface ServerI18NResourceKeys {
     @I18NMessages( { @I18NMessage("New concurrency limit: [{0}]=[{1}]") })
     String NEW_CONCURRENCY_LIMIT = "ServerCommunicationsService.new-concurrency-limit";
 
+    @I18NMessages( { @I18NMessage("Adaptive concurrency limits enabled=[{0}] for {1}") })
+    String ADAPTIVE_CONCURRENCY_LIMITS = "ServerCommunicationsService.adaptive-concurrency-limits";
+
     @I18NMessages( { @I18NMessage("Cannot find the server configuration file [{0}]"),
         @I18NMessage(value = "Kann die Server-Konfigurationsdatei [{0}] nicht finden ", locale = "de") })
     String CANNOT_FIND_CONFIG_FILE = "ServerCommunicationsService.cannot-find-config-file";
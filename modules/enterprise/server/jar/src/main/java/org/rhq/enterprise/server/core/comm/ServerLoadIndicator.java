@@ -0,0 +1,110 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.core.comm;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.enterprise.communications.util.LoadIndicator;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Reports the server as overloaded when the RHQ datasource has almost no free connections left or when the queue of
+ * the metrics server, which buffers raw data on its way to storage, is close to full. Agent reports processed while
+ * either is the case only add to the backlog, so the adaptive concurrency limits shrink.
+ *
+ * <p>The datasource is only checked if its pool statistics are enabled. The answer is cached for
+ * {@link #CHECK_INTERVAL} ms since it is asked for every time an adaptive permit is released.</p>
+ */
+public class ServerLoadIndicator implements LoadIndicator {
+    private static final Log LOG = LogFactory.getLog(ServerLoadIndicator.class);
+
+    public static final long CHECK_INTERVAL = 1000L;
+
+    /**
+     * The fraction of the datasource connections in use at which the server is overloaded.
+     */
+    public static final double MAX_CONNECTION_POOL_USAGE = 0.9;
+
+    /**
+     * The free capacity of the metrics server queue below which the server is overloaded; a tenth of the queue.
+     */
+    public static final int MIN_METRICS_QUEUE_CAPACITY = 20000;
+
+    private static final String DATASOURCE_POOL_STATISTICS =
+        "jboss.as:subsystem=datasources,data-source=RHQDS,statistics=pool";
+
+    private volatile boolean overloaded;
+    private volatile long lastCheck;
+    private volatile boolean poolStatisticsAvailable = true;
+
+    @Override
+    public boolean isOverloaded() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck >= CHECK_INTERVAL) {
+            // not synchronized, a concurrent caller doing the same check at the same time is harmless
+            lastCheck = now;
+            overloaded = isConnectionPoolSaturated() || isMetricsQueueFull();
+        }
+        return overloaded;
+    }
+
+    private boolean isConnectionPoolSaturated() {
+        if (!poolStatisticsAvailable) {
+            return false;
+        }
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName pool = new ObjectName(DATASOURCE_POOL_STATISTICS);
+            int inUse = ((Number) mbs.getAttribute(pool, "InUseCount")).intValue();
+            int available = ((Number) mbs.getAttribute(pool, "AvailableCount")).intValue();
+            int size = inUse + available;
+            boolean saturated = (size > 0) && (inUse >= size * MAX_CONNECTION_POOL_USAGE);
+            if (saturated && LOG.isDebugEnabled()) {
+                LOG.debug("The datasource connection pool is saturated: " + inUse + " of " + size + " in use");
+            }
+            return saturated;
+        } catch (Exception e) {
+            // the statistics are not enabled or not supported by the container, do not try again
+            poolStatisticsAvailable = false;
+            LOG.info("Datasource pool statistics are not available, the adaptive concurrency limits will not take "
+                + "the connection pool into account: " + e);
+            return false;
+        }
+    }
+
+    private boolean isMetricsQueueFull() {
+        try {
+            int capacity = LookupUtil.getStorageClientManager().getQueueAvailableCapacity();
+            boolean full = capacity < MIN_METRICS_QUEUE_CAPACITY;
+            if (full && LOG.isDebugEnabled()) {
+                LOG.debug("The metrics server queue is almost full, the remaining capacity is " + capacity);
+            }
+            return full;
+        } catch (RuntimeException e) {
+            // the storage client subsystem is not initialized yet
+            return false;
+        }
+    }
+}
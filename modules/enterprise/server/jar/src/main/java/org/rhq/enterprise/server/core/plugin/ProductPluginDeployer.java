@@ -42,6 +42,7 @@ import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.plugin.CannedGroupAddition;
 import org.rhq.core.domain.plugin.Plugin;
 import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.enterprise.server.discovery.ResourceTypeCache;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.resource.metadata.PluginManagerLocal;
@@ -228,6 +229,9 @@ public class ProductPluginDeployer {
             + pluginsToBeRegistered);
         this.namesOfPluginsToBeRegistered.removeAll(pluginsToBeRegistered);
 
+        // the types cached for inventory report merges may have changed
+        ResourceTypeCache.getSingleton().invalidate();
+
         // load resource facets cache
         try {
             ResourceTypeManagerLocal typeManager = LookupUtil.getResourceTypeManager();
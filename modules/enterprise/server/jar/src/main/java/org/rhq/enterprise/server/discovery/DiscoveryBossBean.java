@@ -253,11 +253,15 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
 
         // we need to also tell the agent if there were any ignored types - we must provide the agent with
         // ALL types that are ignored, not just for those resources that were in the report
-        ResourceTypeCriteria ignoredTypesCriteria = new ResourceTypeCriteria();
-        ignoredTypesCriteria.addFilterIgnored(true);
-        ignoredTypesCriteria.setPageControl(PageControl.getUnlimitedInstance());
-        PageList<ResourceType> ignoredTypes = resourceTypeManager.findResourceTypesByCriteria(
-            subjectManager.getOverlord(), ignoredTypesCriteria);
+        List<ResourceType> ignoredTypes = ResourceTypeCache.getSingleton().getIgnoredTypes();
+        if (null == ignoredTypes) {
+            ResourceTypeCriteria ignoredTypesCriteria = new ResourceTypeCriteria();
+            ignoredTypesCriteria.addFilterIgnored(true);
+            ignoredTypesCriteria.setPageControl(PageControl.getUnlimitedInstance());
+            ignoredTypes = resourceTypeManager.findResourceTypesByCriteria(subjectManager.getOverlord(),
+                ignoredTypesCriteria);
+            ResourceTypeCache.getSingleton().setIgnoredTypes(ignoredTypes);
+        }
 
         MergeInventoryReportResults results;
         if (syncInfo != null) {
@@ -684,7 +688,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 + resource.getResourceType());
         }
 
-        Resource existingResource = findExistingResource(resource, null);
+        Resource existingResource = findExistingResource(resource, null, null);
         if (existingResource != null) {
             mergeResourceResponse = new MergeResourceResponse(existingResource.getId(), existingResource.getMtime(),
                 true);
@@ -1018,11 +1022,14 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         // Cache parent resources we've already fetched from the DB, many resources will have the same parent
         Map<Integer, Resource> parentMap = new HashMap<Integer, Resource>();
 
+        // Load the existing resources the batch could match up front, rather than resource by resource
+        ExistingResourceLookup lookup = new ExistingResourceLookup(entityManager, resourceBatch);
+
         for (Resource resource : resourceBatch) {
             Resource existingResource;
             long start = System.currentTimeMillis();
 
-            existingResource = findExistingResource(resource, parentMap);
+            existingResource = findExistingResource(resource, parentMap, lookup);
 
             // Does this resource already exist in inventory? If so, update, otherwise add
             if (null != existingResource) {
@@ -1031,6 +1038,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             } else {
                 presetAgent(resource, agent);
                 persistResource(resource, parentMap, postMergeActions);
+                lookup.addPersistedResource(resource);
             }
 
             if (isDebugEnabled) {
@@ -1073,9 +1081,11 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
      * @param resource Pojo containing resourceId, key, and parentResoure (if applicable)
      * @param parentMap, if supplied, holds previously fetched parent pojos. useful when the calling code does many
      * finds for a few parents.  If not found in the map the db will be searched, the map will be updated if possible.
+     * @param lookup, if supplied, is used to find the resource by business key instead of querying for each parent.
      * @return the Resource entity found in the database and matching the given resource.
      */
-    private Resource findExistingResource(Resource resource, Map<Integer, Resource> parentMap) {
+    private Resource findExistingResource(Resource resource, Map<Integer, Resource> parentMap,
+        ExistingResourceLookup lookup) {
 
         boolean isDebugEnabled = LOG.isDebugEnabled();
 
@@ -1153,15 +1163,19 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
 
                 // We found the parent in inventory, so now see if we can find this resource in inventory by using
                 // the parent, the resource key (unique among siblings), the plugin and the type.
-                Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_PARENT_AND_KEY);
-                query.setParameter("parent", existingParent);
-                query.setParameter("key", resource.getResourceKey());
-                query.setParameter("plugin", resourceType.getPlugin());
-                query.setParameter("typeName", resourceType.getName());
-                try {
-                    existingResource = (Resource) query.getSingleResult();
-                } catch (NoResultException e) {
-                    existingResource = null;
+                if (null != lookup) {
+                    existingResource = lookup.findChild(existingParent, resource.getResourceKey(), resourceType);
+                } else {
+                    Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_PARENT_AND_KEY);
+                    query.setParameter("parent", existingParent);
+                    query.setParameter("key", resource.getResourceKey());
+                    query.setParameter("plugin", resourceType.getPlugin());
+                    query.setParameter("typeName", resourceType.getName());
+                    try {
+                        existingResource = (Resource) query.getSingleResult();
+                    } catch (NoResultException e) {
+                        existingResource = null;
+                    }
                 }
             }
 
@@ -1293,6 +1307,14 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         key.append(name);
         ResourceType resourceType = loadedTypeMap.get(key.toString());
 
+        if (null == resourceType) {
+            // the report uses the same type instances throughout, the cache only saves the lookup by plugin and name
+            Integer resourceTypeId = ResourceTypeCache.getSingleton().getResourceTypeId(plugin, name);
+            if (null != resourceTypeId) {
+                resourceType = entityManager.find(ResourceType.class, resourceTypeId);
+            }
+        }
+
         if (null == resourceType) {
             try {
                 resourceType = this.resourceTypeManager.getResourceTypeByNameAndPlugin(name, plugin);
@@ -1303,9 +1325,10 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             if (null == resourceType) {
                 return false;
             } else {
-                loadedTypeMap.put(key.toString(), resourceType);
+                ResourceTypeCache.getSingleton().putResourceType(resourceType);
             }
         }
+        loadedTypeMap.put(key.toString(), resourceType);
 
         resource.setResourceType(resourceType);
 
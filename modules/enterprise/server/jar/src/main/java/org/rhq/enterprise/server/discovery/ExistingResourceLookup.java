@@ -0,0 +1,177 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.discovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * <p>Requires A Transaction</p>
+ *
+ * Finds the existing resources that the resources of an inventory report merge batch can match, using a few set-based
+ * queries for the whole batch instead of queries for every resource and every one of its ancestors:
+ * <ul>
+ * <li>The resources with the ids claimed by the agent for the batch resources and their ancestors are loaded at once.
+ * They are then in the persistence context, so finding them by id does not go to the database again.</li>
+ * <li>The children of those resources that have one of the resource keys of the batch are loaded at once, and the
+ * match by parent, key and type is done in memory. Parents that only become known during the merge, e.g. because
+ * their id is corrected by the merge, have their children loaded when first needed.</li>
+ * </ul>
+ * Resources persisted by the batch are added as children of their parent, so that the lookup sees what a query would
+ * have seen after the persistence context was flushed.
+ */
+class ExistingResourceLookup {
+
+    // Oracle does not allow more than 1000 expressions in an IN list
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
+    private final EntityManager entityManager;
+
+    private final List<String> keys;
+
+    // existing resources having one of the keys, keyed on the id of their parent
+    private final Map<Integer, List<Resource>> childrenByParentId = new HashMap<Integer, List<Resource>>();
+
+    // existing resources without a parent having one of the keys, loaded when first needed
+    private List<Resource> roots;
+
+    /**
+     * @param entityManager the entity manager of the merge transaction
+     * @param resourceBatch the pojos of the batch, as reported by the agent
+     */
+    ExistingResourceLookup(EntityManager entityManager, List<Resource> resourceBatch) {
+        this.entityManager = entityManager;
+
+        Set<String> keySet = new HashSet<String>();
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Resource resource : resourceBatch) {
+            keySet.add(resource.getResourceKey());
+            for (Resource r = resource; null != r; r = r.getParentResource()) {
+                if (r.getId() > 0) {
+                    ids.add(r.getId());
+                }
+            }
+        }
+        keys = new ArrayList<String>(keySet);
+
+        List<Integer> existingIds = new ArrayList<Integer>(ids.size());
+        for (List<Integer> idChunk : chunk(new ArrayList<Integer>(ids))) {
+            Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_IDS_FOR_MERGE);
+            query.setParameter("ids", idChunk);
+            for (Object result : query.getResultList()) {
+                existingIds.add(((Resource) result).getId());
+            }
+        }
+
+        for (List<Integer> parentIdChunk : chunk(existingIds)) {
+            for (Integer parentId : parentIdChunk) {
+                childrenByParentId.put(parentId, new ArrayList<Resource>());
+            }
+            loadChildren(parentIdChunk);
+        }
+    }
+
+    /**
+     * @param existingParent the attached parent entity, <code>null</code> to look for a resource without a parent
+     * @param key the resource key of the reported resource
+     * @param resourceType the type of the reported resource
+     * @return the existing child of the parent with the given key and type, or <code>null</code> if there is none
+     */
+    Resource findChild(Resource existingParent, String key, ResourceType resourceType) {
+        List<Resource> candidates = (null == existingParent) ? getRoots() : getChildren(existingParent.getId());
+        for (Resource candidate : candidates) {
+            ResourceType candidateType = candidate.getResourceType();
+            if (key.equals(candidate.getResourceKey()) && resourceType.getName().equals(candidateType.getName())
+                && resourceType.getPlugin().equals(candidateType.getPlugin())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param resource a resource of the batch that has just been persisted, with its attached parent set
+     */
+    void addPersistedResource(Resource resource) {
+        // a new resource has no existing children, only the ones persisted after it
+        childrenByParentId.put(resource.getId(), new ArrayList<Resource>());
+
+        Resource parent = resource.getParentResource();
+        List<Resource> siblings = (null == parent) ? roots : childrenByParentId.get(parent.getId());
+        if (null != siblings) {
+            siblings.add(resource);
+        }
+    }
+
+    private List<Resource> getChildren(int parentId) {
+        List<Resource> children = childrenByParentId.get(parentId);
+        if (null == children) {
+            childrenByParentId.put(parentId, new ArrayList<Resource>());
+            loadChildren(Collections.singletonList(parentId));
+            children = childrenByParentId.get(parentId);
+        }
+        return children;
+    }
+
+    private void loadChildren(List<Integer> parentIds) {
+        for (List<String> keyChunk : chunk(keys)) {
+            Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_PARENTS_AND_KEYS);
+            query.setParameter("parentIds", parentIds);
+            query.setParameter("keys", keyChunk);
+            for (Object result : query.getResultList()) {
+                Object[] row = (Object[]) result;
+                childrenByParentId.get((Integer) row[1]).add((Resource) row[0]);
+            }
+        }
+    }
+
+    private List<Resource> getRoots() {
+        if (null == roots) {
+            roots = new ArrayList<Resource>();
+            for (List<String> keyChunk : chunk(keys)) {
+                Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_ROOTS_BY_KEYS);
+                query.setParameter("keys", keyChunk);
+                for (Object result : query.getResultList()) {
+                    roots.add((Resource) result);
+                }
+            }
+        }
+        return roots;
+    }
+
+    private static <T> List<List<T>> chunk(List<T> list) {
+        List<List<T>> chunks = new ArrayList<List<T>>();
+        for (int i = 0; i < list.size(); i += MAX_IN_LIST_SIZE) {
+            chunks.add(list.subList(i, Math.min(i + MAX_IN_LIST_SIZE, list.size())));
+        }
+        return chunks;
+    }
+}
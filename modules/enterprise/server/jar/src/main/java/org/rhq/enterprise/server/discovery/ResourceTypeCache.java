@@ -0,0 +1,106 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.discovery;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * Holds the ids of the resource types looked up while merging inventory reports, as well as the list of ignored types
+ * that is sent back to the agent with the results of every merge. Agents report the same few hundred types over and
+ * over, so there is no need to query them by plugin and name for every report. Only the ids are cached, the types
+ * themselves are loaded by id in the persistence context of the merge.
+ *
+ * <p>The cache is emptied when the types change on this server, i.e. when plugins are registered and when the ignore
+ * flag of a type is changed. Since such changes can also be made on another server of the cloud, the cache is also
+ * emptied every {@link #TTL} ms. A report merged in the meantime may be answered with a stale list of ignored types,
+ * which is no different than a report that was merged just before the flag was changed.</p>
+ *
+ * <p>The cached ignored types are shared by concurrent merges, they are only sent to the agents and must not be
+ * modified.</p>
+ */
+public class ResourceTypeCache {
+
+    public static final long TTL = Long.getLong("rhq.server.discovery.type-cache-ttl", 60000L);
+
+    private static final ResourceTypeCache singleton = new ResourceTypeCache();
+
+    // key is the plugin name and type name, see getKey()
+    private final ConcurrentMap<String, Integer> typeIds = new ConcurrentHashMap<String, Integer>();
+
+    private volatile List<ResourceType> ignoredTypes;
+
+    private volatile long expiration;
+
+    private ResourceTypeCache() {
+        expiration = System.currentTimeMillis() + TTL;
+    }
+
+    public static ResourceTypeCache getSingleton() {
+        return singleton;
+    }
+
+    /**
+     * @return the id of the cached type, or <code>null</code> if the type has not been cached
+     */
+    public Integer getResourceTypeId(String plugin, String name) {
+        expireIfNeeded();
+        return typeIds.get(getKey(plugin, name));
+    }
+
+    public void putResourceType(ResourceType resourceType) {
+        typeIds.put(getKey(resourceType.getPlugin(), resourceType.getName()), resourceType.getId());
+    }
+
+    /**
+     * @return all ignored types, or <code>null</code> if they have not been cached
+     */
+    public List<ResourceType> getIgnoredTypes() {
+        expireIfNeeded();
+        return ignoredTypes;
+    }
+
+    public void setIgnoredTypes(List<ResourceType> ignoredTypes) {
+        this.ignoredTypes = Collections.unmodifiableList(ignoredTypes);
+    }
+
+    /**
+     * Empties the cache. This must be called whenever resource types are added, updated or deleted.
+     */
+    public void invalidate() {
+        expiration = System.currentTimeMillis() + TTL;
+        typeIds.clear();
+        ignoredTypes = null;
+    }
+
+    private void expireIfNeeded() {
+        if (System.currentTimeMillis() > expiration) {
+            invalidate();
+        }
+    }
+
+    private static String getKey(String plugin, String name) {
+        return plugin + ":::" + name;
+    }
+}
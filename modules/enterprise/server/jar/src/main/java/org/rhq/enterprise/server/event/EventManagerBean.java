@@ -30,6 +30,8 @@ import java.util.Set;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
@@ -89,6 +91,59 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     private static final String EVENT_INSERT_STMT_AUTOINC = "INSERT INTO RHQ_Event (event_source_id, timestamp, severity, detail) "
         + "VALUES ((SELECT id FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?), ?, ?, ?)";
 
+    // Rows of the hourly event counts are created on demand, the same way as the event sources above, but in their own
+    // transaction: a concurrent insert of the same row fails with a unique key violation, which would abort the
+    // transaction of the events on Postgres. The insert is retried, and then finds the row committed by the other
+    // transaction.
+    private static final String EVENT_HOURLY_INSERT_STMT = "INSERT INTO RHQ_Event_Hourly (resource_id, time_stamp, severity, event_count) "
+        + "SELECT ?, ?, ?, 0 FROM RHQ_Numbers WHERE i = 42 "
+        + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Hourly WHERE resource_id = ? AND time_stamp = ? AND severity = ?)";
+
+    private static final String EVENT_HOURLY_UPDATE_STMT = "UPDATE RHQ_Event_Hourly SET event_count = event_count + ? "
+        + "WHERE resource_id = ? AND time_stamp = ? AND severity = ?";
+
+    // The histogram queries compute the bucket of every event in the database and group by it, so that at most
+    // numBuckets rows are returned. The first %s is the aggregate, the second the bucket expression and the third the
+    // resource filter.
+    private static final String EVENT_BUCKETS_QUERY = "SELECT bucket, %s FROM ( "
+        + "SELECT %s AS bucket, e.severity AS severity, 1 AS event_count "
+        + "FROM RHQ_Event e JOIN RHQ_Event_Source es ON e.event_source_id = es.id "
+        + "WHERE es.resource_id %s AND e.timestamp BETWEEN :start AND :end ) event_buckets GROUP BY bucket";
+
+    private static final String EVENT_HOURLY_BUCKETS_QUERY = "SELECT bucket, %s FROM ( "
+        + "SELECT %s AS bucket, h.severity AS severity, h.event_count AS event_count "
+        + "FROM RHQ_Event_Hourly h "
+        + "WHERE h.resource_id %s AND h.time_stamp BETWEEN :start AND :end AND h.event_count > 0 ) event_buckets "
+        + "GROUP BY bucket";
+
+    private static final String EVENT_HOURLY_DELETE_STMT = "DELETE FROM RHQ_Event_Hourly WHERE resource_id %s";
+
+    private static final String BUCKET_EXPRESSION = "(%s - :begin) / :bucketSize";
+
+    // Oracle does not truncate the division of integers
+    private static final String BUCKET_EXPRESSION_ORACLE = "FLOOR((%s - :begin) / :bucketSize)";
+
+    private static final String EVENT_COUNT_AGGREGATE = "SUM(event_count)";
+
+    private static final String SEVERITY_AGGREGATE;
+    static {
+        StringBuilder aggregate = new StringBuilder("MAX(CASE severity");
+        for (EventSeverity severity : EventSeverity.values()) {
+            aggregate.append(" WHEN '").append(severity.name()).append("' THEN ").append(severity.ordinal());
+        }
+        SEVERITY_AGGREGATE = aggregate.append(" END)").toString();
+    }
+
+    private static final int EVENT_HOURLY_INSERT_ATTEMPTS = 3;
+
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    /**
+     * Histograms over ranges of at least this length, with buckets of at least one hour, are computed from the hourly
+     * event counts instead of the events.
+     */
+    private static final long MIN_RANGE_FOR_HOURLY_COUNTS = 24L * HOUR;
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
@@ -101,6 +156,9 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @EJB
     private AuthorizationManagerLocal authorizationManager;
 
+    @EJB
+    private EventManagerLocal eventManager;
+
     Log log = LogFactory.getLog(EventManagerBean.class);
 
     @Override
@@ -188,6 +246,10 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                 JDBCUtil.safeClose(ps);
             }
 
+            // Finally count the events in the hourly buckets used by the histograms of long time ranges.
+            createHourlyEventCounts(events);
+            addHourlyEventCounts(conn, getHourlyEventCounts(events));
+
         } catch (Throwable t) {
             // TODO what do we want to do here ?
             log.warn("addEventData: Insert of events failed : " + t.getMessage());
@@ -204,6 +266,106 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         }
     }
 
+    private Map<HourlyEventCountKey, Integer> getHourlyEventCounts(Map<EventSource, Set<Event>> events) {
+        Map<HourlyEventCountKey, Integer> counts = new HashMap<HourlyEventCountKey, Integer>();
+        for (Map.Entry<EventSource, Set<Event>> entry : events.entrySet()) {
+            int resourceId = entry.getKey().getResource().getId();
+            for (Event event : entry.getValue()) {
+                addHourlyEventCount(counts, resourceId, event.getTimestamp(), event.getSeverity(), 1);
+            }
+        }
+        return counts;
+    }
+
+    private static void addHourlyEventCount(Map<HourlyEventCountKey, Integer> counts, int resourceId, long timestamp,
+        EventSeverity severity, int delta) {
+        HourlyEventCountKey key = new HourlyEventCountKey(resourceId, timestamp - (timestamp % HOUR), severity);
+        Integer count = counts.get(key);
+        counts.put(key, (count == null) ? delta : count + delta);
+    }
+
+    private void createHourlyEventCounts(Map<EventSource, Set<Event>> events) {
+        for (int attempt = 1;; ++attempt) {
+            try {
+                eventManager.createHourlyEventCountsNewTx(events);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == EVENT_HOURLY_INSERT_ATTEMPTS) {
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Hourly event counts were created concurrently, trying again: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void createHourlyEventCountsNewTx(Map<EventSource, Set<Event>> events) {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = rhqDs.getConnection();
+            ps = conn.prepareStatement(EVENT_HOURLY_INSERT_STMT);
+            for (HourlyEventCountKey key : getHourlyEventCounts(events).keySet()) {
+                int paramIndex = 1;
+                ps.setInt(paramIndex++, key.resourceId);
+                ps.setLong(paramIndex++, key.hour);
+                ps.setString(paramIndex++, key.severity.name());
+                ps.setInt(paramIndex++, key.resourceId);
+                ps.setLong(paramIndex++, key.hour);
+                ps.setString(paramIndex++, key.severity.name());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            // a runtime exception, so that the transaction is rolled back
+            throw new RuntimeException("Failed to create the hourly event counts", e);
+        } finally {
+            JDBCUtil.safeClose(conn, ps, null);
+        }
+    }
+
+    private void addHourlyEventCounts(Connection conn, Map<HourlyEventCountKey, Integer> counts) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(EVENT_HOURLY_UPDATE_STMT);
+        try {
+            for (Map.Entry<HourlyEventCountKey, Integer> entry : counts.entrySet()) {
+                int paramIndex = 1;
+                ps.setInt(paramIndex++, entry.getValue());
+                ps.setInt(paramIndex++, entry.getKey().resourceId);
+                ps.setLong(paramIndex++, entry.getKey().hour);
+                ps.setString(paramIndex++, entry.getKey().severity.name());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeHourlyEventCounts(List<Integer> eventIds) {
+        Query q = entityManager.createNamedQuery(Event.FIND_SOURCE_RESOURCE_TIME_SEVERITY_BY_EVENT_IDS);
+        q.setParameter("eventIds", eventIds);
+        List<Object[]> rawResults = q.getResultList();
+
+        Map<HourlyEventCountKey, Integer> counts = new HashMap<HourlyEventCountKey, Integer>();
+        for (Object[] rawResult : rawResults) {
+            addHourlyEventCount(counts, (Integer) rawResult[0], (Long) rawResult[1], (EventSeverity) rawResult[2], -1);
+        }
+
+        // rows which drop to zero are left to the purge job, the histogram queries skip them
+        for (Map.Entry<HourlyEventCountKey, Integer> entry : counts.entrySet()) {
+            Query update = entityManager.createNativeQuery(EVENT_HOURLY_UPDATE_STMT);
+            update.setParameter(1, entry.getValue());
+            update.setParameter(2, entry.getKey().resourceId);
+            update.setParameter(3, entry.getKey().hour);
+            update.setParameter(4, entry.getKey().severity.name());
+            update.executeUpdate();
+        }
+    }
+
     private void notifyAlertConditionCacheManager(String callingMethod, EventSource source, Event... events) {
         AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(source, events);
 
@@ -212,24 +374,92 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
 
     @Override
     public int[] getEventCounts(Subject subject, int resourceId, long begin, long end, int numBuckets) {
+        EntityContext context = EntityContext.forResource(resourceId);
+        checkViewPermission(subject, context);
 
         int[] buckets = new int[numBuckets];
+        for (Object[] row : getBuckets(context, EVENT_COUNT_AGGREGATE, begin, end, numBuckets)) {
+            buckets[toBucket(row[0], numBuckets)] += ((Number) row[1]).intValue();
+        }
+
+        return buckets;
+    }
 
-        // TODO possibly rewrite query so that the db calculates the buckets (?)
-        List<EventComposite> events = findEventComposites(subject, EntityContext.forResource(resourceId), begin, end,
-            null, null, null, PageControl.getUnlimitedInstance());
+    /**
+     * Groups the events of the resources selected by the context into <code>numBuckets</code> buckets of equal length
+     * and computes the aggregate of every bucket in the database. The hourly event counts are read instead of the
+     * events when the range is long enough and the buckets are at least one hour long, in which case the events are
+     * put in the bucket of the beginning of their hour.
+     *
+     * @return rows of bucket index and aggregate value, only for the buckets with events
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> getBuckets(EntityContext context, String aggregate, long begin, long end, int numBuckets) {
+        long bucketSize = Math.max((end - begin) / numBuckets, 1L);
+
+        boolean useHourlyCounts = (end - begin) >= MIN_RANGE_FOR_HOURLY_COUNTS && bucketSize >= HOUR;
+
+        DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
+        String bucketExpression = DatabaseTypeFactory.isOracle(dbType) ? BUCKET_EXPRESSION_ORACLE : BUCKET_EXPRESSION;
+        String sql;
+        long start;
+        if (useHourlyCounts) {
+            sql = String.format(EVENT_HOURLY_BUCKETS_QUERY, aggregate, String.format(bucketExpression, "h.time_stamp"),
+                getResourceFilter(context, false));
+            start = begin - (begin % HOUR);
+        } else {
+            sql = String.format(EVENT_BUCKETS_QUERY, aggregate, String.format(bucketExpression, "e.timestamp"),
+                getResourceFilter(context, false));
+            start = begin;
+        }
 
-        long timeDiff = end - begin;
-        long timePerBucket = timeDiff / numBuckets;
+        Query q = entityManager.createNativeQuery(sql);
+        q.setParameter("begin", begin);
+        q.setParameter("bucketSize", bucketSize);
+        q.setParameter("start", start);
+        q.setParameter("end", end);
+        setResourceFilterParameters(q, context);
+
+        return q.getResultList();
+    }
 
-        for (EventComposite event : events) {
-            long evTime = event.getTimestamp().getTime();
-            evTime = evTime - begin;
-            int bucket = (int) (evTime / timePerBucket);
-            buckets[bucket]++;
+    /**
+     * Clamps the bucket index computed by the database. The first hour of a range read from the hourly event counts
+     * begins before the range, and the last bucket may be shorter than the others when the range doesn't divide
+     * evenly.
+     */
+    private static int toBucket(Object bucket, int numBuckets) {
+        // the type of the computed value depends on the database vendor
+        long index = ((Number) bucket).longValue();
+        return (int) Math.max(0L, Math.min(index, numBuckets - 1));
+    }
+
+    /**
+     * @param explicitGroups whether to select the explicit members of a group instead of the implicit ones
+     */
+    private static String getResourceFilter(EntityContext context, boolean explicitGroups) {
+        if (context.type == EntityContext.Type.Resource) {
+            return "= :resourceId";
+        } else if (context.type == EntityContext.Type.ResourceGroup) {
+            return "IN ( SELECT resource_id FROM RHQ_Resource_Group_Res_" + (explicitGroups ? "Exp" : "Imp")
+                + "_Map WHERE resource_group_id = :groupId )";
+        } else if (context.type == EntityContext.Type.AutoGroup) {
+            return "IN ( SELECT id FROM RHQ_Resource WHERE parent_resource_id = :parentResourceId "
+                + "AND resource_type_id = :resourceTypeId )";
+        } else {
+            throw new IllegalArgumentException(context.getUnknownContextMessage());
         }
+    }
 
-        return buckets;
+    private static void setResourceFilterParameters(Query query, EntityContext context) {
+        if (context.type == EntityContext.Type.Resource) {
+            query.setParameter("resourceId", context.resourceId);
+        } else if (context.type == EntityContext.Type.ResourceGroup) {
+            query.setParameter("groupId", context.groupId);
+        } else if (context.type == EntityContext.Type.AutoGroup) {
+            query.setParameter("parentResourceId", context.parentResourceId);
+            query.setParameter("resourceTypeId", context.resourceTypeId);
+        }
     }
 
     @Override
@@ -282,6 +512,8 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             }
         }
 
+        removeHourlyEventCounts(eventIds);
+
         Query q = entityManager.createNamedQuery(Event.DELETE_BY_EVENT_IDS);
         q.setParameter("eventIds", eventIds);
         int deletedCount = q.executeUpdate();
@@ -317,6 +549,11 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
 
         int deletedCount = purgeQuery.executeUpdate();
 
+        Query hourlyPurgeQuery = entityManager.createNativeQuery(String.format(EVENT_HOURLY_DELETE_STMT,
+            getResourceFilter(context, true)));
+        setResourceFilterParameters(hourlyPurgeQuery, context);
+        hourlyPurgeQuery.executeUpdate();
+
         return deletedCount;
     }
 
@@ -360,18 +597,38 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     public EventSeverity[] getSeverityBucketsByContext(Subject subject, EntityContext context, long begin, long end,
         int bucketCount) {
 
+        if (context.type == EntityContext.Type.SubsystemView) {
+            return getSeverityBucketsForSubsystem(subject, begin, end, bucketCount);
+        }
+
+        checkViewPermission(subject, context);
+
+        EventSeverity[] severities = EventSeverity.values();
+        EventSeverity[] buckets = new EventSeverity[bucketCount];
+        for (Object[] row : getBuckets(context, SEVERITY_AGGREGATE, begin, end, bucketCount)) {
+            if (row[1] == null) {
+                continue;
+            }
+            int bucket = toBucket(row[0], bucketCount);
+            EventSeverity eventSeverity = severities[((Number) row[1]).intValue()];
+            if (eventSeverity.isMoreSevereThan(buckets[bucket])) {
+                buckets[bucket] = eventSeverity;
+            }
+        }
+
+        return buckets;
+    }
+
+    /**
+     * The events of all the resources the subject can view are filtered by the authorization fragment of the
+     * criteria query, so they are still bucketed here.
+     */
+    private EventSeverity[] getSeverityBucketsForSubsystem(Subject subject, long begin, long end, int bucketCount) {
         EventCriteria criteria = new EventCriteria();
         criteria.addFilterStartTime(begin);
         criteria.addFilterEndTime(end);
 
-        /*
-         * if the bucket computation is pushed into the database, it saves on data transfer across the wire. this
-         * solution is currently querying N number of strings (event.severity) and N number of longs (event.timestamp),
-         * where N is the number of events between 'begin' and 'end'.  if the severity buckets are computed in a single
-         * query, the wire load would only be K integers, where K is the bucketCount.
-         */
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
-        ;
         String replacementSelectList = " event.severity, event.timestamp ";
         generator.alterProjection(replacementSelectList);
 
@@ -406,23 +663,7 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     public PageList<EventComposite> findEventComposites(Subject subject, EntityContext context, long begin, long end,
         EventSeverity[] severities, String source, String detail, PageControl pc) {
 
-        if (context.type == EntityContext.Type.Resource) {
-            if (authorizationManager.canViewResource(subject, context.resourceId) == false) {
-                throw new PermissionException("User [" + subject.getName()
-                    + "] does not have permission to view event history for resource[id=" + context.resourceId + "]");
-            }
-        } else if (context.type == EntityContext.Type.ResourceGroup) {
-            if (authorizationManager.canViewGroup(subject, context.groupId) == false) {
-                throw new PermissionException("User [" + subject.getName()
-                    + "] does not have permission to view event history for resourceGroup[id=" + context.groupId + "]");
-            }
-        } else if (context.type == EntityContext.Type.AutoGroup) {
-            if (authorizationManager.canViewAutoGroup(subject, context.parentResourceId, context.resourceTypeId) == false) {
-                throw new PermissionException("User [" + subject.getName()
-                    + "] does not have permission to view event history for autoGroup[parentResourceId="
-                    + context.parentResourceId + ", resourceTypeId=" + context.resourceTypeId + "]");
-            }
-        }
+        checkViewPermission(subject, context);
 
         EventCriteria criteria = new EventCriteria();
         criteria.addFilterStartTime(begin);
@@ -449,6 +690,26 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return findEventCompositesByCriteria(subject, criteria);
     }
 
+    private void checkViewPermission(Subject subject, EntityContext context) {
+        if (context.type == EntityContext.Type.Resource) {
+            if (authorizationManager.canViewResource(subject, context.resourceId) == false) {
+                throw new PermissionException("User [" + subject.getName()
+                    + "] does not have permission to view event history for resource[id=" + context.resourceId + "]");
+            }
+        } else if (context.type == EntityContext.Type.ResourceGroup) {
+            if (authorizationManager.canViewGroup(subject, context.groupId) == false) {
+                throw new PermissionException("User [" + subject.getName()
+                    + "] does not have permission to view event history for resourceGroup[id=" + context.groupId + "]");
+            }
+        } else if (context.type == EntityContext.Type.AutoGroup) {
+            if (authorizationManager.canViewAutoGroup(subject, context.parentResourceId, context.resourceTypeId) == false) {
+                throw new PermissionException("User [" + subject.getName()
+                    + "] does not have permission to view event history for autoGroup[parentResourceId="
+                    + context.parentResourceId + ", resourceTypeId=" + context.resourceTypeId + "]");
+            }
+        }
+    }
+
     @Override
     public PageList<EventComposite> findEventCompositesByCriteria(Subject subject, EventCriteria criteria) {
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
@@ -515,4 +776,35 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return getSeverityBucketsByContext(subject, EntityContext.forGroup(resourceGroupId), begin, end, numBuckets);
     }
 
+    private static final class HourlyEventCountKey {
+        private final int resourceId;
+        private final long hour;
+        private final EventSeverity severity;
+
+        private HourlyEventCountKey(int resourceId, long hour, EventSeverity severity) {
+            this.resourceId = resourceId;
+            this.hour = hour;
+            this.severity = severity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HourlyEventCountKey)) {
+                return false;
+            }
+            HourlyEventCountKey that = (HourlyEventCountKey) o;
+            return resourceId == that.resourceId && hour == that.hour && severity == that.severity;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resourceId;
+            result = 31 * result + (int) (hour ^ (hour >>> 32));
+            result = 31 * result + severity.hashCode();
+            return result;
+        }
+    }
 }
@@ -51,6 +51,15 @@ public interface EventManagerLocal extends EventManagerRemote {
      */
     void addEventData(Map<EventSource, Set<Event>> events);
 
+    /**
+     * Creates the missing rows of the hourly event counts of the passed events, with a count of 0. This is done in a
+     * new transaction so that a concurrent insert of the same row does not abort the transaction adding the events.
+     * For internal use only.
+     *
+     * @param events a set of events.
+     */
+    void createHourlyEventCountsNewTx(Map<EventSource, Set<Event>> events);
+
     Map<EventSeverity, Integer> getEventCountsBySeverity(Subject subject, int resourceId, long startDate, long endDate);
 
     Map<EventSeverity, Integer> getEventCountsBySeverityForGroup(Subject subject, int groupId, long startDate,
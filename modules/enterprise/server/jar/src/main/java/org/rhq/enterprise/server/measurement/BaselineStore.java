@@ -0,0 +1,323 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.rhq.core.domain.measurement.MeasurementBaseline;
+
+/**
+ * <p>
+ * The server-wide, in-memory copy of the baselines of all schedules. It is used by the OOB computation and by the
+ * baseline alert conditions so that they do not have to read the baselines from the database.
+ * </p>
+ * <p>
+ * The baselines are kept in an open addressing hash table made of primitive arrays, keyed by schedule id. A slot
+ * takes 36 bytes and the table is at most 75% full, so that 1M schedules fit in 2^21 slots, or 72 MB. The store is
+ * loaded and kept in sync with the database by {@link MeasurementBaselineManagerLocal#refreshBaselineStore()}, and
+ * updated in place when this server calculates baselines.
+ * </p>
+ * <p>
+ * Until the store is loaded, callers have to read the baselines from the database.
+ * </p>
+ */
+public class BaselineStore {
+
+    private static final BaselineStore INSTANCE = new BaselineStore();
+
+    private static final int MIN_CAPACITY = 1024;
+
+    /** Slot size in bytes: the schedule id, min, mean, max and compute time. */
+    private static final int SLOT_SIZE = 4 + 8 + 8 + 8 + 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean loaded;
+
+    private volatile long lastRefreshTime;
+
+    private Table table = new Table(MIN_CAPACITY);
+
+    public static BaselineStore getInstance() {
+        return INSTANCE;
+    }
+
+    BaselineStore() {
+    }
+
+    /**
+     * @return true once the store has been loaded from the database
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return The baseline of the schedule, or null if it has none. The baseline is a detached copy which is not
+     * associated with its schedule.
+     */
+    public MeasurementBaseline getBaseline(int scheduleId) {
+        lock.readLock().lock();
+        try {
+            int slot = table.find(scheduleId);
+            if (slot < 0) {
+                return null;
+            }
+            MeasurementBaseline baseline = new MeasurementBaseline();
+            baseline.setScheduleId(scheduleId);
+            baseline.setMin(table.mins[slot]);
+            baseline.setMean(table.means[slot]);
+            baseline.setMax(table.maxes[slot]);
+            return baseline;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces the baseline of the schedule.
+     */
+    public void put(int scheduleId, double min, double mean, double max, long computeTime) {
+        lock.writeLock().lock();
+        try {
+            if (table.size + 1 > table.threshold()) {
+                table = table.resize(table.keys.length * 2);
+            }
+            table.put(scheduleId, min, mean, max, computeTime);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(MeasurementBaseline baseline) {
+        put(baseline.getScheduleId(), baseline.getMin(), baseline.getMean(), baseline.getMax(),
+            baseline.getComputeTime().getTime());
+    }
+
+    /**
+     * Removes the baseline of the schedule, e.g. because the baseline was deleted without being recalculated.
+     *
+     * @return true if the schedule had a baseline in the store
+     */
+    public boolean remove(int scheduleId) {
+        lock.writeLock().lock();
+        try {
+            return table.remove(scheduleId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the baselines computed before the given time, i.e. the ones deleted to be recalculated.
+     *
+     * @return The number of baselines removed
+     */
+    public int removeComputedBefore(long time) {
+        lock.writeLock().lock();
+        try {
+            Table current = table;
+            int removed = 0;
+            for (int slot = 0; slot < current.keys.length; ++slot) {
+                if (current.keys[slot] != 0 && current.computeTimes[slot] < time) {
+                    ++removed;
+                }
+            }
+            if (removed == 0) {
+                return 0;
+            }
+
+            // linear probing does not allow to just clear the slots, so rebuild the table
+            Table retained = new Table(capacityFor(current.size - removed));
+            for (int slot = 0; slot < current.keys.length; ++slot) {
+                if (current.keys[slot] != 0 && current.computeTimes[slot] >= time) {
+                    retained.put(current.keys[slot], current.mins[slot], current.means[slot], current.maxes[slot],
+                        current.computeTimes[slot]);
+                }
+            }
+            table = retained;
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the whole content of this store with the content of the given one, which is typically a store that
+     * was just loaded from the database, and marks this store as loaded.
+     */
+    void replaceWith(BaselineStore other) {
+        Table loadedTable = other.table;
+        lock.writeLock().lock();
+        try {
+            table = loadedTable;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The time at which the last load or refresh of this store from the database started, or 0 if it was
+     * never loaded
+     */
+    long getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+
+    void setLastRefreshTime(long lastRefreshTime) {
+        this.lastRefreshTime = lastRefreshTime;
+    }
+
+    /**
+     * @return The most recent compute time of the baselines in this store, or 0 if it is empty
+     */
+    public long getLatestComputeTime() {
+        lock.readLock().lock();
+        try {
+            return table.latestComputeTime;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return table.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The size of the arrays of the store in bytes
+     */
+    public long getMemoryFootprint() {
+        lock.readLock().lock();
+        try {
+            return (long) table.keys.length * SLOT_SIZE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (size > capacity * 3L / 4) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Linear probing hash table. Schedule ids are positive, so 0 marks a free slot.
+     */
+    private static class Table {
+
+        final int[] keys;
+        final double[] mins;
+        final double[] means;
+        final double[] maxes;
+        final long[] computeTimes;
+        int size;
+        long latestComputeTime;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            mins = new double[capacity];
+            means = new double[capacity];
+            maxes = new double[capacity];
+            computeTimes = new long[capacity];
+        }
+
+        int threshold() {
+            return (int) (keys.length * 3L / 4);
+        }
+
+        int slotOf(int scheduleId) {
+            // the ids come from a sequence; spread them over the table
+            int hash = scheduleId * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & (keys.length - 1);
+        }
+
+        int find(int scheduleId) {
+            int mask = keys.length - 1;
+            for (int slot = slotOf(scheduleId); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == scheduleId) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void put(int scheduleId, double min, double mean, double max, long computeTime) {
+            int mask = keys.length - 1;
+            int slot = slotOf(scheduleId);
+            while (keys[slot] != 0 && keys[slot] != scheduleId) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = scheduleId;
+                ++size;
+            }
+            mins[slot] = min;
+            means[slot] = mean;
+            maxes[slot] = max;
+            computeTimes[slot] = computeTime;
+            latestComputeTime = Math.max(latestComputeTime, computeTime);
+        }
+
+        boolean remove(int scheduleId) {
+            int free = find(scheduleId);
+            if (free < 0) {
+                return false;
+            }
+            // shift the following entries of the probe sequence back, so that none of them is cut off by the hole
+            int mask = keys.length - 1;
+            for (int slot = (free + 1) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                int home = slotOf(keys[slot]);
+                boolean reachable = (free <= slot) ? (home > free && home <= slot) : (home > free || home <= slot);
+                if (!reachable) {
+                    keys[free] = keys[slot];
+                    mins[free] = mins[slot];
+                    means[free] = means[slot];
+                    maxes[free] = maxes[slot];
+                    computeTimes[free] = computeTimes[slot];
+                    free = slot;
+                }
+            }
+            keys[free] = 0;
+            --size;
+            return true;
+        }
+
+        Table resize(int capacity) {
+            Table resized = new Table(capacity);
+            for (int slot = 0; slot < keys.length; ++slot) {
+                if (keys[slot] != 0) {
+                    resized.put(keys[slot], mins[slot], means[slot], maxes[slot], computeTimes[slot]);
+                }
+            }
+            return resized;
+        }
+    }
+}
@@ -18,6 +18,10 @@
  */
 package org.rhq.enterprise.server.measurement;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
@@ -33,6 +37,7 @@ import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -50,6 +55,7 @@ import org.rhq.core.domain.measurement.NumericType;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.util.collection.ArrayUtils;
+import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
@@ -74,6 +80,9 @@ public class MeasurementBaselineManagerBean implements MeasurementBaselineManage
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
+    private DataSource rhqDs;
+
     @EJB
     private StatusManagerLocal agentStatusManager;
     @EJB
@@ -100,6 +109,18 @@ public class MeasurementBaselineManagerBean implements MeasurementBaselineManage
 
     private static final int BASELINE_PROCESSING_LIMIT = 100;
 
+    private static final int BASELINE_STORE_FETCH_SIZE = 10000;
+
+    /**
+     * Baselines get their compute time when they are persisted, not when they are committed, and by the clock of the
+     * server that calculated them. Refreshing the baseline store re-reads the ones computed shortly before the last
+     * refresh started, so that the ones committed late, or by a server whose clock is behind, are not missed.
+     */
+    private static final long BASELINE_STORE_REFRESH_MARGIN = 2L * 60L * 1000L;
+
+    private static final String SELECT_BASELINES = "" //
+        + "SELECT schedule_id, bl_min, bl_mean, bl_max, bl_compute_time FROM rhq_measurement_bline";
+
     @TransactionAttribute(TransactionAttributeType.NEVER)
     public void calculateAutoBaselines() {
         Properties conf = systemManager.getSystemConfiguration(subjectManager.getOverlord());
@@ -150,6 +171,7 @@ public class MeasurementBaselineManagerBean implements MeasurementBaselineManage
             log.debug("computeTime = " + computeTime);
 
             int deleted = measurementBaselineManager._calculateAutoBaselinesDELETE(baselinesOlderThanTime);
+            BaselineStore.getInstance().removeComputedBefore(baselinesOlderThanTime);
             log.info("Removed [" + deleted + "] old baselines - they will now be recalculated ("
                 + (System.currentTimeMillis() - now) + ")ms");
 
@@ -212,7 +234,11 @@ public class MeasurementBaselineManagerBean implements MeasurementBaselineManage
 
             MeasurementMonitor.getMBean().incrementBaselineCalculationTime(System.currentTimeMillis() - computeTime);
 
-            agentStatusManager.updateByAutoBaselineCalculationJob();
+            // the baseline alert conditions read the baselines from the store; the caches only need to be
+            // reloaded when it is not available
+            if (!BaselineStore.getInstance().isLoaded()) {
+                agentStatusManager.updateByAutoBaselineCalculationJob();
+            }
 
             return computeTime;
         } catch (Exception e) {
@@ -304,6 +330,10 @@ public class MeasurementBaselineManagerBean implements MeasurementBaselineManage
     private void saveNewBaselinesChunk(Set<Integer> scheduleIds, Map<Integer, MeasurementBaseline> baselines) {
         try {
             measurementBaselineManager.saveNewBaselines(scheduleIds, baselines);
+            BaselineStore store = BaselineStore.getInstance();
+            for (Integer scheduleId : scheduleIds) {
+                store.put(baselines.get(scheduleId));
+            }
         } catch (RuntimeException e) {
             for (Throwable t = e, cause = t.getCause(); (null != cause && t != cause); t = cause, cause = t.getCause()) {
                 if (cause instanceof ConstraintViolationException) {
@@ -334,6 +364,100 @@ public class MeasurementBaselineManagerBean implements MeasurementBaselineManage
         }
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void refreshBaselineStore() {
+        BaselineStore store = BaselineStore.getInstance();
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        boolean autoCommit = true;
+
+        try {
+            long startTime = System.currentTimeMillis();
+            conn = rhqDs.getConnection();
+            // the drivers only stream the results with a fetch size outside of auto-commit mode
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            if (!store.isLoaded()) {
+                loadBaselineStore(conn, store, startTime);
+                log.info("Loaded [" + store.size() + "] baselines (" + (store.getMemoryFootprint() / 1024) + " KB) in ["
+                    + (System.currentTimeMillis() - startTime) + "]ms");
+                return;
+            }
+
+            stmt = conn.prepareStatement(SELECT_BASELINES + " WHERE bl_compute_time > ?");
+            stmt.setFetchSize(BASELINE_STORE_FETCH_SIZE);
+            stmt.setLong(1, store.getLastRefreshTime() - BASELINE_STORE_REFRESH_MARGIN);
+            rs = stmt.executeQuery();
+            int updated = putBaselines(store, rs);
+            JDBCUtil.safeClose(stmt, rs);
+
+            // baselines are deleted by compute time before being recalculated, see calculateAutoBaselines
+            stmt = conn.prepareStatement("SELECT MIN(bl_compute_time), COUNT(*) FROM rhq_measurement_bline");
+            rs = stmt.executeQuery();
+            rs.next();
+            long earliest = rs.getLong(1);
+            int removed = store.removeComputedBefore(rs.wasNull() ? Long.MAX_VALUE : earliest);
+            int count = rs.getInt(2);
+            JDBCUtil.safeClose(stmt, rs);
+            stmt = null;
+            rs = null;
+            store.setLastRefreshTime(startTime);
+
+            // they are also deleted with their schedules, possibly by another server, which leaves baselines in the
+            // store that cannot be told apart by their compute time
+            if (store.size() > count) {
+                loadBaselineStore(conn, store, startTime);
+                log.info("Reloaded [" + store.size() + "] baselines as the store held deleted ones, in ["
+                    + (System.currentTimeMillis() - startTime) + "]ms");
+                return;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Refreshed baseline store with [" + updated + "] baselines, removed [" + removed + "] in ["
+                    + (System.currentTimeMillis() - startTime) + "]ms");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to refresh the baseline store", e);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    log.warn("Failed to restore auto-commit: " + e.getMessage());
+                }
+            }
+            JDBCUtil.safeClose(conn, stmt, rs);
+        }
+    }
+
+    private void loadBaselineStore(Connection conn, BaselineStore store, long startTime) throws SQLException {
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(SELECT_BASELINES);
+            stmt.setFetchSize(BASELINE_STORE_FETCH_SIZE);
+            rs = stmt.executeQuery();
+            BaselineStore loaded = new BaselineStore();
+            putBaselines(loaded, rs);
+            store.replaceWith(loaded);
+            store.setLastRefreshTime(startTime);
+        } finally {
+            JDBCUtil.safeClose(stmt, rs);
+        }
+    }
+
+    private int putBaselines(BaselineStore store, ResultSet rs) throws SQLException {
+        int count = 0;
+        while (rs.next()) {
+            store.put(rs.getInt(1), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4), rs.getLong(5));
+            ++count;
+        }
+        return count;
+    }
+
     /**
      * If the measurement baselines for the corresponding resources are the same, that value will be returned;
      * otherwise null will be returned
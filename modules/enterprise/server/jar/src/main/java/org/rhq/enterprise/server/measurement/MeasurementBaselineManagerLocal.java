@@ -96,6 +96,14 @@ public interface MeasurementBaselineManagerLocal extends MeasurementBaselineMana
      */
     void saveNewBaselines(Set<Integer> scheduleIds, Map<Integer, MeasurementBaseline> baselines);
 
+    /**
+     * Loads the {@link BaselineStore} from the database if it is not loaded yet. Otherwise, reads the baselines
+     * computed since the last refresh and drops the ones that were deleted to be recalculated, which keeps the store
+     * of this server in sync with the baselines calculated by the other servers of the cloud. The store is loaded
+     * again when it holds baselines that were deleted with their schedules.
+     */
+    void refreshBaselineStore();
+
     MeasurementBaseline getBaselineIfEqual(Subject subject, int groupId, int definitionId);
 
     /**
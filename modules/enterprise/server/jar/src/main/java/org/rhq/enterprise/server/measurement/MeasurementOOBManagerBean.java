@@ -23,11 +23,18 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -64,6 +71,7 @@ import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.storage.StorageClientManager;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
 import org.rhq.enterprise.server.util.QueryUtility;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.MetricsServer;
@@ -92,9 +100,6 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
     @EJB
     AuthorizationManagerLocal authMangager;
 
-    @EJB
-    MeasurementOOBManagerLocal oobManager;
-
     @EJB
     StorageClientManager storageManager;
 
@@ -207,6 +212,12 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         }
     }
 
+    /**
+     * The OOBs are computed in memory, one batch of metrics at a time, and written with JDBC batches. While a batch is
+     * being written on the writer thread, the baselines of the next batch are loaded and its OOBs are computed. At most
+     * one batch is being written at any time, so that the OOBs of the whole hour are never held in memory. The
+     * baselines are read from the {@link BaselineStore} once it is loaded, and from the database until then.
+     */
     @Override
     @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
@@ -214,8 +225,13 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         log.info("Computing OOBs");
         int count = 0;
         long startTime = System.currentTimeMillis();
+        ExecutorService writer = Executors.newSingleThreadExecutor(new LoggingThreadFactory("OOBWriter", true));
+
+        BaselineStore baselineStore = BaselineStore.getInstance();
+        boolean useBaselineStore = baselineStore.isLoaded();
 
         try {
+            Future<Integer> pendingWrite = null;
             Iterator<AggregateNumericMetric> iterator = metrics.iterator();
             while (iterator.hasNext()) {
 
@@ -230,31 +246,44 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
                     i++;
                 } while (i < BATCH_SIZE && iterator.hasNext());
 
-                Query q  = entityManager.createNamedQuery(MeasurementBaseline.QUERY_BY_SCHEDULE_IDS);
-                q.setParameter("scheduleIds",scheduleIds);
-                List<MeasurementBaseline> tmpList = q.getResultList();
+                Map<Integer,MeasurementBaseline> baselineMap = null;
+                if (!useBaselineStore) {
+                    Query q  = entityManager.createNamedQuery(MeasurementBaseline.QUERY_BY_SCHEDULE_IDS);
+                    q.setParameter("scheduleIds",scheduleIds);
+                    List<MeasurementBaseline> tmpList = q.getResultList();
 
-                // put the result in a HashMap to speed up query later
-                Map<Integer,MeasurementBaseline> baselineMap = new HashMap<Integer, MeasurementBaseline>(tmpList.size());
-                for (MeasurementBaseline baseline : tmpList) {
-                    baselineMap.put(baseline.getScheduleId(),baseline);
+                    // put the result in a HashMap to speed up query later
+                    baselineMap = new HashMap<Integer, MeasurementBaseline>(tmpList.size());
+                    for (MeasurementBaseline baseline : tmpList) {
+                        baselineMap.put(baseline.getScheduleId(),baseline);
+                    }
                 }
 
+                // keyed by schedule id, a later OOB of a schedule replaces an earlier one like the merge did
+                final Map<Integer, MeasurementOOB> oobs = new LinkedHashMap<Integer, MeasurementOOB>();
                 for (AggregateNumericMetric metric : metricList) {
-                    MeasurementBaseline baseline = baselineMap.get(metric.getScheduleId());
-                    if (baseline==null)
-                        continue;
-
-                    try {
-                        count += oobManager.calculateOOB(metric,baseline);
-                    } catch (Exception e) {
-                        log.error("An error occurred while calculating OOBs for " + metric, e);
-                        throw new RuntimeException(e);
+                    MeasurementBaseline baseline = useBaselineStore ? baselineStore.getBaseline(metric.getScheduleId())
+                        : baselineMap.get(metric.getScheduleId());
+                    MeasurementOOB oob = createOOB(metric, baseline);
+                    if (oob != null) {
+                        oobs.put(oob.getScheduleId(), oob);
                     }
+                }
 
+                count += waitForWrite(pendingWrite);
+                pendingWrite = null;
+                if (!oobs.isEmpty()) {
+                    pendingWrite = writer.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            return writeOOBs(oobs.values());
+                        }
+                    });
                 }
             }
+            count += waitForWrite(pendingWrite);
         } finally {
+            writer.shutdownNow();
             long endTime = System.currentTimeMillis();
             if (log.isInfoEnabled()) {
                 log.info("Finished calculating " + count + " OOBs in " + (endTime - startTime) + " ms");
@@ -262,14 +291,121 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         }
     }
 
+    private int waitForWrite(Future<Integer> write) {
+        if (write == null) {
+            return 0;
+        }
+        try {
+            return write.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while saving OOBs", e);
+        } catch (ExecutionException e) {
+            log.error("An error occurred while saving OOBs", e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Replaces the OOBs of the schedules with the given ones in a single transaction.
+     *
+     * @return The number of OOBs written
+     */
+    private int writeOOBs(Collection<MeasurementOOB> oobs) throws SQLException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        boolean autoCommit = true;
+
+        try {
+            conn = rhqDs.getConnection();
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
+
+            if (dbType instanceof OracleDatabaseType) {
+                stmt = conn.prepareStatement(MeasurementOOB.UPSERT_ORACLE);
+                for (MeasurementOOB oob : oobs) {
+                    stmt.setInt(1, oob.getScheduleId());
+                    stmt.setLong(2, oob.getTimestamp());
+                    stmt.setInt(3, oob.getOobFactor());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            } else if (dbType instanceof PostgresqlDatabaseType || dbType instanceof H2DatabaseType
+                || dbType instanceof SQLServerDatabaseType) {
+                stmt = conn.prepareStatement(MeasurementOOB.UPDATE_FACTOR);
+                for (MeasurementOOB oob : oobs) {
+                    stmt.setLong(1, oob.getTimestamp());
+                    stmt.setInt(2, oob.getOobFactor());
+                    stmt.setInt(3, oob.getScheduleId());
+                    stmt.addBatch();
+                }
+                int[] updateCounts = stmt.executeBatch();
+                JDBCUtil.safeClose(stmt);
+
+                // Insert missing ones
+                stmt = conn.prepareStatement(MeasurementOOB.INSERT_FACTOR);
+                int i = 0;
+                boolean inserts = false;
+                for (MeasurementOOB oob : oobs) {
+                    if (updateCounts[i++] == 0) {
+                        stmt.setInt(1, oob.getScheduleId());
+                        stmt.setLong(2, oob.getTimestamp());
+                        stmt.setInt(3, oob.getOobFactor());
+                        stmt.addBatch();
+                        inserts = true;
+                    }
+                }
+                if (inserts) {
+                    stmt.executeBatch();
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
+            }
+
+            conn.commit();
+            return oobs.size();
+        } catch (SQLException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackException) {
+                    log.warn("Failed to roll back OOBs: " + rollbackException.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                    log.warn("Failed to restore auto-commit: " + e.getMessage());
+                }
+            }
+            JDBCUtil.safeClose(conn, stmt, null);
+        }
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
     public int calculateOOB(AggregateNumericMetric metric,MeasurementBaseline baseline) {
-        if (baseline==null) {
+        MeasurementOOB oob = createOOB(metric, baseline);
+        if (oob == null) {
             return 0;
         }
 
+        entityManager.merge(oob);
+        return 1;
+    }
+
+    /**
+     * @return The OOB of the metric or null if it is within the bounds of the baseline
+     */
+    private MeasurementOOB createOOB(AggregateNumericMetric metric, MeasurementBaseline baseline) {
+        if (baseline==null) {
+            return null;
+        }
+
         Long upperDelta = null;
         Long lowerDelta = null;
 
@@ -298,21 +434,19 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
             oobFactor = null;
         }
 
-        if (oobFactor != null) {
-            MeasurementOOB oob = new MeasurementOOB();
-            oob.setScheduleId(metric.getScheduleId());
-            oob.setTimestamp(metric.getTimestamp());
-            oob.setOobFactor(oobFactor);
+        if (oobFactor == null) {
+            return null;
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Generated OOB " + oob + " for 1 hr metric " + metric + " with baseline " + baseline);
-            }
+        MeasurementOOB oob = new MeasurementOOB();
+        oob.setScheduleId(metric.getScheduleId());
+        oob.setTimestamp(metric.getTimestamp());
+        oob.setOobFactor(oobFactor);
 
-            entityManager.merge(oob);
-            return 1;
+        if (log.isDebugEnabled()) {
+            log.debug("Generated OOB " + oob + " for 1 hr metric " + metric + " with baseline " + baseline);
         }
-
-        return 0;
+        return oob;
     }
 
     private boolean isPastUpperBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
@@ -18,6 +18,10 @@
  */
 package org.rhq.enterprise.server.measurement.instrumentation;
 
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
@@ -71,6 +75,8 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
 
     private AtomicLong purgeTime = new AtomicLong();
 
+    private ConcurrentMap<String, Long> purgeTimes = new ConcurrentHashMap<String, Long>();
+
     private AtomicLong baselineCalculationTime = new AtomicLong();
 
     // all of the purgedXYZ attributes will contain the number of purged items during the LAST purge
@@ -193,6 +199,14 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
         this.purgeTime.addAndGet(delta);
     }
 
+    public Map<String, Long> getPurgeTimes() {
+        return new TreeMap<String, Long>(purgeTimes);
+    }
+
+    public void setPurgeTime(String tableName, long duration) {
+        this.purgeTimes.put(tableName, duration);
+    }
+
     public long getBaselineCalculationTime() {
         return this.baselineCalculationTime.get();
     }
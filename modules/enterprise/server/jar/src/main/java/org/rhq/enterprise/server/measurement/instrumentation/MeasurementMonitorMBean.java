@@ -18,6 +18,8 @@
  */
 package org.rhq.enterprise.server.measurement.instrumentation;
 
+import java.util.Map;
+
 /**
  * @author Greg Hinkle
  */
@@ -45,6 +47,13 @@ public interface MeasurementMonitorMBean {
 
     void incrementPurgeTime(long delta);
 
+    /**
+     * @return the duration in milliseconds of the LAST purge of every table, keyed by table name
+     */
+    Map<String, Long> getPurgeTimes();
+
+    void setPurgeTime(String tableName, long duration);
+
     long getMeasurementCompressionTime();
 
     long getBaselineCalculationTime();
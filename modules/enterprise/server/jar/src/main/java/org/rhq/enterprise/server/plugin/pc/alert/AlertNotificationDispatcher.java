@@ -0,0 +1,207 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.notification.AlertNotificationLog;
+import org.rhq.core.util.ObjectNameFactory;
+import org.rhq.enterprise.server.util.JMXUtil;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Sends the notifications of fired alerts asynchronously, so that the alert condition consumers do not wait for mail
+ * servers, SNMP targets and the like. Every alert sender type gets its own {@link AlertSenderQueue}, created when it
+ * is first used and registered as the MBean <code>rhq:service=AlertNotificationDispatcher,sender="[name]"</code>.
+ *
+ * @see AlertSenderPluginManager#getNotificationDispatcher()
+ */
+public class AlertNotificationDispatcher {
+
+    private static final Log LOG = LogFactory.getLog(AlertNotificationDispatcher.class);
+
+    /**
+     * The number of notifications of a sender type sent concurrently, unless the sender type declares its own with
+     * {@link AlertSender#getMaxConcurrentNotifications()}.
+     */
+    public static final int WORKERS_PER_SENDER = Integer.getInteger("rhq.server.alert-notification.workers", 2);
+
+    /**
+     * The number of notifications of a sender type that can wait to be sent.
+     */
+    public static final int QUEUE_SIZE = Integer.getInteger("rhq.server.alert-notification.queue-size", 1000);
+
+    /**
+     * The maximum number of alerts sent at once by senders that support it.
+     */
+    public static final int BATCH_SIZE = Integer.getInteger("rhq.server.alert-notification.batch-size", 20);
+
+    /**
+     * The number of times a failed notification is sent again.
+     */
+    public static final int MAX_RETRIES = Integer.getInteger("rhq.server.alert-notification.max-retries", 2);
+
+    /**
+     * The delay in ms before a failed notification is sent again the first time, doubled for every further attempt.
+     */
+    public static final long RETRY_DELAY = Long.getLong("rhq.server.alert-notification.retry-delay", 5000L);
+
+    // key is the sender short name
+    private final ConcurrentMap<String, AlertSenderQueue> queues = new ConcurrentHashMap<String, AlertSenderQueue>();
+
+    private final ScheduledThreadPoolExecutor retryScheduler;
+
+    private volatile boolean shutdown;
+
+    AlertNotificationDispatcher() {
+        retryScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Alert Notification Retry Scheduler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Queues the notification of the alert to be sent by the given sender. The result is recorded as a notification
+     * log of the alert once the notification has been sent, or has failed for good.
+     *
+     * @param alert the fired alert
+     * @param senderName the short name of the sender type
+     * @param sender the sender of the notification, configured for it
+     *
+     * @return <code>false</code> if the notification was not queued because the queue of the sender type is full, in
+     * which case the caller must record the failure
+     */
+    public boolean dispatch(Alert alert, String senderName, AlertSender<?> sender) {
+        AlertSenderQueue queue = getQueue(senderName, sender);
+        if (queue == null) {
+            return false;
+        }
+        boolean queued = queue.offer(alert, sender);
+        if (!queued) {
+            LOG.warn("The notification queue of sender [" + senderName + "] is full, the notification for ["
+                + alert.toSimpleString() + "] will not be sent");
+        }
+        return queued;
+    }
+
+    /**
+     * Stops the sending of the notifications of a sender type, e.g. because its plugin is unloaded. The notifications
+     * already queued are still sent.
+     */
+    void removeSender(String senderName) {
+        synchronized (queues) {
+            AlertSenderQueue queue = queues.remove(senderName);
+            if (queue != null) {
+                queue.shutdown(false);
+                JMXUtil.unregisterMBeanQuietly(getObjectName(senderName));
+            }
+        }
+    }
+
+    /**
+     * Stops the sending of all notifications. Notifications still queued, or waiting to be sent again, are not sent
+     * and are recorded as failed.
+     */
+    void shutdown() {
+        retryScheduler.shutdownNow();
+
+        List<AlertSenderQueue> stopped = new ArrayList<AlertSenderQueue>();
+        synchronized (queues) {
+            shutdown = true;
+            for (String senderName : queues.keySet()) {
+                stopped.add(queues.remove(senderName));
+                JMXUtil.unregisterMBeanQuietly(getObjectName(senderName));
+            }
+        }
+
+        int dropped = 0;
+        for (AlertSenderQueue queue : stopped) {
+            dropped += queue.shutdown(true);
+        }
+        if (dropped > 0) {
+            LOG.warn(dropped + " queued alert notifications were not sent because the alert sender plugins are "
+                + "shutting down, they are recorded as failed");
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the dispatcher is shut down
+     */
+    boolean schedule(Runnable command, long delay) {
+        try {
+            retryScheduler.schedule(command, delay, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records the final result of a notification.
+     */
+    void addNotificationLog(Alert alert, AlertNotificationLog notificationLog) {
+        LookupUtil.getAlertManager().addNotificationLog(alert.getId(), notificationLog);
+    }
+
+    private AlertSenderQueue getQueue(String senderName, AlertSender<?> sender) {
+        AlertSenderQueue queue = queues.get(senderName);
+        if (queue == null) {
+            synchronized (queues) {
+                if (shutdown) {
+                    return null;
+                }
+                queue = queues.get(senderName);
+                if (queue == null) {
+                    int workers = Math.max(sender.getMaxConcurrentNotifications(), 1);
+                    queue = new AlertSenderQueue(senderName, this, workers, QUEUE_SIZE);
+                    try {
+                        JMXUtil.registerMBean(queue, getObjectName(senderName));
+                    } catch (RuntimeException e) {
+                        LOG.warn("Failed to register the notification statistics of sender [" + senderName + "]: "
+                            + e.getMessage());
+                    }
+                    queues.put(senderName, queue);
+                }
+            }
+        }
+        return queue;
+    }
+
+    private static ObjectName getObjectName(String senderName) {
+        return ObjectNameFactory.create("rhq:service=AlertNotificationDispatcher,sender="
+            + ObjectName.quote(senderName));
+    }
+}
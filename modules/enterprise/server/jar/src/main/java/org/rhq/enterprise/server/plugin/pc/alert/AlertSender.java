@@ -74,6 +74,58 @@ public abstract class AlertSender<T extends ServerPluginComponent> {
      */
     public abstract SenderResult send(Alert alert);
 
+    /**
+     * Returns where the notifications of this sender go, e.g. its recipients. When notifications of this sender type
+     * wait to be sent, the ones whose senders return the same key are sent together with {@link #send(List)} on one
+     * of the senders. The default implementation returns <code>null</code>, which means that the notifications of
+     * this sender type are always sent one by one.
+     *
+     * @return the batch key, or <code>null</code> if this sender does not send several alerts at once
+     */
+    public String getBatchKey() {
+        return null;
+    }
+
+    /**
+     * Sends the notifications of several alerts at once. This is only called if {@link #getBatchKey()} returns a key,
+     * the alerts are then those of the notifications whose senders returned the same key. The default implementation
+     * calls {@link #send(Alert)} for every alert.
+     *
+     * @param alerts the Alerts to operate on
+     * @return the results of sending, in the order of the alerts
+     */
+    public List<SenderResult> send(List<Alert> alerts) {
+        List<SenderResult> results = new ArrayList<SenderResult>(alerts.size());
+        for (Alert alert : alerts) {
+            results.add(send(alert));
+        }
+        return results;
+    }
+
+    /**
+     * Tells whether a notification of this sender that failed can be sent again. Only senders for which a repeated
+     * notification is harmless, e.g. because it merely repeats a message, should return <code>true</code>; a sender
+     * that runs an operation or a script must not be retried. The default implementation returns <code>false</code>.
+     *
+     * @return <code>true</code> if failed notifications of this sender are sent again
+     */
+    public boolean isRetryable() {
+        return false;
+    }
+
+    /**
+     * Returns how many notifications of this sender type can be sent at the same time. A sender that hands the
+     * notifications over to a bounded pool of its own, e.g. of script runners, should return the size of that pool, so
+     * that notifications wait in their queue rather than hold a thread blocked on the pool. It is asked of the first
+     * sender of the type used after its plugin is loaded, so it should only depend on the plugin configuration. The
+     * default implementation returns {@link AlertNotificationDispatcher#WORKERS_PER_SENDER}.
+     *
+     * @return the number of threads sending the notifications of this sender type
+     */
+    public int getMaxConcurrentNotifications() {
+        return AlertNotificationDispatcher.WORKERS_PER_SENDER;
+    }
+
     /**
      * Allow users to see a preview of the stored configuration data without having to edit it.
      * A default implementation is already provided which will print the properties in alphabetical
@@ -53,11 +53,18 @@ public class AlertSenderPluginManager extends ServerPluginManager {
     private Map<String, AlertSenderInfo> senderInfoByName = new HashMap<String, AlertSenderInfo>();
     private Map<String, String> backingBeanByName = new HashMap<String, String>();
     private Map<String, String> backingBeanNameByName = new HashMap<String, String>();
+    private final AlertNotificationDispatcher notificationDispatcher = new AlertNotificationDispatcher();
 
     public AlertSenderPluginManager(AbstractTypeServerPluginContainer pc) {
         super(pc);
     }
 
+    @Override
+    protected void shutdown() {
+        notificationDispatcher.shutdown();
+        super.shutdown();
+    }
+
     /**
      * Postprocess the loading of the plugin - the actual load is done
      * in the super class.
@@ -167,6 +174,7 @@ public class AlertSenderPluginManager extends ServerPluginManager {
             senderInfoByName.remove(shortName);
             pluginEnvByName.remove(shortName);
             backingBeanByName.remove(shortName);
+            notificationDispatcher.removeSender(shortName);
         }
     }
 
@@ -258,6 +266,14 @@ public class AlertSenderPluginManager extends ServerPluginManager {
         return bean;
     }
 
+    /**
+     * Return the dispatcher that sends the notifications of fired alerts with the senders of this manager
+     * @return The notification dispatcher
+     */
+    public AlertNotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
     public String getBackingBeanNameForSender(String shortName) {
         return backingBeanNameByName.get(shortName);
     }
@@ -0,0 +1,362 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.notification.AlertNotificationLog;
+import org.rhq.core.domain.alert.notification.ResultState;
+import org.rhq.core.domain.alert.notification.SenderResult;
+
+/**
+ * The notifications waiting to be sent by one alert sender type, and the threads sending them. Each sender type has
+ * its own queue so that a slow or unreachable target, e.g. an SMTP server, only delays the notifications of its
+ * sender.
+ *
+ * <p>When a thread takes a notification whose sender has a {@link AlertSender#getBatchKey() batch key}, it also takes
+ * the waiting notifications with the same key and sends them all with {@link AlertSender#send(List)}. Notifications
+ * only wait when the threads are busy, so batches are only made when the sender cannot keep up.</p>
+ *
+ * <p>A notification of a {@link AlertSender#isRetryable() retryable} sender that fails is sent again after a delay,
+ * doubled on every attempt, until it succeeds or runs out of attempts. Only its final result is recorded as the
+ * notification log of the alert.</p>
+ *
+ * <p>The notifications that are dropped when the queue is shut down at once, including the ones waiting to be sent
+ * again, are recorded as failed.</p>
+ */
+class AlertSenderQueue implements AlertSenderQueueMBean {
+
+    private static final Log LOG = LogFactory.getLog(AlertSenderQueue.class);
+
+    private final String senderName;
+    private final AlertNotificationDispatcher dispatcher;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+
+    // the notifications waiting for their retry delay, removed by whoever queues them again or drops them
+    private final Set<NotificationTask> pendingRetries = Collections
+        .newSetFromMap(new ConcurrentHashMap<NotificationTask, Boolean>());
+
+    private final AtomicLong dispatchedNotifications = new AtomicLong();
+    private final AtomicLong rejectedNotifications = new AtomicLong();
+    private final AtomicLong sentNotifications = new AtomicLong();
+    private final AtomicLong failedNotifications = new AtomicLong();
+    private final AtomicLong retriedNotifications = new AtomicLong();
+    private final AtomicLong batchedSends = new AtomicLong();
+    private final AtomicLong totalDispatchLatency = new AtomicLong();
+    private final AtomicLong maxDispatchLatency = new AtomicLong();
+
+    /**
+     * A notification of an alert, to be sent by its sender. The same task is queued again when it is retried.
+     */
+    private class NotificationTask implements Runnable {
+        private final Alert alert;
+        private final AlertSender<?> sender;
+        private final String batchKey;
+        private final long dispatchTime;
+        private int attempts;
+
+        NotificationTask(Alert alert, AlertSender<?> sender) {
+            this.alert = alert;
+            this.sender = sender;
+            this.batchKey = sender.getBatchKey();
+            this.dispatchTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            List<NotificationTask> batch = new ArrayList<NotificationTask>();
+            batch.add(this);
+            if (batchKey != null) {
+                takeWaitingTasks(batch);
+            }
+            send(batch);
+        }
+    }
+
+    AlertSenderQueue(String senderName, AlertNotificationDispatcher dispatcher, int workers, int queueCapacity) {
+        this.senderName = senderName;
+        this.dispatcher = dispatcher;
+        this.queueCapacity = queueCapacity;
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ClassLoader classLoader = AlertSenderQueue.class.getClassLoader();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+            queueCapacity), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Alert Notification Sender-" + AlertSenderQueue.this.senderName + "-"
+                    + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                t.setContextClassLoader(classLoader);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return <code>false</code> if the notification was not queued because the queue is full or shut down
+     */
+    boolean offer(Alert alert, AlertSender<?> sender) {
+        try {
+            executor.execute(new NotificationTask(alert, sender));
+            dispatchedNotifications.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedNotifications.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting notifications. The notifications already queued are still sent, unless <code>now</code> is
+     * <code>true</code>.
+     *
+     * @return the number of queued notifications that will not be sent
+     */
+    int shutdown(boolean now) {
+        if (!now) {
+            executor.shutdown();
+            return 0;
+        }
+
+        List<NotificationTask> dropped = new ArrayList<NotificationTask>();
+        for (Runnable queued : executor.shutdownNow()) {
+            dropped.add((NotificationTask) queued);
+        }
+        for (NotificationTask task : pendingRetries.toArray(new NotificationTask[0])) {
+            if (pendingRetries.remove(task)) {
+                dropped.add(task);
+            }
+        }
+        for (NotificationTask task : dropped) {
+            recordResult(task, SenderResult.getSimpleFailure("Notification was not sent, the alert sender plugins "
+                + "are shutting down"));
+        }
+        return dropped.size();
+    }
+
+    private void takeWaitingTasks(List<NotificationTask> batch) {
+        String batchKey = batch.get(0).batchKey;
+        for (Object queued : executor.getQueue().toArray()) {
+            if (batch.size() >= AlertNotificationDispatcher.BATCH_SIZE) {
+                break;
+            }
+            NotificationTask task = (NotificationTask) queued;
+            // another thread may have taken the task in the meantime, remove() tells us who got it
+            if (batchKey.equals(task.batchKey) && executor.getQueue().remove(task)) {
+                batch.add(task);
+            }
+        }
+    }
+
+    private void send(List<NotificationTask> batch) {
+        List<SenderResult> results = null;
+        String error = null;
+        try {
+            if (batch.size() == 1) {
+                NotificationTask task = batch.get(0);
+                results = new ArrayList<SenderResult>(1);
+                results.add(task.sender.send(task.alert));
+            } else {
+                List<Alert> alerts = new ArrayList<Alert>(batch.size());
+                for (NotificationTask task : batch) {
+                    alerts.add(task.alert);
+                }
+                batchedSends.incrementAndGet();
+                results = batch.get(0).sender.send(alerts);
+                if (results == null || results.size() != batch.size()) {
+                    error = "Sender returned " + (results == null ? 0 : results.size()) + " results for "
+                        + batch.size() + " alerts";
+                    results = null;
+                }
+            }
+        } catch (Throwable t) {
+            LOG.error("Notification processing terminated abruptly" + t.getMessage());
+            error = "Notification processing terminated abruptly, cause: " + t.getMessage();
+        }
+
+        for (int i = 0; i < batch.size(); ++i) {
+            NotificationTask task = batch.get(i);
+            SenderResult result = (results == null) ? SenderResult.getSimpleFailure(error) : results.get(i);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(result);
+            }
+            completeAttempt(task, result);
+        }
+    }
+
+    private void completeAttempt(NotificationTask task, SenderResult result) {
+        ++task.attempts;
+        if (result != null && result.getState() == ResultState.FAILURE && task.sender.isRetryable()) {
+            if (task.attempts <= AlertNotificationDispatcher.MAX_RETRIES && retry(task)) {
+                return;
+            }
+            if (task.attempts > 1) {
+                LOG.warn("The [" + senderName + "] notification for [" + task.alert.toSimpleString()
+                    + "] failed " + task.attempts + " times, it will not be sent again");
+            }
+        }
+        recordResult(task, result);
+    }
+
+    private void recordResult(NotificationTask task, SenderResult result) {
+        AlertNotificationLog notificationLog;
+        if (result == null) {
+            notificationLog = new AlertNotificationLog(task.alert, senderName, ResultState.UNKNOWN,
+                "Sender did not return any result");
+        } else {
+            notificationLog = new AlertNotificationLog(task.alert, senderName, result);
+        }
+
+        if (notificationLog.getResultState() == ResultState.FAILURE) {
+            failedNotifications.incrementAndGet();
+        } else {
+            sentNotifications.incrementAndGet();
+        }
+
+        long latency = System.currentTimeMillis() - task.dispatchTime;
+        totalDispatchLatency.addAndGet(latency);
+        for (long max = maxDispatchLatency.get(); latency > max; max = maxDispatchLatency.get()) {
+            if (maxDispatchLatency.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+
+        try {
+            dispatcher.addNotificationLog(task.alert, notificationLog);
+        } catch (Throwable t) {
+            LOG.error("Failed to record the result of the [" + senderName + "] notification for ["
+                + task.alert.toSimpleString() + "].", t);
+        }
+    }
+
+    private boolean retry(final NotificationTask task) {
+        long delay = AlertNotificationDispatcher.RETRY_DELAY << (task.attempts - 1);
+        Runnable requeue = new Runnable() {
+            @Override
+            public void run() {
+                // the queue may have been shut down, and the notification recorded as failed, in the meantime
+                if (!pendingRetries.remove(task)) {
+                    return;
+                }
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    completeAttempt(task, SenderResult.getSimpleFailure("Notification was not sent again, the "
+                        + "notification queue of sender [" + senderName + "] is full or shut down"));
+                }
+            }
+        };
+
+        pendingRetries.add(task);
+        if (!dispatcher.schedule(requeue, delay)) {
+            pendingRetries.remove(task);
+            return false;
+        }
+        retriedNotifications.incrementAndGet();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("The [" + senderName + "] notification for [" + task.alert.toSimpleString()
+                + "] failed, sending it again in " + delay + "ms");
+        }
+        return true;
+    }
+
+    @Override
+    public String getSenderName() {
+        return senderName;
+    }
+
+    @Override
+    public int getWorkers() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size() + pendingRetries.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getDispatchedNotifications() {
+        return dispatchedNotifications.get();
+    }
+
+    @Override
+    public long getRejectedNotifications() {
+        return rejectedNotifications.get();
+    }
+
+    @Override
+    public long getSentNotifications() {
+        return sentNotifications.get();
+    }
+
+    @Override
+    public long getFailedNotifications() {
+        return failedNotifications.get();
+    }
+
+    @Override
+    public long getRetriedNotifications() {
+        return retriedNotifications.get();
+    }
+
+    @Override
+    public long getBatchedSends() {
+        return batchedSends.get();
+    }
+
+    @Override
+    public long getAverageDispatchLatency() {
+        long completed = sentNotifications.get() + failedNotifications.get();
+        return completed == 0 ? 0 : totalDispatchLatency.get() / completed;
+    }
+
+    @Override
+    public long getMaxDispatchLatency() {
+        return maxDispatchLatency.get();
+    }
+}
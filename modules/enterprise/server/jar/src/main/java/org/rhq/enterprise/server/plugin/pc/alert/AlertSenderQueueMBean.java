@@ -0,0 +1,87 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+/**
+ * Statistics of the notifications dispatched to an alert sender type.
+ */
+public interface AlertSenderQueueMBean {
+
+    /**
+     * @return the short name of the alert sender
+     */
+    String getSenderName();
+
+    /**
+     * @return the maximum number of notifications of this sender sent concurrently
+     */
+    int getWorkers();
+
+    /**
+     * @return the number of notifications of this sender being sent
+     */
+    int getActiveWorkers();
+
+    /**
+     * @return the number of notifications waiting to be sent, including the ones waiting to be retried
+     */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    /**
+     * @return the number of notifications accepted since the queue was created
+     */
+    long getDispatchedNotifications();
+
+    /**
+     * @return the number of notifications that were not accepted because the queue was full
+     */
+    long getRejectedNotifications();
+
+    /**
+     * @return the number of notifications whose result was not a failure
+     */
+    long getSentNotifications();
+
+    /**
+     * @return the number of notifications that failed, after all their attempts
+     */
+    long getFailedNotifications();
+
+    /**
+     * @return the number of times a failed notification was scheduled to be sent again
+     */
+    long getRetriedNotifications();
+
+    /**
+     * @return the number of sends that combined the notifications of several alerts
+     */
+    long getBatchedSends();
+
+    /**
+     * @return the average time in ms from the dispatch of a notification until its result was recorded
+     */
+    long getAverageDispatchLatency();
+
+    /**
+     * @return the longest time in ms from the dispatch of a notification until its result was recorded
+     */
+    long getMaxDispatchLatency();
+}
@@ -0,0 +1,254 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * Purges a table stored in time partitions by dropping the partitions which only hold rows older than the purge time.
+ * This is much cheaper than deleting the rows one by one and does not leave the table bloated.<br>
+ * <br>
+ * The partitioned storage is optional and set up by the database administrator: the table must be partitioned by range
+ * of its time column, with Oracle partitioning (interval partitioning creates the partitions as needed) or with
+ * Postgres declarative partitioning (version 10 and later, the partitions must be created ahead of time). The
+ * partitions are looked up in the database catalog on every purge; when the table is not partitioned, or not by its
+ * time column, nothing is done and the rows are left to the key-by-key purge of the {@link PurgeTemplate}, which also
+ * takes care of the rows of the partition the purge time falls in.
+ *
+ * @see PurgeManagerBean
+ */
+class PartitionedTablePurge {
+    private static final Log LOG = LogFactory.getLog(PartitionedTablePurge.class);
+
+    private static final String POSTGRES_PARTITION_KEY_QUERY = "" //
+        + "SELECT pg_get_partkeydef(p.oid) FROM pg_class p WHERE p.relname = ? AND p.relkind = 'p'";
+
+    private static final String POSTGRES_PARTITIONS_QUERY = "" //
+        + "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) " //
+        + "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " //
+        + "WHERE p.relname = ?";
+
+    private static final String ORACLE_PARTITION_KEY_QUERY = "" //
+        + "SELECT column_name FROM user_part_key_columns WHERE name = ? AND object_type = 'TABLE'";
+
+    private static final String ORACLE_PARTITIONS_QUERY = "" //
+        + "SELECT partition_name, high_value FROM user_tab_partitions WHERE table_name = ?";
+
+    /**
+     * Matches the upper bound of a Postgres range partition, i.e. <code>FOR VALUES FROM ('x') TO ('y')</code>.
+     */
+    private static final Pattern POSTGRES_UPPER_BOUND = Pattern.compile("TO \\('?(-?\\d+)'?\\)");
+
+    private final DataSource dataSource;
+    private final UserTransaction userTransaction;
+    private final DatabaseType databaseType;
+    private final String tableName;
+    private final String timeColumnName;
+
+    /**
+     * @param dataSource the source of JDBC connections to the database
+     * @param userTransaction the transaction management interface
+     * @param tableName the name of the purged table
+     * @param timeColumnName the name of the time column the table has to be partitioned by
+     */
+    PartitionedTablePurge(DataSource dataSource, UserTransaction userTransaction, String tableName,
+        String timeColumnName) {
+        this.dataSource = dataSource;
+        this.userTransaction = userTransaction;
+        this.tableName = tableName;
+        this.timeColumnName = timeColumnName;
+        databaseType = DatabaseTypeFactory.getDefaultDatabaseType();
+    }
+
+    /**
+     * Drops the partitions holding only rows older than <code>deleteUpToTime</code>.
+     *
+     * @return the number of dropped partitions
+     */
+    int execute(long deleteUpToTime) {
+        if (!isPostgres(databaseType) && !isOracle(databaseType)) {
+            return 0;
+        }
+
+        List<String> expiredPartitions;
+        try {
+            expiredPartitions = findExpiredPartitions(deleteUpToTime);
+        } catch (Exception e) {
+            LOG.error(tableName + ": could not look up the table partitions", e);
+            return 0;
+        }
+
+        int dropped = 0;
+        for (String partition : expiredPartitions) {
+            try {
+                dropPartition(partition);
+                dropped++;
+            } catch (Exception e) {
+                // Oracle does not let the last range partition of an interval partitioned table be dropped
+                LOG.warn(tableName + ": could not drop partition " + partition + ": " + e.getMessage());
+            }
+        }
+
+        if (dropped > 0) {
+            LOG.info(tableName + ": dropped " + dropped + " partition(s) older than " + deleteUpToTime);
+        }
+        return dropped;
+    }
+
+    private List<String> findExpiredPartitions(long deleteUpToTime) throws Exception {
+        List<String> expiredPartitions = new ArrayList<String>();
+
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+
+            userTransaction.begin();
+
+            connection = dataSource.getConnection();
+            if (isPostgres(databaseType) && connection.getMetaData().getDatabaseMajorVersion() < 10) {
+                return expiredPartitions;
+            }
+
+            String partitionedTableName = isPostgres(databaseType) ? tableName.toLowerCase() : tableName
+                .toUpperCase();
+
+            preparedStatement = connection.prepareStatement(isPostgres(databaseType) ? POSTGRES_PARTITION_KEY_QUERY
+                : ORACLE_PARTITION_KEY_QUERY);
+            preparedStatement.setString(1, partitionedTableName);
+            resultSet = preparedStatement.executeQuery();
+            if (!isPartitionedByTimeColumn(resultSet)) {
+                return expiredPartitions;
+            }
+            JDBCUtil.safeClose(preparedStatement, resultSet);
+
+            preparedStatement = connection.prepareStatement(isPostgres(databaseType) ? POSTGRES_PARTITIONS_QUERY
+                : ORACLE_PARTITIONS_QUERY);
+            preparedStatement.setString(1, partitionedTableName);
+            resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                String partition = resultSet.getString(1);
+                Long upperBound = parseUpperBound(databaseType, resultSet.getString(2));
+                // rows are strictly lower than the upper bound of their partition
+                if (upperBound != null && upperBound <= deleteUpToTime) {
+                    expiredPartitions.add(partition);
+                }
+            }
+
+            userTransaction.commit();
+
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, resultSet);
+            rollbackIfTransactionActive();
+        }
+
+        return expiredPartitions;
+    }
+
+    private boolean isPartitionedByTimeColumn(ResultSet resultSet) throws SQLException {
+        List<String> keyColumns = new ArrayList<String>();
+        while (resultSet.next()) {
+            keyColumns.add(resultSet.getString(1));
+        }
+        if (keyColumns.isEmpty()) {
+            return false;
+        }
+        if (isPostgres(databaseType)) {
+            // e.g. RANGE ("timestamp")
+            String keyDefinition = keyColumns.get(0).replace("\"", "").toLowerCase();
+            return keyDefinition.equals("range (" + timeColumnName.toLowerCase() + ")");
+        }
+        return keyColumns.size() == 1 && timeColumnName.equalsIgnoreCase(keyColumns.get(0));
+    }
+
+    /**
+     * @return the upper bound of the partition, or null if the partition has none (Postgres default partition, Oracle
+     * <code>MAXVALUE</code> partition)
+     */
+    static Long parseUpperBound(DatabaseType databaseType, String boundDefinition) {
+        if (boundDefinition == null) {
+            return null;
+        }
+        if (isPostgres(databaseType)) {
+            Matcher matcher = POSTGRES_UPPER_BOUND.matcher(boundDefinition);
+            return matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+        }
+        try {
+            return Long.valueOf(boundDefinition.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void dropPartition(String partition) throws Exception {
+        Connection connection = null;
+        Statement statement = null;
+        try {
+
+            userTransaction.begin();
+
+            connection = dataSource.getConnection();
+            statement = connection.createStatement();
+            if (isPostgres(databaseType)) {
+                statement.execute("DROP TABLE " + partition);
+            } else {
+                statement.execute("ALTER TABLE " + tableName + " DROP PARTITION " + partition
+                    + " UPDATE GLOBAL INDEXES");
+            }
+
+            userTransaction.commit();
+
+        } finally {
+            JDBCUtil.safeClose(connection, statement, null);
+            rollbackIfTransactionActive();
+        }
+    }
+
+    private void rollbackIfTransactionActive() {
+        try {
+            if (userTransaction.getStatus() == Status.STATUS_ACTIVE) {
+                userTransaction.rollback();
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+}
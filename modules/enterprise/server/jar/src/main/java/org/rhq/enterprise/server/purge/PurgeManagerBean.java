@@ -57,7 +57,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         AvailabilityPurge availabilityPurge = new AvailabilityPurge(dataSource, userTransaction, oldest);
         long startTime = System.currentTimeMillis();
         int deleted = availabilityPurge.execute();
-        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        updatePurgeTime("RHQ_AVAILABILITY", startTime);
         MeasurementMonitor.getMBean().setPurgedAvailabilities(deleted);
         return deleted;
     }
@@ -67,7 +67,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         MeasurementDataTraitPurge traitPurge = new MeasurementDataTraitPurge(dataSource, userTransaction, oldest);
         long startTime = System.currentTimeMillis();
         int deleted = traitPurge.execute();
-        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        updatePurgeTime("RHQ_MEASUREMENT_DATA_TRAIT", startTime);
         MeasurementMonitor.getMBean().setPurgedMeasurementTraits(deleted);
         return deleted;
     }
@@ -76,8 +76,10 @@ public class PurgeManagerBean implements PurgeManagerLocal {
     public int purgeEventData(long deleteUpToTime) {
         EventDataPurge eventDataPurge = new EventDataPurge(dataSource, userTransaction, deleteUpToTime);
         long startTime = System.currentTimeMillis();
+        new PartitionedTablePurge(dataSource, userTransaction, "RHQ_EVENT", "TIMESTAMP").execute(deleteUpToTime);
         int deleted = eventDataPurge.execute();
-        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        new EventHourlyPurge(dataSource, userTransaction, deleteUpToTime).execute();
+        updatePurgeTime("RHQ_EVENT", startTime);
         MeasurementMonitor.getMBean().setPurgedEvents(deleted);
         return deleted;
     }
@@ -91,8 +93,10 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         CallTimeDataValuePurge callTimeDataValuePurge = new CallTimeDataValuePurge(dataSource, userTransaction,
             deleteUpToTime);
         long startTime = System.currentTimeMillis();
+        new PartitionedTablePurge(dataSource, userTransaction, "RHQ_CALLTIME_DATA_VALUE", "END_TIME")
+            .execute(deleteUpToTime);
         int deletedRowCount = callTimeDataValuePurge.execute();
-        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        updatePurgeTime("RHQ_CALLTIME_DATA_VALUE", startTime);
         MeasurementMonitor.getMBean().setPurgedCallTimeData(deletedRowCount);
         return deletedRowCount;
     }
@@ -106,6 +110,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         long start = System.currentTimeMillis();
         int conditionsDeleted = conditionLogPurge.execute();
         long end = System.currentTimeMillis();
+        MeasurementMonitor.getMBean().setPurgeTime("RHQ_ALERT_CONDITION_LOG", end - start);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Deleted [" + conditionsDeleted + "] alert condition logs in [" + (end - start) + "]ms");
         }
@@ -116,6 +121,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         start = System.currentTimeMillis();
         int deletedNotifications = notificationLogPurge.execute();
         end = System.currentTimeMillis();
+        MeasurementMonitor.getMBean().setPurgeTime("RHQ_ALERT_NOTIF_LOG", end - start);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Deleted [" + deletedNotifications + "] alert notifications in [" + (end - start) + "]ms");
         }
@@ -125,6 +131,7 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         start = System.currentTimeMillis();
         int deletedAlerts = alertPurge.execute();
         end = System.currentTimeMillis();
+        MeasurementMonitor.getMBean().setPurgeTime("RHQ_ALERT", end - start);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Deleted [" + deletedAlerts + "] alerts in [" + (end - start) + "]ms");
         }
@@ -180,4 +187,10 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         purged += new GroupResourceConfigurationUpdatePurge(dataSource, userTransaction, deleteUpToTime).execute();
         return purged;
     }
+
+    private void updatePurgeTime(String tableName, long startTime) {
+        long duration = System.currentTimeMillis() - startTime;
+        MeasurementMonitor.getMBean().incrementPurgeTime(duration);
+        MeasurementMonitor.getMBean().setPurgeTime(tableName, duration);
+    }
 }
@@ -22,26 +22,44 @@
 package org.rhq.enterprise.server.resource;
 
 import static java.util.Arrays.asList;
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
 import static javax.ejb.TransactionAttributeType.REQUIRES_NEW;
 import static org.rhq.core.domain.resource.InventoryStatus.COMMITTED;
 import static org.rhq.core.domain.resource.ResourceCategory.PLATFORM;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.criteria.ResourceCriteria;
 import org.rhq.core.domain.criteria.ResourceTypeCriteria;
 import org.rhq.core.domain.measurement.AvailabilityType;
 import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementDefinition;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.domain.resource.composite.PlatformMetricsSummary;
@@ -51,8 +69,10 @@ import org.rhq.core.domain.resource.composite.PlatformMetricsSummary.SwapMetric;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.core.util.collection.ArrayUtils;
 import org.rhq.enterprise.server.measurement.MeasurementDataManagerLocal;
+import org.rhq.enterprise.server.measurement.MeasurementScheduleManagerLocal;
 import org.rhq.enterprise.server.util.CriteriaQuery;
 import org.rhq.enterprise.server.util.CriteriaQueryExecutor;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
 
 /**
  * @author jsanda
@@ -60,6 +80,20 @@ import org.rhq.enterprise.server.util.CriteriaQueryExecutor;
 @Stateless
 public class PlatformUtilizationManagerBean implements PlatformUtilizationManagerLocal {
 
+    private static final Log LOG = LogFactory.getLog(PlatformUtilizationManagerBean.class);
+
+    /**
+     * The number of agents asked for live metrics at the same time.
+     */
+    private static final int CONCURRENCY = Integer.parseInt(System.getProperty(
+        "rhq.server.platform-utilization.concurrency", "20"));
+
+    /**
+     * How long to wait for any one agent, in milliseconds, before falling back to the latest stored metrics.
+     */
+    private static final long AGENT_TIMEOUT = Long.parseLong(System.getProperty(
+        "rhq.server.platform-utilization.agent-timeout", "10000"));
+
     @EJB
     private ResourceTypeManagerLocal resourceTypeMgr;
 
@@ -69,11 +103,33 @@ public class PlatformUtilizationManagerBean implements PlatformUtilizationManage
     @EJB
     private MeasurementDataManagerLocal measurementDataMgr;
 
+    @EJB
+    private MeasurementScheduleManagerLocal measurementScheduleMgr;
+
     @EJB
     private PlatformUtilizationManagerLocal platformUtilizationMgr;
 
     @Override
-    public PageList<PlatformMetricsSummary> loadPlatformMetrics(final Subject subject) {
+    @TransactionAttribute(NOT_SUPPORTED)
+    public PageList<PlatformMetricsSummary> loadPlatformMetrics(Subject subject) {
+        final PageList<PlatformMetricsSummary> summaries = new PageList<PlatformMetricsSummary>();
+        try {
+            platformUtilizationMgr.loadPlatformMetrics(subject, new SummaryHandler() {
+                @Override
+                public void handle(PlatformMetricsSummary summary) {
+                    summaries.add(summary);
+                }
+            });
+        } catch (IOException e) {
+            // cannot happen, the handler does no I/O
+            throw new IllegalStateException(e);
+        }
+        return summaries;
+    }
+
+    @Override
+    @TransactionAttribute(NOT_SUPPORTED)
+    public void loadPlatformMetrics(final Subject subject, SummaryHandler handler) throws IOException {
         final ResourceTypeCriteria typeCriteria = new ResourceTypeCriteria();
         typeCriteria.addFilterIgnored(false); // don't load metrics for ignored types
         typeCriteria.addFilterCategory(PLATFORM);
@@ -111,30 +167,86 @@ public class PlatformUtilizationManagerBean implements PlatformUtilizationManage
         CriteriaQuery<Resource, ResourceCriteria> platforms = new CriteriaQuery<Resource, ResourceCriteria>(
             resourceCriteria, resourceQueryExecutor);
 
-        PageList<PlatformMetricsSummary> summaries = new PageList<PlatformMetricsSummary>();
-
-        for (Resource platform : platforms) {
-            Set<Integer> metricDefIds = platformMetricDefs.get(platform.getResourceType().getId());
-            try {
+        // The agents are asked in parallel and the summaries are handed to the handler in the order they are loaded,
+        // so that a few slow agents do not hold up the others.
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(CONCURRENCY, 1), new LoggingThreadFactory(
+            "PlatformUtilization", true));
+        try {
+            CompletionService<PlatformMetricsSummary> completionService;
+            completionService = new ExecutorCompletionService<PlatformMetricsSummary>(executor);
+            int pending = 0;
+
+            for (final Resource platform : platforms) {
+                final Set<Integer> metricDefIds = platformMetricDefs.get(platform.getResourceType().getId());
                 // don't try to contact platforms that are down or questionable. In that case, just return the
                 // platform marked with no metrics available
-                if (AvailabilityType.UP == platform.getCurrentAvailability().getAvailabilityType()) {
-                    // Don't wait for more than 10s for any one agent, even that may be too long.
-                    Set<MeasurementData> measurementDataSet = platformUtilizationMgr
-                        .loadLiveMetricsForPlatformInNewTransaction(subject, platform, metricDefIds, 10000L);
-                    summaries.add(createSummary(platform, measurementDataSet));
+                if (AvailabilityType.UP != platform.getCurrentAvailability().getAvailabilityType()) {
+                    handler.handle(createSummary(platform, null));
                 } else {
-                    summaries.add(createSummary(platform, null));
+                    completionService.submit(new Callable<PlatformMetricsSummary>() {
+                        @Override
+                        public PlatformMetricsSummary call() {
+                            return loadSummary(subject, platform, metricDefIds);
+                        }
+                    });
+                    ++pending;
                 }
-            } catch (RuntimeException e) {
-                PlatformMetricsSummary summary = new PlatformMetricsSummary();
-                summary.setResource(platform);
-                summary.setMetricsAvailable(false);
-                summaries.add(summary);
+
+                Future<PlatformMetricsSummary> loaded;
+                while ((loaded = completionService.poll()) != null) {
+                    handler.handle(getSummary(loaded));
+                    --pending;
+                }
+            }
+
+            for (; pending > 0; --pending) {
+                handler.handle(getSummary(completionService.take()));
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the platform metrics");
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        return summaries;
+    /**
+     * Loads the live metrics of the platform from its agent and falls back to the latest stored ones when the agent
+     * does not answer in time, cannot be reached or fails to collect them.
+     */
+    PlatformMetricsSummary loadSummary(Subject subject, Resource platform, Set<Integer> metricDefIds) {
+        Set<MeasurementData> measurementDataSet;
+        try {
+            measurementDataSet = platformUtilizationMgr.loadLiveMetricsForPlatformInNewTransaction(subject, platform,
+                metricDefIds, AGENT_TIMEOUT);
+        } catch (RuntimeException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to load the live metrics of platform " + platform, e);
+            }
+            measurementDataSet = null;
+        }
+
+        try {
+            if (measurementDataSet == null || measurementDataSet.isEmpty()) {
+                measurementDataSet = platformUtilizationMgr.loadLatestMetricsForPlatformInNewTransaction(subject,
+                    platform, metricDefIds);
+            }
+            return createSummary(platform, measurementDataSet);
+        } catch (RuntimeException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to load the metrics of platform " + platform, e);
+            }
+            return createSummary(platform, null);
+        }
+    }
+
+    private PlatformMetricsSummary getSummary(Future<PlatformMetricsSummary> loaded) throws InterruptedException {
+        try {
+            return loaded.get();
+        } catch (ExecutionException e) {
+            // loadSummary does not throw
+            throw new IllegalStateException(e.getCause());
+        }
     }
 
     @Override
@@ -145,6 +257,27 @@ public class PlatformUtilizationManagerBean implements PlatformUtilizationManage
             ArrayUtils.unwrapArray(metricDefinitionIds.toArray(new Integer[metricDefinitionIds.size()])), timeout);
     }
 
+    @Override
+    @TransactionAttribute(REQUIRES_NEW)
+    public Set<MeasurementData> loadLatestMetricsForPlatformInNewTransaction(Subject subject, Resource platform,
+        Set<Integer> metricDefinitionIds) {
+        List<MeasurementSchedule> schedules = measurementScheduleMgr.findSchedulesByResourceIdAndDefinitionIds(
+            subject, platform.getId(),
+            ArrayUtils.unwrapArray(metricDefinitionIds.toArray(new Integer[metricDefinitionIds.size()])));
+
+        Set<MeasurementData> measurementDataSet = new HashSet<MeasurementData>();
+        for (MeasurementSchedule schedule : schedules) {
+            MeasurementDataNumeric latest = measurementDataMgr.getCurrentNumericForSchedule(schedule.getId());
+            if (latest == null || latest.getValue() == null || latest.getValue().isNaN()) {
+                // a partial summary cannot be reported
+                return Collections.emptySet();
+            }
+            measurementDataSet.add(new MeasurementDataNumeric(latest.getTimestamp(), new MeasurementScheduleRequest(
+                schedule), latest.getValue()));
+        }
+        return measurementDataSet;
+    }
+
     private Set<Integer> getPlatformMetricDefIds(ResourceType resourceType) {
         Set<Integer> metricDefIds = new TreeSet<Integer>();
         List<String> metricDefNames = asList(MemoryMetric.Used.getProperty(), MemoryMetric.ActualUsed.getProperty(),
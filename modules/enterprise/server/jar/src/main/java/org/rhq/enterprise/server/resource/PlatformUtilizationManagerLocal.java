@@ -21,6 +21,7 @@
 
 package org.rhq.enterprise.server.resource;
 
+import java.io.IOException;
 import java.util.Set;
 
 import javax.ejb.Local;
@@ -39,7 +40,26 @@ public interface PlatformUtilizationManagerLocal {
 
     PageList<PlatformMetricsSummary> loadPlatformMetrics(Subject subject);
 
+    /**
+     * Loads the metrics of the platforms from their agents, several agents at a time, and passes every summary to the
+     * handler, on the calling thread, as soon as it is loaded. When an agent does not answer in time, the latest
+     * stored values of the platform are used instead.
+     *
+     * @throws IOException if the handler fails
+     */
+    void loadPlatformMetrics(Subject subject, SummaryHandler handler) throws IOException;
+
     Set<MeasurementData> loadLiveMetricsForPlatformInNewTransaction(Subject subject, Resource platform,
         Set<Integer> metricDefinitionIds, Long timeout);
 
+    /**
+     * @return the latest stored values of the metrics, or an empty set if any of them has no value
+     */
+    Set<MeasurementData> loadLatestMetricsForPlatformInNewTransaction(Subject subject, Resource platform,
+        Set<Integer> metricDefinitionIds);
+
+    interface SummaryHandler {
+        void handle(PlatformMetricsSummary summary) throws IOException;
+    }
+
 }
@@ -40,6 +40,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -61,6 +63,7 @@ import org.rhq.core.util.collection.ArrayUtils;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.RequiredPermission;
+import org.rhq.enterprise.server.discovery.ResourceTypeCache;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 import org.rhq.enterprise.server.util.QueryUtility;
@@ -90,6 +93,9 @@ public class ResourceTypeManagerBean implements ResourceTypeManagerLocal, Resour
     @EJB
     private ResourceTypeManagerLocal resourceTypeManager; // self-reference
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @Override
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     @TransactionAttribute(TransactionAttributeType.NEVER)
@@ -119,6 +125,19 @@ public class ResourceTypeManagerBean implements ResourceTypeManagerLocal, Resour
             + "] with id=[" + resourceTypeId + "]");
 
         resourceType.setIgnored(ignoreFlag);
+
+        // the ignored types are sent to the agents with every merged inventory report. Until the transaction commits
+        // concurrent merges still read, and may cache, the old flag.
+        final ResourceTypeCache cache = ResourceTypeCache.getSingleton();
+        cache.invalidate();
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            public void beforeCompletion() {
+            }
+
+            public void afterCompletion(int status) {
+                cache.invalidate();
+            }
+        });
         return;
     }
 
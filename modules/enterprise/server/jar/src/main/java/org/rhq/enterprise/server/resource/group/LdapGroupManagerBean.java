@@ -63,6 +63,7 @@ import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.RequiredPermission;
 import org.rhq.enterprise.server.exception.LdapCommunicationException;
 import org.rhq.enterprise.server.exception.LdapFilterException;
@@ -93,6 +94,9 @@ public class LdapGroupManagerBean implements LdapGroupManagerLocal {
     @EJB
     private SystemManagerLocal systemManager;
 
+    @EJB
+    private AuthorizationManagerLocal authorizationManager;
+
     private static boolean groupQueryComplete = false;
     private static int groupQueryResultCount = 0;
     private static long groupQueryStartTime = -1;
@@ -290,6 +294,7 @@ public class LdapGroupManagerBean implements LdapGroupManagerLocal {
     public void assignRolesToLdapSubject(int subjectId, List<String> ldapGroupNames) {
         Subject sub = entityManager.find(Subject.class, subjectId);
         List<Role> roles = findRolesByLdapGroupNames(ldapGroupNames);
+        authorizationManager.invalidateAuthorizationCache();
         sub.getRoles().clear();
         sub.getLdapRoles().clear();
         for (Role role : roles) {
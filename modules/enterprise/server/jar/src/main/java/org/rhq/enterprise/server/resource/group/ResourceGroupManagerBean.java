@@ -165,6 +165,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         group.setModifiedBy(user.getName());
 
         entityManager.persist(group);
+        authorizationManager.invalidateAuthorizationCache();
 
         return group;
     }
@@ -243,6 +244,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     }
 
     private void clearImplicitResources(int resourceGroupId) throws ResourceGroupUpdateException {
+        authorizationManager.invalidateAuthorizationCache();
+
         Connection conn = null;
         PreparedStatement removeImplicitStatement = null;
         try {
@@ -287,6 +290,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     public void deleteResourceGroup(Subject subject, int groupId) throws ResourceGroupNotFoundException,
         ResourceGroupDeleteException {
         ResourceGroup group = getResourceGroupById(subject, groupId, null);
+        authorizationManager.invalidateAuthorizationCache();
 
         // create a copy of the collection in order to avoid ConcurrentModificationException
         // (as a consequence of iterating and modifying it at once).
@@ -526,6 +530,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             resourceIdsToAdd = ArrayUtils.unwrapCollection(resourceIds);
         }
 
+        authorizationManager.invalidateAuthorizationCache();
+
         Connection conn = null;
         PreparedStatement insertExplicitStatement = null;
         PreparedStatement insertImplicitStatement = null;
@@ -627,6 +633,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         }
 
         groupAlertDefinitionManager.removeGroupMemberAlertDefinitions(subject, groupId, resourceIds);
+        authorizationManager.invalidateAuthorizationCache();
 
         Connection conn = null;
         PreparedStatement deleteExplicitStatement = null;
@@ -692,6 +699,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void removeAllResourcesFromGroup(Subject subject, int groupId) throws ResourceGroupDeleteException {
+        authorizationManager.invalidateAuthorizationCache();
+
         Connection conn = null;
         PreparedStatement explicitStatement = null;
         PreparedStatement implicitStatement = null;
@@ -814,6 +823,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             toBeSearched.addAll(next.getChildResources());
         }
 
+        authorizationManager.invalidateAuthorizationCache(implicitRecursiveGroupIds);
+
         /*
          * now add this resource and all of its descendants to whatever recursive groups it's parent is already in
          */
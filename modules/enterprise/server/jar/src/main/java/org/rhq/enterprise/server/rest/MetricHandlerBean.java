@@ -19,6 +19,8 @@
 package org.rhq.enterprise.server.rest;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URI;
@@ -35,6 +37,8 @@ import java.util.Set;
 import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.interceptor.Interceptors;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -93,6 +97,7 @@ import org.rhq.enterprise.server.measurement.CallTimeDataManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementDataManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementDefinitionManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementScheduleManagerLocal;
+import org.rhq.enterprise.server.measurement.MeasurementStorageException;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
 import org.rhq.enterprise.server.rest.domain.Baseline;
@@ -106,6 +111,7 @@ import org.rhq.enterprise.server.rest.domain.MetricSchedule;
 import org.rhq.enterprise.server.rest.domain.NumericDataPoint;
 import org.rhq.enterprise.server.rest.domain.RHQErrorWrapper;
 import org.rhq.enterprise.server.rest.domain.StringValue;
+import org.rhq.enterprise.server.rest.helper.BulkDataParser;
 import org.rhq.enterprise.server.storage.StorageClientManager;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.domain.RawNumericMetric;
@@ -149,6 +155,14 @@ public class MetricHandlerBean  extends AbstractRestBean  {
 
     private static final long EIGHT_HOURS = 8 * 3600L * 1000L;
     private static final long SEVEN_DAYS = 7L*86400*1000;
+
+    // the data points of a bulk submission are stored in batches of this size
+    private static final int BULK_BATCH_SIZE = Integer.getInteger("rhq.server.rest.bulk-batch-size", 5000);
+    // how long a bulk submission waits for the metrics storage queue to have room for a batch
+    private static final long BULK_QUEUE_TIMEOUT = Long.getLong("rhq.server.rest.bulk-queue-timeout", 30000L);
+    private static final long BULK_QUEUE_POLL_INTERVAL = 50L;
+    private static final int MAX_REPORTED_REJECTIONS = 100;
+
     @GZIP
     @GET
     @Path("data/{scheduleId}")
@@ -1047,6 +1061,214 @@ public class MetricHandlerBean  extends AbstractRestBean  {
         }
     }
 
+    @POST
+    @Path("data/bulk")
+    @Consumes({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
+    @Produces(MediaType.APPLICATION_JSON)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @ApiOperation(value = "Submit a large series of numeric, trait and call-time values to the server. The payload is "
+        + "a JSON array of data points or, as text/plain, one 'scheduleId timeStamp value' or 'scheduleId beginTime "
+        + "duration callDestination' line per data point. The data is stored while it is read, so the payload can be "
+        + "of any size", responseClass = "Map")
+    @ApiErrors({
+        @ApiError(code = 406, reason = "The payload is malformed, the data points before the error are stored"),
+        @ApiError(code = 503, reason = "The metrics storage did not keep up, the data points before are stored")
+    })
+    public Response postBulkData(InputStream input, @Context HttpHeaders headers) throws IOException {
+        BulkDataLoader loader = new BulkDataLoader();
+        Status status = Status.OK;
+        String message = null;
+        try {
+            try {
+                if (MediaType.TEXT_PLAIN_TYPE.isCompatible(headers.getMediaType())) {
+                    BulkDataParser.parseLines(new InputStreamReader(input, "UTF-8"), loader);
+                } else {
+                    BulkDataParser.parseJson(input, loader);
+                }
+            } catch (BadArgumentException e) {
+                status = Status.NOT_ACCEPTABLE;
+                message = e.getMessage();
+            }
+            loader.flush();
+        } catch (StorageBusyException e) {
+            status = Status.SERVICE_UNAVAILABLE;
+            message = e.getMessage();
+        }
+
+        Map<String, Object> resp = loader.getSummary();
+        if (message != null) {
+            resp.put("message", message);
+        }
+        return Response.status(status).entity(resp).build();
+    }
+
+    /**
+     * Collects the data points of a bulk submission into batches. The schedules of a batch are looked up in the data
+     * types cached for the caller, with a single query for the ones not cached yet, and the data points are routed by
+     * the type of their schedule. Numeric data is only handed to the metrics server when its queue has room for the
+     * whole batch.
+     */
+    private class BulkDataLoader implements BulkDataParser.Handler {
+        private final CacheKey dataTypesKey = new CacheKey("scheduleDataTypesForCaller", caller.getId());
+        private final Map<Integer, DataType> dataTypes;
+        private final List<BulkDataParser.Point> points = new ArrayList<BulkDataParser.Point>(BULK_BATCH_SIZE);
+        private final List<String> rejections = new ArrayList<String>();
+        private final long oldestTimeStamp = System.currentTimeMillis() - SEVEN_DAYS;
+        private int numericCount;
+        private int traitCount;
+        private int callTimeCount;
+        private int rejectedCount;
+
+        @SuppressWarnings("unchecked")
+        BulkDataLoader() {
+            Map<Integer, DataType> cached = (Map<Integer, DataType>) cache.get(dataTypesKey);
+            dataTypes = cached == null ? new HashMap<Integer, DataType>() : new HashMap<Integer, DataType>(cached);
+        }
+
+        @Override
+        public void handle(BulkDataParser.Point point) {
+            points.add(point);
+            if (points.size() == BULK_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (points.isEmpty()) {
+                return;
+            }
+            loadDataTypes();
+
+            Set<MeasurementDataNumeric> numericData = new HashSet<MeasurementDataNumeric>(points.size());
+            Set<MeasurementDataTrait> traitData = new HashSet<MeasurementDataTrait>();
+            Map<Integer, CallTimeData> callTimeData = new HashMap<Integer, CallTimeData>();
+            int callTimePoints = 0;
+            for (BulkDataParser.Point point : points) {
+                int scheduleId = point.getScheduleId();
+                DataType type = dataTypes.get(scheduleId);
+                try {
+                    if (type == null) {
+                        throw new IllegalArgumentException("no schedule with this id exists");
+                    }
+                    if (point.getTimeStamp() < oldestTimeStamp) {
+                        throw new IllegalArgumentException("timeStamp is older than 7 days");
+                    }
+                    switch (type) {
+                    case MEASUREMENT:
+                        numericData.add(new MeasurementDataNumeric(point.getTimeStamp(), scheduleId,
+                            point.getNumericValue()));
+                        break;
+                    case TRAIT:
+                        traitData.add(new MeasurementDataTrait(new MeasurementDataPK(point.getTimeStamp(), scheduleId),
+                            point.getTraitValue()));
+                        break;
+                    case CALLTIME:
+                        CallTimeData data = callTimeData.get(scheduleId);
+                        if (data == null) {
+                            data = new CallTimeData(new MeasurementScheduleRequest(scheduleId, null, 0, true,
+                                DataType.CALLTIME));
+                            callTimeData.put(scheduleId, data);
+                        }
+                        data.addCallData(point.getCallDestination(), new Date(point.getTimeStamp()),
+                            point.getDuration());
+                        callTimePoints++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(type + " data can not be submitted");
+                    }
+                } catch (IllegalArgumentException e) {
+                    rejectedCount++;
+                    if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                        rejections.add(point + ": " + e.getMessage());
+                    }
+                }
+            }
+            points.clear();
+
+            addNumericData(numericData);
+            numericCount += numericData.size();
+            if (!traitData.isEmpty()) {
+                dataManager.addTraitData(traitData);
+                traitCount += traitData.size();
+            }
+            if (!callTimeData.isEmpty()) {
+                calltimeDataManager.addCallTimeData(new HashSet<CallTimeData>(callTimeData.values()));
+                callTimeCount += callTimePoints;
+            }
+        }
+
+        private void loadDataTypes() {
+            List<Integer> unknownIds = new ArrayList<Integer>();
+            for (BulkDataParser.Point point : points) {
+                if (!dataTypes.containsKey(point.getScheduleId())) {
+                    unknownIds.add(point.getScheduleId());
+                }
+            }
+            if (unknownIds.isEmpty()) {
+                return;
+            }
+            unknownIds = new ArrayList<Integer>(new HashSet<Integer>(unknownIds));
+            // the ids go into an IN clause, which Oracle limits to 1000 values
+            for (int i = 0; i < unknownIds.size(); i += 1000) {
+                List<Integer> ids = unknownIds.subList(i, Math.min(i + 1000, unknownIds.size()));
+                MeasurementScheduleCriteria criteria = new MeasurementScheduleCriteria();
+                criteria.addFilterIds(ids.toArray(new Integer[ids.size()]));
+                criteria.clearPaging();
+                for (MeasurementSchedule schedule : scheduleManager.findSchedulesByCriteria(caller, criteria)) {
+                    dataTypes.put(schedule.getId(), schedule.getDefinition().getDataType());
+                }
+            }
+            cache.put(dataTypesKey, new HashMap<Integer, DataType>(dataTypes));
+        }
+
+        private void addNumericData(Set<MeasurementDataNumeric> data) {
+            if (data.isEmpty()) {
+                return;
+            }
+            long deadline = System.currentTimeMillis() + BULK_QUEUE_TIMEOUT;
+            while (true) {
+                if (sessionManager.getQueueAvailableCapacity() > data.size()) {
+                    try {
+                        dataManager.addNumericData(data);
+                        return;
+                    } catch (MeasurementStorageException e) {
+                        // other writers filled the queue in the meantime, wait for it to drain again
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new StorageBusyException("The metrics storage queue has not drained in "
+                        + BULK_QUEUE_TIMEOUT + " ms, the remaining data points were not stored");
+                }
+                try {
+                    Thread.sleep(BULK_QUEUE_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new StorageBusyException("Interrupted while waiting for the metrics storage queue");
+                }
+            }
+        }
+
+        Map<String, Object> getSummary() {
+            Map<String, Object> summary = new HashMap<String, Object>();
+            summary.put("numeric", numericCount);
+            summary.put("traits", traitCount);
+            summary.put("callTimes", callTimeCount);
+            summary.put("rejected", rejectedCount);
+            if (!rejections.isEmpty()) {
+                summary.put("rejections", rejections);
+            }
+            return summary;
+        }
+    }
+
+    private static class StorageBusyException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StorageBusyException(String message) {
+            super(message);
+        }
+    }
+
     @GET
     @Path("data/{scheduleId}/baseline")
     @Produces({MediaType.APPLICATION_JSON,MediaType.APPLICATION_XML})
@@ -0,0 +1,221 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.server.rest.helper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
+
+import org.rhq.enterprise.server.rest.BadArgumentException;
+
+/**
+ * Reads the data points of a bulk data submission one at a time, so that the payload never has to be held in memory
+ * as a whole. Two formats are understood:
+ * <ul>
+ * <li>JSON: an array of objects like <code>{"scheduleId":10001,"timeStamp":1400000000000,"value":42.0}</code>. The
+ * value of a trait is a string. Call-time data has a <code>duration</code> and a <code>callDestination</code> instead
+ * of a value, and <code>beginTime</code> may be used in place of <code>timeStamp</code>.</li>
+ * <li>Line protocol: one data point per line, <code>scheduleId timeStamp value</code> for numeric and trait data and
+ * <code>scheduleId beginTime duration callDestination</code> for call-time data. Empty lines and lines starting with
+ * <code>#</code> are skipped.</li>
+ * </ul>
+ * The parser does not know the data type of the schedules, so the value is kept as text and interpreted by the
+ * {@link Point} accessor matching the type of the schedule.
+ */
+public class BulkDataParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Pattern FIELD_SEPARATOR = Pattern.compile("\\s+");
+
+    public interface Handler {
+        void handle(Point point);
+    }
+
+    private BulkDataParser() {
+    }
+
+    /**
+     * @throws BadArgumentException if the payload is not a JSON array of data points
+     */
+    public static void parseJson(InputStream input, Handler handler) throws IOException {
+        JsonParser parser = JSON_FACTORY.createJsonParser(input);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BadArgumentException("data", "a JSON array of data points is expected");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                handler.handle(readPoint(parser));
+            }
+            if (token != JsonToken.END_ARRAY) {
+                throw new BadArgumentException("data", "unexpected " + token + " at " + parser.getTokenLocation());
+            }
+        } catch (JsonProcessingException e) {
+            throw new BadArgumentException("data", e.getMessage());
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static Point readPoint(JsonParser parser) throws IOException {
+        Integer scheduleId = null;
+        Long timeStamp = null;
+        String value = null;
+        Long duration = null;
+        String callDestination = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("scheduleId".equals(field)) {
+                scheduleId = parser.getIntValue();
+            } else if ("timeStamp".equals(field) || "beginTime".equals(field)) {
+                timeStamp = parser.getLongValue();
+            } else if ("value".equals(field)) {
+                value = parser.getText();
+            } else if ("duration".equals(field)) {
+                duration = parser.getLongValue();
+            } else if ("callDestination".equals(field)) {
+                callDestination = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (scheduleId == null || timeStamp == null) {
+            throw new BadArgumentException("data point before " + parser.getTokenLocation(),
+                "scheduleId and timeStamp are required");
+        }
+        return new Point(scheduleId, timeStamp, value, duration, callDestination);
+    }
+
+    /**
+     * @throws BadArgumentException if a line is not a data point
+     */
+    public static void parseLines(Reader input, Handler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(input, 64 * 1024);
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            ++lineNumber;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = FIELD_SEPARATOR.split(line, 3);
+            if (fields.length < 3) {
+                throw new BadArgumentException("line " + lineNumber, "scheduleId, timeStamp and value are expected");
+            }
+            Point point;
+            try {
+                point = new Point(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), fields[2], null, null);
+            } catch (NumberFormatException e) {
+                throw new BadArgumentException("line " + lineNumber, e.getMessage());
+            }
+            handler.handle(point);
+        }
+    }
+
+    /**
+     * A data point as submitted. The accessors of the value throw an {@link IllegalArgumentException} if the
+     * submitted value does not fit the type asked for.
+     */
+    public static class Point {
+        private final int scheduleId;
+        private final long timeStamp;
+        private final String value;
+        private final Long duration;
+        private final String callDestination;
+
+        Point(int scheduleId, long timeStamp, String value, Long duration, String callDestination) {
+            this.scheduleId = scheduleId;
+            this.timeStamp = timeStamp;
+            this.value = value;
+            this.duration = duration;
+            this.callDestination = callDestination;
+        }
+
+        public int getScheduleId() {
+            return scheduleId;
+        }
+
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+
+        public double getNumericValue() {
+            return Double.parseDouble(getTraitValue());
+        }
+
+        public String getTraitValue() {
+            if (value == null) {
+                throw new IllegalArgumentException("value is missing");
+            }
+            return value;
+        }
+
+        public long getDuration() {
+            long result;
+            if (duration != null) {
+                result = duration;
+            } else {
+                // line protocol, the value holds "duration callDestination"
+                result = Long.parseLong(FIELD_SEPARATOR.split(getTraitValue(), 2)[0]);
+            }
+            if (result < 0) {
+                throw new IllegalArgumentException("duration must be a positive number");
+            }
+            return result;
+        }
+
+        public String getCallDestination() {
+            if (callDestination != null) {
+                return callDestination;
+            }
+            if (duration == null && value != null) {
+                String[] fields = FIELD_SEPARATOR.split(value, 2);
+                if (fields.length == 2) {
+                    return fields[1];
+                }
+            }
+            throw new IllegalArgumentException("callDestination is missing");
+        }
+
+        @Override
+        public String toString() {
+            return "Point[scheduleId=" + scheduleId + ", timeStamp=" + timeStamp + ", value=" + value
+                + (duration == null ? "" : ", duration=" + duration)
+                + (callDestination == null ? "" : ", callDestination=" + callDestination) + "]";
+        }
+    }
+}
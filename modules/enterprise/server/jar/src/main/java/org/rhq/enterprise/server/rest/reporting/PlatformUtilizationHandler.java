@@ -37,8 +37,8 @@ import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.resource.composite.PlatformMetricsSummary;
-import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.resource.PlatformUtilizationManagerLocal;
+import org.rhq.enterprise.server.resource.PlatformUtilizationManagerLocal.SummaryHandler;
 import org.rhq.enterprise.server.rest.AbstractRestBean;
 import org.rhq.enterprise.server.rest.ReportsInterceptor;
 
@@ -74,8 +74,8 @@ public class PlatformUtilizationHandler extends AbstractRestBean implements Plat
             }
 
             @Override
-            public void write(OutputStream output) throws IOException, WebApplicationException {
-                CsvWriter<PlatformMetricsSummary> csvWriter = new CsvWriter<PlatformMetricsSummary>();
+            public void write(final OutputStream output) throws IOException, WebApplicationException {
+                final CsvWriter<PlatformMetricsSummary> csvWriter = new CsvWriter<PlatformMetricsSummary>();
                 csvWriter.setColumns("resource.name", "resource.version", "CPUUsage", "memoryUsage", "swapUsage");
 
                 csvWriter.setPropertyConverter("CPUUsage", new PropertyConverter<PlatformMetricsSummary>() {
@@ -100,10 +100,14 @@ public class PlatformUtilizationHandler extends AbstractRestBean implements Plat
                 });
 
                 output.write((getHeader() + "\n").getBytes());
-                PageList<PlatformMetricsSummary> summaries = platformUtilizationMgr.loadPlatformMetrics(caller);
-                for (PlatformMetricsSummary summary : summaries) {
-                    csvWriter.write(summary, output);
-                }
+                // the rows are written as the platforms' metrics are loaded rather than once all of them are
+                platformUtilizationMgr.loadPlatformMetrics(caller, new SummaryHandler() {
+                    @Override
+                    public void handle(PlatformMetricsSummary summary) throws IOException {
+                        csvWriter.write(summary, output);
+                        output.flush();
+                    }
+                });
             }
 
             private String getHeader() {
@@ -33,8 +33,13 @@ import static org.rhq.core.domain.common.composite.SystemSetting.RESOURCE_CONFIG
 import static org.rhq.core.domain.common.composite.SystemSetting.RT_DATA_PURGE_PERIOD;
 import static org.rhq.core.domain.common.composite.SystemSetting.TRAIT_PURGE_PERIOD;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -54,6 +59,7 @@ import org.rhq.enterprise.server.purge.PurgeManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.enterprise.server.util.TimingVoodoo;
 
@@ -69,6 +75,12 @@ public class DataPurgeJob extends AbstractStatefulJob {
 
     private static final long HOUR = MILLISECONDS.convert(1, HOURS);
 
+    /**
+     * The number of purges of independent tables which run at the same time.
+     */
+    private static final int PARALLELISM = Integer.parseInt(System.getProperty("rhq.server.data-purge.parallelism",
+        "4"));
+
     private final SubjectManagerLocal subjectManager;
     private final SystemManagerLocal systemManager;
     private final PurgeManagerLocal purgeManager;
@@ -129,22 +141,80 @@ public class DataPurgeJob extends AbstractStatefulJob {
         }
     }
 
-    private void purgeEverything(SystemSettings systemSettings) {
-        purgeCallTimeData(systemSettings);
-        purgeEventData(systemSettings);
-        purgeAlertData(systemSettings);
-        purgeUnusedAlertDefinitions();
-        purgeOrphanedAlertConditions();
-        purgeOrphanedAlertNotifications();
-        purgeMeasurementTraitData(systemSettings);
-        purgeAvailabilityData(systemSettings);
-        purgeOrphanedDriftFiles(systemSettings);
-        purgeOperationHistoryData(systemSettings);
-        purgeOrphanedBundleResourceDeploymentHistory();
-        purgePartitionEventsData(systemSettings);
-        purgeResourceConfigHistory(systemSettings);
-        removeResourceErrorDuplicates();
-        removeStaleAvailabilityResourceErrors();
+    private void purgeEverything(final SystemSettings systemSettings) {
+        // Purges of unrelated tables run in parallel, the purges of related tables run in order in the same task.
+        List<Callable<Void>> purges = new ArrayList<Callable<Void>>();
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeCallTimeData(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeEventData(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeAlertData(systemSettings);
+                purgeUnusedAlertDefinitions();
+                purgeOrphanedAlertConditions();
+                purgeOrphanedAlertNotifications();
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeMeasurementTraitData(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeAvailabilityData(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeOrphanedDriftFiles(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeOperationHistoryData(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeOrphanedBundleResourceDeploymentHistory();
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgePartitionEventsData(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                purgeResourceConfigHistory(systemSettings);
+            }
+        });
+        purges.add(new PurgeTask() {
+            void purge() {
+                removeResourceErrorDuplicates();
+                removeStaleAvailabilityResourceErrors();
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(PARALLELISM, 1), new LoggingThreadFactory(
+            "DataPurgeJob", true));
+        try {
+            // every purge logs its own failure
+            executor.invokeAll(purges);
+        } catch (InterruptedException e) {
+            LOG.warn("Data purge interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     private void purgeMeasurementTraitData(SystemSettings systemSettings) {
@@ -471,4 +541,14 @@ public class DataPurgeJob extends AbstractStatefulJob {
             LOG.info("Database maintenance completed in [" + duration + "]ms");
         }
     }
+
+    private abstract static class PurgeTask implements Callable<Void> {
+        abstract void purge();
+
+        @Override
+        public Void call() {
+            purge();
+            return null;
+        }
+    }
 }
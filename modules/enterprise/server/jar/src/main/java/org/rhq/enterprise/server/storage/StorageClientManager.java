@@ -58,6 +58,7 @@ import com.datastax.driver.core.policies.DefaultRetryPolicy;
 import com.datastax.driver.core.policies.LoadBalancingPolicy;
 import com.datastax.driver.core.policies.LoggingRetryPolicy;
 import com.datastax.driver.core.policies.RoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -93,6 +94,12 @@ public class StorageClientManager implements StorageClientManagerMBean{
 
     private static final ObjectName OBJECT_NAME = ObjectNameFactory.create("rhq:service=StorageClientManager");
 
+    private static final ObjectName AGGREGATION_OBJECT_NAME = ObjectNameFactory.create(
+        "rhq:service=MetricsAggregation");
+
+    private static final ObjectName QUERY_CACHE_OBJECT_NAME = ObjectNameFactory.create(
+        "rhq:service=MetricsQueryCache");
+
     private static final Log LOG = LogFactory.getLog(StorageClientManager.class);
 
     private static final String RHQ_KEYSPACE = "rhq";
@@ -190,6 +197,8 @@ public class StorageClientManager implements StorageClientManagerMBean{
 
             initMetricsServer();
             JMXUtil.registerMBean(this, OBJECT_NAME);
+            JMXUtil.registerMBean(metricsServer.getAggregationManager(), AGGREGATION_OBJECT_NAME);
+            JMXUtil.registerMBean(metricsServer.getAggregateCache(), QUERY_CACHE_OBJECT_NAME);
             aliveChecker = new SessionAliveChecker(this);
             aliveChecker.setName("StorageNode SessionAliveChecker");
             aliveChecker.start();
@@ -323,6 +332,8 @@ public class StorageClientManager implements StorageClientManagerMBean{
         cluster = null;
         session = null;
         JMXUtil.unregisterMBeanQuietly(OBJECT_NAME);
+        JMXUtil.unregisterMBeanQuietly(AGGREGATION_OBJECT_NAME);
+        JMXUtil.unregisterMBeanQuietly(QUERY_CACHE_OBJECT_NAME);
         initialized = false;
     }
 
@@ -584,6 +595,11 @@ public class StorageClientManager implements StorageClientManagerMBean{
                 return new DCAwareRoundRobinPolicy(dataCenter);
             }
         }
+        if (policy.equals("TokenAware")) {
+            // Routes each statement to a replica of its partition, which is what the raw data writer relies on when
+            // it groups writes by schedule id
+            return new TokenAwarePolicy(new RoundRobinPolicy());
+        }
         LOG.warn(policy + " is not a supported load balancing policy. Reverting to RoundRobin load balancing policy.");
 
         return new RoundRobinPolicy();
@@ -648,6 +664,61 @@ public class StorageClientManager implements StorageClientManagerMBean{
         return metricsServer.getQueueAvailableCapacity();
     }
 
+    @Override
+    public long getRawInserts() {
+        return metricsServer.getRawDataWriter().getRawInserts();
+    }
+
+    @Override
+    public double getRawInsertRate() {
+        return metricsServer.getRawDataWriter().getRawInsertRate();
+    }
+
+    @Override
+    public long getRawIndexUpdates() {
+        return metricsServer.getRawDataWriter().getIndexUpdates();
+    }
+
+    @Override
+    public long getRawInsertFailures() {
+        return metricsServer.getRawDataWriter().getFailedInserts();
+    }
+
+    @Override
+    public long getRawWriteBatchCount() {
+        return metricsServer.getRawDataWriter().getBatchCount();
+    }
+
+    @Override
+    public double getRawWriteMeanBatchSize() {
+        return metricsServer.getRawDataWriter().getMeanBatchSize();
+    }
+
+    @Override
+    public int getRawWriteMaxBatchSize() {
+        return metricsServer.getRawDataWriter().getMaxBatchSize();
+    }
+
+    @Override
+    public String getRawWriteBatchSizeDistribution() {
+        return metricsServer.getRawDataWriter().getBatchSizeDistribution();
+    }
+
+    @Override
+    public int getRawWriteInFlightRequests() {
+        return metricsServer.getRawDataWriter().getInFlightRequests();
+    }
+
+    @Override
+    public int getRawWritePeakInFlightRequests() {
+        return metricsServer.getRawDataWriter().getPeakInFlightRequests();
+    }
+
+    @Override
+    public int getRawWriteMaxInFlightRequests() {
+        return metricsServer.getRawDataWriter().getMaxInFlightRequests();
+    }
+
     /**
      * A thread that checks for liveness of the given session.
      */
@@ -66,4 +66,28 @@ public interface StorageClientManagerMBean {
     // Queue
 
     int getQueueAvailableCapacity();
+
+    // Raw data writer
+
+    long getRawInserts();
+
+    double getRawInsertRate();
+
+    long getRawIndexUpdates();
+
+    long getRawInsertFailures();
+
+    long getRawWriteBatchCount();
+
+    double getRawWriteMeanBatchSize();
+
+    int getRawWriteMaxBatchSize();
+
+    String getRawWriteBatchSizeDistribution();
+
+    int getRawWriteInFlightRequests();
+
+    int getRawWritePeakInFlightRequests();
+
+    int getRawWriteMaxInFlightRequests();
 }
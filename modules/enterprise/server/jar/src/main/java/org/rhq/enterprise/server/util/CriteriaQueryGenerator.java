@@ -54,6 +54,7 @@ import org.rhq.core.domain.util.OrderingField;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.enterprise.server.authz.IdBitmap;
 import org.rhq.enterprise.server.search.SearchExpressionException;
 import org.rhq.enterprise.server.search.execution.SearchTranslationManager;
 
@@ -66,6 +67,12 @@ public final class CriteriaQueryGenerator {
 
     private static final Log LOG = LogFactory.getLog(CriteriaQueryGenerator.class);
 
+    /**
+     * Above this many ranges of visible resource ids, resource queries join the roles of the subject instead of
+     * filtering on the ranges. A subject whose roles grant a few hundred platforms stays below it.
+     */
+    public static final int MAX_AUTHORIZATION_ID_RANGES = 1000;
+
     public enum AuthorizationTokenType {
         RESOURCE, // specifies the resource alias to join on for standard res-group-role-subject authorization checking
         GROUP, // specifies the group alias to join on for standard group-role-subject authorization checking
@@ -191,7 +198,9 @@ public final class CriteriaQueryGenerator {
     public void setAuthorizationResourceFragment(AuthorizationTokenType type, String fragment, int subjectId) {
         this.authorizationSubjectId = subjectId;
         if (type == AuthorizationTokenType.RESOURCE) {
-            setAuthorizationCustomConditionFragment(getEnhancedResourceAuthorizationWhereFragment(fragment, subjectId));
+            String idFilterFragment = getResourceIdFilterFragment(fragment, subjectId);
+            setAuthorizationCustomConditionFragment(idFilterFragment != null ? idFilterFragment
+                : getEnhancedResourceAuthorizationWhereFragment(fragment, subjectId));
         } else if (type == AuthorizationTokenType.GROUP) {
             // support for: 1) role-based for groups, 2) role-based for containing cluster groups, 3) private groups
             setAuthorizationCustomConditionFragment(getEnhancedGroupAuthorizationWhereFragment(fragment, subjectId));
@@ -217,6 +226,35 @@ public final class CriteriaQueryGenerator {
         }
     }
 
+    /*
+     * The resources visible by the subject are usually a few ranges of ids, the platforms and their children being
+     * imported at once. Filtering on these ranges spares the join of the groups, roles and subjects for every row.
+     */
+    private String getResourceIdFilterFragment(String fragment, int subjectId) {
+        IdBitmap visibleResourceIds = LookupUtil.getAuthorizationManager().getVisibleResourceIds(subjectId);
+        if (visibleResourceIds == null || visibleResourceIds.isEmpty()) {
+            return null;
+        }
+        List<int[]> ranges = visibleResourceIds.getRanges(MAX_AUTHORIZATION_ID_RANGES);
+        if (ranges == null) {
+            return null;
+        }
+
+        String idField = criteria.getAlias() + (fragment != null ? "." + fragment : "") + ".id";
+        StringBuilder idFilterFragment = new StringBuilder("( ");
+        for (int[] range : ranges) {
+            if (idFilterFragment.length() > 2) {
+                idFilterFragment.append(NL).append("  OR ");
+            }
+            if (range[0] == range[1]) {
+                idFilterFragment.append(idField).append(" = ").append(range[0]);
+            } else {
+                idFilterFragment.append(idField).append(" BETWEEN ").append(range[0]).append(" AND ").append(range[1]);
+            }
+        }
+        return idFilterFragment.append(" )").append(NL).toString();
+    }
+
     private String getEnhancedResourceAuthorizationWhereFragment(String fragment, int subjectId) {
         String customAuthzFragment = "" //
             + "( %aliasWithFragment%.id IN ( SELECT %innerAlias%.id " + NL //
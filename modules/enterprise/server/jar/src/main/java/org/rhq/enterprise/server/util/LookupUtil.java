@@ -44,6 +44,8 @@ import org.rhq.enterprise.server.alert.AlertNotificationManagerBean;
 import org.rhq.enterprise.server.alert.AlertNotificationManagerLocal;
 import org.rhq.enterprise.server.alert.AlertTemplateManagerBean;
 import org.rhq.enterprise.server.alert.AlertTemplateManagerLocal;
+import org.rhq.enterprise.server.alert.CachedConditionManagerBean;
+import org.rhq.enterprise.server.alert.CachedConditionManagerLocal;
 import org.rhq.enterprise.server.alert.GroupAlertDefinitionManagerBean;
 import org.rhq.enterprise.server.alert.GroupAlertDefinitionManagerLocal;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerBean;
@@ -306,6 +308,10 @@ public final class LookupUtil {
         return lookupLocal(AlertConditionManagerBean.class);
     }
 
+    public static CachedConditionManagerLocal getCachedConditionManager() {
+        return lookupLocal(CachedConditionManagerBean.class);
+    }
+
     public static AlertDefinitionManagerLocal getAlertDefinitionManager() {
         return lookupLocal(AlertDefinitionManagerBean.class);
     }
@@ -0,0 +1,81 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite;
+import org.rhq.core.domain.resource.InventoryStatus;
+
+/**
+ * Checks that the condition to definition mappings are dropped, and not cached again from stale loads, when the alert
+ * condition caches are reloaded.
+ */
+@Test
+public class AlertConditionDefinitionCacheTest {
+
+    private final AlertConditionDefinitionCache cache = AlertConditionDefinitionCache.getInstance();
+
+    @BeforeMethod
+    public void clearCache() {
+        cache.clear();
+    }
+
+    public void testGetCachedComposites() {
+        cache.put(Arrays.asList(composite(1, 10), composite(2, 20)), cache.getGeneration());
+
+        Map<Integer, AlertConditionDefinitionComposite> result = cache.get(Arrays.asList(1, 2, 3));
+        assert result.size() == 2 : "only the cached conditions should be found: " + result;
+        assert result.get(1).getAlertDefinitionId() == 10;
+        assert result.get(2).getAlertDefinitionId() == 20;
+        assert !result.containsKey(3);
+    }
+
+    public void testClearDropsEntries() {
+        cache.put(Arrays.asList(composite(1, 10)), cache.getGeneration());
+        assert cache.size() == 1;
+
+        cache.clear();
+
+        assert cache.size() == 0;
+        assert cache.get(Arrays.asList(1)).isEmpty() : "the entry should be gone after a clear";
+    }
+
+    public void testCompositesLoadedBeforeClearAreNotCached() {
+        long generation = cache.getGeneration();
+
+        // a cache reload happens while the composites are being loaded
+        cache.clear();
+        cache.put(Arrays.asList(composite(1, 10)), generation);
+
+        assert cache.size() == 0 : "stale composites should not have been cached";
+        assert cache.get(Arrays.asList(1)).isEmpty();
+
+        cache.put(Arrays.asList(composite(1, 11)), cache.getGeneration());
+        assert cache.get(Arrays.asList(1)).get(1).getAlertDefinitionId() == 11;
+    }
+
+    private static AlertConditionDefinitionComposite composite(int conditionId, int alertDefinitionId) {
+        return new AlertConditionDefinitionComposite(conditionId, alertDefinitionId, InventoryStatus.COMMITTED);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.NumericDoubleCacheElement;
+
+/**
+ * Checks the snapshot map used by the alert condition caches, including lookups of the same shape as checking
+ * measurement data: one lookup by schedule id per datum followed by matching the datum against the cached conditions.
+ */
+@Test
+public class ImmutableIntMapTest {
+
+    private static final int CONDITIONS = 10000;
+    private static final int LOOKUPS = 100000;
+
+    public void testEmpty() {
+        ImmutableIntMap<String> map = ImmutableIntMap.empty();
+        assert map.isEmpty();
+        assert map.size() == 0;
+        assert map.get(0) == null;
+        assert map.get(42) == null;
+        assert map.values().isEmpty();
+    }
+
+    public void testCopyOf() {
+        Map<Integer, String> source = new HashMap<Integer, String>();
+        for (int i = -500; i < 500; i++) {
+            source.put(i * 7, "v" + i);
+        }
+        ImmutableIntMap<String> map = ImmutableIntMap.copyOf(source);
+        assert map.size() == source.size();
+        for (int i = -500; i < 500; i++) {
+            assert ("v" + i).equals(map.get(i * 7));
+            assert map.get(i * 7 + 1) == null;
+        }
+        assert map.values().size() == source.size();
+        assert map.values().containsAll(source.values());
+    }
+
+    public void testWithLeavesOriginalUntouched() {
+        ImmutableIntMap<String> first = ImmutableIntMap.empty();
+        ImmutableIntMap<String> second = first.with(1, "one");
+        ImmutableIntMap<String> third = second.with(2, "two").with(1, "uno");
+
+        assert first.get(1) == null;
+        assert second.size() == 1;
+        assert "one".equals(second.get(1));
+        assert second.get(2) == null;
+        assert third.size() == 2;
+        assert "uno".equals(third.get(1));
+        assert "two".equals(third.get(2));
+
+        ImmutableIntMap<String> grown = third;
+        for (int i = 3; i < 1000; i++) {
+            grown = grown.with(i, String.valueOf(i));
+        }
+        assert grown.size() == 999;
+        assert "uno".equals(grown.get(1));
+        assert "999".equals(grown.get(999));
+        assert third.get(999) == null;
+    }
+
+    public void testNullValuesRejected() {
+        try {
+            ImmutableIntMap.<String> empty().with(1, null);
+            assert false : "null value should have been rejected";
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Looks up random schedule ids, a tenth of which have no condition, and checks that the snapshot finds the same
+     * conditions as the HashMap it was copied from.
+     */
+    public void testLookupMatchesSource() {
+        Map<Integer, List<NumericDoubleCacheElement>> conditions = new HashMap<Integer, List<NumericDoubleCacheElement>>();
+        for (int scheduleId = 0; scheduleId < CONDITIONS; scheduleId++) {
+            List<NumericDoubleCacheElement> elements = new ArrayList<NumericDoubleCacheElement>(1);
+            elements.add(new MeasurementNumericCacheElement(AlertConditionOperator.GREATER_THAN, 1000.0, scheduleId));
+            conditions.put(scheduleId, elements);
+        }
+        ImmutableIntMap<List<NumericDoubleCacheElement>> snapshot = ImmutableIntMap.copyOf(conditions);
+
+        Random random = new Random(42);
+        int matched = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            int scheduleId = random.nextInt(CONDITIONS + CONDITIONS / 10);
+            Double value = random.nextDouble() * 1100.0;
+            List<NumericDoubleCacheElement> elements = snapshot.get(scheduleId);
+            assert elements == conditions.get(scheduleId) : "wrong conditions for schedule " + scheduleId;
+            matched += match(elements, value);
+        }
+        assert matched > 0 : "no datapoint matched its condition";
+    }
+
+    private static int match(List<NumericDoubleCacheElement> elements, Double value) {
+        int matched = 0;
+        if (elements != null) {
+            for (NumericDoubleCacheElement element : elements) {
+                if (element.matches(value)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.alert.engine.jms;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.composite.AlertConditionDefinitionComposite;
+import org.rhq.core.domain.resource.InventoryStatus;
+import org.rhq.enterprise.server.alert.AlertConditionManagerLocal;
+import org.rhq.enterprise.server.alert.AlertManagerLocal;
+import org.rhq.enterprise.server.alert.CachedConditionManagerLocal;
+import org.rhq.enterprise.server.alert.engine.internal.AlertConditionDefinitionCache;
+import org.rhq.enterprise.server.alert.engine.jms.model.AbstractAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.ActiveAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.InactiveAlertConditionMessage;
+import org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerLocal;
+
+/**
+ * Checks how the consumer batches the waiting messages, groups them by alert definition and falls back to one
+ * transaction per definition. The transactional processing itself is covered by the alert condition itests.
+ */
+@Test
+public class AlertConditionConsumerBeanTest {
+
+    private AlertConditionConsumerBean consumerBean;
+    private AlertConditionManagerLocal alertConditionManager;
+    private RecordingCachedConditionManager cachedConditionManager;
+    private MessageConsumer queueConsumer;
+
+    /**
+     * Records the batches it is given, and fails the batches of more than one definition if asked to.
+     */
+    private static class RecordingCachedConditionManager implements CachedConditionManagerLocal {
+        final List<Map<Integer, List<AbstractAlertConditionMessage>>> batches;
+        boolean failMultiDefinitionBatches;
+
+        RecordingCachedConditionManager() {
+            batches = new ArrayList<Map<Integer, List<AbstractAlertConditionMessage>>>();
+        }
+
+        @Override
+        public List<Alert> processCachedConditionMessagesNewTx(
+            Map<Integer, List<AbstractAlertConditionMessage>> conditionMessagesByDefinitionId) {
+            batches.add(new LinkedHashMap<Integer, List<AbstractAlertConditionMessage>>(
+                conditionMessagesByDefinitionId));
+            if (failMultiDefinitionBatches && conditionMessagesByDefinitionId.size() > 1) {
+                throw new RuntimeException("Simulated failure of a batch");
+            }
+            return new ArrayList<Alert>();
+        }
+    }
+
+    @BeforeMethod
+    public void initConsumer() throws Exception {
+        AlertConditionDefinitionCache.getInstance().clear();
+
+        alertConditionManager = mock(AlertConditionManagerLocal.class);
+        cachedConditionManager = new RecordingCachedConditionManager();
+
+        queueConsumer = mock(MessageConsumer.class);
+        Session session = mock(Session.class);
+        when(session.createConsumer(any(Destination.class))).thenReturn(queueConsumer);
+        Connection connection = mock(Connection.class);
+        when(connection.createSession(anyBoolean(), anyInt())).thenReturn(session);
+        ConnectionFactory factory = mock(ConnectionFactory.class);
+        when(factory.createConnection()).thenReturn(connection);
+
+        consumerBean = new AlertConditionConsumerBean();
+        setField("alertManager", mock(AlertManagerLocal.class));
+        setField("alertConditionManager", alertConditionManager);
+        setField("cachedConditionManager", cachedConditionManager);
+        setField("cacheConsistencyManager", mock(CacheConsistencyManagerLocal.class));
+        setField("factory", factory);
+    }
+
+    public void testWaitingMessagesAreProcessedInOneBatch() throws Exception {
+        AbstractAlertConditionMessage first = new ActiveAlertConditionMessage(1, 1000L, "1");
+        AbstractAlertConditionMessage second = new ActiveAlertConditionMessage(2, 2000L, "2");
+        AbstractAlertConditionMessage third = new InactiveAlertConditionMessage(1, 3000L);
+        Message secondMessage = objectMessage(second);
+        Message thirdMessage = objectMessage(third);
+        when(queueConsumer.receiveNoWait()).thenReturn(secondMessage, thirdMessage, null);
+        loadComposites(composite(1, 10), composite(2, 20));
+
+        consumerBean.onMessage(objectMessage(first));
+
+        assert cachedConditionManager.batches.size() == 1 : "all messages should have been processed together: "
+            + cachedConditionManager.batches;
+        Map<Integer, List<AbstractAlertConditionMessage>> batch = cachedConditionManager.batches.get(0);
+        assert batch.size() == 2 : batch;
+        assert batch.get(10).equals(Arrays.asList(first, third)) : "wrong messages for definition 10: " + batch;
+        assert batch.get(20).equals(Arrays.asList(second)) : "wrong messages for definition 20: " + batch;
+    }
+
+    public void testMessagesAreGroupedByDefinitionInArrivalOrder() throws Exception {
+        AbstractAlertConditionMessage m1 = new ActiveAlertConditionMessage(1, 1000L, "1");
+        AbstractAlertConditionMessage m2 = new ActiveAlertConditionMessage(2, 2000L, "2");
+        AbstractAlertConditionMessage m3 = new InactiveAlertConditionMessage(1, 3000L);
+        AbstractAlertConditionMessage m4 = new ActiveAlertConditionMessage(3, 4000L, "3");
+        AbstractAlertConditionMessage m5 = new ActiveAlertConditionMessage(1, 5000L, "4");
+        AbstractAlertConditionMessage removed = new ActiveAlertConditionMessage(4, 6000L, "5");
+        AbstractAlertConditionMessage uncommitted = new ActiveAlertConditionMessage(5, 7000L, "6");
+        // the messages must be mocked before the receive is stubbed
+        Message[] waiting = { objectMessage(m2), objectMessage(m3), objectMessage(m4), objectMessage(removed),
+            objectMessage(uncommitted), objectMessage(m5), null };
+        when(queueConsumer.receiveNoWait()).thenReturn(waiting[0], Arrays.copyOfRange(waiting, 1, waiting.length));
+        // condition 4 was removed, the resource of condition 5 is being uninventoried
+        loadComposites(composite(1, 30), composite(2, 10), composite(3, 30),
+            new AlertConditionDefinitionComposite(5, 20, InventoryStatus.UNINVENTORIED));
+
+        consumerBean.onMessage(objectMessage(m1));
+
+        Map<Integer, List<AbstractAlertConditionMessage>> batch = cachedConditionManager.batches.get(0);
+        assert new ArrayList<Integer>(batch.keySet()).equals(Arrays.asList(10, 30)) : "the definitions should be "
+            + "in ascending order, without the ones whose messages were discarded: " + batch.keySet();
+        assert batch.get(10).equals(Arrays.asList(m2)) : batch;
+        assert batch.get(30).equals(Arrays.asList(m1, m3, m4, m5)) : "the messages of a definition should not be "
+            + "merged or reordered: " + batch.get(30);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testDefinitionsAreResolvedFromTheCacheUntilItIsCleared() throws Exception {
+        when(queueConsumer.receiveNoWait()).thenReturn(null);
+        loadComposites(composite(1, 10));
+
+        consumerBean.onMessage(objectMessage(new ActiveAlertConditionMessage(1, 1000L, "1")));
+        consumerBean.onMessage(objectMessage(new ActiveAlertConditionMessage(1, 2000L, "2")));
+        verify(alertConditionManager, times(1)).getAlertConditionDefinitionCompositesNewTx(any(Collection.class));
+
+        // a reload of the alert condition caches, e.g. because the condition moved to another definition
+        AlertConditionDefinitionCache.getInstance().clear();
+        loadComposites(composite(1, 11));
+
+        consumerBean.onMessage(objectMessage(new ActiveAlertConditionMessage(1, 3000L, "3")));
+        verify(alertConditionManager, times(2)).getAlertConditionDefinitionCompositesNewTx(any(Collection.class));
+        assert cachedConditionManager.batches.get(2).containsKey(11) : "the new definition should have been used: "
+            + cachedConditionManager.batches.get(2);
+    }
+
+    public void testFailedBatchIsProcessedOneDefinitionAtATime() throws Exception {
+        AbstractAlertConditionMessage first = new ActiveAlertConditionMessage(1, 1000L, "1");
+        AbstractAlertConditionMessage second = new ActiveAlertConditionMessage(2, 2000L, "2");
+        Message secondMessage = objectMessage(second);
+        when(queueConsumer.receiveNoWait()).thenReturn(secondMessage, (Message) null);
+        loadComposites(composite(1, 10), composite(2, 20));
+        cachedConditionManager.failMultiDefinitionBatches = true;
+
+        consumerBean.onMessage(objectMessage(first));
+
+        List<Map<Integer, List<AbstractAlertConditionMessage>>> batches = cachedConditionManager.batches;
+        assert batches.size() == 3 : "the batch should have been retried once per definition: " + batches;
+        assert batches.get(1).keySet().equals(Collections.singleton(10)) : batches;
+        assert batches.get(1).get(10).equals(Arrays.asList(first)) : batches;
+        assert batches.get(2).keySet().equals(Collections.singleton(20)) : batches;
+        assert batches.get(2).get(20).equals(Arrays.asList(second)) : batches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadComposites(AlertConditionDefinitionComposite... composites) {
+        when(alertConditionManager.getAlertConditionDefinitionCompositesNewTx(any(Collection.class))).thenReturn(
+            Arrays.asList(composites));
+    }
+
+    private static AlertConditionDefinitionComposite composite(int conditionId, int alertDefinitionId) {
+        return new AlertConditionDefinitionComposite(conditionId, alertDefinitionId, InventoryStatus.COMMITTED);
+    }
+
+    private static Message objectMessage(AbstractAlertConditionMessage conditionMessage) throws Exception {
+        ObjectMessage message = mock(ObjectMessage.class);
+        when(message.getObject()).thenReturn(conditionMessage);
+        return message;
+    }
+
+    private void setField(String name, Object value) throws Exception {
+        Field field = AlertConditionConsumerBean.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(consumerBean, value);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+@Test
+public class AuthorizationCacheTest {
+
+    public void testInvalidate() {
+        AuthorizationCache cache = new AuthorizationCache(60000);
+        IdBitmap resourceIds = new IdBitmap(Arrays.asList(1, 2, 3));
+        IdBitmap groupIds = new IdBitmap(Arrays.asList(4));
+
+        cache.putVisibleResources(1, cache.getGeneration(), resourceIds);
+        cache.putVisibleGroups(1, cache.getGeneration(), groupIds);
+        assert cache.getVisibleResources(1) == resourceIds;
+        assert cache.getVisibleGroups(1) == groupIds;
+        assert cache.getVisibleResources(2) == null;
+
+        cache.invalidate();
+        assert cache.getVisibleResources(1) == null;
+        assert cache.getVisibleGroups(1) == null;
+    }
+
+    public void testInvalidateSubjects() {
+        AuthorizationCache cache = new AuthorizationCache(60000);
+        IdBitmap resourceIds = new IdBitmap(Arrays.asList(1, 2, 3));
+
+        cache.putVisibleResources(1, cache.getGeneration(), resourceIds);
+        cache.putVisibleResources(2, cache.getGeneration(), resourceIds);
+        cache.putVisibleGroups(2, cache.getGeneration(), new IdBitmap());
+
+        cache.invalidate(Arrays.asList(2, 3));
+        assert cache.getVisibleResources(1) == resourceIds;
+        assert cache.getVisibleResources(2) == null;
+        assert cache.getVisibleGroups(2) == null;
+    }
+
+    public void testIdsReadBeforeInvalidationAreNotCached() {
+        AuthorizationCache cache = new AuthorizationCache(60000);
+
+        long generation = cache.getGeneration();
+        cache.invalidate();
+        cache.putVisibleResources(1, generation, new IdBitmap());
+
+        assert cache.getVisibleResources(1) == null;
+    }
+
+    public void testExpiration() throws Exception {
+        AuthorizationCache cache = new AuthorizationCache(1);
+
+        cache.putVisibleResources(1, cache.getGeneration(), new IdBitmap());
+        Thread.sleep(10);
+
+        assert cache.getVisibleResources(1) == null;
+    }
+
+    public void testDisabled() {
+        AuthorizationCache cache = new AuthorizationCache(0);
+        assert !cache.isEnabled();
+
+        cache.putVisibleResources(1, cache.getGeneration(), new IdBitmap());
+
+        assert cache.getVisibleResources(1) == null;
+    }
+}
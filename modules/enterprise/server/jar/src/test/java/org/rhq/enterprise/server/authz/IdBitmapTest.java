@@ -0,0 +1,137 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
+
+@Test
+public class IdBitmapTest {
+
+    private static final Log LOG = LogFactory.getLog(IdBitmapTest.class);
+
+    private static final int NUM_RESOURCES = 100000;
+    private static final int NUM_ROLES = 200;
+    private static final int RESOURCES_PER_PLATFORM = 250;
+    private static final int PLATFORMS_PER_ROLE = 2;
+
+    public void testAddAndContains() {
+        IdBitmap bitmap = new IdBitmap();
+        assert bitmap.isEmpty();
+
+        assert bitmap.add(5);
+        assert bitmap.add(70000);
+        assert !bitmap.add(5);
+        assert bitmap.add(0);
+
+        assert bitmap.getCardinality() == 3 : bitmap.getCardinality();
+        assert bitmap.contains(0) && bitmap.contains(5) && bitmap.contains(70000);
+        assert !bitmap.contains(4) && !bitmap.contains(65536 + 5) && !bitmap.contains(-1);
+        assert bitmap.containsAll(Arrays.asList(5, 70000));
+        assert !bitmap.containsAll(Arrays.asList(5, 6));
+    }
+
+    public void testDenseChunk() {
+        // more than 4096 ids in a chunk turn its sorted array into a bitmap
+        IdBitmap bitmap = new IdBitmap();
+        for (int id = 65536; id < 65536 + 10000; id += 2) {
+            assert bitmap.add(id);
+        }
+        assert !bitmap.add(65536 + 9998);
+
+        assert bitmap.getCardinality() == 5000 : bitmap.getCardinality();
+        for (int id = 65536; id < 65536 + 10000; ++id) {
+            assert bitmap.contains(id) == (id % 2 == 0) : id;
+        }
+    }
+
+    public void testRanges() {
+        IdBitmap bitmap = new IdBitmap(Arrays.asList(1, 2, 3, 7, 65535, 65536, 65537, 100000));
+
+        List<int[]> ranges = bitmap.getRanges(10);
+        assert ranges.size() == 4 : ranges.size();
+        assert Arrays.equals(ranges.get(0), new int[] { 1, 3 });
+        assert Arrays.equals(ranges.get(1), new int[] { 7, 7 });
+        // consecutive ids of two chunks make one range
+        assert Arrays.equals(ranges.get(2), new int[] { 65535, 65537 });
+        assert Arrays.equals(ranges.get(3), new int[] { 100000, 100000 });
+
+        assert bitmap.getRanges(3) == null;
+    }
+
+    /**
+     * A subject in 200 roles, every role granting the resources of 2 of the 400 platforms of 100k resources, checks
+     * the visibility of every resource. Criteria queries filter on the ranges of the visible ids rather than join the
+     * roles of the subject.
+     */
+    public void testVisibleResourcesOfManyRoles() {
+        Random random = new Random(42);
+        List<Integer> visibleRows = new ArrayList<Integer>();
+        int numPlatforms = NUM_RESOURCES / RESOURCES_PER_PLATFORM;
+        for (int role = 0; role < NUM_ROLES; ++role) {
+            for (int i = 0; i < PLATFORMS_PER_ROLE; ++i) {
+                int firstId = 10001 + random.nextInt(numPlatforms) * RESOURCES_PER_PLATFORM;
+                for (int id = firstId; id < firstId + RESOURCES_PER_PLATFORM; ++id) {
+                    visibleRows.add(id);
+                }
+            }
+        }
+        Set<Integer> expected = new HashSet<Integer>(visibleRows);
+
+        long start = System.currentTimeMillis();
+        IdBitmap bitmap = new IdBitmap(visibleRows);
+        long build = System.currentTimeMillis() - start;
+
+        assert bitmap.getCardinality() == expected.size() : bitmap.getCardinality();
+
+        start = System.currentTimeMillis();
+        int numVisible = 0;
+        for (int id = 1; id <= 10000 + NUM_RESOURCES; ++id) {
+            if (bitmap.contains(id)) {
+                assert expected.contains(id) : id;
+                ++numVisible;
+            }
+        }
+        long lookups = System.currentTimeMillis() - start;
+
+        assert numVisible == expected.size() : numVisible;
+
+        start = System.currentTimeMillis();
+        List<int[]> ranges = bitmap.getRanges(Integer.MAX_VALUE);
+        long rangeExtraction = System.currentTimeMillis() - start;
+
+        assert ranges.size() <= CriteriaQueryGenerator.MAX_AUTHORIZATION_ID_RANGES : ranges.size();
+        assert bitmap.getRanges(CriteriaQueryGenerator.MAX_AUTHORIZATION_ID_RANGES) != null;
+
+        LOG.info("Built the bitmap of [" + expected.size() + "] visible resources from [" + visibleRows.size()
+            + "] rows of [" + NUM_ROLES + "] roles in [" + build + "]ms, checked [" + NUM_RESOURCES
+            + "] resources in [" + lookups + "]ms and extracted [" + ranges.size() + "] ranges in ["
+            + rangeExtraction + "]ms");
+    }
+}
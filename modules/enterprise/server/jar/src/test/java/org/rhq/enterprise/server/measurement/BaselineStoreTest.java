@@ -0,0 +1,113 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.MeasurementBaseline;
+
+@Test
+public class BaselineStoreTest {
+
+    public void testPutAndGet() {
+        BaselineStore store = new BaselineStore();
+        for (int i = 1; i <= 10000; i++) {
+            store.put(i, i, i + 1, i + 2, 1000L + i);
+        }
+
+        assert store.size() == 10000 : store.size();
+        assert store.getLatestComputeTime() == 11000L;
+        for (int i = 1; i <= 10000; i++) {
+            MeasurementBaseline baseline = store.getBaseline(i);
+            assert baseline.getScheduleId() == i;
+            assert baseline.getMin() == i;
+            assert baseline.getMean() == i + 1;
+            assert baseline.getMax() == i + 2;
+        }
+        assert store.getBaseline(10001) == null;
+    }
+
+    public void testReplaceBaseline() {
+        BaselineStore store = new BaselineStore();
+        store.put(42, 1.0, 2.0, 3.0, 1000L);
+        store.put(42, 4.0, 5.0, 6.0, 2000L);
+
+        assert store.size() == 1;
+        assert store.getBaseline(42).getMax() == 6.0;
+    }
+
+    public void testRemoveComputedBefore() {
+        BaselineStore store = new BaselineStore();
+        for (int i = 1; i <= 3000; i++) {
+            store.put(i, 1.0, 2.0, 3.0, i % 3);
+        }
+
+        assert store.removeComputedBefore(1) == 1000;
+        assert store.size() == 2000;
+        for (int i = 1; i <= 3000; i++) {
+            assert (store.getBaseline(i) == null) == (i % 3 == 0) : i;
+        }
+        assert store.removeComputedBefore(1) == 0;
+    }
+
+    public void testRemove() {
+        BaselineStore store = new BaselineStore();
+        for (int i = 1; i <= 3000; i++) {
+            store.put(i, i, i + 1, i + 2, 1000L);
+        }
+
+        for (int i = 1; i <= 3000; i += 2) {
+            assert store.remove(i) : i;
+        }
+        assert !store.remove(1);
+        assert store.size() == 1500 : store.size();
+        for (int i = 1; i <= 3000; i++) {
+            MeasurementBaseline baseline = store.getBaseline(i);
+            if (i % 2 == 1) {
+                assert baseline == null : i;
+            } else {
+                assert baseline != null && baseline.getMin() == i && baseline.getMax() == i + 2 : i;
+            }
+        }
+    }
+
+    public void testFootprint() {
+        BaselineStore store = new BaselineStore();
+        for (int i = 1; i <= 1000000; i++) {
+            store.put(10000 + i, 1.0, 2.0, 3.0, 1000L);
+        }
+
+        assert store.getMemoryFootprint() == (1L << 21) * 36 : store.getMemoryFootprint();
+    }
+
+    public void testReplaceWith() {
+        BaselineStore store = new BaselineStore();
+        store.put(1, 1.0, 2.0, 3.0, 1000L);
+        assert !store.isLoaded();
+
+        BaselineStore loaded = new BaselineStore();
+        loaded.put(2, 1.0, 2.0, 3.0, 1000L);
+        store.replaceWith(loaded);
+
+        assert store.isLoaded();
+        assert store.getBaseline(1) == null;
+        assert store.getBaseline(2) != null;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.notification.AlertNotificationLog;
+import org.rhq.core.domain.alert.notification.ResultState;
+
+@Test
+public class AlertNotificationDispatcherTest {
+
+    private RecordingNotificationDispatcher dispatcher;
+
+    @BeforeMethod
+    public void initDispatcher() {
+        dispatcher = new RecordingNotificationDispatcher();
+    }
+
+    @AfterMethod
+    public void shutdownDispatcher() {
+        dispatcher.shutdown();
+    }
+
+    public void testRecordResultOfDispatchedNotification() throws Exception {
+        Alert alert = new Alert();
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, 0, null);
+
+        assertTrue(dispatcher.dispatch(alert, "test", sender));
+
+        AlertNotificationLog notificationLog = dispatcher.takeNotificationLog();
+        assertEquals(notificationLog.getResultState(), ResultState.SUCCESS);
+        assertEquals(notificationLog.getSender(), "test");
+        assertSame(notificationLog.getAlert(), alert);
+        assertTrue(isRegistered("test"), "the statistics of the sender should have been registered");
+    }
+
+    public void testSendersHaveTheirOwnQueues() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingAlertSender blocked = new RecordingAlertSender(null, false, 0, release);
+        RecordingAlertSender other = new RecordingAlertSender(null, false, 0, null);
+
+        // fill the threads of the first sender type
+        for (int i = 0; i < AlertNotificationDispatcher.WORKERS_PER_SENDER; ++i) {
+            assertTrue(dispatcher.dispatch(new Alert(), "blocked", blocked));
+        }
+        assertTrue(blocked.started.await(10, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch(new Alert(), "other", other));
+
+        assertEquals(dispatcher.takeNotificationLog().getSender(), "other",
+            "a busy sender type should not hold up the others");
+        release.countDown();
+        for (int i = 0; i < AlertNotificationDispatcher.WORKERS_PER_SENDER; ++i) {
+            assertEquals(dispatcher.takeNotificationLog().getSender(), "blocked");
+        }
+    }
+
+    public void testSenderDeclaresItsConcurrency() throws Exception {
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, 0, null);
+        sender.maxConcurrentNotifications = AlertNotificationDispatcher.WORKERS_PER_SENDER + 3;
+
+        assertTrue(dispatcher.dispatch(new Alert(), "test", sender));
+        dispatcher.takeNotificationLog();
+
+        assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(getObjectName("test"), "Workers"),
+            AlertNotificationDispatcher.WORKERS_PER_SENDER + 3);
+    }
+
+    public void testRemovedSenderStillSendsQueuedNotifications() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, 0, release);
+
+        assertTrue(dispatcher.dispatch(new Alert(), "test", sender));
+        assertTrue(sender.started.await(10, TimeUnit.SECONDS));
+        dispatcher.removeSender("test");
+        assertFalse(isRegistered("test"), "the statistics of a removed sender should have been unregistered");
+
+        release.countDown();
+        assertEquals(dispatcher.takeNotificationLog().getResultState(), ResultState.SUCCESS);
+
+        // the sender type gets a new queue when it is used again
+        assertTrue(dispatcher.dispatch(new Alert(), "test", sender));
+        assertEquals(dispatcher.takeNotificationLog().getResultState(), ResultState.SUCCESS);
+    }
+
+    public void testDoNotDispatchAfterShutdown() throws Exception {
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, 0, null);
+        assertTrue(dispatcher.dispatch(new Alert(), "test", sender));
+        dispatcher.takeNotificationLog();
+
+        dispatcher.shutdown();
+
+        assertFalse(dispatcher.dispatch(new Alert(), "test", sender));
+        assertFalse(dispatcher.dispatch(new Alert(), "other", sender), "no new queue should be created");
+        assertFalse(isRegistered("test"));
+        assertEquals(sender.sends.size(), 1);
+    }
+
+    public void testRecordDroppedNotificationsOnShutdown() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, 0, release);
+        sender.maxConcurrentNotifications = 1;
+
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(dispatcher.dispatch(new Alert(), "test", sender));
+        }
+        assertTrue(sender.started.await(10, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+
+        // the notification being sent is interrupted and completes, the two waiting ones are dropped
+        int failed = 0;
+        for (int i = 0; i < 3; ++i) {
+            if (dispatcher.takeNotificationLog().getResultState() == ResultState.FAILURE) {
+                ++failed;
+            }
+        }
+        assertEquals(failed, 2, "the dropped notifications should have been recorded as failed");
+        assertEquals(sender.sends.size(), 1);
+    }
+
+    private static boolean isRegistered(String senderName) throws Exception {
+        return ManagementFactory.getPlatformMBeanServer().isRegistered(getObjectName(senderName));
+    }
+
+    private static ObjectName getObjectName(String senderName) throws Exception {
+        return new ObjectName("rhq:service=AlertNotificationDispatcher,sender=" + ObjectName.quote(senderName));
+    }
+}
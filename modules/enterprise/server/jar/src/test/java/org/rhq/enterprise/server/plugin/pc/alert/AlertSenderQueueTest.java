@@ -0,0 +1,152 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.AlertDefinition;
+import org.rhq.core.domain.alert.notification.AlertNotificationLog;
+import org.rhq.core.domain.alert.notification.ResultState;
+
+@Test
+public class AlertSenderQueueTest {
+
+    private RecordingNotificationDispatcher dispatcher;
+    private AlertSenderQueue queue;
+
+    @BeforeMethod
+    public void initDispatcher() {
+        dispatcher = new RecordingNotificationDispatcher();
+    }
+
+    @AfterMethod
+    public void shutdown() {
+        if (queue != null) {
+            queue.shutdown(true);
+            queue = null;
+        }
+        dispatcher.shutdown();
+    }
+
+    public void testRejectNotificationsWhenTheQueueIsFull() throws Exception {
+        queue = new AlertSenderQueue("test", dispatcher, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, 0, release);
+
+        assertTrue(queue.offer(new Alert(), sender));
+        assertTrue(sender.started.await(10, TimeUnit.SECONDS), "the first notification should be being sent");
+        assertTrue(queue.offer(new Alert(), sender), "the second notification should wait in the queue");
+        assertFalse(queue.offer(new Alert(), sender), "the third notification should not fit in the queue");
+
+        assertEquals(queue.getDispatchedNotifications(), 2);
+        assertEquals(queue.getRejectedNotifications(), 1);
+
+        release.countDown();
+        dispatcher.takeNotificationLog();
+        dispatcher.takeNotificationLog();
+        assertEquals(queue.getSentNotifications(), 2);
+    }
+
+    public void testBatchWaitingNotificationsWithTheSameKey() throws Exception {
+        queue = new AlertSenderQueue("test", dispatcher, 1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingAlertSender blocker = new RecordingAlertSender(null, false, 0, release);
+        RecordingAlertSender senderA1 = new RecordingAlertSender("a", false, 0, null);
+        RecordingAlertSender senderB = new RecordingAlertSender("b", false, 0, null);
+        RecordingAlertSender senderA2 = new RecordingAlertSender("a", false, 0, null);
+        Alert alertA1 = alert(1);
+        Alert alertB = alert(2);
+        Alert alertA2 = alert(3);
+
+        // keep the only thread busy, so that the other notifications wait in the queue
+        queue.offer(new Alert(), blocker);
+        assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+        queue.offer(alertA1, senderA1);
+        queue.offer(alertB, senderB);
+        queue.offer(alertA2, senderA2);
+
+        release.countDown();
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(dispatcher.takeNotificationLog().getResultState(), ResultState.SUCCESS);
+        }
+
+        assertEquals(senderA1.sends, Arrays.asList(Arrays.asList(alertA1, alertA2)),
+            "the notifications with the same key should have been sent together by the first sender");
+        assertTrue(senderA2.sends.isEmpty(), "the batched notification should not have been sent on its own");
+        assertEquals(senderB.sends, Arrays.asList(Arrays.asList(alertB)));
+        assertEquals(queue.getBatchedSends(), 1);
+        assertEquals(queue.getSentNotifications(), 4);
+    }
+
+    public void testRetryFailedNotificationsOfRetryableSenders() throws Exception {
+        queue = new AlertSenderQueue("test", dispatcher, 1, 10);
+        RecordingAlertSender sender = new RecordingAlertSender(null, true, Integer.MAX_VALUE, null);
+
+        queue.offer(new Alert(), sender);
+
+        AlertNotificationLog notificationLog = dispatcher.takeNotificationLog();
+        assertEquals(notificationLog.getResultState(), ResultState.FAILURE);
+        assertEquals(sender.sends.size(), 1 + AlertNotificationDispatcher.MAX_RETRIES,
+            "the notification should have been sent once and then retried");
+        assertEquals(queue.getRetriedNotifications(), AlertNotificationDispatcher.MAX_RETRIES);
+        assertEquals(queue.getFailedNotifications(), 1);
+        assertEquals(dispatcher.getNotificationLogCount(), 0, "only the final result should have been recorded");
+    }
+
+    public void testRecordSuccessOfRetriedNotification() throws Exception {
+        queue = new AlertSenderQueue("test", dispatcher, 1, 10);
+        RecordingAlertSender sender = new RecordingAlertSender(null, true, 1, null);
+
+        queue.offer(new Alert(), sender);
+
+        assertEquals(dispatcher.takeNotificationLog().getResultState(), ResultState.SUCCESS);
+        assertEquals(sender.sends.size(), 2);
+        assertEquals(queue.getRetriedNotifications(), 1);
+        assertEquals(queue.getSentNotifications(), 1);
+        assertEquals(queue.getFailedNotifications(), 0);
+    }
+
+    public void testDoNotRetryNotificationsOfOtherSenders() throws Exception {
+        queue = new AlertSenderQueue("test", dispatcher, 1, 10);
+        RecordingAlertSender sender = new RecordingAlertSender(null, false, Integer.MAX_VALUE, null);
+
+        queue.offer(new Alert(), sender);
+
+        assertEquals(dispatcher.takeNotificationLog().getResultState(), ResultState.FAILURE);
+        assertEquals(sender.sends.size(), 1, "a sender that is not retryable should only be called once");
+        assertEquals(queue.getRetriedNotifications(), 0);
+        assertEquals(queue.getFailedNotifications(), 1);
+    }
+
+    // alerts are equal by id and ctime, and these alerts have no id
+    private static Alert alert(long ctime) {
+        return new Alert(new AlertDefinition(), ctime);
+    }
+}
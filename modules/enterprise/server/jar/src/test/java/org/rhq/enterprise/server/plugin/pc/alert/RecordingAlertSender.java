@@ -0,0 +1,97 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.notification.SenderResult;
+import org.rhq.enterprise.server.plugin.pc.ServerPluginComponent;
+
+/**
+ * Records the alerts it is asked to send, optionally blocking until released and failing a number of times.
+ */
+class RecordingAlertSender extends AlertSender<ServerPluginComponent> {
+
+    final List<List<Alert>> sends = Collections.synchronizedList(new ArrayList<List<Alert>>());
+    final CountDownLatch started = new CountDownLatch(1);
+    int maxConcurrentNotifications = AlertNotificationDispatcher.WORKERS_PER_SENDER;
+
+    private final String batchKey;
+    private final boolean retryable;
+    private final AtomicInteger failures;
+    private final CountDownLatch release;
+
+    /**
+     * @param failures the number of sends that fail before the sends succeed
+     * @param release if not <code>null</code>, the sends wait for it
+     */
+    RecordingAlertSender(String batchKey, boolean retryable, int failures, CountDownLatch release) {
+        this.batchKey = batchKey;
+        this.retryable = retryable;
+        this.failures = new AtomicInteger(failures);
+        this.release = release;
+    }
+
+    @Override
+    public SenderResult send(Alert alert) {
+        return send(Collections.singletonList(alert)).get(0);
+    }
+
+    @Override
+    public List<SenderResult> send(List<Alert> alerts) {
+        started.countDown();
+        if (release != null) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sends.add(new ArrayList<Alert>(alerts));
+
+        SenderResult result;
+        if (failures.getAndDecrement() > 0) {
+            result = SenderResult.getSimpleFailure("Simulated failure");
+        } else {
+            result = SenderResult.getSimpleSuccess("Sent");
+        }
+        return Collections.nCopies(alerts.size(), result);
+    }
+
+    @Override
+    public String getBatchKey() {
+        return batchKey;
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    @Override
+    public int getMaxConcurrentNotifications() {
+        return maxConcurrentNotifications;
+    }
+}
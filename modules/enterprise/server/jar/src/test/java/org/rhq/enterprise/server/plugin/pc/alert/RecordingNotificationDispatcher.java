@@ -0,0 +1,61 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.plugin.pc.alert;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.rhq.core.domain.alert.Alert;
+import org.rhq.core.domain.alert.notification.AlertNotificationLog;
+
+/**
+ * Keeps the notification logs instead of storing them, and retries failed notifications right away.
+ */
+class RecordingNotificationDispatcher extends AlertNotificationDispatcher {
+
+    private final BlockingQueue<AlertNotificationLog> notificationLogs;
+
+    RecordingNotificationDispatcher() {
+        notificationLogs = new LinkedBlockingQueue<AlertNotificationLog>();
+    }
+
+    @Override
+    void addNotificationLog(Alert alert, AlertNotificationLog notificationLog) {
+        notificationLogs.add(notificationLog);
+    }
+
+    @Override
+    boolean schedule(Runnable command, long delay) {
+        return super.schedule(command, 0);
+    }
+
+    /**
+     * Waits for the next recorded notification log.
+     */
+    AlertNotificationLog takeNotificationLog() throws InterruptedException {
+        AlertNotificationLog notificationLog = notificationLogs.poll(10, TimeUnit.SECONDS);
+        assert notificationLog != null : "no notification log was recorded";
+        return notificationLog;
+    }
+
+    int getNotificationLogCount() {
+        return notificationLogs.size();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.enterprise.server.purge.PartitionedTablePurge.parseUpperBound;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.Oracle11DatabaseType;
+import org.rhq.core.db.Postgresql91DatabaseType;
+
+@Test
+public class PartitionedTablePurgeTest {
+
+    public void testPostgresUpperBound() {
+        DatabaseType postgres = new Postgresql91DatabaseType();
+        assert parseUpperBound(postgres, "FOR VALUES FROM ('1445126400000') TO ('1445212800000')") == 1445212800000L;
+        assert parseUpperBound(postgres, "FOR VALUES FROM (1445126400000) TO (1445212800000)") == 1445212800000L;
+        assert parseUpperBound(postgres, "FOR VALUES FROM ('1445126400000') TO (MAXVALUE)") == null;
+        assert parseUpperBound(postgres, "DEFAULT") == null;
+    }
+
+    public void testOracleUpperBound() {
+        DatabaseType oracle = new Oracle11DatabaseType();
+        assert parseUpperBound(oracle, "1445212800000") == 1445212800000L;
+        assert parseUpperBound(oracle, "MAXVALUE") == null;
+        assert parseUpperBound(oracle, null) == null;
+    }
+}
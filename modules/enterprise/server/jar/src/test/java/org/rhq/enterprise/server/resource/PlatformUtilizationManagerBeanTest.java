@@ -0,0 +1,136 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.resource;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.composite.PlatformMetricsSummary;
+import org.rhq.core.domain.resource.composite.PlatformMetricsSummary.CPUMetric;
+
+/**
+ * Checks when the summary of a platform is made of the live metrics of its agent and when of the latest stored ones.
+ */
+@Test
+public class PlatformUtilizationManagerBeanTest {
+
+    private PlatformUtilizationManagerBean platformUtilizationManagerBean;
+    private PlatformUtilizationManagerLocal platformUtilizationManager;
+    private Subject subject;
+    private Resource platform;
+    private Set<Integer> metricDefIds;
+
+    @BeforeMethod
+    public void initManager() throws Exception {
+        platformUtilizationManager = mock(PlatformUtilizationManagerLocal.class);
+        platformUtilizationManagerBean = new PlatformUtilizationManagerBean();
+        Field field = PlatformUtilizationManagerBean.class.getDeclaredField("platformUtilizationMgr");
+        field.setAccessible(true);
+        field.set(platformUtilizationManagerBean, platformUtilizationManager);
+
+        subject = new Subject();
+        platform = new Resource(1);
+        metricDefIds = Collections.singleton(10);
+    }
+
+    public void testLiveMetrics() {
+        MeasurementData live = idleCpu(0.5);
+        when(platformUtilizationManager.loadLiveMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class), anyLong())).thenReturn(dataSet(live));
+
+        PlatformMetricsSummary summary = platformUtilizationManagerBean.loadSummary(subject, platform, metricDefIds);
+
+        assert summary.isMetricsAvailable();
+        assert summary.getIdleCPU() == live;
+        verify(platformUtilizationManager, never()).loadLatestMetricsForPlatformInNewTransaction(
+            any(Subject.class), any(Resource.class), anySetOf(Integer.class));
+    }
+
+    public void testStoredMetricsWhenAgentDoesNotAnswer() {
+        MeasurementData stored = idleCpu(0.25);
+        when(platformUtilizationManager.loadLiveMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class), anyLong())).thenReturn(
+            Collections.<MeasurementData> emptySet());
+        when(platformUtilizationManager.loadLatestMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class))).thenReturn(dataSet(stored));
+
+        PlatformMetricsSummary summary = platformUtilizationManagerBean.loadSummary(subject, platform, metricDefIds);
+
+        assert summary.isMetricsAvailable();
+        assert summary.getIdleCPU() == stored;
+    }
+
+    public void testStoredMetricsWhenAgentFails() {
+        MeasurementData stored = idleCpu(0.25);
+        when(platformUtilizationManager.loadLiveMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class), anyLong())).thenThrow(
+            new IllegalStateException("Simulated failure of the agent"));
+        when(platformUtilizationManager.loadLatestMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class))).thenReturn(dataSet(stored));
+
+        PlatformMetricsSummary summary = platformUtilizationManagerBean.loadSummary(subject, platform, metricDefIds);
+
+        assert summary.isMetricsAvailable();
+        assert summary.getIdleCPU() == stored;
+    }
+
+    public void testNoMetricsWhenStoredMetricsFail() {
+        when(platformUtilizationManager.loadLiveMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class), anyLong())).thenThrow(
+            new IllegalStateException("Simulated failure of the agent"));
+        when(platformUtilizationManager.loadLatestMetricsForPlatformInNewTransaction(any(Subject.class),
+            any(Resource.class), anySetOf(Integer.class))).thenThrow(
+            new IllegalStateException("Simulated failure of the storage"));
+
+        PlatformMetricsSummary summary = platformUtilizationManagerBean.loadSummary(subject, platform, metricDefIds);
+
+        assert !summary.isMetricsAvailable();
+        assert summary.getResource() == platform;
+    }
+
+    private static MeasurementData idleCpu(double value) {
+        return new MeasurementDataNumeric(System.currentTimeMillis(), new MeasurementScheduleRequest(1,
+            CPUMetric.Idle.getProperty(), 30000L, true, DataType.MEASUREMENT), value);
+    }
+
+    private static Set<MeasurementData> dataSet(MeasurementData data) {
+        Set<MeasurementData> dataSet = new HashSet<MeasurementData>();
+        dataSet.add(data);
+        return dataSet;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.server.rest.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import org.rhq.enterprise.server.rest.BadArgumentException;
+
+@Test
+public class BulkDataParserTest {
+
+    public void testParseJson() throws Exception {
+        String json = "[{\"scheduleId\":1,\"timeStamp\":1000,\"value\":1.5},"
+            + "{\"scheduleId\":2,\"timeStamp\":2000,\"value\":\"some trait\",\"unknown\":{\"a\":[1,2]}},"
+            + "{\"scheduleId\":3,\"beginTime\":3000,\"duration\":50,\"callDestination\":\"/index.html\"}]";
+        List<BulkDataParser.Point> points = parseJson(json);
+
+        assert points.size() == 3 : points;
+        assert points.get(0).getScheduleId() == 1;
+        assert points.get(0).getTimeStamp() == 1000;
+        assert points.get(0).getNumericValue() == 1.5;
+        assert points.get(1).getScheduleId() == 2;
+        assert "some trait".equals(points.get(1).getTraitValue());
+        assert points.get(2).getTimeStamp() == 3000;
+        assert points.get(2).getDuration() == 50;
+        assert "/index.html".equals(points.get(2).getCallDestination());
+    }
+
+    @Test(expectedExceptions = { BadArgumentException.class }, expectedExceptionsMessageRegExp = ".*required.*")
+    public void testParseJsonWithoutScheduleId() throws Exception {
+        parseJson("[{\"timeStamp\":1000,\"value\":1.5}]");
+    }
+
+    @Test(expectedExceptions = { BadArgumentException.class }, expectedExceptionsMessageRegExp = ".*array.*")
+    public void testParseJsonObject() throws Exception {
+        parseJson("{\"scheduleId\":1,\"timeStamp\":1000,\"value\":1.5}");
+    }
+
+    public void testParseLines() throws Exception {
+        String lines = "# numeric, trait and call-time data\n"
+            + "1 1000 1.5\n"
+            + "\n"
+            + "2\t2000   a trait with spaces\n"
+            + "3 3000 50 /index.html\n";
+        List<BulkDataParser.Point> points = parseLines(lines);
+
+        assert points.size() == 3 : points;
+        assert points.get(0).getScheduleId() == 1;
+        assert points.get(0).getTimeStamp() == 1000;
+        assert points.get(0).getNumericValue() == 1.5;
+        assert "a trait with spaces".equals(points.get(1).getTraitValue());
+        assert points.get(2).getDuration() == 50;
+        assert "/index.html".equals(points.get(2).getCallDestination());
+    }
+
+    @Test(expectedExceptions = { BadArgumentException.class }, expectedExceptionsMessageRegExp = ".*line 2.*")
+    public void testParseLinesWithMissingValue() throws Exception {
+        parseLines("1 1000 1.5\n1 2000\n");
+    }
+
+    @Test(expectedExceptions = { IllegalArgumentException.class })
+    public void testNumericValueOfTrait() throws Exception {
+        parseLines("1 1000 not a number\n").get(0).getNumericValue();
+    }
+
+    @Test(expectedExceptions = { IllegalArgumentException.class })
+    public void testCallTimeWithoutDestination() throws Exception {
+        parseLines("1 1000 50\n").get(0).getCallDestination();
+    }
+
+    private List<BulkDataParser.Point> parseJson(String json) throws Exception {
+        Collector collector = new Collector();
+        BulkDataParser.parseJson(new ByteArrayInputStream(json.getBytes("UTF-8")), collector);
+        return collector.points;
+    }
+
+    private List<BulkDataParser.Point> parseLines(String lines) throws Exception {
+        Collector collector = new Collector();
+        BulkDataParser.parseLines(new StringReader(lines), collector);
+        return collector.points;
+    }
+
+    private static class Collector implements BulkDataParser.Handler {
+        final List<BulkDataParser.Point> points = new ArrayList<BulkDataParser.Point>();
+
+        @Override
+        public void handle(BulkDataParser.Point point) {
+            points.add(point);
+        }
+    }
+}
@@ -32,6 +32,8 @@ import java.util.Map;
 import java.util.Set;
 import javassist.bytecode.AccessFlag;
 
+import javax.management.ObjectName;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -61,6 +63,7 @@ import org.rhq.core.domain.util.DisambiguationReportRenderer;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.core.util.IntExtractor;
+import org.rhq.core.util.ObjectNameFactory;
 import org.rhq.enterprise.server.alert.AlertDefinitionManagerLocal;
 import org.rhq.enterprise.server.alert.AlertNotificationManagerLocal;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
@@ -71,6 +74,7 @@ import org.rhq.enterprise.server.plugin.pc.ServerPluginComponent;
 import org.rhq.enterprise.server.plugin.pc.ServerPluginContext;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.disambiguation.DefaultDisambiguationUpdateStrategies;
+import org.rhq.enterprise.server.util.JMXUtil;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.enterprise.server.xmlschema.generated.serverplugin.alert.AlertPluginDescriptorType;
 
@@ -97,6 +101,12 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
     private static final String PROP_USER_NAME = "userName";
     private static final String PROP_ALERT_DEF_IDS = "alertDefIds";
     private static final String PROP_SCRIPT_TIMEOUT = "scriptTimeout";
+    private static final String PROP_MAX_CONCURRENT_SCRIPTS = "maxConcurrentScripts";
+    private static final String PROP_SCRIPT_QUEUE_SIZE = "scriptQueueSize";
+    private static final String PROP_MAX_SCRIPT_RUNS_PER_MINUTE = "maxScriptRunsPerMinute";
+
+    private static final ObjectName EXECUTOR_OBJECT_NAME = ObjectNameFactory
+        .create("rhq:service=AlertCliScriptExecutor");
 
     private static final String WARNING_MESSAGE_LOAD_CLASSES = "Could not load domain packages names."
         + " The CLI Alert Sender will only understand fully qualified domain classes names in CLI scripts.";
@@ -104,7 +114,11 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
     private String pluginName;
     private PackageType packageType;
     private int scriptTimeout;
+    private int maxConcurrentScripts;
+    private int scriptQueueSize;
+    private int maxScriptRunsPerMinute;
     private Set<String> domainPackagesNames;
+    private volatile CliScriptExecutor scriptExecutor;
 
     @Override
     public void initialize(ServerPluginContext context) throws Exception {
@@ -112,6 +126,16 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
         String timeoutValue = context.getPluginConfiguration() == null ? "60" : context.getPluginConfiguration()
             .getSimpleValue(PROP_SCRIPT_TIMEOUT, "60");
         scriptTimeout = Integer.parseInt(timeoutValue);
+        maxConcurrentScripts = getIntValue(context.getPluginConfiguration(), PROP_MAX_CONCURRENT_SCRIPTS, 10);
+        scriptQueueSize = getIntValue(context.getPluginConfiguration(), PROP_SCRIPT_QUEUE_SIZE, 100);
+        maxScriptRunsPerMinute = getIntValue(context.getPluginConfiguration(), PROP_MAX_SCRIPT_RUNS_PER_MINUTE, 30);
+    }
+
+    private static int getIntValue(Configuration pluginConfiguration, String name, int defaultValue) {
+        if (pluginConfiguration == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(pluginConfiguration.getSimpleValue(name, String.valueOf(defaultValue)));
     }
 
     public PackageType getScriptPackageType() {
@@ -127,9 +151,24 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
         return scriptTimeout;
     }
 
+    /**
+     * @return the number of notification scripts run at the same time
+     */
+    public int getMaxConcurrentScripts() {
+        return maxConcurrentScripts;
+    }
+
     @Override
     public void start() {
         domainPackagesNames = loadPackagesNames();
+
+        scriptExecutor = new CliScriptExecutor(maxConcurrentScripts, scriptQueueSize, maxScriptRunsPerMinute);
+        try {
+            JMXUtil.registerMBean(scriptExecutor, EXECUTOR_OBJECT_NAME);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not register the CLI alert script executor MBean, its statistics will not be available.",
+                e);
+        }
     }
 
     private Set<String> loadPackagesNames() {
@@ -215,6 +254,12 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
     @Override
     public void stop() {
         domainPackagesNames = null;
+
+        if (scriptExecutor != null) {
+            JMXUtil.unregisterMBeanQuietly(EXECUTOR_OBJECT_NAME);
+            scriptExecutor.shutdown();
+            scriptExecutor = null;
+        }
     }
 
     @Override
@@ -471,4 +516,11 @@ public class CliComponent implements ServerPluginComponent, ControlFacet {
     public Set<String> getDomainPackagesNames() {
         return domainPackagesNames;
     }
+
+    /**
+     * @return the executor running the notification scripts, <code>null</code> if the plugin is not started
+     */
+    public CliScriptExecutor getScriptExecutor() {
+        return scriptExecutor;
+    }
 }
@@ -0,0 +1,281 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.plugins.alertCli;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the scripts of CLI alert notifications on a bounded pool of threads. Notifications that cannot be queued, and
+ * notifications of alert definitions that already ran their script too many times in the current minute, are refused
+ * so that an alert storm cannot pile up an unbounded number of scripts.
+ */
+public class CliScriptExecutor implements CliScriptExecutorMBean {
+
+    private static final long RATE_WINDOW = 60000L;
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final int maxScriptRunsPerMinute;
+
+    // key is the alert definition id
+    private final ConcurrentMap<Integer, RateWindow> rateWindows = new ConcurrentHashMap<Integer, RateWindow>();
+
+    private final AtomicLong rejectedNotifications = new AtomicLong();
+    private final AtomicLong rateLimitedNotifications = new AtomicLong();
+    private final AtomicLong timedOutScripts = new AtomicLong();
+    private final AtomicLong compiledScriptCacheHits = new AtomicLong();
+    private final AtomicLong compiledScriptCacheMisses = new AtomicLong();
+    private final AtomicLong scriptDownloads = new AtomicLong();
+
+    // the next time the windows of the alert definitions that stopped firing, or were deleted, are evicted
+    private final AtomicLong nextEviction = new AtomicLong();
+
+    private static class RateWindow {
+        long start;
+        int count;
+        boolean evicted;
+    }
+
+    /**
+     * @param maxConcurrentScripts the number of threads running the scripts
+     * @param queueCapacity the number of notifications that can wait for a thread
+     * @param maxScriptRunsPerMinute how many times per minute the script of an alert definition can run, 0 for no limit
+     */
+    public CliScriptExecutor(int maxConcurrentScripts, int queueCapacity, int maxScriptRunsPerMinute) {
+        this.queueCapacity = queueCapacity;
+        this.maxScriptRunsPerMinute = maxScriptRunsPerMinute;
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrentScripts, maxConcurrentScripts, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CLI Alert Script Runner-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Counts a run of the script of the given alert definition. If the script is not run after all, e.g. because it
+     * cannot be {@link #submit(Runnable) submitted}, the run must be given back with {@link #releaseRun(int)}.
+     *
+     * @return <code>false</code> if the alert definition already ran its script the maximum number of times in the
+     * current minute, in which case it must not be run
+     */
+    public boolean tryAcquireRun(int alertDefinitionId) {
+        if (maxScriptRunsPerMinute <= 0) {
+            return true;
+        }
+
+        long now = currentTimeMillis();
+        evictExpiredWindows(now);
+
+        while (true) {
+            RateWindow window = rateWindows.get(alertDefinitionId);
+            if (window == null) {
+                RateWindow newWindow = new RateWindow();
+                window = rateWindows.putIfAbsent(alertDefinitionId, newWindow);
+                if (window == null) {
+                    window = newWindow;
+                }
+            }
+
+            synchronized (window) {
+                if (window.evicted) {
+                    // removed from the map while we were getting it, use the one that replaces it
+                    continue;
+                }
+                if (now - window.start >= RATE_WINDOW) {
+                    window.start = now;
+                    window.count = 0;
+                }
+                if (window.count >= maxScriptRunsPerMinute) {
+                    rateLimitedNotifications.incrementAndGet();
+                    return false;
+                }
+                ++window.count;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a run counted by {@link #tryAcquireRun(int)} for a script that did not run.
+     */
+    public void releaseRun(int alertDefinitionId) {
+        if (maxScriptRunsPerMinute <= 0) {
+            return;
+        }
+
+        RateWindow window = rateWindows.get(alertDefinitionId);
+        if (window != null) {
+            synchronized (window) {
+                if (window.count > 0) {
+                    --window.count;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the windows that ended, at most once per window length, so that the alert definitions that no longer
+     * fire do not stay in the map forever.
+     */
+    private void evictExpiredWindows(long now) {
+        long next = nextEviction.get();
+        if (now < next || !nextEviction.compareAndSet(next, now + RATE_WINDOW)) {
+            return;
+        }
+
+        for (Iterator<RateWindow> i = rateWindows.values().iterator(); i.hasNext();) {
+            RateWindow window = i.next();
+            synchronized (window) {
+                if (now - window.start >= RATE_WINDOW) {
+                    window.evicted = true;
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    // overridden by the tests
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    int getRateWindowCount() {
+        return rateWindows.size();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue is full or the executor has been shut down
+     */
+    public Future<?> submit(Runnable script) throws RejectedExecutionException {
+        try {
+            return executor.submit(script);
+        } catch (RejectedExecutionException e) {
+            rejectedNotifications.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops accepting scripts. The scripts already running are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void scriptTimedOut() {
+        timedOutScripts.incrementAndGet();
+    }
+
+    void compiledScriptCacheHit() {
+        compiledScriptCacheHits.incrementAndGet();
+    }
+
+    void compiledScriptCacheMiss() {
+        compiledScriptCacheMisses.incrementAndGet();
+    }
+
+    void scriptDownloaded() {
+        scriptDownloads.incrementAndGet();
+    }
+
+    @Override
+    public int getMaxConcurrentScripts() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getActiveScripts() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public int getMaxScriptRunsPerMinute() {
+        return maxScriptRunsPerMinute;
+    }
+
+    @Override
+    public long getCompletedScripts() {
+        return executor.getCompletedTaskCount();
+    }
+
+    @Override
+    public long getRejectedNotifications() {
+        return rejectedNotifications.get();
+    }
+
+    @Override
+    public long getRateLimitedNotifications() {
+        return rateLimitedNotifications.get();
+    }
+
+    @Override
+    public long getTimedOutScripts() {
+        return timedOutScripts.get();
+    }
+
+    @Override
+    public long getCompiledScriptCacheHits() {
+        return compiledScriptCacheHits.get();
+    }
+
+    @Override
+    public long getCompiledScriptCacheMisses() {
+        return compiledScriptCacheMisses.get();
+    }
+
+    @Override
+    public double getCompiledScriptCacheHitRate() {
+        long hits = compiledScriptCacheHits.get();
+        long total = hits + compiledScriptCacheMisses.get();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public long getScriptDownloads() {
+        return scriptDownloads.get();
+    }
+}
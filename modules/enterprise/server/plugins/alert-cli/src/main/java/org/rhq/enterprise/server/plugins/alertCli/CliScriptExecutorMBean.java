@@ -0,0 +1,79 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.plugins.alertCli;
+
+/**
+ * Statistics of the execution of CLI alert notification scripts.
+ */
+public interface CliScriptExecutorMBean {
+
+    /**
+     * @return the maximum number of scripts running concurrently
+     */
+    int getMaxConcurrentScripts();
+
+    /**
+     * @return the number of scripts currently running
+     */
+    int getActiveScripts();
+
+    /**
+     * @return the number of notifications waiting for a script runner
+     */
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    /**
+     * @return the maximum number of times the script of an alert definition is run per minute, 0 if unlimited
+     */
+    int getMaxScriptRunsPerMinute();
+
+    long getCompletedScripts();
+
+    /**
+     * @return the number of notifications that failed because the queue was full
+     */
+    long getRejectedNotifications();
+
+    /**
+     * @return the number of notifications that failed because their alert definition ran its script too often
+     */
+    long getRateLimitedNotifications();
+
+    /**
+     * @return the number of scripts that did not finish within the script timeout
+     */
+    long getTimedOutScripts();
+
+    long getCompiledScriptCacheHits();
+
+    long getCompiledScriptCacheMisses();
+
+    /**
+     * @return the fraction of script runs that used an already compiled script, between 0 and 1
+     */
+    double getCompiledScriptCacheHitRate();
+
+    /**
+     * @return the number of times the content of a script had to be loaded from the content subsystem
+     */
+    long getScriptDownloads();
+}
@@ -19,25 +19,28 @@
 
 package org.rhq.enterprise.server.plugins.alertCli;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
@@ -89,11 +92,15 @@ public class CliSender extends AlertSender<CliComponent> {
 
     private static final String VALIDATION_ERROR_MESSAGE = "The provided user failed to authenticate.";
 
-    //no more than 10 concurrently running CLI notifications..
-    //is that enough?
-    private static final int MAX_SCRIPT_ENGINES = 10;
-    private static final Map<String, Queue<ScriptEngine>> SCRIPT_ENGINES = new HashMap<String, Queue<ScriptEngine>>();
-    private static int ENGINES_IN_USE = 0;
+    //the number of concurrently running CLI notifications is bounded by the script executor of the plugin component,
+    //so is the number of engines
+    private static final Map<String, Queue<PooledEngine>> SCRIPT_ENGINES = new HashMap<String, Queue<PooledEngine>>();
+
+    private static final int MAX_CACHED_SCRIPTS = 100;
+
+    //the contents of the package versions never change, so the scripts can be cached by package version id
+    private static final Map<Integer, Script> SCRIPTS = Collections.synchronizedMap(new LruMap<Script>(
+        MAX_CACHED_SCRIPTS));
 
     /**
      * Simple strongly typed representation of the alert configuration
@@ -109,37 +116,127 @@ public class CliSender extends AlertSender<CliComponent> {
         public Throwable throwable;
     }
 
-    private static class BitsAndFileExtension {
-        InputStream packageBits;
-        String scriptFileExtension;
+    private static class Script {
+        int packageVersionId;
+        String source;
+        String fileExtension;
+    }
+
+    /**
+     * A script engine along with the scripts it compiled, which are bound to it.
+     */
+    private static class PooledEngine {
+        final ScriptEngine engine;
+        final Map<Integer, CompiledScript> compiledScripts = new LruMap<CompiledScript>(MAX_CACHED_SCRIPTS);
+
+        PooledEngine(ScriptEngine engine) {
+            this.engine = engine;
+        }
+    }
+
+    private static class LruMap<V> extends LinkedHashMap<Integer, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * Runs a script on a pooled engine, compiling it first if the engine supports it and has not compiled it yet.
+     */
+    private static class ScriptRunner implements Runnable {
+        private final Alert alert;
+        private final PrintWriter output;
+        private final Config config;
+        private final String language;
+        private final Set<String> domainPackagesNames;
+        private final Script script;
+        private final CliScriptExecutor executor;
+        private final CountDownLatch started;
+        private final ExceptionHolder exceptionHolder;
+
+        ScriptRunner(Alert alert, PrintWriter output, Config config, String language, Set<String> domainPackagesNames,
+            Script script, CliScriptExecutor executor, CountDownLatch started, ExceptionHolder exceptionHolder) {
+            this.alert = alert;
+            this.output = output;
+            this.config = config;
+            this.language = language;
+            this.domainPackagesNames = domainPackagesNames;
+            this.script = script;
+            this.executor = executor;
+            this.started = started;
+            this.exceptionHolder = exceptionHolder;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            PooledEngine pooledEngine = null;
+            try {
+                pooledEngine = getScriptEngine(alert, output, config, language, domainPackagesNames);
+                ScriptEngine engine = pooledEngine.engine;
+                if (engine instanceof Compilable) {
+                    CompiledScript compiledScript = pooledEngine.compiledScripts.get(script.packageVersionId);
+                    if (compiledScript == null) {
+                        executor.compiledScriptCacheMiss();
+                        compiledScript = ((Compilable) engine).compile(script.source);
+                        pooledEngine.compiledScripts.put(script.packageVersionId, compiledScript);
+                    } else {
+                        executor.compiledScriptCacheHit();
+                    }
+                    compiledScript.eval(engine.getContext());
+                } else {
+                    engine.eval(script.source);
+                }
+            } catch (ScriptException e) {
+                exceptionHolder.scriptException = e;
+            } catch (Throwable e) {
+                exceptionHolder.throwable = e;
+            } finally {
+                if (pooledEngine != null) {
+                    returnEngine(pooledEngine, language);
+                }
+            }
+        }
     }
 
     @Override
     public SenderResult send(Alert alert) {
         SenderResult result = new SenderResult();
-        BufferedReader reader = null;
-        ScriptEngine engine = null;
         Subject subjectWithSession = null;
         final SessionManager sessionManager = SessionManager.getInstance();
-        String language = null;
 
         try {
             final Config config = getConfig();
 
-            // simulate the login by getting a session ID
-            config.subject = sessionManager.put(config.subject, pluginComponent.getScriptTimeout() * 1000);
-            subjectWithSession = config.subject;
+            CliScriptExecutor executor = pluginComponent.getScriptExecutor();
+            if (executor == null) {
+                return SenderResult.getSimpleFailure("The CLI alert sender plugin is not started.");
+            }
+
+            int alertDefinitionId = alert.getAlertDefinition().getId();
+            if (!executor.tryAcquireRun(alertDefinitionId)) {
+                return SenderResult.getSimpleFailure("The script was not run because the alert definition already ran "
+                    + "it the maximum allowed number of times in the last minute.");
+            }
 
             result.setSummary(createSummary(config, SUMMARY_TEMPLATE));
 
             ByteArrayOutputStream scriptOutputStream = new ByteArrayOutputStream();
             PrintWriter scriptOut = new PrintWriter(scriptOutputStream);
 
-            BitsAndFileExtension packageData = getPackageBits(config.packageId, config.repoId);
+            Script script = getScript(config.packageId, config.repoId, executor);
 
-            InputStream packageBits = packageData.packageBits;
-            String scriptFileExtension = packageData.scriptFileExtension;
-            language = ScriptEngineFactory.getLanguageByScriptFileExtension(scriptFileExtension);
+            final String language = ScriptEngineFactory.getLanguageByScriptFileExtension(script.fileExtension);
 
             if (language == null) {
                 ArrayList<String> supportedExtensions = new ArrayList<String>();
@@ -149,41 +246,54 @@ public class CliSender extends AlertSender<CliComponent> {
 
                 throw new IllegalArgumentException(
                     "Could not determine the script engine to use based on the script file extension '"
-                        + scriptFileExtension + "'. Only the following extensions are currently supported: "
+                        + script.fileExtension + "'. Only the following extensions are currently supported: "
                         + supportedExtensions);
             }
 
-            engine = getScriptEngine(alert, scriptOut, config, language, pluginComponent.getDomainPackagesNames());
-
-            reader = new BufferedReader(new InputStreamReader(packageBits));
-
-            final BufferedReader rdr = reader;
-
             final ExceptionHolder exceptionHolder = new ExceptionHolder();
+            final CountDownLatch started = new CountDownLatch(1);
 
-            final ScriptEngine e = engine;
-            Thread scriptRunner = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        e.eval(rdr);
-                    } catch (ScriptException e) {
-                        exceptionHolder.scriptException = e;
-                    } catch (Throwable e) {
-                        exceptionHolder.throwable = e;
-                    }
-                }
-            }, "Script Runner for alert " + alert);
-            scriptRunner.setDaemon(true);
-            scriptRunner.start();
+            // the timeout applies to the time spent waiting for a script runner and to the run itself, the session
+            // must last as long
+            int timeout = pluginComponent.getScriptTimeout();
+            long deadline = System.currentTimeMillis() + timeout * 1000L;
 
-            if (pluginComponent.getScriptTimeout() <= 0) {
-                scriptRunner.join();
+            // simulate the login by getting a session ID
+            if (timeout <= 0) {
+                config.subject = sessionManager.put(config.subject);
             } else {
-                scriptRunner.join(pluginComponent.getScriptTimeout() * 1000);
+                config.subject = sessionManager.put(config.subject, timeout * 1000L);
             }
+            subjectWithSession = config.subject;
 
-            scriptRunner.interrupt();
+            Future<?> scriptRun;
+            try {
+                scriptRun = executor.submit(new ScriptRunner(alert, scriptOut, config, language,
+                    pluginComponent.getDomainPackagesNames(), script, executor, started, exceptionHolder));
+            } catch (RejectedExecutionException e) {
+                executor.releaseRun(alertDefinitionId);
+                throw new IllegalStateException("The script was not run because too many CLI alert notifications "
+                    + "are waiting to be processed.");
+            }
+
+            if (timeout <= 0) {
+                scriptRun.get();
+            } else {
+                if (!started.await(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+                    && scriptRun.cancel(false)) {
+                    executor.releaseRun(alertDefinitionId);
+                    throw new IllegalStateException("The script was not run because no script runner became "
+                        + "available within " + timeout + " seconds.");
+                }
+                try {
+                    scriptRun.get(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    scriptRun.cancel(true);
+                    executor.scriptTimedOut();
+                    throw new IllegalStateException("The script did not finish within " + timeout
+                        + " seconds and was interrupted.");
+                }
+            }
 
             if (exceptionHolder.scriptException != null) {
                 LOG.info("The script execution for CLI notification of alert [" + alert + "] failed.",
@@ -226,20 +336,18 @@ public class CliSender extends AlertSender<CliComponent> {
             if (subjectWithSession != null) {
                 sessionManager.invalidate(subjectWithSession.getSessionId());
             }
-            if (engine != null) {
-                returnEngine(engine, language);
-            }
-
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close the script reader.", e);
-                }
-            }
         }
     }
 
+    /**
+     * A notification holds its thread until its script has run, so there is no point in sending more of them at once
+     * than there are script runners.
+     */
+    @Override
+    public int getMaxConcurrentNotifications() {
+        return pluginComponent.getMaxConcurrentScripts();
+    }
+
     @Override
     public String previewConfiguration() {
         try {
@@ -288,8 +396,8 @@ public class CliSender extends AlertSender<CliComponent> {
         return results;
     }
 
-    private static ScriptEngine getScriptEngine(Alert alert, PrintWriter output, Config config, String language,
-        Set<String> domainPackagesNames) throws ScriptException, IOException, InterruptedException {
+    private static PooledEngine getScriptEngine(Alert alert, PrintWriter output, Config config, String language,
+        Set<String> domainPackagesNames) throws ScriptException, IOException {
         Subject user = config.subject;
 
         LocalClient client = new LocalClient(user);
@@ -297,17 +405,17 @@ public class CliSender extends AlertSender<CliComponent> {
         StandardBindings bindings = new StandardBindings(output, client);
         bindings.put("alert", alert);
 
-        ScriptEngine engine = takeEngine(bindings, language, domainPackagesNames);
-        engine.getContext().setWriter(output);
-        engine.getContext().setErrorWriter(output);
+        PooledEngine pooledEngine = takeEngine(bindings, language, domainPackagesNames);
+        pooledEngine.engine.getContext().setWriter(output);
+        pooledEngine.engine.getContext().setErrorWriter(output);
 
-        return engine;
+        return pooledEngine;
     }
 
-    private static BitsAndFileExtension getPackageBits(int packageId, int repoId) throws IOException {
-        final ContentSourceManagerLocal csm = LookupUtil.getContentSourceManager();
+    private static Script getScript(int packageId, int repoId, CliScriptExecutor executor) throws IOException {
+        ContentSourceManagerLocal csm = LookupUtil.getContentSourceManager();
         RepoManagerLocal rm = LookupUtil.getRepoManagerLocal();
-        final PackageVersion versionToUse = rm.getLatestPackageVersion(LookupUtil.getSubjectManager().getOverlord(),
+        PackageVersion versionToUse = rm.getLatestPackageVersion(LookupUtil.getSubjectManager().getOverlord(),
             packageId, repoId);
 
         if (versionToUse == null) {
@@ -317,36 +425,18 @@ public class CliSender extends AlertSender<CliComponent> {
                     + " either doesn't exist at all or doesn't have any version. Can't execute a CLI script without a script to run.");
         }
 
-        PipedInputStream bits = new PipedInputStream();
-        final PipedOutputStream out = new PipedOutputStream(bits);
+        Script ret = SCRIPTS.get(versionToUse.getId());
+        if (ret != null) {
+            return ret;
+        }
 
-        Thread reader = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    csm.outputPackageVersionBits(versionToUse, out);
-                } catch (RuntimeException e) {
-                    LOG.warn("The thread for reading the bits of package version [" + versionToUse
-                        + "] failed with exception.", e);
-                    throw e;
-                } finally {
-                    try {
-                        out.close();
-                    } catch (IOException e) {
-                        //doesn't happen in piped output stream
-                        LOG.error(
-                            "Failed to close the piped output stream receiving the package bits of package version "
-                                + versionToUse + ". This should never happen.", e);
-                    }
-                }
-            }
-        });
-        reader.setName("CLI Alert download thread for package version " + versionToUse);
-        reader.setDaemon(true);
-        reader.start();
+        ByteArrayOutputStream bits = new ByteArrayOutputStream();
+        csm.outputPackageVersionBits(versionToUse, bits);
+        executor.scriptDownloaded();
 
-        BitsAndFileExtension ret = new BitsAndFileExtension();
-        ret.packageBits = bits;
+        ret = new Script();
+        ret.packageVersionId = versionToUse.getId();
+        ret.source = bits.toString(Charset.defaultCharset().name());
         String fileName = versionToUse.getFileName();
         String extension = "";
 
@@ -357,7 +447,9 @@ public class CliSender extends AlertSender<CliComponent> {
             }
         }
 
-        ret.scriptFileExtension = extension;
+        ret.fileExtension = extension;
+
+        SCRIPTS.put(ret.packageVersionId, ret);
 
         return ret;
     }
@@ -463,47 +555,40 @@ public class CliSender extends AlertSender<CliComponent> {
         return integerValue;
     }
 
-    private static ScriptEngine takeEngine(StandardBindings bindings, String language, Set<String> domainPackagesNames)
-        throws InterruptedException, ScriptException, IOException {
+    private static PooledEngine takeEngine(StandardBindings bindings, String language,
+        Set<String> domainPackagesNames) throws ScriptException, IOException {
+        PooledEngine pooledEngine;
         synchronized (SCRIPT_ENGINES) {
-            if (ENGINES_IN_USE >= MAX_SCRIPT_ENGINES) {
-                SCRIPT_ENGINES.wait();
-            }
-
-            Queue<ScriptEngine> q = SCRIPT_ENGINES.get(language);
+            Queue<PooledEngine> q = SCRIPT_ENGINES.get(language);
             if (q == null) {
-                q = new ArrayDeque<ScriptEngine>();
+                q = new ArrayDeque<PooledEngine>();
                 SCRIPT_ENGINES.put(language, q);
             }
 
-            ScriptEngine engine = q.poll();
-
-            if (engine == null) {
-                engine = ScriptEngineFactory.getSecuredScriptEngine(language, new CliSenderPackageFinder(
-                    domainPackagesNames), bindings, new StandardScriptPermissions());
-            }
-            //TODO is this OK, or should we use a different classloader than the context classloader?
-            ScriptSourceProvider[] providers = ScriptSourceProviderFactory.get(null);
-            ScriptEngineFactory.injectStandardBindings(engine, bindings, true, providers);
-
-            ++ENGINES_IN_USE;
+            pooledEngine = q.poll();
+        }
 
-            return engine;
+        if (pooledEngine == null) {
+            pooledEngine = new PooledEngine(ScriptEngineFactory.getSecuredScriptEngine(language,
+                new CliSenderPackageFinder(domainPackagesNames), bindings, new StandardScriptPermissions()));
         }
+        //TODO is this OK, or should we use a different classloader than the context classloader?
+        ScriptSourceProvider[] providers = ScriptSourceProviderFactory.get(null);
+        ScriptEngineFactory.injectStandardBindings(pooledEngine.engine, bindings, true, providers);
+
+        return pooledEngine;
     }
 
-    private static void returnEngine(ScriptEngine engine, String language) {
+    private static void returnEngine(PooledEngine pooledEngine, String language) {
         synchronized (SCRIPT_ENGINES) {
-            Queue<ScriptEngine> q = SCRIPT_ENGINES.get(language);
+            Queue<PooledEngine> q = SCRIPT_ENGINES.get(language);
             if (q == null) {
                 //hmm... this is very strange and should not happen, because we should have initied the queue in the 
                 //takeEngine() method...
-                q = new ArrayDeque<ScriptEngine>();
+                q = new ArrayDeque<PooledEngine>();
                 SCRIPT_ENGINES.put(language, q);
             }
-            q.offer(engine);
-            --ENGINES_IN_USE;
-            SCRIPT_ENGINES.notify();
+            q.offer(pooledEngine);
         }
     }
 
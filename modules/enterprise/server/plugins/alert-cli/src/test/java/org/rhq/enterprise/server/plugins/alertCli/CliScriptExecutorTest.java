@@ -0,0 +1,168 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.plugins.alertCli;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class CliScriptExecutorTest {
+
+    private static final int MAX_RUNS = 3;
+
+    private long now = 1000000L;
+
+    private CliScriptExecutor executor;
+
+    @AfterMethod
+    public void shutdownExecutor() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public void limitRunsPerAlertDefinition() {
+        executor = newExecutor(1, 1);
+
+        for (int i = 0; i < MAX_RUNS; ++i) {
+            assertTrue(executor.tryAcquireRun(1), "Run " + (i + 1) + " should be within the limit");
+        }
+        assertFalse(executor.tryAcquireRun(1), "The run over the limit should be refused");
+        assertTrue(executor.tryAcquireRun(2), "The runs of another alert definition should be counted separately");
+        assertEquals(executor.getRateLimitedNotifications(), 1);
+    }
+
+    public void startNewRateWindowAfterAMinute() {
+        executor = newExecutor(1, 1);
+
+        for (int i = 0; i < MAX_RUNS; ++i) {
+            executor.tryAcquireRun(1);
+        }
+        now += 59999L;
+        assertFalse(executor.tryAcquireRun(1), "The window should not have ended yet");
+
+        now += 1L;
+        assertTrue(executor.tryAcquireRun(1), "A new window should have started");
+    }
+
+    public void releasedRunCanBeAcquiredAgain() {
+        executor = newExecutor(1, 1);
+
+        for (int i = 0; i < MAX_RUNS; ++i) {
+            executor.tryAcquireRun(1);
+        }
+        executor.releaseRun(1);
+        assertTrue(executor.tryAcquireRun(1), "The released run should be available again");
+        assertFalse(executor.tryAcquireRun(1), "Only the released run should have been available");
+    }
+
+    public void evictWindowsOfAlertDefinitionsThatStoppedFiring() {
+        executor = newExecutor(1, 1);
+
+        for (int id = 0; id < 10; ++id) {
+            executor.tryAcquireRun(id);
+        }
+        assertEquals(executor.getRateWindowCount(), 10);
+
+        now += 60000L;
+        assertTrue(executor.tryAcquireRun(100));
+        assertEquals(executor.getRateWindowCount(), 1, "Only the window of the last alert definition should be left");
+    }
+
+    public void unlimitedRuns() {
+        executor = new CliScriptExecutor(1, 1, 0);
+
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(executor.tryAcquireRun(1));
+        }
+        assertEquals(executor.getRateLimitedNotifications(), 0);
+        assertEquals(executor.getRateWindowCount(), 0);
+    }
+
+    public void rejectScriptsWhenTheQueueIsFull() throws Exception {
+        executor = newExecutor(1, 1);
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        Future<?> first = executor.submit(blocking);
+        assertTrue(running.await(10, TimeUnit.SECONDS), "The first script should be running");
+        Future<?> queued = executor.submit(blocking);
+        assertEquals(executor.getQueueDepth(), 1);
+
+        try {
+            executor.submit(blocking);
+            fail("The script should have been rejected since the queue is full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(executor.getRejectedNotifications(), 1);
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        queued.get(10, TimeUnit.SECONDS);
+    }
+
+    public void compiledScriptCacheHitRate() {
+        executor = newExecutor(1, 1);
+
+        assertEquals(executor.getCompiledScriptCacheHitRate(), 0.0, "The hit rate should be 0 without any lookup");
+
+        executor.compiledScriptCacheMiss();
+        executor.compiledScriptCacheHit();
+        executor.compiledScriptCacheHit();
+        executor.compiledScriptCacheHit();
+
+        assertEquals(executor.getCompiledScriptCacheHits(), 3);
+        assertEquals(executor.getCompiledScriptCacheMisses(), 1);
+        assertEquals(executor.getCompiledScriptCacheHitRate(), 0.75, 0.0001);
+    }
+
+    private CliScriptExecutor newExecutor(int maxConcurrentScripts, int queueCapacity) {
+        return new CliScriptExecutor(maxConcurrentScripts, queueCapacity, MAX_RUNS) {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+}
@@ -20,12 +20,15 @@ package org.rhq.enterprise.server.plugins.alertEmail;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.rhq.core.domain.alert.Alert;
 import org.rhq.core.domain.alert.notification.SenderResult;
+import org.rhq.enterprise.server.plugin.pc.ServerPluginComponent;
 import org.rhq.enterprise.server.plugin.pc.alert.AlertSender;
 import org.rhq.enterprise.server.util.LookupUtil;
 
@@ -35,20 +38,52 @@ import org.rhq.enterprise.server.util.LookupUtil;
  * @author Heiko W. Rupp
  * @author Joseph Marques
  */
-public class EmailSender extends AlertSender {
+public class EmailSender extends AlertSender<ServerPluginComponent> {
 
     @Override
     public SenderResult send(Alert alert) {
+        return send(Collections.singletonList(alert)).get(0);
+    }
+
+    /**
+     * Notifications with the same recipients are sent together, in one email.
+     */
+    @Override
+    public String getBatchKey() {
         String emailAddressString = alertParameters.getSimpleValue("emailAddress", null);
         if (emailAddressString == null) {
-            return SenderResult.getSimpleFailure("No email address given");
+            return null;
         }
+        return new TreeSet<String>(AlertSender.unfence(emailAddressString, String.class, ",")).toString();
+    }
 
-        List<String> emails = AlertSender.unfence(emailAddressString, String.class, ",");
+    /**
+     * A failed email can be sent again, at worst the recipients get it twice.
+     */
+    @Override
+    public boolean isRetryable() {
+        return true;
+    }
+
+    @Override
+    public List<SenderResult> send(List<Alert> alerts) {
+        SenderResult result;
+        String emailAddressString = alertParameters.getSimpleValue("emailAddress", null);
+        if (emailAddressString == null) {
+            result = SenderResult.getSimpleFailure("No email address given");
+        } else {
+            result = sendEmails(alerts, AlertSender.unfence(emailAddressString, String.class, ","));
+        }
+
+        // one email was sent, so all the alerts have the same result
+        return Collections.nCopies(alerts.size(), result);
+    }
+
+    private SenderResult sendEmails(List<Alert> alerts, List<String> emails) {
         try {
             Set<String> uniqueEmails = new HashSet<String>(emails);
-            Collection<String> badEmails = LookupUtil.getAlertManager()
-                .sendAlertNotificationEmails(alert, uniqueEmails);
+            Collection<String> badEmails = LookupUtil.getAlertManager().sendAlertNotificationEmails(alerts,
+                uniqueEmails);
 
             List<String> goodEmails = new ArrayList<String>(uniqueEmails);
             goodEmails.removeAll(badEmails);
@@ -66,7 +101,6 @@ public class EmailSender extends AlertSender {
             return SenderResult.getSimpleFailure("Error sending email notifications to " + emails + ", cause: "
                 + t.getMessage());
         }
-
     }
 
     @Override
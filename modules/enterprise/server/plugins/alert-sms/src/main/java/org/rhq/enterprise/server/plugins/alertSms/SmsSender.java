@@ -22,6 +22,7 @@ import java.io.BufferedReader;
 import java.io.StringReader;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -47,6 +48,7 @@ import org.rhq.core.domain.alert.notification.SenderResult;
 import org.rhq.core.domain.configuration.PropertySimple;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.enterprise.server.configuration.ConfigurationManagerLocal;
+import org.rhq.enterprise.server.plugin.pc.ServerPluginComponent;
 import org.rhq.enterprise.server.plugin.pc.alert.AlertSender;
 import org.rhq.enterprise.server.util.LookupUtil;
 
@@ -54,7 +56,7 @@ import org.rhq.enterprise.server.util.LookupUtil;
  * Sender class for Alerts
  * @author Heiko W. Rupp
  */
-public class SmsSender extends AlertSender {
+public class SmsSender extends AlertSender<ServerPluginComponent> {
 
     private final Log log = LogFactory.getLog(SmsSender.class);
     private static final String DEVGARDEN_SMS_GW = "https://gateway.developer.telekom.com/p3gw-mod-odg-sms/rest";
@@ -62,8 +64,39 @@ public class SmsSender extends AlertSender {
     private static final String TOKEN_EXPIRY_TIME = "token-expiry-time";
     private static final String TOKEN = "token";
 
+    /**
+     * The length of a single SMS. The alerts that do not fit in a batched SMS are only counted.
+     */
+    static final int MAX_MESSAGE_LENGTH = 160;
+
     @Override
     public SenderResult send(Alert alert) {
+        return send(Collections.singletonList(alert)).get(0);
+    }
+
+    /**
+     * Notifications to the same number are sent together, in one SMS.
+     */
+    @Override
+    public String getBatchKey() {
+        return alertParameters.getSimpleValue("tel", null);
+    }
+
+    /**
+     * A failed SMS can be sent again, at worst the recipient gets it twice.
+     */
+    @Override
+    public boolean isRetryable() {
+        return true;
+    }
+
+    @Override
+    public List<SenderResult> send(List<Alert> alerts) {
+        // one SMS is sent, so all the alerts have the same result
+        return Collections.nCopies(alerts.size(), sendAlerts(alerts));
+    }
+
+    private SenderResult sendAlerts(List<Alert> alerts) {
 
         String token;
         try {
@@ -74,18 +107,8 @@ public class SmsSender extends AlertSender {
             return senderResult;
         }
 
-        Resource res = alert.getAlertDefinition().getResource();
-        Integer alertId = alert.getId();
-
-        StringBuilder b = new StringBuilder();
-        b.append("Alert ");
-        b.append("(").append(alertId).append("): ");
-        b.append(res.getName());
-        b.append(",id=(").append(res.getId()).append(")");
-        b.append("Brought by RHQ");
-
         try {
-            sendAlertSms(token,b.toString());
+            sendAlertSms(token, createMessage(alerts));
         } catch (Exception e) {
             SenderResult senderResult = new SenderResult();
             senderResult.addFailureMessage("Failed to send SMS: " + e.getMessage());
@@ -98,6 +121,47 @@ public class SmsSender extends AlertSender {
         return senderResult;
     }
 
+    /**
+     * Lists as many of the alerts as fit in {@link #MAX_MESSAGE_LENGTH}, the others are only counted. A single alert
+     * that does not fit is cut.
+     */
+    static String createMessage(List<Alert> alerts) {
+        String message = null;
+        for (int shown = alerts.size(); shown > 0; --shown) {
+            message = createMessage(alerts.subList(0, shown), alerts.size() - shown);
+            if (message.length() <= MAX_MESSAGE_LENGTH) {
+                return message;
+            }
+        }
+        return message.substring(0, MAX_MESSAGE_LENGTH);
+    }
+
+    private static String createMessage(List<Alert> alerts, int omitted) {
+        StringBuilder b = new StringBuilder();
+        b.append(alerts.size() + omitted == 1 ? "Alert " : "Alerts ");
+        b.append("(");
+        for (int i = 0; i < alerts.size(); i++) {
+            if (i > 0) {
+                b.append(",");
+            }
+            b.append(alerts.get(i).getId());
+        }
+        b.append("): ");
+        for (int i = 0; i < alerts.size(); i++) {
+            if (i > 0) {
+                b.append("; ");
+            }
+            Resource res = alerts.get(i).getAlertDefinition().getResource();
+            b.append(res.getName());
+            b.append(",id=(").append(res.getId()).append(")");
+        }
+        if (omitted > 0) {
+            b.append(" and ").append(omitted).append(" more ");
+        }
+        b.append("Brought by RHQ");
+        return b.toString();
+    }
+
     /**
      * Do the actual SMS sending. For this to succeed, it needs an auth token.
      * @param token valid access token
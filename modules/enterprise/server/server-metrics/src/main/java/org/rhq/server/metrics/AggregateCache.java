@@ -0,0 +1,467 @@
+package org.rhq.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.datastax.driver.core.ResultSet;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
+import org.rhq.server.metrics.domain.Bucket;
+
+/**
+ * <p>
+ * Caches the 1 hour, 6 hour, and 24 hour aggregates that are queried for metric graphs. Aggregates are cached per
+ * schedule in slices of a fixed width that are aligned on the epoch, one day of 1 hour data, one week of 6 hour data,
+ * and four weeks of 24 hour data. A query is answered by stitching together the slices that overlap the requested
+ * window, loading the missing ones in parallel. The slice containing the current time is still being written to by
+ * aggregation, so the part of the window that falls into it is always read from storage and never cached.
+ * </p>
+ * <p>
+ * Cached slices are immutable. Whenever an aggregate is written or deleted, the slice it falls into has to be
+ * invalidated by calling {@link #invalidate(int, Bucket, long)} once the write has completed. A slice that was loaded
+ * while an invalidation happened is not cached, since it may be missing the write.
+ * </p>
+ * <p>
+ * Only the server that runs the aggregation invalidates its slices though. Late raw data can be aggregated until the
+ * {@link #setAggregationLag(long) aggregation lag} has passed, so the slices of other servers could miss it. A slice
+ * is therefore only kept until it expires as long as one of its aggregates could still be rewritten. The time to live
+ * is set in seconds with the rhq.metrics.query-cache.recent-ttl system property; zero keeps such slices out of the
+ * cache. Once the aggregation lag has passed, a slice is kept until it is evicted or invalidated.
+ * </p>
+ * <p>
+ * The cache is bounded by the estimated heap usage of the slices, set in megabytes with the
+ * rhq.metrics.query-cache.max-size system property. The least recently used slices are evicted first. A size of zero
+ * disables the cache.
+ * </p>
+ */
+public class AggregateCache implements AggregateCacheMBean {
+
+    private static final Log log = LogFactory.getLog(AggregateCache.class);
+
+    private static final long ONE_HOUR_SLICE = Duration.standardDays(1).getMillis();
+
+    private static final long SIX_HOUR_SLICE = Duration.standardDays(7).getMillis();
+
+    private static final long TWENTY_FOUR_HOUR_SLICE = Duration.standardDays(28).getMillis();
+
+    /** The default aggregation lag, the default raw data age limit plus the hour until the next aggregation */
+    private static final long DEFAULT_AGGREGATION_LAG = Duration.standardDays(3).plus(Duration.standardHours(1))
+        .getMillis();
+
+    /** Estimated heap usage of a slice without its metrics, i.e., the map entry, key, slice, and array headers */
+    private static final int SLICE_OVERHEAD = 160;
+
+    /** Estimated heap usage per metric, the timestamp and the avg, min, and max values */
+    private static final int METRIC_SIZE = 32;
+
+    private final MetricsDAO dao;
+
+    private final DateTimeService dateTimeService;
+
+    private final long maxSize;
+
+    private final long recentSliceTtl;
+
+    private volatile long aggregationLag = DEFAULT_AGGREGATION_LAG;
+
+    private final LinkedHashMap<SliceKey, Slice> slices = new LinkedHashMap<SliceKey, Slice>(256, 0.75f, true);
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long invalidations;
+
+    public AggregateCache(MetricsDAO dao, DateTimeService dateTimeService) {
+        this(dao, dateTimeService, Long.parseLong(System.getProperty(MetricsConstants.QUERY_CACHE_MAX_SIZE, "64"))
+            * 1024 * 1024);
+    }
+
+    /**
+     * @param maxSize The maximum estimated heap usage in bytes
+     */
+    public AggregateCache(MetricsDAO dao, DateTimeService dateTimeService, long maxSize) {
+        this(dao, dateTimeService, maxSize, Long.parseLong(System.getProperty(MetricsConstants.QUERY_CACHE_RECENT_TTL,
+            "60")) * 1000);
+    }
+
+    /**
+     * @param maxSize The maximum estimated heap usage in bytes
+     * @param recentSliceTtl The time to live in milliseconds of slices whose aggregates could still be rewritten
+     */
+    public AggregateCache(MetricsDAO dao, DateTimeService dateTimeService, long maxSize, long recentSliceTtl) {
+        this.dao = dao;
+        this.dateTimeService = dateTimeService;
+        this.maxSize = maxSize;
+        this.recentSliceTtl = recentSliceTtl;
+    }
+
+    /**
+     * @param aggregationLag The time in milliseconds after the end of the time span of an aggregate during which
+     * late raw data can still cause the aggregate to be rewritten
+     */
+    public void setAggregationLag(long aggregationLag) {
+        this.aggregationLag = aggregationLag;
+    }
+
+    /**
+     * Finds the aggregate metrics of the schedules with a timestamp in the window [beginTime, endTime). Metrics of the
+     * same schedule are returned in ascending order of their timestamps.
+     */
+    public List<AggregateNumericMetric> findAggregateMetrics(List<Integer> scheduleIds, Bucket bucket, long beginTime,
+        long endTime) {
+
+        long generation = getInvalidations();
+        long now = dateTimeService.nowInMillis();
+        List<Object> parts = new ArrayList<Object>();
+        List<StorageResultSetFuture> loads = new ArrayList<StorageResultSetFuture>();
+        for (Integer scheduleId : scheduleIds) {
+            plan(scheduleId, bucket, beginTime, endTime, now, parts, loads);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Loading " + loads.size() + " of " + parts.size() + " " + bucket + " slices for " +
+                scheduleIds.size() + " schedule(s) from storage");
+        }
+        return stitch(parts, beginTime, endTime, generation);
+    }
+
+    /**
+     * Finds the aggregate metrics of a schedule with a timestamp in the window [beginTime, endTime) without blocking.
+     * The metrics are returned in ascending order of their timestamps.
+     */
+    public ListenableFuture<List<AggregateNumericMetric>> findAggregateMetricsAsync(int scheduleId, Bucket bucket,
+        final long beginTime, final long endTime) {
+
+        final long generation = getInvalidations();
+        final List<Object> parts = new ArrayList<Object>();
+        List<StorageResultSetFuture> loads = new ArrayList<StorageResultSetFuture>();
+        plan(scheduleId, bucket, beginTime, endTime, dateTimeService.nowInMillis(), parts, loads);
+
+        if (loads.isEmpty()) {
+            return Futures.immediateFuture(stitch(parts, beginTime, endTime, generation));
+        }
+        return Futures.transform(Futures.<ResultSet>allAsList(loads), new Function<List<ResultSet>,
+            List<AggregateNumericMetric>>() {
+            @Override
+            public List<AggregateNumericMetric> apply(List<ResultSet> resultSets) {
+                return stitch(parts, beginTime, endTime, generation);
+            }
+        });
+    }
+
+    /**
+     * Adds the cached slices and the loads of the missing slices that make up the window of the schedule to parts, in
+     * the order their metrics are to be returned. The futures of the loads are also added to loads.
+     */
+    private void plan(int scheduleId, Bucket bucket, long beginTime, long endTime, long now, List<Object> parts,
+        List<StorageResultSetFuture> loads) {
+
+        if (!isEnabled()) {
+            StorageResultSetFuture future = dao.findAggregateMetricsAsync(scheduleId, bucket, beginTime, endTime);
+            parts.add(new Load(null, 0, future));
+            loads.add(future);
+            return;
+        }
+
+        long sliceWidth = getSliceWidth(bucket);
+        for (long sliceStart = beginTime - (beginTime % sliceWidth); sliceStart < endTime; sliceStart += sliceWidth) {
+            StorageResultSetFuture future;
+            if (sliceStart + sliceWidth > now) {
+                // The fresh tail of the window
+                future = dao.findAggregateMetricsAsync(scheduleId, bucket, Math.max(beginTime, sliceStart), endTime);
+                parts.add(new Load(null, 0, future));
+                loads.add(future);
+                return;
+            }
+            SliceKey key = new SliceKey(scheduleId, bucket, sliceStart);
+            Slice slice = get(key, now);
+            if (slice == null) {
+                future = dao.findAggregateMetricsAsync(scheduleId, bucket, sliceStart, sliceStart + sliceWidth);
+                if (sliceStart + sliceWidth + getAggregateSpan(bucket) + aggregationLag <= now) {
+                    parts.add(new Load(key, Long.MAX_VALUE, future));
+                } else if (recentSliceTtl > 0) {
+                    // late raw data could still change the slice without this server invalidating it
+                    parts.add(new Load(key, now + recentSliceTtl, future));
+                } else {
+                    parts.add(new Load(null, 0, future));
+                }
+                loads.add(future);
+            } else {
+                parts.add(slice);
+            }
+        }
+    }
+
+    /**
+     * Waits for the loads in parts to finish, caching the loaded slices unless an invalidation happened since the
+     * generation, and collects the metrics of the window from all parts.
+     */
+    private List<AggregateNumericMetric> stitch(List<Object> parts, long beginTime, long endTime, long generation) {
+        List<AggregateNumericMetric> metrics = new ArrayList<AggregateNumericMetric>();
+        AggregateNumericMetricMapper mapper = new AggregateNumericMetricMapper();
+        for (Object part : parts) {
+            if (part instanceof Slice) {
+                ((Slice) part).addTo(metrics, beginTime, endTime);
+                continue;
+            }
+            Load load = (Load) part;
+            List<AggregateNumericMetric> loaded = mapper.mapAll(load.future.get());
+            if (load.key == null) {
+                metrics.addAll(loaded);
+            } else {
+                Slice slice = new Slice(load.key, loaded, load.expiresAt);
+                put(load.key, slice, generation);
+                slice.addTo(metrics, beginTime, endTime);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Removes the slice that holds the aggregate metric of the schedule with the given timestamp.
+     */
+    public synchronized void invalidate(int scheduleId, Bucket bucket, long timestamp) {
+        ++invalidations;
+        long sliceWidth = getSliceWidth(bucket);
+        Slice slice = slices.remove(new SliceKey(scheduleId, bucket, timestamp - (timestamp % sliceWidth)));
+        if (slice != null) {
+            size -= slice.getSize();
+        }
+    }
+
+    /**
+     * Invalidates the slice of an aggregate metric once the write or delete of the metric has completed, successfully
+     * or not.
+     */
+    public void invalidateOnCompletion(ListenableFuture<?> write, final int scheduleId, final Bucket bucket,
+        final long timestamp) {
+        write.addListener(new Runnable() {
+            @Override
+            public void run() {
+                invalidate(scheduleId, bucket, timestamp);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    @Override
+    public synchronized void clear() {
+        ++invalidations;
+        slices.clear();
+        size = 0;
+    }
+
+    private synchronized Slice get(SliceKey key, long now) {
+        Slice slice = slices.get(key);
+        if (slice != null && slice.expiresAt <= now) {
+            slices.remove(key);
+            size -= slice.getSize();
+            slice = null;
+        }
+        if (slice == null) {
+            ++misses;
+        } else {
+            ++hits;
+        }
+        return slice;
+    }
+
+    private synchronized void put(SliceKey key, Slice slice, long generation) {
+        if (generation != invalidations) {
+            return;
+        }
+        Slice previous = slices.put(key, slice);
+        if (previous != null) {
+            size -= previous.getSize();
+        }
+        size += slice.getSize();
+
+        Iterator<Map.Entry<SliceKey, Slice>> iterator = slices.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().getSize();
+            iterator.remove();
+            ++evictions;
+        }
+    }
+
+    /**
+     * @return The time span of an aggregate of the bucket
+     */
+    private long getAggregateSpan(Bucket bucket) {
+        switch (bucket) {
+            case ONE_HOUR:
+                return Duration.standardHours(1).getMillis();
+            case SIX_HOUR:
+                return Duration.standardHours(6).getMillis();
+            default:
+                return Duration.standardDays(1).getMillis();
+        }
+    }
+
+    private long getSliceWidth(Bucket bucket) {
+        switch (bucket) {
+            case ONE_HOUR:
+                return ONE_HOUR_SLICE;
+            case SIX_HOUR:
+                return SIX_HOUR_SLICE;
+            default:
+                return TWENTY_FOUR_HOUR_SLICE;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public long getRecentSliceTtl() {
+        return recentSliceTtl;
+    }
+
+    @Override
+    public long getAggregationLag() {
+        return aggregationLag;
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized int getSliceCount() {
+        return slices.size();
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    private static class SliceKey {
+        private final int scheduleId;
+        private final Bucket bucket;
+        private final long startTime;
+
+        SliceKey(int scheduleId, Bucket bucket, long startTime) {
+            this.scheduleId = scheduleId;
+            this.bucket = bucket;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SliceKey key = (SliceKey) o;
+
+            return scheduleId == key.scheduleId && startTime == key.startTime && bucket == key.bucket;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = scheduleId;
+            result = 31 * result + bucket.hashCode();
+            result = 31 * result + (int) (startTime ^ (startTime >>> 32));
+            return result;
+        }
+    }
+
+    /**
+     * The aggregate metrics of a slice, held in arrays ordered by timestamp rather than as metric objects to keep the
+     * heap usage down.
+     */
+    private static class Slice {
+        private final SliceKey key;
+        private final long expiresAt;
+        private final long[] timestamps;
+        private final double[] values;
+
+        Slice(SliceKey key, List<AggregateNumericMetric> metrics, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            timestamps = new long[metrics.size()];
+            values = new double[metrics.size() * 3];
+            for (int i = 0; i < timestamps.length; ++i) {
+                AggregateNumericMetric metric = metrics.get(i);
+                timestamps[i] = metric.getTimestamp();
+                values[i * 3] = metric.getAvg();
+                values[i * 3 + 1] = metric.getMin();
+                values[i * 3 + 2] = metric.getMax();
+            }
+        }
+
+        long getSize() {
+            return SLICE_OVERHEAD + (long) timestamps.length * METRIC_SIZE;
+        }
+
+        void addTo(List<AggregateNumericMetric> metrics, long beginTime, long endTime) {
+            for (int i = 0; i < timestamps.length; ++i) {
+                if (timestamps[i] >= beginTime && timestamps[i] < endTime) {
+                    metrics.add(new AggregateNumericMetric(key.scheduleId, key.bucket, values[i * 3],
+                        values[i * 3 + 1], values[i * 3 + 2], timestamps[i]));
+                }
+            }
+        }
+    }
+
+    private static class Load {
+        private final SliceKey key;
+        private final long expiresAt;
+        private final StorageResultSetFuture future;
+
+        /**
+         * @param key The slice to cache the results under, or null if the results are not to be cached
+         * @param expiresAt The time at which the cached slice expires
+         */
+        Load(SliceKey key, long expiresAt, StorageResultSetFuture future) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.future = future;
+        }
+    }
+}
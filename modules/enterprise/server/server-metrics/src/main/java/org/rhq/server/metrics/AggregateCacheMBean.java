@@ -0,0 +1,45 @@
+package org.rhq.server.metrics;
+
+/**
+ * Management interface for monitoring the cache of aggregate metrics that serves metric graph queries.
+ */
+public interface AggregateCacheMBean {
+
+    boolean isEnabled();
+
+    /**
+     * @return The maximum estimated heap usage of the cache in bytes
+     */
+    long getMaxSize();
+
+    /**
+     * @return The estimated heap usage of the cached slices in bytes
+     */
+    long getSize();
+
+    /**
+     * @return The time to live in milliseconds of the slices whose aggregates could still be rewritten by the
+     * aggregation of late raw data
+     */
+    long getRecentSliceTtl();
+
+    /**
+     * @return The time in milliseconds after the end of the time span of an aggregate during which it could still be
+     * rewritten by the aggregation of late raw data
+     */
+    long getAggregationLag();
+
+    int getSliceCount();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getInvalidations();
+
+    void clear();
+}
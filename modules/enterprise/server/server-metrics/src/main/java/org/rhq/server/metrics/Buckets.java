@@ -136,11 +136,12 @@ public class Buckets {
     }
 
     public void insert(long timestamp, double value, double min, double max) {
-        for (Bucket bucket : buckets) {
-            if (timestamp >= bucket.getStartTime() && timestamp < bucket.getEndTime()) {
-                bucket.insert(value, min, max);
-                return;
-            }
+        if (interval <= 0 || timestamp < buckets[0].getStartTime()) {
+            return;
+        }
+        long index = (timestamp - buckets[0].getStartTime()) / interval;
+        if (index < numDataPoints) {
+            buckets[(int) index].insert(value, min, max);
         }
     }
 }
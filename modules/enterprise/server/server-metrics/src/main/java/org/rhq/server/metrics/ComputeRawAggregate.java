@@ -2,31 +2,25 @@ package org.rhq.server.metrics;
 
 import java.util.List;
 
-import com.datastax.driver.core.ResultSet;
 import com.google.common.base.Function;
 
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.RawNumericMetric;
-import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 
 /**
  * @author John Sanda
  */
-public class ComputeRawAggregate implements Function<ResultSet, AggregateNumericMetric> {
-
-    private RawNumericMetricMapper mapper;
+public class ComputeRawAggregate implements Function<List<RawNumericMetric>, AggregateNumericMetric> {
 
     private long timestamp;
 
     public ComputeRawAggregate(long timestamp) {
         this.timestamp = timestamp;
-        mapper = new RawNumericMetricMapper();
     }
 
     @Override
-    public AggregateNumericMetric apply(ResultSet resultSet) {
-        List<RawNumericMetric> rawMetrics = mapper.mapAll(resultSet);
+    public AggregateNumericMetric apply(List<RawNumericMetric> rawMetrics) {
         double min = Double.NaN;
         double max = min;
         int count = 0;
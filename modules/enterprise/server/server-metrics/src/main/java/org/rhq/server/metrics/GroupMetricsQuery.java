@@ -0,0 +1,160 @@
+package org.rhq.server.metrics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.rhq.server.metrics.domain.NumericMetric;
+
+/**
+ * <p>
+ * Queries the metric data of the members of a compatible group and folds it into {@link Buckets}. One query is issued
+ * per schedule and at most a fixed window of them is in flight at any time. As soon as a query finishes, its results
+ * are folded into the buckets and dropped and the query of the next schedule is issued. The rows of the whole group
+ * are never held in memory at once.
+ * </p>
+ * <p>
+ * The query itself is a future of the buckets. Cancelling it stops issuing queries and cancels the ones in flight,
+ * which is what should happen when the client is no longer waiting for the results. If the query of one of the
+ * schedules fails, the whole query fails.
+ * </p>
+ */
+abstract class GroupMetricsQuery<T extends NumericMetric> extends AbstractFuture<Buckets> {
+
+    private final Iterator<Integer> scheduleIds;
+
+    private final Buckets buckets;
+
+    private final Executor executor;
+
+    private final Set<ListenableFuture<List<T>>> inFlight = new HashSet<ListenableFuture<List<T>>>();
+
+    /**
+     * @param scheduleIds The schedules of the group members
+     * @param buckets The buckets to fold the metrics into
+     * @param executor The executor on which the results are folded
+     */
+    GroupMetricsQuery(List<Integer> scheduleIds, Buckets buckets, Executor executor) {
+        this.scheduleIds = scheduleIds.iterator();
+        this.buckets = buckets;
+        this.executor = executor;
+    }
+
+    /**
+     * Issues the query for the metrics of the schedule.
+     */
+    protected abstract ListenableFuture<List<T>> query(int scheduleId);
+
+    /**
+     * @return true if the metric is to be folded into the buckets, false to skip it
+     */
+    protected boolean accept(T metric) {
+        return true;
+    }
+
+    /**
+     * Issues the queries of the first schedules.
+     *
+     * @param window The maximum number of queries in flight
+     * @return This query
+     */
+    GroupMetricsQuery<T> start(int window) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    cancelInFlight();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        synchronized (this) {
+            int issued = 0;
+            while (issued < Math.max(1, window) && issueNext()) {
+                ++issued;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Issues the query of the next schedule, or completes this query if there are none left and none are in flight.
+     * This has to be called with the lock held.
+     *
+     * @return true if a query was issued
+     */
+    private boolean issueNext() {
+        if (isDone()) {
+            return false;
+        }
+        if (!scheduleIds.hasNext()) {
+            if (inFlight.isEmpty()) {
+                set(buckets);
+            }
+            return false;
+        }
+
+        final ListenableFuture<List<T>> future;
+        try {
+            future = query(scheduleIds.next());
+        } catch (RuntimeException e) {
+            fail(e);
+            return false;
+        }
+        inFlight.add(future);
+        Futures.addCallback(future, new FutureCallback<List<T>>() {
+            @Override
+            public void onSuccess(List<T> metrics) {
+                finished(future, metrics);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                synchronized (GroupMetricsQuery.this) {
+                    inFlight.remove(future);
+                    fail(t);
+                }
+            }
+        }, executor);
+        return true;
+    }
+
+    private synchronized void finished(ListenableFuture<List<T>> future, List<T> metrics) {
+        inFlight.remove(future);
+        if (isDone()) {
+            return;
+        }
+        for (T metric : metrics) {
+            if (accept(metric)) {
+                buckets.insert(metric.getTimestamp(), metric.getAvg(), metric.getMin(), metric.getMax());
+            }
+        }
+        issueNext();
+    }
+
+    /**
+     * This has to be called with the lock held.
+     */
+    private void fail(Throwable t) {
+        if (setException(t)) {
+            cancelInFlight();
+        }
+    }
+
+    private synchronized void cancelInFlight() {
+        List<ListenableFuture<List<T>>> futures = new ArrayList<ListenableFuture<List<T>>>(inFlight);
+        inFlight.clear();
+        for (ListenableFuture<List<T>> future : futures) {
+            future.cancel(false);
+        }
+    }
+}
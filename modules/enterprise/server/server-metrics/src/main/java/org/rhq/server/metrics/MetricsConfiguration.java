@@ -61,6 +61,12 @@ public class MetricsConfiguration {
     // TODO make this configurable
     private int indexPartitions = 10;
 
+    private int rawWriteBatchSize = Integer.parseInt(System.getProperty(MetricsConstants.RAW_WRITE_BATCH_SIZE,
+        "1000"));
+
+    private int rawWriteMaxInFlight = Integer.parseInt(System.getProperty(MetricsConstants.RAW_WRITE_MAX_IN_FLIGHT,
+        "2000"));
+
     public int getRawTTL() {
         return rawTTL;
     }
@@ -176,4 +182,22 @@ public class MetricsConfiguration {
         this.indexPartitions = indexPartitions;
         return this;
     }
+
+    public int getRawWriteBatchSize() {
+        return rawWriteBatchSize;
+    }
+
+    public MetricsConfiguration setRawWriteBatchSize(int rawWriteBatchSize) {
+        this.rawWriteBatchSize = rawWriteBatchSize;
+        return this;
+    }
+
+    public int getRawWriteMaxInFlight() {
+        return rawWriteMaxInFlight;
+    }
+
+    public MetricsConfiguration setRawWriteMaxInFlight(int rawWriteMaxInFlight) {
+        this.rawWriteMaxInFlight = rawWriteMaxInFlight;
+        return this;
+    }
 }
@@ -13,6 +13,16 @@ public class MetricsConstants {
 
     public static final String RAW_DATA_AGE_LIMIT = "rhq.metrics.data.age-limit";
 
+    public static final String RAW_WRITE_BATCH_SIZE = "rhq.metrics.raw.write.batch-size";
+
+    public static final String RAW_WRITE_MAX_IN_FLIGHT = "rhq.metrics.raw.write.max-in-flight";
+
+    public static final String QUERY_CACHE_MAX_SIZE = "rhq.metrics.query-cache.max-size";
+
+    public static final String QUERY_CACHE_RECENT_TTL = "rhq.metrics.query-cache.recent-ttl";
+
+    public static final String GROUP_QUERY_MAX_IN_FLIGHT = "rhq.metrics.group-query.max-in-flight";
+
     private MetricsConstants() {
     }
 }
@@ -26,6 +26,7 @@
 package org.rhq.server.metrics;
 
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -34,6 +35,9 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.core.exceptions.QueryTimeoutException;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,6 +50,7 @@ import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.IndexEntry;
 import org.rhq.server.metrics.domain.ListPagedResult;
 import org.rhq.server.metrics.domain.MetricsTable;
+import org.rhq.server.metrics.domain.RawDataPartitions;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 
@@ -96,11 +101,13 @@ public class MetricsDAO {
         // if the TTL value could be a bound value.
 
         insertRawData = storageSession.prepare(
-            "INSERT INTO " + MetricsTable.RAW + " (schedule_id, time, value) VALUES (?, ?, ?) USING TTL " +
+            "INSERT INTO " + MetricsTable.RAW + " (schedule_id, day, time, value) VALUES (?, ?, ?, ?) USING TTL " +
                 configuration.getRawTTL());
 
+        // The raw data is partitioned by day, see RawDataPartitions. The raw data queries read a single partition
+        // and the methods below execute one of them for every day in the requested range.
         rawMetricsQuery = storageSession.prepare("SELECT schedule_id, time, value FROM " + MetricsTable.RAW +
-            " WHERE schedule_id = ? AND time >= ? AND time < ? ORDER BY time");
+            " WHERE schedule_id = ? AND day = ? AND time >= ? AND time < ? ORDER BY time");
 
         insertOneHourData = storageSession.prepare(
             "INSERT INTO " + MetricsTable.AGGREGATE + "(schedule_id, bucket, time, avg, max, min) " +
@@ -118,10 +125,10 @@ public class MetricsDAO {
             "USING TTL " + configuration.getTwentyFourHourTTL());
 
         findLatestRawMetric = storageSession.prepare("SELECT schedule_id, time, value FROM " + MetricsTable.RAW +
-            " WHERE schedule_id = ? ORDER BY time DESC LIMIT 1");
+            " WHERE schedule_id = ? AND day = ? ORDER BY time DESC LIMIT 1");
 
         findRawMetrics = storageSession.prepare("SELECT schedule_id, time, value FROM " + MetricsTable.RAW +
-            " WHERE schedule_id = ? AND time >= ? AND time <= ?");
+            " WHERE schedule_id = ? AND day = ? AND time >= ? AND time <= ?");
 
         findAggregateMetricsByDateRange = storageSession.prepare(
             "SELECT schedule_id, bucket, time, avg, max, min " +
@@ -164,8 +171,8 @@ public class MetricsDAO {
     }
 
     public StorageResultSetFuture insertRawData(MeasurementDataNumeric data) {
-        BoundStatement statement = insertRawData.bind(data.getScheduleId(), new Date(data.getTimestamp()),
-            data.getValue());
+        BoundStatement statement = insertRawData.bind(data.getScheduleId(),
+            new Date(RawDataPartitions.getDay(data.getTimestamp())), new Date(data.getTimestamp()), data.getValue());
         return storageSession.executeAsync(statement);
     }
 
@@ -189,33 +196,90 @@ public class MetricsDAO {
 
     public List<RawNumericMetric> findRawMetrics(int scheduleId, long startTime, long endTime) {
         RawNumericMetricMapper mapper = new RawNumericMetricMapper();
-        BoundStatement boundStatement = rawMetricsQuery.bind(scheduleId, new Date(startTime), new Date(endTime));
-        ResultSet resultSet = storageSession.execute(boundStatement);
-
-        return mapper.mapAll(resultSet);
+        List<RawNumericMetric> metrics = new ArrayList<RawNumericMetric>();
+        // the partitions are read in parallel and the results are merged in order
+        for (StorageResultSetFuture future : queryRawMetricsPartitions(scheduleId, startTime, endTime)) {
+            metrics.addAll(mapper.mapAll(future.get()));
+        }
+        return metrics;
     }
 
-    public ResultSet findRawMetricsSync(int scheduleId, long startTime, long endTime) {
-        BoundStatement boundStatement = rawMetricsQuery.bind(scheduleId, new Date(startTime), new Date(endTime));
-        return storageSession.execute(boundStatement);
+    /**
+     * Queries the day partitions of the range in parallel.
+     *
+     * @return the raw data in ascending order of time
+     */
+    public ListenableFuture<List<RawNumericMetric>> findRawMetricsAsync(int scheduleId, long startTime,
+        long endTime) {
+        ListenableFuture<List<ResultSet>> resultSetsFuture = Futures.allAsList(queryRawMetricsPartitions(scheduleId,
+            startTime, endTime));
+        return Futures.transform(resultSetsFuture, new Function<List<ResultSet>, List<RawNumericMetric>>() {
+            @Override
+            public List<RawNumericMetric> apply(List<ResultSet> resultSets) {
+                RawNumericMetricMapper mapper = new RawNumericMetricMapper();
+                List<RawNumericMetric> metrics = new ArrayList<RawNumericMetric>();
+                for (ResultSet resultSet : resultSets) {
+                    metrics.addAll(mapper.mapAll(resultSet));
+                }
+                return metrics;
+            }
+        });
     }
 
-    public StorageResultSetFuture findRawMetricsAsync(int scheduleId, long startTime, long endTime) {
-        BoundStatement boundStatement = rawMetricsQuery.bind(scheduleId, new Date(startTime), new Date(endTime));
+    /**
+     * Queries the raw data of a range that lies within a single day partition, like the hour time slices that are
+     * aggregated.
+     */
+    public StorageResultSetFuture findRawMetricsInDayAsync(int scheduleId, long startTime, long endTime) {
+        long day = RawDataPartitions.getDay(startTime);
+        if (endTime > day + RawDataPartitions.DAY) {
+            throw new IllegalArgumentException("The range [" + startTime + ", " + endTime + ") spans more than the " +
+                "day partition " + day);
+        }
+        BoundStatement boundStatement = rawMetricsQuery.bind(scheduleId, new Date(day), new Date(startTime),
+            new Date(endTime));
         return storageSession.executeAsync(boundStatement);
     }
 
+    private List<StorageResultSetFuture> queryRawMetricsPartitions(int scheduleId, long startTime, long endTime) {
+        // endTime is exclusive
+        List<Long> days = RawDataPartitions.getDays(startTime, endTime - 1);
+        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(days.size());
+        for (Long day : days) {
+            futures.add(storageSession.executeAsync(rawMetricsQuery.bind(scheduleId, new Date(day),
+                new Date(startTime), new Date(endTime))));
+        }
+        return futures;
+    }
+
+    /**
+     * Looks for the latest raw data in the day partitions, starting from today, up to the raw data TTL.
+     */
     public RawNumericMetric findLatestRawMetric(int scheduleId) {
         RawNumericMetricMapper mapper = new RawNumericMetricMapper();
-        BoundStatement boundStatement = findLatestRawMetric.bind(scheduleId);
-        ResultSet resultSet = storageSession.execute(boundStatement);
-
-        return mapper.mapOne(resultSet);
+        long today = RawDataPartitions.getDay(System.currentTimeMillis());
+        long oldestDay = RawDataPartitions.getDay(System.currentTimeMillis() - configuration.getRawTTL() * 1000L);
+
+        for (long day = today; day >= oldestDay; day -= RawDataPartitions.DAY) {
+            BoundStatement boundStatement = findLatestRawMetric.bind(scheduleId, new Date(day));
+            ResultSet resultSet = storageSession.execute(boundStatement);
+            if (!resultSet.isExhausted()) {
+                return mapper.mapOne(resultSet);
+            }
+        }
+        return null;
     }
 
     public Iterable<RawNumericMetric> findRawMetrics(List<Integer> scheduleIds, long startTime, long endTime) {
-        return new ListPagedResult<RawNumericMetric>(findRawMetrics, scheduleIds, startTime, endTime,
-            new RawNumericMetricMapper(), storageSession);
+        List<Long> days = RawDataPartitions.getDays(startTime, endTime);
+        List<BoundStatement> statements = new ArrayList<BoundStatement>(scheduleIds.size() * days.size());
+        for (Integer scheduleId : scheduleIds) {
+            for (Long day : days) {
+                statements.add(findRawMetrics.bind(scheduleId, new Date(day), new Date(startTime),
+                    new Date(endTime)));
+            }
+        }
+        return new ListPagedResult<RawNumericMetric>(statements, new RawNumericMetricMapper(), storageSession);
     }
 
     public List<AggregateNumericMetric> findAggregateMetrics(int scheduleId, Bucket bucket, long startTime,
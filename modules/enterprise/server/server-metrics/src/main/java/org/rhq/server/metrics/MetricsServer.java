@@ -25,17 +25,18 @@
 
 package org.rhq.server.metrics;
 
+import static java.util.Arrays.asList;
+
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
-import com.datastax.driver.core.ResultSet;
 import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -50,12 +51,9 @@ import org.joda.time.Days;
 
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
-import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.server.metrics.aggregation.AggregationManager;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
-import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
 import org.rhq.server.metrics.domain.Bucket;
-import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 import org.rhq.server.metrics.invalid.InvalidMetricsManager;
 
@@ -82,9 +80,14 @@ public class MetricsServer {
 
     private AggregationManager aggregationManager;
 
+    private AggregateCache aggregateCache;
+
     private volatile BlockingQueue<MeasurementDataNumeric> numericQueue;
 
-    private NumericQueueConsumer numericQueueConsumer;
+    private RawDataWriter rawDataWriter;
+
+    private int groupQueryWindow = Integer.parseInt(System.getProperty(MetricsConstants.GROUP_QUERY_MAX_IN_FLIGHT,
+        "64"));
 
     private Days rawDataAgeLimit = Days.days(Math.min(3, Integer.parseInt(
         System.getProperty("rhq.metrics.data.age-limit", "3"))));
@@ -111,6 +114,20 @@ public class MetricsServer {
                 "limit of " + RAW_DATA_AGE_LIMIT_MAX);
         }
         this.rawDataAgeLimit = Days.days(rawDataAgeLimit);
+        if (rawDataWriter != null) {
+            rawDataWriter.setRawDataAgeLimit(this.rawDataAgeLimit);
+        }
+        if (aggregateCache != null) {
+            aggregateCache.setAggregationLag(getAggregationLag());
+        }
+    }
+
+    /**
+     * @return The time after the end of an aggregate's time span during which late raw data can still be aggregated
+     * into it, which is the raw data age limit plus the time until the next aggregation runs
+     */
+    private long getAggregationLag() {
+        return rawDataAgeLimit.toStandardDuration().getMillis() + configuration.getRawTimeSliceDuration().getMillis();
     }
 
     public void setIndexPartitions(int indexPartitions) {
@@ -118,13 +135,15 @@ public class MetricsServer {
     }
 
     public void init() {
-        aggregationManager = new AggregationManager(dao, dateTimeService, configuration);
+        aggregateCache = new AggregateCache(dao, dateTimeService);
+        aggregateCache.setAggregationLag(getAggregationLag());
+        aggregationManager = new AggregationManager(dao, dateTimeService, configuration, aggregateCache);
         invalidMetricsManager = new InvalidMetricsManager(dateTimeService, dao);
+        invalidMetricsManager.setAggregateCache(aggregateCache);
 
         numericQueue = new ArrayBlockingQueue<MeasurementDataNumeric>(QUEUE_SIZE);
-        numericQueueConsumer = new NumericQueueConsumer();
-        numericQueueConsumer.setName("MetricsServer numericQueueConsumer");
-        numericQueueConsumer.start();
+        rawDataWriter = new RawDataWriter(numericQueue, dao, dateTimeService, configuration, rawDataAgeLimit, tasks);
+        rawDataWriter.start();
     }
 
     /**
@@ -138,15 +157,25 @@ public class MetricsServer {
         return aggregationManager;
     }
 
+    public AggregateCache getAggregateCache() {
+        return aggregateCache;
+    }
+
+    public RawDataWriter getRawDataWriter() {
+        return rawDataWriter;
+    }
+
     public void shutdown() {
-        numericQueueConsumer.shutdown();
+        rawDataWriter.shutdown();
         try {
-            numericQueueConsumer.join(); // Lets wait for it to finish before we continue..
+            rawDataWriter.join(); // Lets wait for it to finish before we continue..
         } catch (InterruptedException e) {
             log.warn("Potential data loss while waiting for the queue to empty, ", e);
         }
         aggregationManager.shutdown();
         invalidMetricsManager.shutdown();
+        // the raw data writer has completed its in flight writes, nothing is left for the callbacks to run
+        tasks.shutdown();
     }
 
     public RawNumericMetric findLatestValueForResource(int scheduleId) {
@@ -165,20 +194,10 @@ public class MetricsServer {
                 return createRawComposites(metrics, beginTime, endTime, numberOfBuckets);
             }
 
-            List<AggregateNumericMetric> metrics = null;
-            if (dateTimeService.isIn1HourDataRange(begin)) {
-                metrics = dao.findAggregateMetrics(scheduleId, Bucket.ONE_HOUR, beginTime,
-                    endTime);
-                return createComposites(metrics, beginTime, endTime, numberOfBuckets);
-            } else if (dateTimeService.isIn6HourDataRange(begin)) {
-                metrics = dao.findAggregateMetrics(scheduleId, Bucket.SIX_HOUR, beginTime, endTime);
-                return createComposites(metrics, beginTime, endTime, numberOfBuckets);
-            } else if (dateTimeService.isIn24HourDataRange(begin)) {
-                metrics = dao.findAggregateMetrics(scheduleId, Bucket.TWENTY_FOUR_HOUR, beginTime, endTime);
-                return createComposites(metrics, beginTime, endTime, numberOfBuckets);
-            } else {
-                throw new IllegalArgumentException("beginTime[" + beginTime + "] is outside the accepted range.");
-            }
+            Bucket bucket = getBucket(begin);
+            List<AggregateNumericMetric> metrics = aggregateCache.findAggregateMetrics(asList(scheduleId), bucket,
+                beginTime, endTime);
+            return createComposites(metrics, beginTime, endTime, numberOfBuckets);
         } finally {
             stopwatch.stop();
             if (log.isDebugEnabled()) {
@@ -195,15 +214,18 @@ public class MetricsServer {
                 beginTime + ", endTime: " + endTime + ", numberOfBuckets: " + numberOfBuckets + "]");
         }
 
-        DateTime begin = new DateTime(beginTime);
-        if (dateTimeService.isInRawDataRange(begin)) {
-            Iterable<RawNumericMetric> metrics = dao.findRawMetrics(scheduleIds, beginTime, endTime);
-            return createRawComposites(metrics, beginTime, endTime, numberOfBuckets);
+        Stopwatch stopwatch = new Stopwatch().start();
+        try {
+            GroupMetricsQuery<?> query = queryGroup(scheduleIds, beginTime, endTime, new Buckets(beginTime, endTime,
+                numberOfBuckets));
+            return createComposites(getGroupData(query, scheduleIds, beginTime, endTime, numberOfBuckets));
+        } finally {
+            stopwatch.stop();
+            if (log.isDebugEnabled()) {
+                log.debug("Finished querying metric data for " + scheduleIds.size() + " schedules in " +
+                    stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+            }
         }
-        Bucket bucket = getBucket(begin);
-        List<AggregateNumericMetric> metrics = loadMetrics(scheduleIds, beginTime, endTime, bucket);
-
-        return createComposites(metrics, beginTime, endTime, numberOfBuckets);
     }
 
     public AggregateNumericMetric getSummaryAggregate(int scheduleId, long beginTime, long endTime) {
@@ -217,7 +239,8 @@ public class MetricsServer {
             }
 
             Bucket bucket = getBucket(begin);
-            List<AggregateNumericMetric> metrics = dao.findAggregateMetrics(scheduleId, bucket, beginTime, endTime);
+            List<AggregateNumericMetric> metrics = aggregateCache.findAggregateMetrics(asList(scheduleId), bucket,
+                beginTime, endTime);
             return calculateAggregate(metrics, beginTime, bucket);
         } finally {
             stopwatch.stop();
@@ -238,14 +261,13 @@ public class MetricsServer {
                     ", beginTime: " + beginTime + ", endTime: " + endTime + "]");
             }
             DateTime begin = new DateTime(beginTime);
-            StorageResultSetFuture queryFuture;
 
             if (dateTimeService.isInRawDataRange(begin)) {
-                queryFuture = dao.findRawMetricsAsync(scheduleId, beginTime, endTime);
-                return Futures.transform(queryFuture, new ComputeRawAggregate(beginTime));
+                return Futures.transform(dao.findRawMetricsAsync(scheduleId, beginTime, endTime),
+                    new ComputeRawAggregate(beginTime));
             }
             Bucket bucket = getBucket(begin);
-            queryFuture = dao.findAggregateMetricsAsync(scheduleId, bucket, beginTime, endTime);
+            StorageResultSetFuture queryFuture = dao.findAggregateMetricsAsync(scheduleId, bucket, beginTime, endTime);
 
             return Futures.transform(queryFuture, new ComputeAggregate(beginTime, bucket));
         } finally {
@@ -260,15 +282,17 @@ public class MetricsServer {
         Stopwatch stopwatch = new Stopwatch().start();
         try {
             DateTime begin = new DateTime(beginTime);
+            Bucket bucket = dateTimeService.isInRawDataRange(begin) ? Bucket.ONE_HOUR : getBucket(begin);
 
-            if (dateTimeService.isInRawDataRange(new DateTime(beginTime))) {
-                Iterable<RawNumericMetric> metrics = dao.findRawMetrics(scheduleIds, beginTime, endTime);
-                return calculateAggregatedRaw(metrics, beginTime);
-            }
-            Bucket bucket = getBucket(begin);
-            List<AggregateNumericMetric> metrics = loadMetrics(scheduleIds, beginTime, endTime, bucket);
+            // A single bucket spanning the whole window folds the group data into the summary
+            GroupMetricsQuery<?> query = queryGroup(scheduleIds, beginTime, endTime, new Buckets(beginTime, endTime,
+                1));
+            Buckets.Bucket summary = getGroupData(query, scheduleIds, beginTime, endTime, 1).get(0);
 
-            return calculateAggregate(metrics, beginTime, bucket);
+            // We let the caller handle setting the schedule id because in some cases we do
+            // not care about it.
+            return new AggregateNumericMetric(0, bucket, summary.getAvg(), summary.getMin(), summary.getMax(),
+                beginTime);
         } finally {
             stopwatch.stop();
             if (log.isDebugEnabled()) {
@@ -279,25 +303,55 @@ public class MetricsServer {
         }
     }
 
-    private List<AggregateNumericMetric> loadMetrics(List<Integer> scheduleIds, long begin, long end, Bucket bucket) {
-        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(scheduleIds.size());
-        for (Integer scheduleId : scheduleIds) {
-            futures.add(dao.findAggregateMetricsAsync(scheduleId, bucket, begin, end));
+    /**
+     * Starts the queries of the group members' raw or aggregate data, depending on how far back beginTime is, that are
+     * folded into buckets.
+     */
+    private GroupMetricsQuery<?> queryGroup(List<Integer> scheduleIds, final long beginTime, final long endTime,
+        Buckets buckets) {
+
+        DateTime begin = new DateTime(beginTime);
+        if (dateTimeService.isInRawDataRange(begin)) {
+            return new GroupMetricsQuery<RawNumericMetric>(scheduleIds, buckets, tasks) {
+                @Override
+                protected ListenableFuture<List<RawNumericMetric>> query(int scheduleId) {
+                    return dao.findRawMetricsAsync(scheduleId, beginTime, endTime);
+                }
+            }.start(groupQueryWindow);
         }
-        ListenableFuture<List<ResultSet>> resultSetsFuture = Futures.successfulAsList(futures);
-        try {
-            List<ResultSet> resultSets = resultSetsFuture.get();
-            AggregateNumericMetricMapper mapper = new AggregateNumericMetricMapper();
-            List<AggregateNumericMetric> metrics = new ArrayList<AggregateNumericMetric>();
-            for (ResultSet resultSet : resultSets) {
-                metrics.addAll(mapper.mapAll(resultSet));
+
+        final Bucket bucket = getBucket(begin);
+        return new GroupMetricsQuery<AggregateNumericMetric>(scheduleIds, buckets, tasks) {
+            @Override
+            protected ListenableFuture<List<AggregateNumericMetric>> query(int scheduleId) {
+                return aggregateCache.findAggregateMetricsAsync(scheduleId, bucket, beginTime, endTime);
             }
-            return metrics;
-        } catch (Exception e) {
-            log.warn("There was an error while fetching " + bucket + " data for {scheduleIds: " + scheduleIds +
-                ", beginTime: " + begin + ", endTime: " + end + "}", e);
-            return Collections.emptyList();
+
+            @Override
+            protected boolean accept(AggregateNumericMetric metric) {
+                return isValid(metric);
+            }
+        }.start(groupQueryWindow);
+    }
+
+    /**
+     * Waits for the group query to finish. If the query fails, or the calling thread is interrupted in which case the
+     * query is cancelled, empty buckets are returned.
+     */
+    private Buckets getGroupData(GroupMetricsQuery<?> query, List<Integer> scheduleIds, long beginTime, long endTime,
+        int numberOfBuckets) {
+        try {
+            return query.get();
+        } catch (InterruptedException e) {
+            query.cancel(true);
+            Thread.currentThread().interrupt();
+            log.info("The query for data of " + scheduleIds.size() + " schedules was interrupted and has been " +
+                "cancelled");
+        } catch (ExecutionException e) {
+            log.warn("There was an error while fetching data for {scheduleIds: " + scheduleIds + ", beginTime: " +
+                beginTime + ", endTime: " + endTime + "}", e.getCause());
         }
+        return new Buckets(beginTime, endTime, numberOfBuckets);
     }
 
     protected Bucket getBucket(DateTime begin) {
@@ -320,14 +374,7 @@ public class MetricsServer {
         for (RawNumericMetric metric : metrics) {
             buckets.insert(metric.getTimestamp(), metric.getValue(), metric.getValue(), metric.getValue());
         }
-
-        List<MeasurementDataNumericHighLowComposite> data = new ArrayList<MeasurementDataNumericHighLowComposite>();
-        for (int i = 0; i < buckets.getNumDataPoints(); ++i) {
-            Buckets.Bucket bucket = buckets.get(i);
-            data.add(new MeasurementDataNumericHighLowComposite(bucket.getStartTime(), bucket.getAvg(),
-                bucket.getMax(), bucket.getMin()));
-        }
-        return data;
+        return createComposites(buckets);
     }
 
     private List<MeasurementDataNumericHighLowComposite> createComposites(Iterable<AggregateNumericMetric> metrics,
@@ -335,15 +382,14 @@ public class MetricsServer {
 
         Buckets buckets = new Buckets(beginTime, endTime, numberOfBuckets);
         for (AggregateNumericMetric metric : metrics) {
-            if (invalidMetricsManager.isInvalidMetric(metric)) {
-                log.warn("The " + metric.getBucket() + " metric " + metric + " is invalid. It will be excluded from " +
-                    "the results sent to the client and we will attempt to recompute the metric.");
-                invalidMetricsManager.submit(metric);
-            } else {
+            if (isValid(metric)) {
                 buckets.insert(metric.getTimestamp(), metric.getAvg(), metric.getMin(), metric.getMax());
             }
         }
+        return createComposites(buckets);
+    }
 
+    private List<MeasurementDataNumericHighLowComposite> createComposites(Buckets buckets) {
         List<MeasurementDataNumericHighLowComposite> data = new ArrayList<MeasurementDataNumericHighLowComposite>();
         for (int i = 0; i < buckets.getNumDataPoints(); ++i) {
             Buckets.Bucket bucket = buckets.get(i);
@@ -351,7 +397,16 @@ public class MetricsServer {
                 bucket.getMax(), bucket.getMin()));
         }
         return data;
+    }
 
+    private boolean isValid(AggregateNumericMetric metric) {
+        if (invalidMetricsManager.isInvalidMetric(metric)) {
+            log.warn("The " + metric.getBucket() + " metric " + metric + " is invalid. It will be excluded from " +
+                "the results sent to the client and we will attempt to recompute the metric.");
+            invalidMetricsManager.submit(metric);
+            return false;
+        }
+        return true;
     }
 
     public synchronized void addNumericData(final Set<MeasurementDataNumeric> dataSet, final FutureCallback<Void> callback) {
@@ -444,67 +499,4 @@ public class MetricsServer {
         return this.numericQueue.remainingCapacity();
     }
 
-    private class NumericQueueConsumer extends Thread {
-        private final MeasurementDataNumeric KILL_SIGNAL = new MeasurementDataNumeric(Long.MIN_VALUE, Integer.MIN_VALUE, Double.valueOf(Double.MIN_VALUE));
-
-        @Override
-        public void run() {
-            while(true) {
-                final MeasurementDataNumeric data;
-                try {
-                    data = numericQueue.take();
-                    if(data == KILL_SIGNAL) {
-                        return;
-                    }
-                } catch (InterruptedException e) {
-                    // We still keep getting interrupted.. we really need to die
-                    return;
-                }
-                DateTime collectionTimeSlice = dateTimeService.getTimeSlice(new DateTime(data.getTimestamp()),
-                        configuration.getRawTimeSliceDuration());
-                Days days = Days.daysBetween(collectionTimeSlice, dateTimeService.now());
-
-                if (days.isGreaterThan(rawDataAgeLimit)) {
-                    log.info(data + " is older than the raw data age limit of " + rawDataAgeLimit.getDays() +
-                            " days. It will not be stored.");
-                } else {
-                    StorageResultSetFuture rawFuture = dao.insertRawData(data);
-                    StorageResultSetFuture indexFuture = dao.updateIndex(IndexBucket.RAW, collectionTimeSlice.getMillis(),
-                            data.getScheduleId());
-                    ListenableFuture<List<ResultSet>> insertsFuture = Futures.successfulAsList(rawFuture, indexFuture);
-                    Futures.addCallback(insertsFuture, new FutureCallback<List<ResultSet>>() {
-                        @Override
-                        public void onSuccess(List<ResultSet> result) {
-                        }
-
-                        @Override
-                        public void onFailure(Throwable t) {
-                            boolean offerSuccess = numericQueue.offer(data);
-                            if(!offerSuccess) {
-                                if (log.isDebugEnabled()) {
-                                    log.debug("An error occurred while inserting raw data", ThrowableUtil.getRootCause(t));
-                                } else {
-                                    log.warn("An error occurred while inserting raw data: " + ThrowableUtil.getRootMessage(t)
-                                    + ", data was: " + data);
-                                }
-                            }
-                        }
-                    }, tasks);
-                }
-            }
-        }
-
-        /**
-         * Push KILL_SIGNAL to the processing queue
-         */
-        public void shutdown() {
-            try {
-                numericQueue.put(KILL_SIGNAL);
-            } catch (InterruptedException e) {
-                log.warn("Could not push kill signal to the numericQueue. Possible data loss.");
-                Thread.currentThread().interrupt();
-            }
-        }
-    }
-
 }
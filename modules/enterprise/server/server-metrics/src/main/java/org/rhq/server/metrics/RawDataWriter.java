@@ -0,0 +1,384 @@
+/*
+ *
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ */
+
+package org.rhq.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.datastax.driver.core.ResultSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.joda.time.Days;
+
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.server.metrics.domain.IndexBucket;
+
+/**
+ * <p>
+ * Drains the raw data queue of {@link MetricsServer} in bulk and writes the data to the storage cluster. Each drained
+ * batch is sorted by schedule id so that writes for the same partition are issued back to back, which lets a token
+ * aware load balancing policy route them to the same replica. Writes are pipelined asynchronously with a bounded
+ * number of requests in flight; the writer blocks once the window is full rather than piling up futures in the driver.
+ * </p>
+ * <p>
+ * Index updates are de-duplicated for the current raw time slice only. Only the first datum of a schedule in the
+ * current time slice results in an index insert; the entry is forgotten if the insert fails so that it will be retried
+ * with the next datum. The aggregator deletes the index entries of a time slice once it has processed it, which only
+ * happens after the slice has ended, so late data for a past time slice always writes its index entry. The
+ * de-duplication is reset whenever a new time slice starts.
+ * </p>
+ */
+public class RawDataWriter extends Thread {
+
+    private static final Log log = LogFactory.getLog(RawDataWriter.class);
+
+    /**
+     * Upper bounds (inclusive) of the batch size histogram buckets. The last bucket collects everything larger.
+     */
+    private static final int[] BATCH_SIZE_BUCKETS = {1, 10, 100, 1000};
+
+    private static final long RATE_INTERVAL = 5000;
+
+    static final MeasurementDataNumeric KILL_SIGNAL = new MeasurementDataNumeric(Long.MIN_VALUE, Integer.MIN_VALUE,
+        Double.valueOf(Double.MIN_VALUE));
+
+    private static final Comparator<MeasurementDataNumeric> BY_SCHEDULE_ID = new Comparator<MeasurementDataNumeric>() {
+        @Override
+        public int compare(MeasurementDataNumeric d1, MeasurementDataNumeric d2) {
+            return d1.getScheduleId() < d2.getScheduleId() ? -1 : (d1.getScheduleId() == d2.getScheduleId() ? 0 : 1);
+        }
+    };
+
+    private final BlockingQueue<MeasurementDataNumeric> queue;
+
+    private final MetricsDAO dao;
+
+    private final DateTimeService dateTimeService;
+
+    private final MetricsConfiguration configuration;
+
+    private final Executor callbackExecutor;
+
+    private final int batchSize;
+
+    private final int maxInFlight;
+
+    private final Semaphore inFlightPermits;
+
+    private volatile Days rawDataAgeLimit;
+
+    /**
+     * Schedule id --> start of the raw time slice for which an index entry has been written (or is being written). Only
+     * holds entries for {@link #currentTimeSlice}.
+     */
+    private final ConcurrentMap<Integer, Long> indexedTimeSlices = new ConcurrentHashMap<Integer, Long>();
+
+    private long currentTimeSlice;
+
+    private final AtomicLong rawInserts = new AtomicLong();
+
+    private final AtomicLong indexUpdates = new AtomicLong();
+
+    private final AtomicLong failedInserts = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong drained = new AtomicLong();
+
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(BATCH_SIZE_BUCKETS.length + 1);
+
+    private volatile int maxBatchSize;
+
+    private volatile int peakInFlight;
+
+    private volatile double rawInsertRate;
+
+    private long rateIntervalStart = System.currentTimeMillis();
+
+    private long rateIntervalStartInserts;
+
+    public RawDataWriter(BlockingQueue<MeasurementDataNumeric> queue, MetricsDAO dao, DateTimeService dateTimeService,
+        MetricsConfiguration configuration, Days rawDataAgeLimit, Executor callbackExecutor) {
+        super("MetricsServer RawDataWriter");
+        this.queue = queue;
+        this.dao = dao;
+        this.dateTimeService = dateTimeService;
+        this.configuration = configuration;
+        this.rawDataAgeLimit = rawDataAgeLimit;
+        this.callbackExecutor = callbackExecutor;
+        this.batchSize = configuration.getRawWriteBatchSize();
+        this.maxInFlight = configuration.getRawWriteMaxInFlight();
+        this.inFlightPermits = new Semaphore(maxInFlight);
+    }
+
+    public void setRawDataAgeLimit(Days rawDataAgeLimit) {
+        this.rawDataAgeLimit = rawDataAgeLimit;
+    }
+
+    @Override
+    public void run() {
+        List<MeasurementDataNumeric> batch = new ArrayList<MeasurementDataNumeric>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // We still keep getting interrupted.. we really need to die
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            boolean killed = batch.remove(KILL_SIGNAL);
+            try {
+                write(batch);
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while writing raw data. " + batch.size() + " data points may be lost.");
+                return;
+            } finally {
+                batch.clear();
+            }
+            if (killed) {
+                awaitInFlightWrites();
+                return;
+            }
+        }
+    }
+
+    private void write(List<MeasurementDataNumeric> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Collections.sort(batch, BY_SCHEDULE_ID);
+        recordBatch(batch.size());
+
+        DateTime now = dateTimeService.now();
+        long nowTimeSlice = dateTimeService.getTimeSlice(now, configuration.getRawTimeSliceDuration()).getMillis();
+        if (nowTimeSlice != currentTimeSlice) {
+            indexedTimeSlices.clear();
+            currentTimeSlice = nowTimeSlice;
+        }
+
+        for (final MeasurementDataNumeric data : batch) {
+            DateTime collectionTimeSlice = dateTimeService.getTimeSlice(new DateTime(data.getTimestamp()),
+                configuration.getRawTimeSliceDuration());
+            Days days = Days.daysBetween(collectionTimeSlice, now);
+
+            if (days.isGreaterThan(rawDataAgeLimit)) {
+                log.info(data + " is older than the raw data age limit of " + rawDataAgeLimit.getDays() +
+                    " days. It will not be stored.");
+                continue;
+            }
+
+            acquireInFlightPermit();
+            StorageResultSetFuture rawFuture = dao.insertRawData(data);
+            Futures.addCallback(rawFuture, new FutureCallback<ResultSet>() {
+                @Override
+                public void onSuccess(ResultSet result) {
+                    inFlightPermits.release();
+                    rawInserts.incrementAndGet();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    inFlightPermits.release();
+                    failedInserts.incrementAndGet();
+                    if (!queue.offer(data)) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("An error occurred while inserting raw data", ThrowableUtil.getRootCause(t));
+                        } else {
+                            log.warn("An error occurred while inserting raw data: " +
+                                ThrowableUtil.getRootMessage(t) + ", data was: " + data);
+                        }
+                    }
+                }
+            }, callbackExecutor);
+
+            updateIndex(data.getScheduleId(), collectionTimeSlice.getMillis());
+        }
+        updateRate();
+    }
+
+    private void updateIndex(final int scheduleId, final long timeSlice) throws InterruptedException {
+        // the index entry of a past time slice may already have been deleted by the aggregator, always write it
+        if (timeSlice == currentTimeSlice && indexedTimeSlices.putIfAbsent(scheduleId, timeSlice) != null) {
+            return;
+        }
+
+        acquireInFlightPermit();
+        StorageResultSetFuture indexFuture = dao.updateIndex(IndexBucket.RAW, timeSlice, scheduleId);
+        Futures.addCallback(indexFuture, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+                inFlightPermits.release();
+                indexUpdates.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                inFlightPermits.release();
+                // Forget the entry so that the next datum for the schedule in this time slice retries the insert
+                indexedTimeSlices.remove(scheduleId, timeSlice);
+                if (log.isDebugEnabled()) {
+                    log.debug("An error occurred while updating the raw index for [scheduleId: " + scheduleId +
+                        ", timeSlice: " + timeSlice + "]", ThrowableUtil.getRootCause(t));
+                }
+            }
+        }, callbackExecutor);
+    }
+
+    private void acquireInFlightPermit() throws InterruptedException {
+        inFlightPermits.acquire();
+        int inFlight = maxInFlight - inFlightPermits.availablePermits();
+        if (inFlight > peakInFlight) {
+            peakInFlight = inFlight;
+        }
+    }
+
+    private void awaitInFlightWrites() {
+        try {
+            inFlightPermits.acquire(maxInFlight);
+            inFlightPermits.release(maxInFlight);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for in flight raw data writes to finish. Potential data loss.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordBatch(int size) {
+        batches.incrementAndGet();
+        drained.addAndGet(size);
+        if (size > maxBatchSize) {
+            maxBatchSize = size;
+        }
+        int bucket = 0;
+        while (bucket < BATCH_SIZE_BUCKETS.length && size > BATCH_SIZE_BUCKETS[bucket]) {
+            ++bucket;
+        }
+        batchSizeHistogram.incrementAndGet(bucket);
+    }
+
+    private void updateRate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - rateIntervalStart;
+        if (elapsed >= RATE_INTERVAL) {
+            long inserts = rawInserts.get();
+            rawInsertRate = ((inserts - rateIntervalStartInserts) * 1000.0) / elapsed;
+            rateIntervalStartInserts = inserts;
+            rateIntervalStart = now;
+        }
+    }
+
+    /**
+     * Pushes the kill signal to the end of the queue. The writer exits after it has written everything that was
+     * queued before the signal and all of its in flight requests have completed.
+     */
+    public void shutdown() {
+        try {
+            queue.put(KILL_SIGNAL);
+        } catch (InterruptedException e) {
+            log.warn("Could not push kill signal to the numericQueue. Possible data loss.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of raw data points successfully written
+     */
+    public long getRawInserts() {
+        return rawInserts.get();
+    }
+
+    /**
+     * @return The number of raw index entries successfully written
+     */
+    public long getIndexUpdates() {
+        return indexUpdates.get();
+    }
+
+    public long getFailedInserts() {
+        return failedInserts.get();
+    }
+
+    /**
+     * @return The number of raw data points successfully written per second, measured over the last completed interval
+     */
+    public double getRawInsertRate() {
+        return rawInsertRate;
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getMeanBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) drained.get() / count;
+    }
+
+    /**
+     * @return The batch size distribution as a human readable string, e.g. <code>[&lt;=1: 3, &lt;=10: 12, ...]</code>
+     */
+    public String getBatchSizeDistribution() {
+        StringBuilder distribution = new StringBuilder("[");
+        for (int i = 0; i < BATCH_SIZE_BUCKETS.length; ++i) {
+            distribution.append("<=").append(BATCH_SIZE_BUCKETS[i]).append(": ").append(batchSizeHistogram.get(i))
+                .append(", ");
+        }
+        distribution.append(">").append(BATCH_SIZE_BUCKETS[BATCH_SIZE_BUCKETS.length - 1]).append(": ")
+            .append(batchSizeHistogram.get(BATCH_SIZE_BUCKETS.length)).append("]");
+        return distribution.toString();
+    }
+
+    public int getInFlightRequests() {
+        return maxInFlight - inFlightPermits.availablePermits();
+    }
+
+    public int getPeakInFlightRequests() {
+        return peakInFlight;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlight;
+    }
+
+}
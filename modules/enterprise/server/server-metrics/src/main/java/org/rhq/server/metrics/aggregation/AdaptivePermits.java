@@ -0,0 +1,170 @@
+package org.rhq.server.metrics.aggregation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.datastax.driver.core.exceptions.QueryTimeoutException;
+
+/**
+ * <p>
+ * Limits the number of aggregation batches that are in flight against the storage cluster. This takes the place of
+ * the fixed Semaphore that aggregation used to throttle with. Rather than a fixed number of permits, the limit is
+ * adjusted from the latency and timeouts observed as batches finish using an additive increase, multiplicative
+ * decrease scheme. Each batch that finishes within the target latency raises the limit by 1/limit, so the limit grows
+ * by roughly one per round of batches. A timeout or a batch that takes more than twice the target latency cuts the
+ * limit by a quarter. Decreases are applied at most once per target latency interval so that a burst of timeouts
+ * caused by the same overload does not collapse the limit to its minimum.
+ * </p>
+ * <p>
+ * The limit always stays between the minimum and maximum passed to the constructor.
+ * </p>
+ */
+class AdaptivePermits {
+
+    private static final double BACKOFF_RATIO = 0.75;
+
+    /** Weight given to the latest sample in the moving average of the batch latency */
+    private static final double LATENCY_WEIGHT = 0.1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitReleased = lock.newCondition();
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long targetLatency;
+
+    private double limit;
+
+    private int inFlight;
+
+    private double meanLatency;
+
+    private long lastDecrease;
+
+    private long timeouts;
+
+    /**
+     * @param initialLimit The number of permits to start out with
+     * @param minLimit The lower bound for the limit
+     * @param maxLimit The upper bound for the limit
+     * @param targetLatency The batch latency in milliseconds under which the limit is allowed to grow
+     */
+    public AdaptivePermits(int initialLimit, int minLimit, int maxLimit, long targetLatency) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        lastDecrease = System.nanoTime() - this.targetLatency - 1;
+    }
+
+    /**
+     * Blocks until the number of batches in flight is below the current limit and then checks out a permit.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting for a permit
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                permitReleased.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks a permit back in and adjusts the limit.
+     *
+     * @param latency The time in nanoseconds the batch took from acquiring its permit
+     * @param timedOut true if the batch failed because of a read or write timeout
+     */
+    public void release(long latency, boolean timedOut) {
+        lock.lock();
+        try {
+            inFlight--;
+            meanLatency = meanLatency == 0 ? latency : meanLatency + LATENCY_WEIGHT * (latency - meanLatency);
+            if (timedOut) {
+                timeouts++;
+            }
+            if (timedOut || latency > targetLatency * 2) {
+                long now = System.nanoTime();
+                if (now - lastDecrease > targetLatency) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecrease = now;
+                }
+            } else if (latency <= targetLatency) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of batches currently allowed in flight
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of permits currently checked out
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The moving average of the batch latency in milliseconds
+     */
+    public double getMeanLatency() {
+        lock.lock();
+        try {
+            return meanLatency / TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of batches that failed with a timeout
+     */
+    public long getTimeouts() {
+        lock.lock();
+        try {
+            return timeouts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the failure or one of its causes is a read or write timeout reported by the driver
+     */
+    static boolean isTimeout(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof QueryTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
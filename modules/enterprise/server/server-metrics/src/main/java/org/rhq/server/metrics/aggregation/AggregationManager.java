@@ -4,9 +4,13 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -20,6 +24,7 @@ import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
 import org.rhq.server.metrics.AbortedException;
+import org.rhq.server.metrics.AggregateCache;
 import org.rhq.server.metrics.DateTimeService;
 import org.rhq.server.metrics.MetricsConfiguration;
 import org.rhq.server.metrics.MetricsDAO;
@@ -28,9 +33,25 @@ import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.IndexBucket;
 
 /**
+ * <p>
+ * Runs the raw, 1 hour, and 6 hour data aggregation. The three stages run concurrently. The 1 hour and 6 hour
+ * aggregators follow behind the aggregator that feeds them, querying a time slice of the index only once the upstream
+ * aggregator has completed it.
+ * </p>
+ * <p>
+ * The number of batches in flight against the storage cluster is shared by all stages and is adjusted from the
+ * observed batch latency and timeouts, see {@link AdaptivePermits}. It starts out at batch size * parallelism and is
+ * bounded by the rhq.metrics.aggregation.max-concurrency system property. The latency under which it is allowed to
+ * grow is set with rhq.metrics.aggregation.target-latency in milliseconds.
+ * </p>
+ * <p>
+ * The slices of the {@link AggregateCache} that hold the aggregates being persisted are invalidated as the writes
+ * complete.
+ * </p>
+ *
  * @author John Sanda
  */
-public class AggregationManager {
+public class AggregationManager implements AggregationManagerMBean {
 
     private static final Comparator<AggregateNumericMetric> AGGREGATE_COMPARATOR = new Comparator<AggregateNumericMetric>() {
         @Override
@@ -61,6 +82,8 @@ public class AggregationManager {
 
     private MetricsConfiguration configuration;
 
+    private AggregateCache aggregateCache;
+
     private int batchSize;
 
     private int parallelism;
@@ -69,11 +92,25 @@ public class AggregationManager {
 
     private ThreadPoolExecutor threadPool;
 
-    public AggregationManager(MetricsDAO dao, DateTimeService dtService, MetricsConfiguration configuration) {
+    private ExecutorService stageScheduler;
+
+    private volatile AdaptivePermits permits;
+
+    private volatile DataAggregator<?> rawAggregator;
+
+    private volatile DataAggregator<?> oneHourAggregator;
+
+    private volatile DataAggregator<?> sixHourAggregator;
+
+    private volatile boolean running;
+
+    public AggregationManager(MetricsDAO dao, DateTimeService dtService, MetricsConfiguration configuration,
+        AggregateCache aggregateCache) {
 
         this.dao = dao;
         this.dtService = dtService;
         this.configuration = configuration;
+        this.aggregateCache = aggregateCache;
         batchSize = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.batch-size", "5"));
         parallelism = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.parallelism", "3"));
 
@@ -86,28 +123,58 @@ public class AggregationManager {
         threadPool = new ThreadPoolExecutor(numWorkers, numWorkers, 30, TimeUnit.SECONDS,
             new LinkedBlockingQueue<Runnable>(), new StorageClientThreadFactory("AggregationTasks"));
         aggregationTasks = MoreExecutors.listeningDecorator(threadPool);
+        // The 1 hour and 6 hour stages are scheduled from their own threads while the raw stage is scheduled from the
+        // thread calling run(). They only schedule tasks, the aggregation itself is done by the worker threads above.
+        stageScheduler = Executors.newFixedThreadPool(2, new StorageClientThreadFactory("AggregationStages"));
+        permits = createPermits();
+    }
+
+    private AdaptivePermits createPermits() {
+        int initialLimit = batchSize * parallelism;
+        int maxLimit = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.max-concurrency",
+            Integer.toString(initialLimit * 4)));
+        long targetLatency = Long.parseLong(System.getProperty("rhq.metrics.aggregation.target-latency", "2000"));
+
+        log.debug("Allocating " + initialLimit + " permits which can be adjusted between " + parallelism + " and " +
+            maxLimit);
+
+        return new AdaptivePermits(initialLimit, parallelism, maxLimit, targetLatency);
     }
 
     public void shutdown() {
+        stageScheduler.shutdownNow();
         aggregationTasks.shutdownNow();
     }
 
+    @Override
     public int getBatchSize() {
         return batchSize;
     }
 
+    /**
+     * Changing the batch size resets the number of batches allowed in flight, which takes effect the next time
+     * aggregation runs.
+     */
     public void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
+        permits = createPermits();
     }
 
+    @Override
     public int getParallelism() {
         return parallelism;
     }
 
+    /**
+     * Changing the parallelism resets the number of batches allowed in flight, which takes effect the next time
+     * aggregation runs.
+     */
     public void setParallelism(int parallelism) {
         this.parallelism = parallelism;
+        permits = createPermits();
     }
 
+    @Override
     public int getNumWorkers() {
         return threadPool.getMaximumPoolSize();
     }
@@ -122,57 +189,169 @@ public class AggregationManager {
      * @return The total aggregation time in milliseconds since server start. This property is updated after each of
      * raw, one hour, and six hour data are aggregated.
      */
+    @Override
     public long getTotalAggregationTime() {
         return totalAggregationTime.get();
     }
 
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public double getRawProgress() {
+        return getProgress(rawAggregator);
+    }
+
+    @Override
+    public double getOneHourProgress() {
+        return getProgress(oneHourAggregator);
+    }
+
+    @Override
+    public double getSixHourProgress() {
+        return getProgress(sixHourAggregator);
+    }
+
+    private double getProgress(DataAggregator<?> aggregator) {
+        return aggregator == null ? 0.0 : aggregator.getProgress() * 100;
+    }
+
+    @Override
+    public long getRawElapsedTime() {
+        return rawAggregator == null ? 0 : rawAggregator.getElapsedTime();
+    }
+
+    @Override
+    public long getOneHourElapsedTime() {
+        return oneHourAggregator == null ? 0 : oneHourAggregator.getElapsedTime();
+    }
+
+    @Override
+    public long getSixHourElapsedTime() {
+        return sixHourAggregator == null ? 0 : sixHourAggregator.getElapsedTime();
+    }
+
+    @Override
+    public long getEstimatedTimeRemaining() {
+        if (!running) {
+            return 0;
+        }
+        long estimate = -1;
+        for (DataAggregator<?> aggregator : new DataAggregator<?>[] {rawAggregator, oneHourAggregator,
+            sixHourAggregator}) {
+            if (aggregator != null && !aggregator.isFinished()) {
+                estimate = Math.max(estimate, aggregator.getEstimatedTimeRemaining());
+            }
+        }
+        return estimate;
+    }
+
+    @Override
+    public int getScheduledBatches() {
+        return getScheduledBatches(rawAggregator) + getScheduledBatches(oneHourAggregator) +
+            getScheduledBatches(sixHourAggregator);
+    }
+
+    private int getScheduledBatches(DataAggregator<?> aggregator) {
+        return aggregator == null ? 0 : aggregator.getScheduledBatches();
+    }
+
+    @Override
+    public int getFinishedBatches() {
+        return getFinishedBatches(rawAggregator) + getFinishedBatches(oneHourAggregator) +
+            getFinishedBatches(sixHourAggregator);
+    }
+
+    private int getFinishedBatches(DataAggregator<?> aggregator) {
+        return aggregator == null ? 0 : aggregator.getFinishedBatches();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return permits.getLimit();
+    }
+
+    @Override
+    public int getInFlightBatches() {
+        return permits.getInFlight();
+    }
+
+    @Override
+    public double getMeanBatchLatency() {
+        return permits.getMeanLatency();
+    }
+
+    @Override
+    public long getBatchTimeouts() {
+        return permits.getTimeouts();
+    }
+
     public Set<AggregateNumericMetric> run() {
         log.info("Starting metrics data aggregation");
         Stopwatch stopwatch = Stopwatch.createStarted();
-        Semaphore permits = new Semaphore(batchSize * parallelism);
-
-        log.debug("Allocating " + permits.availablePermits() + " permits");
+        AdaptivePermits permits = this.permits;
 
         int num1Hour = 0;
         int num6Hour = 0;
         int num24Hour = 0;
+        Future<Integer> oneHourStage = null;
+        Future<Integer> sixHourStage = null;
+        running = true;
         try {
-            PersistFunctions persistFunctions = new PersistFunctions(dao, dtService);
+            PersistFunctions persistFunctions = new PersistFunctions(dao, dtService, aggregateCache);
             final Set<AggregateNumericMetric> oneHourData = new ConcurrentSkipListSet<AggregateNumericMetric>(
                 AGGREGATE_COMPARATOR);
             DateTime endTime = dtService.currentHour();
-            DateTime end = endTime;
-            // We set the start time to the retention period minus 1 hour, or 6 days and 23
-            // hours ago instead of 7 days ago because if we set the start time to the full
-            // 7 days, then we could end up in a situation where data has expired and
-            // aggregate metric get overwritten with partial data.
-            DateTime start = end.minus(configuration.getRawRetention().toPeriod().minusHours(1));
-            DataAggregator rawAggregator = createRawAggregator(persistFunctions, permits);
+
+            DataAggregator<?> rawAggregator = createRawAggregator(persistFunctions, permits);
             rawAggregator.setBatchFinishedListener(new DataAggregator.BatchFinishedListener() {
                 @Override
                 public void onFinish(List<AggregateNumericMetric> metrics) {
                     oneHourData.addAll(metrics);
                 }
             });
-            num1Hour = rawAggregator.execute(start, end);
+            DataAggregator<?> oneHourAggregator = create1HourAggregator(persistFunctions, permits);
+            oneHourAggregator.setUpstream(rawAggregator);
+            DataAggregator<?> sixHourAggregator = create6HourAggregator(persistFunctions, permits);
+            sixHourAggregator.setUpstream(oneHourAggregator);
 
-            end = dtService.get6HourTimeSlice(endTime);
-            start = dtService.get6HourTimeSlice(endTime).minus(configuration.getRawRetention());
-            num6Hour = create1HourAggregator(persistFunctions, permits).execute(start, end);
+            this.rawAggregator = rawAggregator;
+            this.oneHourAggregator = oneHourAggregator;
+            this.sixHourAggregator = sixHourAggregator;
+
+            DateTime end = dtService.get6HourTimeSlice(endTime);
+            DateTime start = dtService.get6HourTimeSlice(endTime).minus(configuration.getRawRetention());
+            oneHourStage = stageScheduler.submit(execute(oneHourAggregator, start, end));
 
             end = dtService.get24HourTimeSlice(endTime);
             start = dtService.get24HourTimeSlice(endTime).minus(configuration.getRawRetention());
-            num24Hour = create6HourAggregator(persistFunctions, permits).execute(start, end);
+            sixHourStage = stageScheduler.submit(execute(sixHourAggregator, start, end));
+
+            end = endTime;
+            // We set the start time to the retention period minus 1 hour, or 6 days and 23
+            // hours ago instead of 7 days ago because if we set the start time to the full
+            // 7 days, then we could end up in a situation where data has expired and
+            // aggregate metric get overwritten with partial data.
+            start = end.minus(configuration.getRawRetention().toPeriod().minusHours(1));
+            num1Hour = rawAggregator.execute(start, end);
+
+            num6Hour = waitForStage(oneHourStage);
+            num24Hour = waitForStage(sixHourStage);
 
             return oneHourData;
         } catch (InterruptedException e) {
             log.info("There was an interrupt while waiting for aggregation to finish. Aggregation will be aborted.");
+            cancelStage(oneHourStage);
+            cancelStage(sixHourStage);
             return Collections.emptySet();
         }
         catch (AbortedException e) {
             log.warn("Aggregation has been aborted: " + e.getMessage());
             return Collections.emptySet();
         } finally {
+            running = false;
             stopwatch.stop();
             totalAggregationTime.addAndGet(stopwatch.elapsed(TimeUnit.MILLISECONDS));
             log.info("Finished aggregation of {\"raw schedules\": " + num1Hour + ", \"1 hour schedules\": " + num6Hour +
@@ -180,7 +359,34 @@ public class AggregationManager {
         }
     }
 
-    private DataAggregator createRawAggregator(PersistFunctions persistFunctions, Semaphore permits) {
+    private Callable<Integer> execute(final DataAggregator<?> aggregator, final DateTime start, final DateTime end) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return aggregator.execute(start, end);
+            }
+        };
+    }
+
+    private int waitForStage(Future<Integer> stage) throws InterruptedException, AbortedException {
+        try {
+            return stage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AbortedException) {
+                throw (AbortedException) e.getCause();
+            }
+            throw new AbortedException("There was an unexpected error running aggregation: " +
+                e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void cancelStage(Future<Integer> stage) {
+        if (stage != null) {
+            stage.cancel(true);
+        }
+    }
+
+    private DataAggregator createRawAggregator(PersistFunctions persistFunctions, AdaptivePermits permits) {
         DataAggregator aggregator = new DataAggregator();
         aggregator.setAggregationTasks(aggregationTasks);
         aggregator.setBucket(IndexBucket.RAW);
@@ -195,7 +401,7 @@ public class AggregationManager {
         return aggregator;
     }
 
-    private DataAggregator create1HourAggregator(PersistFunctions persistFunctions, Semaphore permits) {
+    private DataAggregator create1HourAggregator(PersistFunctions persistFunctions, AdaptivePermits permits) {
         DataAggregator aggregator = new DataAggregator();
         aggregator.setAggregationTasks(aggregationTasks);
         aggregator.setBucket(IndexBucket.ONE_HOUR);
@@ -210,7 +416,7 @@ public class AggregationManager {
         return aggregator;
     }
 
-    private DataAggregator create6HourAggregator(PersistFunctions persistFunctions, Semaphore permits) {
+    private DataAggregator create6HourAggregator(PersistFunctions persistFunctions, AdaptivePermits permits) {
         DataAggregator aggregator = new DataAggregator();
         aggregator.setAggregationTasks(aggregationTasks);
         aggregator.setBucket(IndexBucket.SIX_HOUR);
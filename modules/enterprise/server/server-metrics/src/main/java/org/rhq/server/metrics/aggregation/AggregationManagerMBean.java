@@ -0,0 +1,52 @@
+package org.rhq.server.metrics.aggregation;
+
+/**
+ * Management interface for monitoring metrics data aggregation. Progress is reported per stage as the percentage of
+ * the stage's date range that has been aggregated.
+ */
+public interface AggregationManagerMBean {
+
+    int getBatchSize();
+
+    int getParallelism();
+
+    int getNumWorkers();
+
+    long getTotalAggregationTime();
+
+    boolean isRunning();
+
+    // Progress of the current or last run
+
+    double getRawProgress();
+
+    double getOneHourProgress();
+
+    double getSixHourProgress();
+
+    long getRawElapsedTime();
+
+    long getOneHourElapsedTime();
+
+    long getSixHourElapsedTime();
+
+    /**
+     * @return The estimated time in milliseconds until the current run finishes, 0 if aggregation is not running, or
+     * -1 if there is no estimate yet
+     */
+    long getEstimatedTimeRemaining();
+
+    int getScheduledBatches();
+
+    int getFinishedBatches();
+
+    // Adaptive concurrency
+
+    int getConcurrencyLimit();
+
+    int getInFlightBatches();
+
+    double getMeanBatchLatency();
+
+    long getBatchTimeouts();
+}
@@ -28,6 +28,8 @@ public class Batch implements Iterable<IndexEntry> {
 
     private ListenableFuture<List<ResultSet>> queriesFuture;
 
+    private long submitTime;
+
     public DateTime getStartTime() {
         return startTime;
     }
@@ -68,6 +70,18 @@ public class Batch implements Iterable<IndexEntry> {
         return this;
     }
 
+    /**
+     * @return The value of {@link System#nanoTime()} when the batch got its permit and was submitted for aggregation
+     */
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public Batch setSubmitTime(long submitTime) {
+        this.submitTime = submitTime;
+        return this;
+    }
+
     @Override
     public Iterator<IndexEntry> iterator() {
         return indexEntries.iterator();
@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,6 +39,13 @@ import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 import org.rhq.server.metrics.domain.ResultSetMapper;
 
 /**
+ * <p>
+ * Aggregates the data of one bucket. Besides the number of schedules aggregated, the aggregator keeps track of how far
+ * it has gotten. All data with a timestamp before the {@link #getCompletedThrough() completed through} time has been
+ * aggregated, which is what allows the aggregator of the next bucket to run at the same time and follow right behind
+ * this one. The same time is used to report the progress and estimated time remaining of the aggregation.
+ * </p>
+ *
  * @author John Sanda
  */
 class DataAggregator<T extends NumericMetric> {
@@ -59,7 +66,7 @@ class DataAggregator<T extends NumericMetric> {
 
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persistMetrics;
 
-    private Semaphore permits;
+    private AdaptivePermits permits;
 
     private ListeningExecutorService aggregationTasks;
 
@@ -79,6 +86,31 @@ class DataAggregator<T extends NumericMetric> {
 
     private int batchSize;
 
+    private DataAggregator<?> upstream;
+
+    /** Guards the fields used to compute the completed through time */
+    private final Object progressLock = new Object();
+
+    /** The number of unfinished batches for each time slice that has some */
+    private final TreeMap<Long, Integer> inFlightTimeSlices = new TreeMap<Long, Integer>();
+
+    /** No batches will be scheduled for time slices before this one */
+    private long schedulingTimeSlice = Long.MIN_VALUE;
+
+    private boolean aborted;
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private volatile long startNanos;
+
+    private volatile long finishNanos;
+
+    private AtomicInteger scheduledBatches = new AtomicInteger();
+
+    private AtomicInteger finishedBatches = new AtomicInteger();
+
     void setDao(MetricsDAO dao) {
         this.dao = dao;
     }
@@ -96,7 +128,11 @@ class DataAggregator<T extends NumericMetric> {
         this.persistMetrics = persistMetrics;
     }
 
-    void setPermits(Semaphore permits) {
+    IndexBucket getBucket() {
+        return bucket;
+    }
+
+    void setPermits(AdaptivePermits permits) {
         this.permits = permits;
     }
 
@@ -124,11 +160,137 @@ class DataAggregator<T extends NumericMetric> {
         this.batchSize = batchSize;
     }
 
+    /**
+     * @param upstream The aggregator that writes the index entries this aggregator reads. Index queries for a time slice
+     * wait until the upstream aggregator has completed that time slice.
+     */
+    void setUpstream(DataAggregator<?> upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * @return The time before which all data has been aggregated. This is {@link Long#MIN_VALUE} before aggregation
+     * starts and {@link Long#MAX_VALUE} once it has finished.
+     */
+    long getCompletedThrough() {
+        synchronized (progressLock) {
+            if (inFlightTimeSlices.isEmpty()) {
+                return schedulingTimeSlice;
+            }
+            return Math.min(schedulingTimeSlice, inFlightTimeSlices.firstKey());
+        }
+    }
+
+    /**
+     * Blocks until all data before the given time has been aggregated.
+     *
+     * @param time The time, exclusive, through which aggregation has to be completed
+     * @return false if aggregation has been aborted, in which case the data will not be completed
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    boolean awaitCompletedThrough(long time) throws InterruptedException {
+        synchronized (progressLock) {
+            while (!aborted && getCompletedThrough() < time) {
+                progressLock.wait();
+            }
+            return !aborted;
+        }
+    }
+
+    private void setSchedulingTimeSlice(long timeSlice) {
+        synchronized (progressLock) {
+            if (timeSlice > schedulingTimeSlice) {
+                schedulingTimeSlice = timeSlice;
+                progressLock.notifyAll();
+            }
+        }
+    }
+
+    private void timeSliceScheduled(long timeSlice) {
+        synchronized (progressLock) {
+            Integer count = inFlightTimeSlices.get(timeSlice);
+            inFlightTimeSlices.put(timeSlice, count == null ? 1 : count + 1);
+        }
+    }
+
+    private void timeSliceFinished(long timeSlice) {
+        synchronized (progressLock) {
+            Integer count = inFlightTimeSlices.get(timeSlice);
+            if (count == null || count == 1) {
+                inFlightTimeSlices.remove(timeSlice);
+                progressLock.notifyAll();
+            } else {
+                inFlightTimeSlices.put(timeSlice, count - 1);
+            }
+        }
+    }
+
+    private void abort(String msg) {
+        synchronized (progressLock) {
+            aborted = true;
+            progressLock.notifyAll();
+        }
+        taskTracker.abort(msg);
+    }
+
+    /**
+     * @return The fraction of the date range passed to {@link #execute(DateTime, DateTime)} that has been aggregated
+     */
+    double getProgress() {
+        if (finishNanos != 0) {
+            return 1.0;
+        }
+        long completedThrough = getCompletedThrough();
+        if (startNanos == 0 || completedThrough <= startTime) {
+            return 0.0;
+        }
+        return Math.min(1.0, (double) (completedThrough - startTime) / (endTime - startTime));
+    }
+
+    /**
+     * @return The estimated time in milliseconds until this aggregator finishes, extrapolated from its progress so
+     * far, or -1 if there is no estimate yet
+     */
+    long getEstimatedTimeRemaining() {
+        if (finishNanos != 0) {
+            return 0;
+        }
+        double progress = getProgress();
+        if (progress <= 0.0) {
+            return -1;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return (long) (elapsed * (1.0 - progress) / progress);
+    }
+
+    /**
+     * @return The time in milliseconds this aggregator has been running, or ran for if it has finished
+     */
+    long getElapsedTime() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long finish = finishNanos == 0 ? System.nanoTime() : finishNanos;
+        return TimeUnit.NANOSECONDS.toMillis(finish - startNanos);
+    }
+
+    boolean isFinished() {
+        return finishNanos != 0;
+    }
+
+    int getScheduledBatches() {
+        return scheduledBatches.get();
+    }
+
+    int getFinishedBatches() {
+        return finishedBatches.get();
+    }
+
     @SuppressWarnings("unchecked")
-    protected void aggregationTaskFinished(ListenableFuture<List<AggregateNumericMetric>> metricsFuture,
+    protected void aggregationTaskFinished(Batch batch, ListenableFuture<List<AggregateNumericMetric>> metricsFuture,
         ListenableFuture<List<ResultSet>> deletedIndexEntriesFuture) {
         final ListenableFuture<List<List<?>>> argsFuture = Futures.allAsList(metricsFuture, deletedIndexEntriesFuture);
-        Futures.addCallback(argsFuture, new AggregationTaskFinishedCallback<List<List<?>>>() {
+        Futures.addCallback(argsFuture, new AggregationTaskFinishedCallback<List<List<?>>>(batch) {
             @Override
             protected void onFinish(List<List<?>> args) {
                 List<AggregateNumericMetric> metrics = (List<AggregateNumericMetric>) args.get(0);
@@ -145,8 +307,12 @@ class DataAggregator<T extends NumericMetric> {
 
         log.info("Starting " + bucket + " data aggregation");
         Stopwatch stopwatch = Stopwatch.createStarted();
+        startTime = start.getMillis();
+        endTime = end.getMillis();
+        startNanos = System.nanoTime();
+        setSchedulingTimeSlice(startTime);
         try {
-            IndexIterator iterator = new IndexIterator(start, end, bucket, dao, configuration);
+            IndexIterator iterator = new IndexIterator(start, end, bucket, dao, configuration, upstream);
             Batch batch = new Batch();
             while (iterator.hasNext()) {
                 IndexEntry indexEntry = iterator.next();
@@ -167,20 +333,33 @@ class DataAggregator<T extends NumericMetric> {
                         .setEndTime(new DateTime(indexEntry.getTimestamp()).plus(timeSliceDuration))
                         .add(indexEntry);
                 }
+                // Everything before the pending batch, or before the time slice the iterator has moved on to, has
+                // been scheduled.
+                setSchedulingTimeSlice(batch.getStartTime() == null ? iterator.getTimeSlice() :
+                    batch.getStartTime().getMillis());
             }
             if (batch.size() > 0) {
                 submitAggregationTask(batch);
             }
             iterator = null;
+            setSchedulingTimeSlice(Long.MAX_VALUE);
             taskTracker.finishedSchedulingTasks();
             taskTracker.waitForTasksToFinish();
         } catch (InterruptedException e) {
             log.warn("There was an interrupt while scheduling aggregation tasks.", e);
-            taskTracker.abort("There was an interrupt while scheduling aggregation tasks.");
+            abort("There was an interrupt while scheduling aggregation tasks.");
         } catch (Exception e) {
             log.warn("There was an unexpected error scheduling aggregation tasks", e);
-            taskTracker.abort("There was an unexpected error scheduling aggregation tasks: " + e.getMessage());
+            abort("There was an unexpected error scheduling aggregation tasks: " + e.getMessage());
         } finally {
+            synchronized (progressLock) {
+                if (schedulingTimeSlice != Long.MAX_VALUE) {
+                    // scheduling did not get through the whole date range
+                    aborted = true;
+                    progressLock.notifyAll();
+                }
+            }
+            finishNanos = System.nanoTime();
             stopwatch.stop();
             log.info("Finished " + schedulesCount + " " + bucket + " data aggregations in " +
                 stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
@@ -193,6 +372,9 @@ class DataAggregator<T extends NumericMetric> {
             log.debug("Scheduling " + bucket + " aggregation task for " + batch);
         }
         permits.acquire();
+        batch.setSubmitTime(System.nanoTime());
+        timeSliceScheduled(batch.getStartTime().getMillis());
+        scheduledBatches.incrementAndGet();
         aggregationTasks.submit(new AggregationTask(batch) {
             @Override
             void run(Batch batch) {
@@ -217,7 +399,7 @@ class DataAggregator<T extends NumericMetric> {
     protected void fetchRawData(Batch batch) {
         List<StorageResultSetFuture> queryFutures = new ArrayList<StorageResultSetFuture>();
         for (IndexEntry indexEntry : batch) {
-            queryFutures.add(dao.findRawMetricsAsync(indexEntry.getScheduleId(), batch.getStartTime().getMillis(),
+            queryFutures.add(dao.findRawMetricsInDayAsync(indexEntry.getScheduleId(), batch.getStartTime().getMillis(),
                 batch.getEndTime().getMillis()));
         }
         batch.setQueriesFuture(Futures.allAsList(queryFutures));
@@ -245,7 +427,7 @@ class DataAggregator<T extends NumericMetric> {
         ListenableFuture<List<ResultSet>> deleteIndexEntriesFuture = Futures.transform(insertsFuture,
             deleteIndexEntries(batch), aggregationTasks);
 
-        aggregationTaskFinished(metricsFuture, deleteIndexEntriesFuture);
+        aggregationTaskFinished(batch, metricsFuture, deleteIndexEntriesFuture);
     }
 
     protected Function<List<ResultSet>, Iterable<List<T>>> toIterable() {
@@ -354,7 +536,7 @@ class DataAggregator<T extends NumericMetric> {
                 run(batch);
             } catch (Exception e) {
                 log.error("Aggregation will be aborted due to an unexpected error", e);
-                taskTracker.abort("Aborting aggregation due to an unexpected error: " + e.getMessage());
+                abort("Aborting aggregation due to an unexpected error: " + e.getMessage());
             }
         }
 
@@ -362,17 +544,19 @@ class DataAggregator<T extends NumericMetric> {
     }
 
     protected class AggregationTaskFinishedCallback<R> implements FutureCallback<R> {
+
+        private Batch batch;
+
+        public AggregationTaskFinishedCallback(Batch batch) {
+            this.batch = batch;
+        }
+
         @Override
         public void onSuccess(R args) {
             try {
                 onFinish(args);
             } finally {
-                permits.release();
-                taskTracker.finishedTask();
-                if (log.isDebugEnabled()) {
-                    log.debug("There are " + taskTracker.getRemainingTasks() + " remaining " + bucket +
-                        " aggregation tasks and " + permits.availablePermits() + " available permits");
-                }
+                finished(false);
             }
         }
 
@@ -382,11 +566,18 @@ class DataAggregator<T extends NumericMetric> {
         @Override
         public void onFailure(Throwable t) {
             log.warn("There was an error aggregating data", t);
-            permits.release();
+            finished(AdaptivePermits.isTimeout(t));
+        }
+
+        private void finished(boolean timedOut) {
+            permits.release(System.nanoTime() - batch.getSubmitTime(), timedOut);
+            finishedBatches.incrementAndGet();
+            timeSliceFinished(batch.getStartTime().getMillis());
             taskTracker.finishedTask();
             if (log.isDebugEnabled()) {
-                log.debug("There are " + taskTracker.getRemainingTasks() + " remaining tasks and " +
-                    permits.availablePermits() + " available permits");
+                log.debug("There are " + taskTracker.getRemainingTasks() + " remaining " + bucket +
+                    " aggregation tasks and " + permits.getInFlight() + " of " + permits.getLimit() +
+                    " permits in use");
             }
         }
     }
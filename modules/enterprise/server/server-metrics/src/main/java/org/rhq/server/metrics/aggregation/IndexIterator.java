@@ -25,6 +25,12 @@ import org.rhq.server.metrics.domain.IndexEntry;
  * An iterator for the index with paging support. The iterator will scan through all partitions for a particular date
  * range, one page at a time. If a query results in a read timeout, the iterator simply logs the exception and queries
  * the next page.
+ * <p>
+ * Rows are handed out straight from the result set of the current page rather than being copied into a list first.
+ * When the iterator is given an upstream aggregator, it will not query a time slice until the upstream aggregator has
+ * completed everything that falls within that time slice. This is what lets the 1 hour and 6 hour aggregation run
+ * concurrently with the aggregation that feeds them.
+ * </p>
  *
  * @author John Sanda
  */
@@ -55,7 +61,7 @@ public class IndexIterator implements Iterator<IndexEntry> {
 
         @Override
         public Iterator<Row> iterator() {
-            return null;
+            return Collections.<Row>emptyList().iterator();
         }
 
         @Override
@@ -86,6 +92,10 @@ public class IndexIterator implements Iterator<IndexEntry> {
 
     private int rowCount;
 
+    private DataAggregator<?> upstream;
+
+    private long gatedTime;
+
     /**
      *
      * @param startTime The start time inclusive of the date range to query
@@ -96,7 +106,22 @@ public class IndexIterator implements Iterator<IndexEntry> {
      */
     public IndexIterator(DateTime startTime, DateTime endTime, IndexBucket bucket, MetricsDAO dao,
         MetricsConfiguration configuration) {
+        this(startTime, endTime, bucket, dao, configuration, null);
+    }
+
+    /**
+     * @param startTime The start time inclusive of the date range to query
+     * @param endTime The end time exlusive of the date range to query
+     * @param bucket Either raw, 1 hour, or 6 hour
+     * @param dao Used for querying the index
+     * @param configuration The metrics configuration which provides the total number of partitions and page size
+     * @param upstream The aggregator that writes the index entries for this bucket or null if there is none to wait on
+     */
+    IndexIterator(DateTime startTime, DateTime endTime, IndexBucket bucket, MetricsDAO dao,
+        MetricsConfiguration configuration, DataAggregator<?> upstream) {
         time = startTime;
+        gatedTime = startTime.getMillis() - 1;
+        this.upstream = upstream;
         this.endTime = endTime;
         this.bucket = bucket;
         this.dao = dao;
@@ -124,6 +149,7 @@ public class IndexIterator implements Iterator<IndexEntry> {
     @Override
     public IndexEntry next() {
         Row row = rowIterator.next();
+        ++rowCount;
         lastScheduleId = row.getInt(0);
         IndexEntry indexEntry = new IndexEntry(bucket, partition, time.getMillis(), lastScheduleId);
         if (!rowIterator.hasNext()) {
@@ -137,6 +163,13 @@ public class IndexIterator implements Iterator<IndexEntry> {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * @return The time slice of the entry that will be returned next or the end time if the iterator is exhausted
+     */
+    long getTimeSlice() {
+        return rowIterator.hasNext() ? time.getMillis() : endTime.getMillis();
+    }
+
     private void loadPage() {
         if (rowIterator == null) {
             nextPage(findIndexEntries());
@@ -170,17 +203,18 @@ public class IndexIterator implements Iterator<IndexEntry> {
 
             nextResultSet = findIndexEntries();
         }
+        rowCount = 0;
         if (time.isBefore(endTime)) {
-            List<Row> rows = nextResultSet.all();
-            rowCount = rows.size();
-            rowIterator = rows.iterator();
+            rowIterator = nextResultSet.iterator();
         } else {
-            rowCount = 0;
             rowIterator = Iterators.emptyIterator();
         }
     }
 
     private ResultSet findIndexEntries() {
+        if (!waitForUpstream()) {
+            return EMPTY_RESULT_SET;
+        }
         try {
             return dao.findIndexEntries(bucket, partition, time.getMillis()).get();
         } catch (ReadTimeoutException e) {
@@ -190,6 +224,33 @@ public class IndexIterator implements Iterator<IndexEntry> {
         }
     }
 
+    /**
+     * Blocks until the upstream aggregator, if any, has completed the current time slice. If the upstream aggregator
+     * has been aborted or the thread is interrupted, the iterator moves to the end time so that no more time slices
+     * are queried.
+     *
+     * @return true if the current time slice can be queried
+     */
+    private boolean waitForUpstream() {
+        if (upstream == null || time.getMillis() == gatedTime) {
+            return true;
+        }
+        try {
+            if (upstream.awaitCompletedThrough(time.plus(duration).getMillis())) {
+                gatedTime = time.getMillis();
+                return true;
+            }
+            log.warn("Skipping the remaining " + bucket + " index entries starting at " + time + " since the " +
+                upstream.getBucket() + " data aggregation did not complete");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("There was an interrupt while waiting for the " + upstream.getBucket() + " data aggregation to " +
+                "finish the time slice " + time);
+        }
+        time = endTime;
+        return false;
+    }
+
     private ResultSet findIndexEntriesAfterScheduleId() {
         try {
             return dao.findIndexEntries(bucket, partition, time.getMillis(), lastScheduleId).get();
@@ -10,14 +10,17 @@ import com.google.common.util.concurrent.ListenableFuture;
 
 import org.joda.time.DateTime;
 
+import org.rhq.server.metrics.AggregateCache;
 import org.rhq.server.metrics.DateTimeService;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.StorageResultSetFuture;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.IndexBucket;
 
 /**
- * This is a utility class of functions for persisting aggregate metrics.
+ * This is a utility class of functions for persisting aggregate metrics. The cached slices of the persisted metrics
+ * are invalidated as the writes complete.
  *
  * @author John Sanda
  */
@@ -27,15 +30,18 @@ class PersistFunctions {
 
     private DateTimeService dateTimeService;
 
+    private AggregateCache aggregateCache;
+
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist1HourMetrics;
 
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist6HourMetrics;
 
     private AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist24HourMetrics;
 
-    public PersistFunctions(MetricsDAO dao, DateTimeService dateTimeService) {
+    public PersistFunctions(MetricsDAO dao, DateTimeService dateTimeService, AggregateCache aggregateCache) {
         this.dao = dao;
         this.dateTimeService = dateTimeService;
+        this.aggregateCache = aggregateCache;
         initFunctions();
     }
 
@@ -46,7 +52,7 @@ class PersistFunctions {
                 List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(metrics.size());
                 for (AggregateNumericMetric metric : metrics) {
                     DateTime timeSlice = dateTimeService.get6HourTimeSlice(metric.getTimestamp());
-                    futures.add(dao.insert1HourData(metric));
+                    futures.add(invalidateOnCompletion(dao.insert1HourData(metric), metric, Bucket.ONE_HOUR));
                     futures.add(dao.updateIndex(IndexBucket.ONE_HOUR, timeSlice.getMillis(), metric.getScheduleId()));
                 }
                 return Futures.allAsList(futures);
@@ -59,7 +65,7 @@ class PersistFunctions {
                 List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(metrics.size());
                 for (AggregateNumericMetric metric : metrics) {
                     DateTime timeSlice = dateTimeService.get24HourTimeSlice(metric.getTimestamp());
-                    futures.add(dao.insert6HourData(metric));
+                    futures.add(invalidateOnCompletion(dao.insert6HourData(metric), metric, Bucket.SIX_HOUR));
                     futures.add(dao.updateIndex(IndexBucket.SIX_HOUR, timeSlice.getMillis(), metric.getScheduleId()));
                 }
                 return Futures.allAsList(futures);
@@ -71,13 +77,20 @@ class PersistFunctions {
             public ListenableFuture<List<ResultSet>> apply(List<AggregateNumericMetric> metrics) throws Exception {
                 List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(metrics.size());
                 for (AggregateNumericMetric metric : metrics) {
-                    futures.add(dao.insert24HourData(metric));
+                    futures.add(invalidateOnCompletion(dao.insert24HourData(metric), metric,
+                        Bucket.TWENTY_FOUR_HOUR));
                 }
                 return Futures.allAsList(futures);
             }
         };
     }
 
+    private StorageResultSetFuture invalidateOnCompletion(StorageResultSetFuture future, AggregateNumericMetric metric,
+        Bucket bucket) {
+        aggregateCache.invalidateOnCompletion(future, metric.getScheduleId(), bucket, metric.getTimestamp());
+        return future;
+    }
+
     public AsyncFunction<List<AggregateNumericMetric>, List<ResultSet>> persist1HourMetrics() {
         return persist1HourMetrics;
     }
@@ -25,13 +25,11 @@
 
 package org.rhq.server.metrics.domain;
 
-import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
 import com.datastax.driver.core.BoundStatement;
-import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 
@@ -40,7 +38,8 @@ import org.rhq.server.metrics.StorageSession;
 
 /**
  * This class helps paginate Cassandra results that have a list in the matching clause. Instead of running
- * a single big query, this class will run a single query for every element in the list.
+ * a single big query, this class will run a single query for every element in the list, e.g. for every schedule id
+ * and day partition of the raw data.
  *
  * @author Stefan Negrea
  *
@@ -48,20 +47,17 @@ import org.rhq.server.metrics.StorageSession;
 public class ListPagedResult<T extends NumericMetric> implements Iterable<T> {
 
 
-    private final List<Integer> scheduleIds;
-    private final long startTime;
-    private final long endTime;
+    private final List<BoundStatement> statements;
     private final ResultSetMapper<T> mapper;
     private final StorageSession session;
 
-    private final PreparedStatement preparedStatement;
-
-    public ListPagedResult(PreparedStatement preparedStatement, List<Integer> scheduleIds, long startTime, long endTime,
-        ResultSetMapper<T> mapper, StorageSession session) {
-        this.preparedStatement = preparedStatement;
-        this.scheduleIds = new LinkedList<Integer>(scheduleIds);
-        this.startTime = startTime;
-        this.endTime = endTime;
+    /**
+     * @param statements the queries, executed in order and only as the results are iterated
+     * @param mapper result set mapper
+     * @param session Cassandra session
+     */
+    public ListPagedResult(List<BoundStatement> statements, ResultSetMapper<T> mapper, StorageSession session) {
+        this.statements = statements;
         this.mapper = mapper;
         this.session = session;
     }
@@ -69,12 +65,10 @@ public class ListPagedResult<T extends NumericMetric> implements Iterable<T> {
     /**
      * @throws Exception
      */
-    private ResultSet retrieveNextResultSet(ResultSet existingResultSet, List<Integer> ids) {
+    private ResultSet retrieveNextResultSet(ResultSet existingResultSet, List<BoundStatement> remaining) {
         try{
-            while ((existingResultSet == null || existingResultSet.isExhausted()) && ids.size() != 0) {
-                BoundStatement boundStatement = this.preparedStatement.bind(ids.remove(0), new Date(startTime),
-                    new Date(endTime));
-                existingResultSet = session.execute(boundStatement);
+            while ((existingResultSet == null || existingResultSet.isExhausted()) && remaining.size() != 0) {
+                existingResultSet = session.execute(remaining.remove(0));
             }
         } catch (NoHostAvailableException e) {
             throw new CQLException(e);
@@ -89,13 +83,12 @@ public class ListPagedResult<T extends NumericMetric> implements Iterable<T> {
     @Override
     public Iterator<T> iterator() {
         return new Iterator<T>() {
-            @SuppressWarnings({ "unchecked", "rawtypes" })
-            private final List<Integer> ids = new LinkedList<Integer>(scheduleIds);
-            private ResultSet resultSet = retrieveNextResultSet(null, ids);
+            private final List<BoundStatement> remaining = new LinkedList<BoundStatement>(statements);
+            private ResultSet resultSet = retrieveNextResultSet(null, remaining);
             private T lastRetrievedItem = null;
 
             public boolean hasNext() {
-                resultSet = retrieveNextResultSet(resultSet, ids);
+                resultSet = retrieveNextResultSet(resultSet, remaining);
                 return resultSet != null && !resultSet.isExhausted();
             }
 
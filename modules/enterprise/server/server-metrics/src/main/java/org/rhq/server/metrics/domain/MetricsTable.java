@@ -28,7 +28,7 @@ package org.rhq.server.metrics.domain;
 public enum MetricsTable {
 
     INDEX("metrics_idx"),
-    RAW("raw_metrics"),
+    RAW("raw_data"),
     AGGREGATE("aggregate_metrics");
 
     private final String tableName;
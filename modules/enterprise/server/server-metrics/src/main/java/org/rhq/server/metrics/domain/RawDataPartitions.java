@@ -0,0 +1,67 @@
+/*
+ *
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ */
+
+package org.rhq.server.metrics.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The raw data of a measurement schedule is partitioned by UTC day, i.e., the partition key of the raw data table is
+ * (schedule_id, day). This keeps partitions from growing for the whole retention period and lets the data expire a
+ * partition at a time. A query over a date range has to read every day partition the range overlaps.
+ */
+public final class RawDataPartitions {
+
+    public static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private RawDataPartitions() {
+    }
+
+    /**
+     * @return the start of the UTC day, which is the partition, of the timestamp
+     */
+    public static long getDay(long timestamp) {
+        return timestamp - (timestamp % DAY);
+    }
+
+    /**
+     * @param startTime the inclusive start of the range
+     * @param endTime the inclusive end of the range
+     * @return the days of the partitions overlapped by the range, in ascending order
+     */
+    public static List<Long> getDays(long startTime, long endTime) {
+        if (endTime < startTime) {
+            return Collections.emptyList();
+        }
+        long lastDay = getDay(endTime);
+        List<Long> days = new ArrayList<Long>((int) ((lastDay - getDay(startTime)) / DAY) + 1);
+        for (long day = getDay(startTime); day <= lastDay; day += DAY) {
+            days.add(day);
+        }
+        return days;
+    }
+}
@@ -13,6 +13,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
+import org.rhq.server.metrics.AggregateCache;
 import org.rhq.server.metrics.ArithmeticMeanCalculator;
 import org.rhq.server.metrics.DateTimeService;
 import org.rhq.server.metrics.MetricsConfiguration;
@@ -32,7 +33,8 @@ import org.rhq.server.metrics.domain.RawNumericMetric;
  * <p>
  * When an invalid metric is found, it is {@link #submit(AggregateNumericMetric) submitted}
  * to an internal queue for later processing. Metrics will be recomputed if possible;
- * otherwise, they will be deleted.
+ * otherwise, they will be deleted. The cached slices of recomputed and deleted metrics are
+ * invalidated.
  * </p>
  *
  * @author John Sanda
@@ -47,6 +49,8 @@ public class InvalidMetricsManager {
 
     private MetricsDAO dao;
 
+    private AggregateCache aggregateCache;
+
     private InvalidMetric current;
 
     private MetricsConfiguration configuration;
@@ -79,6 +83,10 @@ public class InvalidMetricsManager {
         executor.scheduleAtFixedRate(new InvalidMetricRunnable(), pollerDelay, pollerPeriod, TimeUnit.SECONDS);
     }
 
+    public void setAggregateCache(AggregateCache aggregateCache) {
+        this.aggregateCache = aggregateCache;
+    }
+
     /**
      * This is a test hook.
      *
@@ -314,7 +322,7 @@ public class InvalidMetricsManager {
         List<AggregateNumericMetric> nonEmptyMetrics = new ArrayList<AggregateNumericMetric>();
         for (AggregateNumericMetric metric : metrics) {
             if (isEmptyMetric(metric)) {
-                dao.deleteAggregate(metric);
+                deleteAggregate(metric);
             } else {
                 nonEmptyMetrics.add(metric);
             }
@@ -333,7 +341,7 @@ public class InvalidMetricsManager {
         List<AggregateNumericMetric> nonEmptyMetrics = new ArrayList<AggregateNumericMetric>();
         for (AggregateNumericMetric metric : metrics) {
             if (isEmptyMetric(metric)) {
-                dao.deleteAggregate(metric);
+                deleteAggregate(metric);
             } else {
                 nonEmptyMetrics.add(metric);
             }
@@ -447,7 +455,7 @@ public class InvalidMetricsManager {
     }
 
     private void remove24HourMetric(AggregateNumericMetric metric) {
-        dao.deleteAggregate(metric);
+        deleteAggregate(metric);
     }
 
     private List<AggregateNumericMetric> replace1HourMetric(AggregateNumericMetric metric,
@@ -463,7 +471,7 @@ public class InvalidMetricsManager {
     private List<AggregateNumericMetric> removeMetric(AggregateNumericMetric metric,
         List<AggregateNumericMetric> metrics) {
 
-        dao.deleteAggregate(metric);
+        deleteAggregate(metric);
         List<AggregateNumericMetric> updatedMetrics = new ArrayList<AggregateNumericMetric>(metrics);
         updatedMetrics.remove(metric);
 
@@ -493,14 +501,28 @@ public class InvalidMetricsManager {
 
     private void persist1HourMetric(AggregateNumericMetric metric) {
         dao.insert1HourData(metric).get();
+        invalidate(metric);
     }
 
     private void persist6HourMetric(AggregateNumericMetric metric) {
         dao.insert6HourData(metric).get();
+        invalidate(metric);
     }
 
     private void persist24HourMetric(AggregateNumericMetric metric) {
         dao.insert24HourData(metric).get();
+        invalidate(metric);
+    }
+
+    private void deleteAggregate(AggregateNumericMetric metric) {
+        dao.deleteAggregate(metric);
+        invalidate(metric);
+    }
+
+    private void invalidate(AggregateNumericMetric metric) {
+        if (aggregateCache != null) {
+            aggregateCache.invalidate(metric.getScheduleId(), metric.getBucket(), metric.getTimestamp());
+        }
     }
 
     private String getValueText(AggregateNumericMetric metric) {
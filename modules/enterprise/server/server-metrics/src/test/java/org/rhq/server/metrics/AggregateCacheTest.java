@@ -0,0 +1,155 @@
+package org.rhq.server.metrics;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
+
+/**
+ * Tests that the aggregate cache returns the same metrics as storage as slices get cached and invalidated.
+ */
+public class AggregateCacheTest extends MetricsTest {
+
+    private static final int SCHEDULE_ID = 123;
+
+    private AggregateCache cache;
+
+    private DateTime currentHour;
+
+    @BeforeMethod
+    public void initCache() throws Exception {
+        purgeDB();
+        currentHour = dateTimeService.getTimeSlice(new DateTime(), configuration.getRawTimeSliceDuration());
+        dateTimeServiceStub.setNow(currentHour.plusMinutes(10));
+        cache = new AggregateCache(dao, dateTimeService, 1024 * 1024);
+    }
+
+    @Test
+    public void stitchSlicesAndFreshTail() throws Exception {
+        List<AggregateNumericMetric> metrics = new ArrayList<AggregateNumericMetric>();
+        for (int i = 72; i > 0; --i) {
+            metrics.add(insert(currentHour.minusHours(i), i));
+        }
+
+        long beginTime = currentHour.minusHours(50).getMillis();
+        long endTime = currentHour.getMillis();
+        List<AggregateNumericMetric> expected = metrics.subList(22, 72);
+
+        assertEquals(find(beginTime, endTime), expected, "Failed to load the metrics from storage");
+        assertTrue(cache.getSliceCount() > 0, "Completed slices should have been cached");
+        assertEquals(cache.getHits(), 0);
+
+        assertEquals(find(beginTime, endTime), expected, "Failed to stitch the metrics from the cached slices");
+        assertTrue(cache.getHits() > 0, "The cached slices should have been used");
+
+        // the current slice is always read from storage
+        AggregateNumericMetric latest = insert(currentHour, 100);
+        expected = new ArrayList<AggregateNumericMetric>(expected);
+        expected.add(latest);
+        assertEquals(find(beginTime, currentHour.plusHours(1).getMillis()), expected,
+            "The fresh tail of the window should have been read from storage");
+    }
+
+    @Test
+    public void reloadInvalidatedSlice() throws Exception {
+        DateTime twoDaysAgo = currentHour.minusDays(2);
+        AggregateNumericMetric first = insert(twoDaysAgo, 1);
+        long beginTime = twoDaysAgo.minusHours(1).getMillis();
+        long endTime = twoDaysAgo.plusHours(2).getMillis();
+
+        assertEquals(find(beginTime, endTime), asList(first));
+
+        AggregateNumericMetric second = insert(twoDaysAgo.plusHours(1), 2);
+        assertEquals(find(beginTime, endTime), asList(first), "The cached slice should have been used");
+
+        cache.invalidate(SCHEDULE_ID, Bucket.ONE_HOUR, second.getTimestamp());
+        assertEquals(find(beginTime, endTime), asList(first, second), "The slice should have been reloaded");
+        assertEquals(cache.getInvalidations(), 1);
+    }
+
+    @Test
+    public void expireSliceThatCouldStillBeAggregated() throws Exception {
+        cache = new AggregateCache(dao, dateTimeService, 1024 * 1024, 60000);
+        DateTime twoDaysAgo = currentHour.minusDays(2);
+        AggregateNumericMetric first = insert(twoDaysAgo, 1);
+        long beginTime = twoDaysAgo.minusHours(1).getMillis();
+        long endTime = twoDaysAgo.plusHours(2).getMillis();
+
+        assertEquals(find(beginTime, endTime), asList(first));
+
+        // another server aggregates late raw data into the slice, which does not invalidate it here
+        AggregateNumericMetric second = insert(twoDaysAgo.plusHours(1), 2);
+        assertEquals(find(beginTime, endTime), asList(first), "The cached slice should have been used");
+
+        dateTimeServiceStub.setNow(currentHour.plusMinutes(11));
+        assertEquals(find(beginTime, endTime), asList(first, second), "The slice should have expired");
+        assertEquals(cache.getInvalidations(), 0);
+    }
+
+    @Test
+    public void keepSliceOlderThanAggregationLag() throws Exception {
+        cache = new AggregateCache(dao, dateTimeService, 1024 * 1024, 60000);
+        DateTime tenDaysAgo = currentHour.minusDays(10);
+        AggregateNumericMetric first = insert(tenDaysAgo, 1);
+        long beginTime = tenDaysAgo.minusHours(1).getMillis();
+        long endTime = tenDaysAgo.plusHours(2).getMillis();
+
+        assertEquals(find(beginTime, endTime), asList(first));
+
+        insert(tenDaysAgo.plusHours(1), 2);
+        dateTimeServiceStub.setNow(currentHour.plusMinutes(11));
+        assertEquals(find(beginTime, endTime), asList(first), "The slice should not have expired");
+    }
+
+    @Test
+    public void doNotCacheSliceThatCouldStillBeAggregatedWithoutTtl() throws Exception {
+        cache = new AggregateCache(dao, dateTimeService, 1024 * 1024, 0);
+        AggregateNumericMetric metric = insert(currentHour.minusDays(2), 1);
+
+        assertEquals(find(currentHour.minusDays(3).getMillis(), currentHour.getMillis()), asList(metric));
+        assertEquals(cache.getSliceCount(), 0);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedSlices() throws Exception {
+        cache = new AggregateCache(dao, dateTimeService, 1000);
+        for (int i = 240; i > 0; --i) {
+            insert(currentHour.minusHours(i), i);
+        }
+
+        List<AggregateNumericMetric> metrics = find(currentHour.minusHours(240).getMillis(), currentHour.getMillis());
+
+        assertEquals(metrics.size(), 240);
+        assertTrue(cache.getEvictions() > 0, "Slices should have been evicted");
+        assertTrue(cache.getSize() <= 1000, "The cache should have been kept under its max size");
+    }
+
+    @Test
+    public void disabledCacheReadsStorage() throws Exception {
+        cache = new AggregateCache(dao, dateTimeService, 0);
+        AggregateNumericMetric metric = insert(currentHour.minusDays(2), 1);
+
+        assertEquals(find(currentHour.minusDays(3).getMillis(), currentHour.getMillis()), asList(metric));
+        assertEquals(cache.getSliceCount(), 0);
+    }
+
+    private AggregateNumericMetric insert(DateTime time, double value) throws Exception {
+        AggregateNumericMetric metric = new AggregateNumericMetric(SCHEDULE_ID, Bucket.ONE_HOUR, value, value - 1,
+            value + 1, time.getMillis());
+        dao.insert1HourData(metric).get();
+        return metric;
+    }
+
+    private List<AggregateNumericMetric> find(long beginTime, long endTime) {
+        return cache.findAggregateMetrics(asList(SCHEDULE_ID), Bucket.ONE_HOUR, beginTime, endTime);
+    }
+}
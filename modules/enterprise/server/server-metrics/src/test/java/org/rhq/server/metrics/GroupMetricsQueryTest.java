@@ -0,0 +1,130 @@
+package org.rhq.server.metrics;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import org.testng.annotations.Test;
+
+import org.rhq.server.metrics.domain.RawNumericMetric;
+
+/**
+ * Tests the fan-out of group queries with stubbed per-schedule queries.
+ */
+public class GroupMetricsQueryTest {
+
+    private static final double TEST_PRECISION = Math.pow(10, -9);
+
+    @Test
+    public void foldResultsWithinWindow() throws Exception {
+        TestQuery query = new TestQuery(scheduleIds(10), new Buckets(0, 1000, 10));
+        query.start(3);
+
+        assertEquals(query.issued(), 3, "Only the first queries should have been issued");
+        for (int i = 0; i < 10; ++i) {
+            assertFalse(query.isDone(), "The query should not be done before all schedules are queried");
+            query.complete(i);
+            assertEquals(query.issued(), Math.min(10, 4 + i), "The next query should have been issued");
+        }
+
+        assertTrue(query.isDone());
+        Buckets buckets = query.get();
+        for (int i = 0; i < 10; ++i) {
+            Buckets.Bucket bucket = buckets.get(i);
+            assertEquals(bucket.getAvg(), i + 0.5, TEST_PRECISION, "The avg of bucket " + i + " is wrong");
+            assertEquals(bucket.getMin(), (double) i, TEST_PRECISION, "The min of bucket " + i + " is wrong");
+            assertEquals(bucket.getMax(), i + 1.0, TEST_PRECISION, "The max of bucket " + i + " is wrong");
+        }
+    }
+
+    @Test
+    public void cancelQueriesInFlight() throws Exception {
+        TestQuery query = new TestQuery(scheduleIds(10), new Buckets(0, 1000, 10));
+        query.start(3);
+        query.complete(0);
+
+        assertTrue(query.cancel(true));
+
+        assertEquals(query.issued(), 4, "No more queries should have been issued");
+        for (int i = 1; i < 4; ++i) {
+            assertTrue(query.queries.get(i).isCancelled(), "The query for schedule " + i + " should be cancelled");
+        }
+    }
+
+    @Test
+    public void failWhenScheduleQueryFails() throws Exception {
+        TestQuery query = new TestQuery(scheduleIds(10), new Buckets(0, 1000, 10));
+        query.start(3);
+        query.queries.get(1).setException(new RuntimeException("timeout"));
+
+        assertTrue(query.isDone());
+        try {
+            query.get();
+            fail("The query should have failed");
+        } catch (ExecutionException e) {
+            assertEquals(e.getCause().getMessage(), "timeout");
+        }
+        assertEquals(query.issued(), 3, "No more queries should have been issued");
+        assertTrue(query.queries.get(0).isCancelled());
+        assertTrue(query.queries.get(2).isCancelled());
+    }
+
+    @Test
+    public void emptyGroup() throws Exception {
+        TestQuery query = new TestQuery(Collections.<Integer>emptyList(), new Buckets(0, 1000, 10));
+        query.start(3);
+
+        assertTrue(query.isDone());
+        assertTrue(Double.isNaN(query.get().get(0).getAvg()));
+    }
+
+    private List<Integer> scheduleIds(int count) {
+        List<Integer> scheduleIds = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; ++i) {
+            scheduleIds.add(i);
+        }
+        return scheduleIds;
+    }
+
+    private static class TestQuery extends GroupMetricsQuery<RawNumericMetric> {
+
+        final Map<Integer, SettableFuture<List<RawNumericMetric>>> queries =
+            new LinkedHashMap<Integer, SettableFuture<List<RawNumericMetric>>>();
+
+        TestQuery(List<Integer> scheduleIds, Buckets buckets) {
+            super(scheduleIds, buckets, MoreExecutors.sameThreadExecutor());
+        }
+
+        @Override
+        protected ListenableFuture<List<RawNumericMetric>> query(int scheduleId) {
+            SettableFuture<List<RawNumericMetric>> future = SettableFuture.create();
+            queries.put(scheduleId, future);
+            return future;
+        }
+
+        int issued() {
+            return queries.size();
+        }
+
+        /**
+         * Completes the query of the schedule with a value at the start and one in the middle of its own bucket.
+         */
+        void complete(int scheduleId) {
+            queries.get(scheduleId).set(asList(new RawNumericMetric(scheduleId, scheduleId * 100L, scheduleId),
+                new RawNumericMetric(scheduleId, scheduleId * 100L + 50, scheduleId + 1)));
+        }
+    }
+}
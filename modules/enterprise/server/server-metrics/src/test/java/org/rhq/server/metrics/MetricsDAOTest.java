@@ -52,8 +52,8 @@ import org.rhq.server.metrics.domain.AggregateType;
 import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.IndexEntry;
+import org.rhq.server.metrics.domain.RawDataPartitions;
 import org.rhq.server.metrics.domain.RawNumericMetric;
-import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 
 /**
  * @author John Sanda
@@ -159,14 +159,8 @@ public class MetricsDAOTest extends CassandraIntegrationTest {
         }
         waitForWrite.await("Failed to insert raw data");
 
-        RawNumericMetricMapper mapper = new RawNumericMetricMapper();
-        WaitForRead<RawNumericMetric> waitForRead = new WaitForRead<RawNumericMetric>(mapper);
-        StorageResultSetFuture resultSetFuture = dao.findRawMetricsAsync(scheduleId,
-            threeMinutesAgo.minusSeconds(5).getMillis(), oneMinuteAgo.plusSeconds(5).getMillis());
-        Futures.addCallback(resultSetFuture, waitForRead);
-
-        waitForRead.await("Failed to fetch raw data");
-        List<RawNumericMetric> actual = waitForRead.getResults();
+        List<RawNumericMetric> actual = dao.findRawMetricsAsync(scheduleId,
+            threeMinutesAgo.minusSeconds(5).getMillis(), oneMinuteAgo.plusSeconds(5).getMillis()).get();
         List<RawNumericMetric> expected = map(data);
 
         assertEquals(actual, expected, "Async read of raw data failed");
@@ -212,6 +206,48 @@ public class MetricsDAOTest extends CassandraIntegrationTest {
         assertEquals(actualMetrics, expectedMetrics, "Failed to find raw metrics for multiple schedules");
     }
 
+    @Test(enabled = ENABLED)
+    public void findRawMetricsAcrossDayPartitions() throws Exception {
+        // yesterday's UTC midnight, so that all of the data is in the past and within the raw data TTL
+        long midnight = RawDataPartitions.getDay(System.currentTimeMillis()) - RawDataPartitions.DAY;
+        int scheduleId1 = 1;
+        int scheduleId2 = 2;
+
+        List<MeasurementDataNumeric> data = new ArrayList<MeasurementDataNumeric>();
+        data.add(new MeasurementDataNumeric(midnight - 20 * MINUTE, scheduleId1, 1.1));
+        data.add(new MeasurementDataNumeric(midnight - 10 * MINUTE, scheduleId1, 1.2));
+        data.add(new MeasurementDataNumeric(midnight, scheduleId1, 1.3));
+        data.add(new MeasurementDataNumeric(midnight + 10 * MINUTE, scheduleId1, 1.4));
+        data.add(new MeasurementDataNumeric(midnight - 10 * MINUTE, scheduleId2, 2.1));
+        data.add(new MeasurementDataNumeric(midnight + 10 * MINUTE, scheduleId2, 2.2));
+
+        WaitForWrite waitForWrite = new WaitForWrite(data.size());
+        for (MeasurementDataNumeric raw : data) {
+            StorageResultSetFuture resultSetFuture = dao.insertRawData(raw);
+            Futures.addCallback(resultSetFuture, waitForWrite);
+        }
+        waitForWrite.await("Failed to insert raw data");
+
+        long startTime = midnight - 15 * MINUTE;
+        long endTime = midnight + 15 * MINUTE;
+        List<RawNumericMetric> expected = asList(
+            new RawNumericMetric(scheduleId1, midnight - 10 * MINUTE, 1.2),
+            new RawNumericMetric(scheduleId1, midnight, 1.3),
+            new RawNumericMetric(scheduleId1, midnight + 10 * MINUTE, 1.4)
+        );
+
+        assertEquals(dao.findRawMetrics(scheduleId1, startTime, endTime), expected,
+            "Failed to find raw metrics in the day partitions before and after midnight");
+        assertEquals(dao.findRawMetricsAsync(scheduleId1, startTime, endTime).get(), expected,
+            "Async read of raw data across day partitions failed");
+
+        List<RawNumericMetric> expectedForSchedules = new ArrayList<RawNumericMetric>(expected);
+        expectedForSchedules.add(new RawNumericMetric(scheduleId2, midnight - 10 * MINUTE, 2.1));
+        expectedForSchedules.add(new RawNumericMetric(scheduleId2, midnight + 10 * MINUTE, 2.2));
+        assertEquals(Lists.newArrayList(dao.findRawMetrics(asList(scheduleId1, scheduleId2), startTime, endTime)),
+            expectedForSchedules, "Failed to find raw metrics for multiple schedules across day partitions");
+    }
+
     @Test(enabled = ENABLED)
     public void insertAndFind1HourMetrics() {
         int scheduleId = 100;
@@ -1,5 +1,7 @@
 package org.rhq.server.metrics;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -9,10 +11,11 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
-import com.datastax.driver.core.ResultSet;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.RateLimiter;
 
 import org.apache.commons.logging.Log;
@@ -24,7 +27,6 @@ import org.testng.annotations.Test;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.RawNumericMetric;
-import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 
 /**
  * @author John Sanda
@@ -108,19 +110,17 @@ public class MetricsPerfTests extends MetricsTest {
         DateTime startTime = hour(3).minusHours(1).minusSeconds(1);
         DateTime endTime = hour(3);
         final CountDownLatch rawDataArrival = new CountDownLatch(100);
-        final RawNumericMetricMapper mapper = new RawNumericMetricMapper();
         final Map<Integer, List<RawNumericMetric>> rawDataMap =
             new ConcurrentHashMap<Integer, List<RawNumericMetric>>(100);
 
         for (int i = 0; i < NUM_SCHEDULES; ++i) {
             final int scheduleId = i;
 //            readPermits.acquire();
-            StorageResultSetFuture rawDataFuture = dao.findRawMetricsAsync(scheduleId, startTime.getMillis(),
-                endTime.getMillis());
-            Futures.addCallback(rawDataFuture, new FutureCallback<ResultSet>() {
+            ListenableFuture<List<RawNumericMetric>> rawDataFuture = dao.findRawMetricsAsync(scheduleId,
+                startTime.getMillis(), endTime.getMillis());
+            Futures.addCallback(rawDataFuture, new FutureCallback<List<RawNumericMetric>>() {
                 @Override
-                public void onSuccess(ResultSet result) {
-                    List<RawNumericMetric> rawData = mapper.mapAll(result);
+                public void onSuccess(List<RawNumericMetric> rawData) {
                     rawDataMap.put(scheduleId, rawData);
                     rawDataArrival.countDown();
                 }
@@ -143,17 +143,49 @@ public class MetricsPerfTests extends MetricsTest {
         long start = System.currentTimeMillis();
         DateTime startTime = hour(3).minusHours(1).minusSeconds(1);
         DateTime endTime = hour(3);
-        RawNumericMetricMapper mapper = new RawNumericMetricMapper();
         Map<Integer, List<RawNumericMetric>> rawDataMp = new HashMap<Integer, List<RawNumericMetric>>(100);
 
         for (int i = 0; i < NUM_SCHEDULES; ++i) {
-            ResultSet resultSet = dao.findRawMetricsSync(i, startTime.getMillis(), endTime.getMillis());
-            rawDataMp.put(i, mapper.mapAll(resultSet));
+            rawDataMp.put(i, dao.findRawMetrics(i, startTime.getMillis(), endTime.getMillis()));
         }
 
         log.info("Finished raw data sync query in " + (System.currentTimeMillis() - start) + " ms");
     }
 
+    /**
+     * Reports the latency percentiles of raw data queries for groups of 100, 1,000, and 10,000 members.
+     */
+    @Test(dependsOnMethods = "insertRawData")
+    public void queryGroupData() throws Exception {
+        DateTime startTime = hour(3);
+        DateTime endTime = hour(4);
+        int iterations = 20;
+
+        for (int groupSize : new int[] { 100, 1000, NUM_SCHEDULES }) {
+            List<Integer> scheduleIds = new ArrayList<Integer>(groupSize);
+            for (int i = 0; i < groupSize; ++i) {
+                scheduleIds.add(i);
+            }
+
+            long[] latencies = new long[iterations];
+            for (int i = 0; i < iterations; ++i) {
+                long start = System.nanoTime();
+                metricsServer.findDataForGroup(scheduleIds, startTime.getMillis(), endTime.getMillis(), 60);
+                latencies[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+            Arrays.sort(latencies);
+
+            log.info("Queried raw data for a group of " + groupSize + " members " + iterations + " times: [p50: " +
+                percentile(latencies, 50) + " ms, p90: " + percentile(latencies, 90) + " ms, p99: " +
+                percentile(latencies, 99) + " ms, max: " + latencies[iterations - 1] + " ms]");
+        }
+    }
+
+    private long percentile(long[] sortedValues, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, index)];
+    }
+
     @Test(dependsOnMethods = "insertRawData")
     public void runAggregation() {
         log.info("Running aggregation");
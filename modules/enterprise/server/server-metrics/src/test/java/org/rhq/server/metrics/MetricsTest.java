@@ -26,7 +26,6 @@ import org.rhq.server.metrics.domain.IndexBucket;
 import org.rhq.server.metrics.domain.IndexEntry;
 import org.rhq.server.metrics.domain.MetricsTable;
 import org.rhq.server.metrics.domain.RawNumericMetric;
-import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 
 /**
  * @author John Sanda
@@ -40,7 +39,6 @@ public class MetricsTest extends CassandraIntegrationTest {
     protected MetricsDAO dao;
     protected MetricsConfiguration configuration = new MetricsConfiguration();
     protected DateTimeServiceStub dateTimeServiceStub;
-    private RawNumericMetricMapper rawMapper = new RawNumericMetricMapper();
     private AggregateNumericMetricMapper aggregateMapper = new AggregateNumericMetricMapper();
 
     @BeforeClass
@@ -105,8 +103,8 @@ public class MetricsTest extends CassandraIntegrationTest {
 
     protected void assertRawDataEquals(int scheduleId, DateTime startTime, DateTime endTime,
         List<RawNumericMetric> expected) {
-        ResultSet resultSet = dao.findRawMetricsAsync(scheduleId, startTime.getMillis(), endTime.getMillis()).get();
-        List<RawNumericMetric> actual = rawMapper.mapAll(resultSet);
+        List<RawNumericMetric> actual = dao.findRawMetricsAsync(scheduleId, startTime.getMillis(),
+            endTime.getMillis()).get();
 
         assertEquals(actual, expected, "The raw metrics do not match the expected value");
 
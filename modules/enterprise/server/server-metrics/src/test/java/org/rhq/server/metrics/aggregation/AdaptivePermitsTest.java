@@ -0,0 +1,102 @@
+package org.rhq.server.metrics.aggregation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+
+import org.testng.annotations.Test;
+
+public class AdaptivePermitsTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void increaseLimitWhenBatchesAreFast() throws Exception {
+        AdaptivePermits permits = new AdaptivePermits(4, 2, 8, 100);
+
+        for (int i = 0; i < 100; ++i) {
+            permits.acquire();
+            permits.release(FAST, false);
+        }
+
+        assertEquals(permits.getLimit(), 8, "The limit should have grown up to the maximum");
+        assertEquals(permits.getInFlight(), 0);
+        assertEquals(permits.getTimeouts(), 0);
+    }
+
+    @Test
+    public void decreaseLimitOnTimeout() throws Exception {
+        AdaptivePermits permits = new AdaptivePermits(8, 2, 8, 100);
+
+        permits.acquire();
+        permits.release(FAST, true);
+
+        assertEquals(permits.getLimit(), 6, "The limit should have been cut by a quarter");
+        assertEquals(permits.getTimeouts(), 1);
+
+        // Timeouts that follow right after are caused by the same overload and should not decrease the limit again
+        permits.acquire();
+        permits.release(FAST, true);
+
+        assertEquals(permits.getLimit(), 6);
+        assertEquals(permits.getTimeouts(), 2);
+    }
+
+    @Test
+    public void decreaseLimitWhenBatchesAreSlow() throws Exception {
+        AdaptivePermits permits = new AdaptivePermits(8, 2, 8, 100);
+
+        for (int i = 0; i < 20; ++i) {
+            permits.acquire();
+            permits.release(SLOW, false);
+            Thread.sleep(110);
+        }
+
+        assertEquals(permits.getLimit(), 2, "The limit should not go below the minimum");
+        assertTrue(permits.getMeanLatency() > 100, "Expected the mean latency to be close to 500 ms but it is " +
+            permits.getMeanLatency());
+    }
+
+    @Test
+    public void blockWhenLimitIsReached() throws Exception {
+        final AdaptivePermits permits = new AdaptivePermits(2, 1, 2, 100);
+        permits.acquire();
+        permits.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    permits.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        thread.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS), "Should not get a permit while at the limit");
+        permits.release(FAST, false);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS), "Should get a permit after one was released");
+        assertEquals(permits.getInFlight(), 2);
+    }
+
+    @Test
+    public void detectTimeoutsInCauses() {
+        ReadTimeoutException timeout = new ReadTimeoutException(ConsistencyLevel.ONE, 0, 1, false);
+
+        assertTrue(AdaptivePermits.isTimeout(timeout));
+        assertTrue(AdaptivePermits.isTimeout(new RuntimeException(new RuntimeException(timeout))));
+        assertFalse(AdaptivePermits.isTimeout(new RuntimeException("not a timeout")));
+    }
+
+}
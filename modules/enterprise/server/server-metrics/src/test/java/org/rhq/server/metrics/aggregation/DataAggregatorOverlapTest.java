@@ -0,0 +1,211 @@
+package org.rhq.server.metrics.aggregation;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.server.metrics.MetricsConfiguration;
+import org.rhq.server.metrics.MetricsDAO;
+import org.rhq.server.metrics.StorageResultSetFuture;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.IndexBucket;
+import org.rhq.server.metrics.domain.NumericMetric;
+
+/**
+ * Runs the raw and 1 hour aggregators the way {@link AggregationManager} does, with the 1 hour aggregator following
+ * the raw one. The storage is mocked and the batches do no real work, so only the hand off between the stages is
+ * tested.
+ */
+public class DataAggregatorOverlapTest {
+
+    private static final DateTime START = new DateTime(2015, 3, 2, 0, 0, DateTimeZone.UTC);
+
+    private static final DateTime END = START.plusHours(12);
+
+    private MetricsConfiguration configuration;
+
+    private MetricsDAO dao;
+
+    private ListeningExecutorService aggregationTasks;
+
+    private ListeningExecutorService stages;
+
+    private AdaptivePermits permits;
+
+    @BeforeMethod
+    public void setUp() {
+        configuration = new MetricsConfiguration();
+        configuration.setIndexPartitions(1);
+        configuration.setIndexPageSize(10);
+
+        dao = mock(MetricsDAO.class);
+        StorageResultSetFuture empty = indexEntries();
+        when(dao.findIndexEntries(any(IndexBucket.class), anyInt(), anyLong())).thenReturn(empty);
+        when(dao.findIndexEntries(any(IndexBucket.class), anyInt(), anyLong(), anyInt())).thenReturn(empty);
+
+        aggregationTasks = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        stages = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+        permits = new AdaptivePermits(10, 2, 10, TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        aggregationTasks.shutdownNow();
+        stages.shutdownNow();
+    }
+
+    @Test
+    public void nextStageStartsBeforeSlowStageFinishes() throws Exception {
+        // the raw data of hour 0 is done quickly, the raw data of hour 11 is stuck until released
+        stubIndex(IndexBucket.RAW, START, 100);
+        stubIndex(IndexBucket.RAW, START.plusHours(11), 101);
+        // the first 1 hour time slice only needs hour 0 of the raw aggregation, the second one needs hour 11
+        stubIndex(IndexBucket.ONE_HOUR, START, 100);
+        stubIndex(IndexBucket.ONE_HOUR, START.plusHours(6), 101);
+
+        final CountDownLatch slowBatchStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSlowBatch = new CountDownLatch(1);
+        final CountDownLatch nextStageStarted = new CountDownLatch(1);
+        final List<String> events = new CopyOnWriteArrayList<String>();
+
+        final DataAggregator<NumericMetric> raw = new TestAggregator(IndexBucket.RAW, events) {
+            @Override
+            void process(Batch batch) throws InterruptedException {
+                if (batch.getStartTime().equals(START.plusHours(11))) {
+                    slowBatchStarted.countDown();
+                    releaseSlowBatch.await();
+                }
+            }
+        };
+        final DataAggregator<NumericMetric> oneHour = new TestAggregator(IndexBucket.ONE_HOUR, events) {
+            @Override
+            void process(Batch batch) {
+                nextStageStarted.countDown();
+            }
+        };
+        oneHour.setUpstream(raw);
+
+        Future<Integer> rawResult = stages.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return raw.execute(START, END);
+            }
+        });
+        Future<Integer> oneHourResult = stages.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return oneHour.execute(START, END);
+            }
+        });
+
+        assertTrue(slowBatchStarted.await(10, TimeUnit.SECONDS), "The slow raw batch should have been started");
+        assertTrue(nextStageStarted.await(10, TimeUnit.SECONDS),
+            "The 1 hour aggregation should have started on the first time slice while the raw aggregation is stuck");
+        assertFalse(raw.isFinished(), "The raw aggregation should still be stuck");
+        assertEquals(raw.getCompletedThrough(), START.plusHours(11).getMillis(),
+            "The raw aggregation should have completed everything before the slow batch");
+        assertFalse(events.contains("ONE_HOUR " + START.plusHours(6)),
+            "The second 1 hour time slice should wait for the slow raw batch");
+
+        releaseSlowBatch.countDown();
+        rawResult.get(10, TimeUnit.SECONDS);
+        oneHourResult.get(10, TimeUnit.SECONDS);
+
+        assertEquals(events.size(), 4, "Every time slice should have been aggregated once: " + events);
+        assertTrue(events.indexOf("RAW " + START.plusHours(11)) < events.indexOf("ONE_HOUR " + START.plusHours(6)),
+            "The second 1 hour time slice should follow the slow raw batch: " + events);
+        assertTrue(oneHour.isFinished());
+        assertEquals(oneHour.getCompletedThrough(), Long.MAX_VALUE);
+    }
+
+    private void stubIndex(IndexBucket bucket, DateTime time, int... scheduleIds) {
+        StorageResultSetFuture entries = indexEntries(scheduleIds);
+        when(dao.findIndexEntries(bucket, 0, time.getMillis())).thenReturn(entries);
+    }
+
+    private StorageResultSetFuture indexEntries(int... scheduleIds) {
+        List<Row> rows = new ArrayList<Row>();
+        for (int scheduleId : scheduleIds) {
+            Row row = mock(Row.class);
+            when(row.getInt(0)).thenReturn(scheduleId);
+            rows.add(row);
+        }
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.isExhausted()).thenReturn(rows.isEmpty());
+        when(resultSet.iterator()).thenReturn(rows.iterator());
+
+        StorageResultSetFuture future = mock(StorageResultSetFuture.class);
+        when(future.get()).thenReturn(resultSet);
+        return future;
+    }
+
+    /**
+     * An aggregator whose batches only record that they ran, after doing whatever {@link #process(Batch)} does.
+     */
+    private abstract class TestAggregator extends DataAggregator<NumericMetric> {
+
+        private final List<String> events;
+
+        TestAggregator(IndexBucket bucket, List<String> events) {
+            this.events = events;
+            setBucket(bucket);
+            setDao(dao);
+            setConfiguration(configuration);
+            setAggregationTasks(aggregationTasks);
+            setPermits(permits);
+            setBatchSize(10);
+            setTimeSliceDuration(bucket == IndexBucket.RAW ? configuration.getRawTimeSliceDuration() :
+                configuration.getOneHourTimeSliceDuration());
+        }
+
+        abstract void process(Batch batch) throws InterruptedException;
+
+        @Override
+        protected void fetchRawData(Batch batch) {
+        }
+
+        @Override
+        protected void fetchData(Batch batch, Bucket bucket) {
+        }
+
+        @Override
+        protected void processBatch(Batch batch, Bucket bucket) {
+            try {
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(getBucket() + " " + batch.getStartTime());
+            aggregationTaskFinished(batch, Futures.immediateFuture(Collections.<AggregateNumericMetric>emptyList()),
+                Futures.immediateFuture(Collections.<ResultSet>emptyList()));
+        }
+    }
+}
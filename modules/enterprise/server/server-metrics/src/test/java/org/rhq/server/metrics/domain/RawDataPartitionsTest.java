@@ -0,0 +1,66 @@
+/*
+ *
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *
+ */
+
+package org.rhq.server.metrics.domain;
+
+import static java.util.Arrays.asList;
+import static org.rhq.server.metrics.domain.RawDataPartitions.DAY;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class RawDataPartitionsTest {
+
+    private static final long DAY_0 = 16000 * DAY;
+
+    @Test
+    public void getDayOfTimestamp() {
+        assertEquals(RawDataPartitions.getDay(DAY_0), DAY_0, "The start of a day is in that day");
+        assertEquals(RawDataPartitions.getDay(DAY_0 + DAY - 1), DAY_0, "The end of a day is in that day");
+        assertEquals(RawDataPartitions.getDay(DAY_0 + DAY), DAY_0 + DAY, "Midnight is in the next day");
+    }
+
+    @Test
+    public void getDaysOfRangeWithinOneDay() {
+        List<Long> days = RawDataPartitions.getDays(DAY_0 + 60000, DAY_0 + 3600000);
+
+        assertEquals(days, asList(DAY_0), "A range within a day only spans that day");
+    }
+
+    @Test
+    public void getDaysOfRangeSpanningDays() {
+        List<Long> days = RawDataPartitions.getDays(DAY_0 + DAY - 1, DAY_0 + 2 * DAY);
+
+        assertEquals(days, asList(DAY_0, DAY_0 + DAY, DAY_0 + 2 * DAY), "The days of the range are wrong");
+    }
+
+    @Test
+    public void getDaysOfEmptyRange() {
+        assertTrue(RawDataPartitions.getDays(DAY_0 + 1, DAY_0).isEmpty(), "An empty range spans no days");
+    }
+}
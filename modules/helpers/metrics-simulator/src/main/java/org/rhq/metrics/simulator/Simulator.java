@@ -51,6 +51,7 @@ import org.rhq.metrics.simulator.plan.SimulationPlan;
 import org.rhq.metrics.simulator.plan.SimulationPlan.SimulationType;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.MetricsServer;
+import org.rhq.server.metrics.RawDataWriter;
 import org.rhq.server.metrics.StorageSession;
 
 /**
@@ -73,6 +74,8 @@ public class Simulator implements ShutdownManager {
             this.runThreadedSimulation(plan);
         } else if (SimulationType.SEQUENTIAL.equals(plan.getSimulationType())) {
             this.runSequentialSimulation(plan);
+        } else if (SimulationType.INGEST.equals(plan.getSimulationType())) {
+            this.runIngestSimulation(plan);
         } else {
             throw new UnsupportedOperationException("Simulation type " + plan.getSimulationType() + " not implemented.");
         }
@@ -134,6 +137,58 @@ public class Simulator implements ShutdownManager {
         shutdown(0);
     }
 
+    /**
+     * Run a raw data ingest load test. Batches of raw data are pushed into
+     * the metrics server as fast as its queue accepts them for the duration
+     * of the simulation (in minutes). Aggregation and reads are disabled so
+     * that the reported rate reflects the raw insert path only.
+     */
+    private void runIngestSimulation(SimulationPlan plan) throws Throwable {
+        this.initializeMetricsServer(plan);
+        try {
+            Random random = new Random();
+            int numberOfMetrics = plan.getBatchSize() * plan.getNumMeasurementCollectors();
+            long endOfSimulation = System.currentTimeMillis() +
+                Minutes.minutes(plan.getSimulationTime()).toStandardDuration().getMillis();
+            long submitted = 0;
+            long rejected = 0;
+
+            Set<MeasurementDataNumeric> data = new HashSet<MeasurementDataNumeric>(numberOfMetrics);
+            long start = System.currentTimeMillis();
+            while (System.currentTimeMillis() < endOfSimulation) {
+                long timestamp = plan.getDateTimeService().nowInMillis();
+                data.clear();
+                for (int i = 0; i < numberOfMetrics; ++i) {
+                    data.add(new MeasurementDataNumeric(timestamp, i, random.nextDouble()));
+                }
+                if (metricsServer.getQueueAvailableCapacity() <= data.size()) {
+                    ++rejected;
+                    Thread.sleep(10);
+                    continue;
+                }
+                WaitForRawInserts waitForRawInserts = new WaitForRawInserts(1);
+                metricsServer.addNumericData(data, waitForRawInserts);
+                waitForRawInserts.await("Failed to queue raw data at time: " + timestamp);
+                submitted += data.size();
+            }
+
+            // Shutting down the metrics server waits for the queue to drain and in flight writes to finish
+            metricsServer.shutdown();
+            long elapsed = System.currentTimeMillis() - start;
+
+            RawDataWriter writer = metricsServer.getRawDataWriter();
+            log.info("Ingest simulation finished in " + elapsed + " ms. Submitted " + submitted + " data points, " +
+                writer.getRawInserts() + " inserted (" + (writer.getRawInserts() * 1000 / Math.max(elapsed, 1)) +
+                " inserts/sec), " + writer.getFailedInserts() + " failed, " + writer.getIndexUpdates() +
+                " index updates. Mean batch size: " + writer.getMeanBatchSize() + ", batch size distribution: " +
+                writer.getBatchSizeDistribution() + ", peak in flight requests: " + writer.getPeakInFlightRequests() +
+                ", times queue was full: " + rejected);
+        } finally {
+            // unlike the other simulations this one does not exit the JVM, so release the session and its threads
+            session.getCluster().shutdown();
+        }
+    }
+
     /**
      * Run a multi-threaded simulation where multiple threads
      * collect metrics and run aggregation.
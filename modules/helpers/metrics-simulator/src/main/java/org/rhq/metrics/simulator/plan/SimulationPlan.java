@@ -77,7 +77,7 @@ public class SimulationPlan {
     }
 
     public static enum SimulationType {
-        THREADED("threaded"), SEQUENTIAL("sequential");
+        THREADED("threaded"), SEQUENTIAL("sequential"), INGEST("ingest");
 
         private final String text;
 
@@ -92,6 +92,9 @@ public class SimulationPlan {
             if (text.equals("sequential") || text.equals("seq")) {
                 return SEQUENTIAL;
             }
+            if (text.equals("ingest")) {
+                return INGEST;
+            }
             throw new IllegalArgumentException(text + " is not a valid simulation type");
         }
     }
@@ -44,4 +44,17 @@ public class SimulatorTest {
         Simulator simulator = new Simulator();
         simulator.run(plan);
     }
+
+    /**
+     * A load run of several minutes against a live storage node. It is not part of the unit tests, enable it to
+     * measure the raw insert throughput.
+     */
+    @Test(enabled = false)
+    public void runIngestLoadTest() throws Throwable {
+        File jsonFile = new File(getClass().getResource("ingest-simulator.json").toURI());
+        SimulationPlanner planner = new SimulationPlanner();
+        SimulationPlan plan = planner.create(jsonFile);
+        Simulator simulator = new Simulator();
+        simulator.run(plan);
+    }
 }
\ No newline at end of file
@@ -1295,5 +1295,59 @@ JsonPath jp =
             .post("/metric/data/raw");
     }
 
+    @Test
+    public void testPostBulkData() throws Exception {
+        long now = System.currentTimeMillis();
+
+        String json = "[{\"scheduleId\":" + numericScheduleId + ",\"timeStamp\":" + now + ",\"value\":1.5},"
+            + "{\"scheduleId\":" + numericScheduleId + ",\"timeStamp\":" + (now - 1000) + ",\"value\":2.5},"
+            + "{\"scheduleId\":99999,\"timeStamp\":" + now + ",\"value\":9999.0}]";
+
+        given()
+            .header(acceptJson)
+            .contentType(ContentType.JSON)
+            .body(json)
+        .expect()
+            .statusCode(200)
+            .body("numeric", is(2))
+            .body("rejected", is(1))
+            .log().ifError()
+        .when()
+            .post("/metric/data/bulk");
+    }
+
+    /**
+     * Submits a large number of data points in line protocol and reports the sustained rate. The number of data
+     * points can be set with the rest.bulk.points system property.
+     */
+    @Test
+    public void testBulkDataLoad() throws Exception {
+        int howMany = Integer.getInteger("rest.bulk.points", 200000);
+        long now = System.currentTimeMillis();
+
+        StringBuilder lines = new StringBuilder(howMany * 32);
+        for (int i = 0; i < howMany; i++) {
+            lines.append(numericScheduleId).append(' ').append(now - i * 10L).append(' ').append(i % 100 + 0.5)
+                .append('\n');
+        }
+        String body = lines.toString();
+
+        long start = System.currentTimeMillis();
+        given()
+            .header(acceptJson)
+            .contentType(ContentType.TEXT)
+            .body(body)
+        .expect()
+            .statusCode(200)
+            .body("numeric", is(howMany))
+            .body("rejected", is(0))
+            .log().ifError()
+        .when()
+            .post("/metric/data/bulk");
+        long duration = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println("Stored " + howMany + " data points in " + duration + " ms, " + (howMany * 1000L / duration)
+            + " points/sec");
+    }
 
 }
@@ -67,6 +67,11 @@ public class ApacheErrorLogEntryProcessor extends MultiLineLogEntryProcessor {
         return PATTERN;
     }
 
+    @Override
+    protected boolean isPrimaryLineCandidate(String line) {
+        return line.startsWith("[");
+    }
+
     protected DateFormat getDefaultDateFormat() {
         return DATE_FORMAT;
     }
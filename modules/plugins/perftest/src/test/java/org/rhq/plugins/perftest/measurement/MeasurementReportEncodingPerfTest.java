@@ -0,0 +1,119 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2015 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.plugins.perftest.measurement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.plugins.perftest.trait.SimpleTraitFactory;
+
+/**
+ * Compares the size and the encoding and decoding throughput of measurement reports in the default and the compact
+ * encoding. The reports are filled by the perftest plugin's measurement and trait factories, sized like the reports
+ * of a big agent. This is not a strict benchmark, the numbers are only printed out.
+ */
+@Test
+public class MeasurementReportEncodingPerfTest {
+
+    private static final int NUMERIC_SCHEDULES = 50000;
+    private static final int TRAIT_SCHEDULES = 5000;
+    private static final int METRICS_PER_TYPE = 40;
+    private static final int ITERATIONS = 10;
+
+    public void testEncoding() throws Exception {
+        MeasurementReport report = createReport();
+
+        // warm up both encodings before measuring
+        run(report, false, 2);
+        run(report, true, 2);
+
+        String defaultResult = run(report, false, ITERATIONS);
+        String compactResult = run(report, true, ITERATIONS);
+
+        System.out.println("Measurement report with " + report.getDataCount() + " data items: default encoding "
+            + defaultResult + ", compact encoding " + compactResult);
+    }
+
+    private MeasurementReport createReport() {
+        SimpleNumericMeasurementFactory numericFactory = new SimpleNumericMeasurementFactory();
+        SimpleTraitFactory traitFactory = new SimpleTraitFactory();
+
+        MeasurementReport report = new MeasurementReport();
+        for (int i = 0; i < NUMERIC_SCHEDULES; i++) {
+            MeasurementScheduleRequest request = new MeasurementScheduleRequest(10001 + i, "metric"
+                + (i % METRICS_PER_TYPE), 60000L, true, DataType.MEASUREMENT);
+            report.addData((MeasurementDataNumeric) numericFactory.nextValue(request));
+        }
+        for (int i = 0; i < TRAIT_SCHEDULES; i++) {
+            MeasurementScheduleRequest request = new MeasurementScheduleRequest(10001 + NUMERIC_SCHEDULES + i,
+                "trait" + (i % METRICS_PER_TYPE), 600000L, true, DataType.TRAIT);
+            report.addData(traitFactory.nextValue(request));
+        }
+        return report;
+    }
+
+    private String run(MeasurementReport report, boolean compact, int iterations) throws Exception {
+        report.setCompactEncoding(compact);
+        byte[] bytes = null;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = serialize(report);
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        MeasurementReport copy = null;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            copy = deserialize(bytes);
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        assert copy.getNumericData().equals(report.getNumericData()) : "numeric data differs";
+        assert copy.getTraitData().equals(report.getTraitData()) : "trait data differs";
+
+        return "[size=" + bytes.length + " bytes, encode=" + (encodeNanos / iterations / 1000000L) + "ms, decode="
+            + (decodeNanos / iterations / 1000000L) + "ms]";
+    }
+
+    private static byte[] serialize(MeasurementReport report) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(report);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static MeasurementReport deserialize(byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (MeasurementReport) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}